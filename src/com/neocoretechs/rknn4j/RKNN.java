@@ -33,6 +33,17 @@ public class RKNN {
 	 * */
 	public static final int RKNN_FLAG_LOAD_MODEL_IN_NPU = 0x00000010;
 
+	/*
+	    The mode of running on target NPU core, for rknn_set_core_mask (only supported on RK3588).
+	*/
+	public static final int RKNN_NPU_CORE_AUTO = 0;                                      /* default, run on NPU core randomly. */
+	public static final int RKNN_NPU_CORE_0 = 1;                                         /* run on NPU core 0. */
+	public static final int RKNN_NPU_CORE_1 = 2;                                         /* run on NPU core 1. */
+	public static final int RKNN_NPU_CORE_2 = 4;                                         /* run on NPU core 2. */
+	public static final int RKNN_NPU_CORE_0_1 = RKNN_NPU_CORE_0 | RKNN_NPU_CORE_1;       /* run on NPU core 0 and core 1. */
+	public static final int RKNN_NPU_CORE_0_1_2 = RKNN_NPU_CORE_0_1 | RKNN_NPU_CORE_2;   /* run on NPU core 0, core 1 and core 2. */
+	public static final int RKNN_NPU_CORE_NUM = 3;                                       /* number of NPU cores on RK3588. */
+
 	/*
 	    Error code returned by the RKNN API.
 	*/
@@ -76,6 +87,19 @@ public class RKNN {
 	                                                           this query needs to be valid after rknn_outputs_get. */
 	    RKNN_QUERY_SDK_VERSION,                             /* query the sdk & driver version */
 
+	    RKNN_QUERY_MEM_SIZE,                                /* query the weight & internal memory size */
+	    RKNN_QUERY_CUSTOM_STRING,                           /* query the custom string */
+
+	    RKNN_QUERY_NATIVE_INPUT_ATTR,                       /* query the attribute of native input tensor,
+	                                                           same as RKNN_QUERY_NATIVE_NC1HWC2_INPUT_ATTR. */
+	    RKNN_QUERY_NATIVE_OUTPUT_ATTR,                      /* query the attribute of native output tensor,
+	                                                           same as RKNN_QUERY_NATIVE_NC1HWC2_OUTPUT_ATTR. */
+
+	    RKNN_QUERY_NATIVE_NHWC_INPUT_ATTR,                  /* query the attribute of native input tensor. */
+	    RKNN_QUERY_NATIVE_NHWC_OUTPUT_ATTR,                 /* query the attribute of native output tensor. */
+
+	    RKNN_QUERY_DEVICE_MEM_INFO,                         /* query the attribute of rknn memory information. */
+
 	    RKNN_QUERY_CMD_MAX
 	};
 
@@ -0,0 +1,297 @@
+package com.neocoretechs.rknn4j.image;
+
+import static java.lang.foreign.ValueLayout.JAVA_BYTE;
+
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteOrder;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Vector API kernels for the post-processing decoders of {@link detect_result}.<p/>
+ * Only called when jdk.incubator.vector is present, see detect_result.VECTORIZE, the decoders
+ * retain their scalar loops as the fallback. scanGE, firstMax, argmaxClasses, suppressYOLO and suppressSSD give
+ * exactly the results of the scalar loops. dfl and decodeSSD agree with them within float tolerance, dfl summing
+ * with FMA in lane order rather than in bin order, decodeSSD taking the lanewise EXP rather than Math.exp, either
+ * of which may differ in the last bits.
+ * @author Jonathan Groff Copyright (C) NeoCoreTechs 2025
+ *
+ */
+final class DetectKernels {
+	private static final VectorSpecies<Byte> BYTES = ByteVector.SPECIES_PREFERRED;
+	private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+	private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED; // same lanes as FLOATS
+	private static final IntVector SUPPRESSED = IntVector.broadcast(INTS, -1);
+	// lane index 0..length-1, offset to give the bin of each lane
+	private static final FloatVector IOTA = FloatVector.zero(FLOATS).addIndex(1);
+
+	private DetectKernels() {}
+
+	/**
+	 * Scan a plane of INT8 values, such as a YOLOv5 objectness plane, for those at or above the threshold.
+	 * The surviving indexes are written in ascending order, the same order as a row by row scan.
+	 * @param input The quantized output layer
+	 * @param planeOffset Byte offset of the plane in input
+	 * @param len Number of values in the plane, grid_h * grid_w
+	 * @param thres_i8 The quantized threshold
+	 * @param cells Receives the index within the plane of each value >= thres_i8, at least len long
+	 * @return The number of surviving indexes in cells
+	 */
+	static int scanGE(MemorySegment input, long planeOffset, int len, byte thres_i8, int[] cells) {
+		int n = 0;
+		int i = 0;
+		int upper = BYTES.loopBound(len);
+		ByteVector thres = ByteVector.broadcast(BYTES, thres_i8);
+		for(; i < upper; i += BYTES.length()) {
+			VectorMask<Byte> pass = ByteVector.fromMemorySegment(BYTES, input, planeOffset + i, ByteOrder.nativeOrder())
+					.compare(VectorOperators.GE, thres);
+			if(pass.anyTrue()) {
+				long lanes = pass.toLong();
+				while(lanes != 0) {
+					cells[n++] = i + Long.numberOfTrailingZeros(lanes);
+					lanes &= lanes - 1;
+				}
+			}
+		}
+		for(; i < len; i++)
+			if(input.get(JAVA_BYTE, planeOffset + i) >= thres_i8)
+				cells[n++] = i;
+		return n;
+	}
+
+	/**
+	 * @param len Number of values
+	 * @return The number of values covered by whole byte vectors, the remainder is left to the caller
+	 */
+	static int byteLoopBound(int len) {
+		return BYTES.loopBound(len);
+	}
+
+	/**
+	 * First index of the greatest of n contiguous INT8 values, such as the class scores of a cell of an NHWC output,
+	 * the index a scan keeping only strictly greater values would end on. The max is reduced over whole vectors,
+	 * then the first lane equal to it located.
+	 * @param input The quantized output layer
+	 * @param offset Byte offset of the first value
+	 * @param n Number of values, at least 1
+	 * @return Index of the first greatest value, 0..n-1
+	 */
+	static int firstMax(MemorySegment input, long offset, int n) {
+		int upper = BYTES.loopBound(n);
+		byte max = Byte.MIN_VALUE;
+		int i = 0;
+		for(; i < upper; i += BYTES.length())
+			max = (byte)Math.max(max, ByteVector.fromMemorySegment(BYTES, input, offset + i, ByteOrder.nativeOrder())
+					.reduceLanes(VectorOperators.MAX));
+		for(; i < n; i++)
+			max = (byte)Math.max(max, input.get(JAVA_BYTE, offset + i));
+		ByteVector m = ByteVector.broadcast(BYTES, max);
+		for(i = 0; i < upper; i += BYTES.length()) {
+			VectorMask<Byte> eq = ByteVector.fromMemorySegment(BYTES, input, offset + i, ByteOrder.nativeOrder())
+					.compare(VectorOperators.EQ, m);
+			if(eq.anyTrue())
+				return i + eq.firstTrue();
+		}
+		for(; i < n; i++)
+			if(input.get(JAVA_BYTE, offset + i) == max)
+				return i;
+		return 0;
+	}
+
+	/**
+	 * YOLOv11 class argmax over whole vectors of grid cells, each lane a cell, walking the contiguous class planes
+	 * of the score tensor. A lane keeps the first class whose unsigned score exceeds both the threshold and its
+	 * running max, then survives if its max exceeds the threshold signed, as the scalar loop does. Blocks whose
+	 * score_sum lanes are all below the sum threshold are rejected before the class planes are read.
+	 * Cells from from + byteLoopBound(to - from) onward are left to the caller.
+	 * @param score_tensor Quantized class scores, nClass planes of grid_len
+	 * @param score_sum_tensor Quantized score sums, grid_len, or null
+	 * @param grid_len Cells per plane
+	 * @param from First cell
+	 * @param to Cell after the last
+	 * @param nClass Number of classes, at most 127
+	 * @param score_thres_i8 Quantized score threshold
+	 * @param score_sum_thres_i8 Quantized score sum threshold
+	 * @param init Initial running max, the quantized zero
+	 * @param cells Receives the surviving cells in ascending order
+	 * @param maxScores Receives the max score of each surviving cell
+	 * @param maxClasses Receives the class of each surviving cell
+	 * @return The number of surviving cells
+	 */
+	static int argmaxClasses(MemorySegment score_tensor, MemorySegment score_sum_tensor, int grid_len, int from, int to, int nClass,
+			byte score_thres_i8, byte score_sum_thres_i8, byte init, int[] cells, byte[] maxScores, int[] maxClasses) {
+		int n = 0;
+		int upper = from + BYTES.loopBound(to - from);
+		ByteVector thres = ByteVector.broadcast(BYTES, score_thres_i8);
+		ByteVector sumThres = ByteVector.broadcast(BYTES, score_sum_thres_i8);
+		ByteVector start = ByteVector.broadcast(BYTES, init);
+		ByteVector none = ByteVector.broadcast(BYTES, (byte)-1);
+		for(int offset = from; offset < upper; offset += BYTES.length()) {
+			VectorMask<Byte> keep = BYTES.maskAll(true);
+			if(score_sum_tensor != null) {
+				keep = ByteVector.fromMemorySegment(BYTES, score_sum_tensor, offset, ByteOrder.nativeOrder())
+						.compare(VectorOperators.GE, sumThres);
+				if(!keep.anyTrue())
+					continue;
+			}
+			ByteVector max = start;
+			ByteVector cls = none;
+			long plane = offset;
+			for(int c = 0; c < nClass; c++) {
+				ByteVector score = ByteVector.fromMemorySegment(BYTES, score_tensor, plane, ByteOrder.nativeOrder());
+				VectorMask<Byte> better = score.compare(VectorOperators.UNSIGNED_GT, thres).and(score.compare(VectorOperators.UNSIGNED_GT, max));
+				max = max.blend(score, better);
+				cls = cls.blend((byte)c, better);
+				plane += grid_len;
+			}
+			long lanes = keep.and(max.compare(VectorOperators.GT, thres)).toLong();
+			while(lanes != 0) {
+				int lane = Long.numberOfTrailingZeros(lanes);
+				cells[n] = offset + lane;
+				maxScores[n] = max.lane(lane);
+				maxClasses[n] = cls.lane(lane);
+				++n;
+				lanes &= lanes - 1;
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * YOLOv11 DFL softmax expectation of the 4 distances of a cell, sum of exp and sum of exp * bin taken in float lanes.
+ * The sums are fused multiply adds in lane order, which may differ from the scalar sums in the last bits.
+	 * @param exps exp of each bin, 4 runs of dfl_len
+	 * @param dfl_len bins per distance
+	 * @param box receives sum(exp * bin) / sum(exp) of each run
+	 */
+	static void dfl(float[] exps, int dfl_len, float[] box) {
+		int upper = FLOATS.loopBound(dfl_len);
+		for(int b = 0; b < 4; b++) {
+			int base = b * dfl_len;
+			FloatVector sum = FloatVector.zero(FLOATS);
+			FloatVector acc = FloatVector.zero(FLOATS);
+			int i = 0;
+			for(; i < upper; i += FLOATS.length()) {
+				FloatVector e = FloatVector.fromArray(FLOATS, exps, base + i);
+				sum = sum.add(e);
+				acc = e.fma(IOTA.add(i), acc);
+			}
+			float exp_sum = sum.reduceLanes(VectorOperators.ADD);
+			float acc_sum = acc.reduceLanes(VectorOperators.ADD);
+			for(; i < dfl_len; i++) {
+				exp_sum += exps[base + i];
+				acc_sum += exps[base + i] * i;
+			}
+			box[b] = acc_sum / exp_sum;
+		}
+	}
+
+	/**
+	 * YOLO NMS step, the IoU of the box at position i against the boxes at positions i+1..n-1 in float lanes, with the
+	 * +1 pixel areas of calculateOverlapYOLO, the same float operations in the same order. The positions whose IoU
+	 * exceeds threshold form the suppression mask and are set to -1 in order.
+	 * @param xmin xmin of each position
+	 * @param ymin ymin of each position
+	 * @param xmax xmax of each position
+	 * @param ymax ymax of each position
+	 * @param i The kept position
+	 * @param n Number of positions
+	 * @param threshold IoU threshold
+	 * @param order Candidate of each position, -1 if suppressed
+	 */
+	static void suppressYOLO(float[] xmin, float[] ymin, float[] xmax, float[] ymax, int i, int n, float threshold, int[] order) {
+		float xmin0 = xmin[i], ymin0 = ymin[i], xmax0 = xmax[i], ymax0 = ymax[i];
+		float area0 = (xmax0 - xmin0 + 1.0f) * (ymax0 - ymin0 + 1.0f);
+		int j = i + 1;
+		int upper = j + FLOATS.loopBound(n - j);
+		for(; j < upper; j += FLOATS.length()) {
+			FloatVector xmin1 = FloatVector.fromArray(FLOATS, xmin, j);
+			FloatVector ymin1 = FloatVector.fromArray(FLOATS, ymin, j);
+			FloatVector xmax1 = FloatVector.fromArray(FLOATS, xmax, j);
+			FloatVector ymax1 = FloatVector.fromArray(FLOATS, ymax, j);
+			FloatVector w = xmax1.min(xmax0).sub(xmin1.max(xmin0)).add(1.0f).max(0.0f);
+			FloatVector h = ymax1.min(ymax0).sub(ymin1.max(ymin0)).add(1.0f).max(0.0f);
+			FloatVector inter = w.mul(h);
+			FloatVector area1 = xmax1.sub(xmin1).add(1.0f).mul(ymax1.sub(ymin1).add(1.0f));
+			FloatVector u = FloatVector.broadcast(FLOATS, area0).add(area1).sub(inter);
+			VectorMask<Float> pass = iou(inter, u).compare(VectorOperators.GT, threshold);
+			if(pass.anyTrue())
+				SUPPRESSED.intoArray(order, j, pass.cast(INTS));
+		}
+		for(; j < n; j++) {
+			if(order[j] != -1 && detect_result.calculateOverlapYOLO(xmin0, ymin0, xmax0, ymax0, xmin[j], ymin[j], xmax[j], ymax[j]) > threshold)
+				order[j] = -1;
+		}
+	}
+	/**
+	 * InceptionSSD NMS step, as suppressYOLO with the areas of calculateOverlapSSD, suppressing an IoU at or above threshold.
+	 */
+	static void suppressSSD(float[] xmin, float[] ymin, float[] xmax, float[] ymax, int i, int n, float threshold, int[] order) {
+		float xmin0 = xmin[i], ymin0 = ymin[i], xmax0 = xmax[i], ymax0 = ymax[i];
+		float area0 = (xmax0 - xmin0) * (ymax0 - ymin0);
+		int j = i + 1;
+		int upper = j + FLOATS.loopBound(n - j);
+		for(; j < upper; j += FLOATS.length()) {
+			FloatVector xmin1 = FloatVector.fromArray(FLOATS, xmin, j);
+			FloatVector ymin1 = FloatVector.fromArray(FLOATS, ymin, j);
+			FloatVector xmax1 = FloatVector.fromArray(FLOATS, xmax, j);
+			FloatVector ymax1 = FloatVector.fromArray(FLOATS, ymax, j);
+			FloatVector w = xmax1.min(xmax0).sub(xmin1.max(xmin0)).max(0.0f);
+			FloatVector h = ymax1.min(ymax0).sub(ymin1.max(ymin0)).max(0.0f);
+			FloatVector inter = w.mul(h);
+			FloatVector area1 = xmax1.sub(xmin1).mul(ymax1.sub(ymin1));
+			FloatVector u = FloatVector.broadcast(FLOATS, area0).add(area1).sub(inter);
+			VectorMask<Float> pass = iou(inter, u).compare(VectorOperators.GE, threshold);
+			if(pass.anyTrue())
+				SUPPRESSED.intoArray(order, j, pass.cast(INTS));
+		}
+		for(; j < n; j++) {
+			if(order[j] != -1 && detect_result.calculateOverlapSSD(xmin0, ymin0, xmax0, ymax0, xmin[j], ymin[j], xmax[j], ymax[j]) >= threshold)
+				order[j] = -1;
+		}
+	}
+	/**
+	 * @return inter / u, 0 where u <= 0
+	 */
+	private static FloatVector iou(FloatVector inter, FloatVector u) {
+		return inter.div(u).blend(0.0f, u.compare(VectorOperators.LE, 0.0f));
+	}
+
+	/**
+	 * InceptionSSD center size decode of the gathered predictions and priors of n positions in float lanes.
+	 * The exp is the lanewise EXP, which may differ from Math.exp in the last bit.
+	 * @param b gathered predictions and priors, receives ymin, xmin, ymax, xmax
+	 * @param n number of positions
+	 */
+	static void decodeSSD(SsdBoxes b, int n) {
+		int p = 0;
+		int upper = FLOATS.loopBound(n);
+		for(; p < upper; p += FLOATS.length()) {
+			FloatVector ph = FloatVector.fromArray(FLOATS, b.ph, p);
+			FloatVector pw = FloatVector.fromArray(FLOATS, b.pw, p);
+			FloatVector ycenter = FloatVector.fromArray(FLOATS, b.ty, p).div(detect_result.Y_SCALE).mul(ph).add(FloatVector.fromArray(FLOATS, b.py, p));
+			FloatVector xcenter = FloatVector.fromArray(FLOATS, b.tx, p).div(detect_result.X_SCALE).mul(pw).add(FloatVector.fromArray(FLOATS, b.px, p));
+			FloatVector h = FloatVector.fromArray(FLOATS, b.th, p).div(detect_result.H_SCALE).lanewise(VectorOperators.EXP).mul(ph).div(2.0f);
+			FloatVector w = FloatVector.fromArray(FLOATS, b.tw, p).div(detect_result.W_SCALE).lanewise(VectorOperators.EXP).mul(pw).div(2.0f);
+			ycenter.sub(h).intoArray(b.ymin, p);
+			xcenter.sub(w).intoArray(b.xmin, p);
+			ycenter.add(h).intoArray(b.ymax, p);
+			xcenter.add(w).intoArray(b.xmax, p);
+		}
+		for(; p < n; p++) {
+			float ycenter = b.ty[p] / detect_result.Y_SCALE * b.ph[p] + b.py[p];
+			float xcenter = b.tx[p] / detect_result.X_SCALE * b.pw[p] + b.px[p];
+			float h       = (float)Math.exp(b.th[p] / detect_result.H_SCALE) * b.ph[p];
+			float w       = (float)Math.exp(b.tw[p] / detect_result.W_SCALE) * b.pw[p];
+			b.ymin[p] = ycenter - h / 2.0f;
+			b.xmin[p] = xcenter - w / 2.0f;
+			b.ymax[p] = ycenter + h / 2.0f;
+			b.xmax[p] = xcenter + w / 2.0f;
+		}
+	}
+}
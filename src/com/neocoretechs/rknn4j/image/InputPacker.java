@@ -0,0 +1,122 @@
+package com.neocoretechs.rknn4j.image;
+
+import static java.lang.foreign.ValueLayout.JAVA_BYTE;
+
+import java.lang.foreign.MemorySegment;
+
+import com.neocoretechs.rknn4j.rknn_tensor_attr;
+import com.neocoretechs.rknn4j.RKNN.rknn_tensor_qnt_type;
+import com.neocoretechs.rknn4j.RKNN.rknn_tensor_type;
+
+/**
+ * Packs RGB888 pixels straight into the native input layout of the NPU, as queried with RKNN_QUERY_NATIVE_INPUT_ATTR
+ * or RKNN_QUERY_NATIVE_NHWC_INPUT_ATTR, so the input can be set with pass_through and the runtime does no conversion
+ * of its own.<p/>
+ * Each pixel byte is placed by the {@link TensorLayout} of the native attributes, NHWC rows of w_stride cells,
+ * channels padded to the native C, or NC1HWC2 blocks of h_stride rows, and quantized by the zero point and scale of
+ * the native tensor, round(p / scale) + zp clamped to the type. A byte has 256 values, so the quantization is a
+ * table built once. The mean and std of the model are taken to be fused into its first layer, as rknn-toolkit2
+ * does when they are given at conversion, a pass through input being what that layer reads.<p/>
+ * Dense NHWC rows are written a row at a time, copied where the table is the identity, UINT8 into UINT8, or XORed
+ * with 0x80 where it is UINT8 into INT8 of zero point -128 and scale 1, with PackKernels.xorRun when the Vector API
+ * is present. Other layouts and quantizations go element by element through the table. The padding is not written
+ * by {@link #pack(byte[], MemorySegment)}, {@link #clear(MemorySegment)} sets it once to the quantized 0.<p/>
+ * The packed bytes of any native layout can be checked on the host against the table and layout alone, without an
+ * NPU, by attributes built for the case.
+ * @author Jonathan Groff Copyright (C) NeoCoreTechs 2025
+ *
+ */
+public final class InputPacker {
+	private static boolean DEBUG = false;
+	private final TensorLayout layout;
+	private final byte[] lut = new byte[256]; // quantized value of each pixel byte
+	private final byte mask; // XOR that equals the table, if run
+	private final boolean run; // table is a copy or an XOR, dense rows are written whole
+	private final int size; // bytes of the native tensor
+
+	private InputPacker(TensorLayout layout, rknn_tensor_attr nativeAttr) {
+		this.layout = layout;
+		this.size = Math.max(nativeAttr.getSize(), nativeAttr.getSize_with_stride());
+		int zp = 0;
+		float scale = 1.0f;
+		if(nativeAttr.getQnt_type() == rknn_tensor_qnt_type.RKNN_TENSOR_QNT_AFFINE_ASYMMETRIC) {
+			zp = nativeAttr.getZp();
+			scale = nativeAttr.getScale();
+		} else if(nativeAttr.getQnt_type() == rknn_tensor_qnt_type.RKNN_TENSOR_QNT_DFP) {
+			scale = (float)Math.pow(2, -nativeAttr.getFl());
+		}
+		int min = nativeAttr.getType() == rknn_tensor_type.RKNN_TENSOR_INT8 ? -128 : 0;
+		int max = nativeAttr.getType() == rknn_tensor_type.RKNN_TENSOR_INT8 ? 127 : 255;
+		for(int p = 0; p < 256; p++)
+			lut[p] = (byte)Math.min(Math.max(Math.round(p / scale) + zp, min), max);
+		boolean copy = true, flip = true;
+		for(int p = 0; p < 256; p++) {
+			copy &= lut[p] == (byte)p;
+			flip &= lut[p] == (byte)(p ^ 0x80);
+		}
+		this.run = copy || flip;
+		this.mask = flip ? (byte)0x80 : 0;
+		if(DEBUG)
+			System.out.println("Input packer "+layout+" zp="+zp+" scale="+scale+(copy ? " copy" : flip ? " xor" : " table"));
+	}
+	/**
+	 * @param inputAttr input tensor attributes, as queried with RKNN_QUERY_INPUT_ATTR
+	 * @param nativeAttr the same tensor as queried with RKNN_QUERY_NATIVE_INPUT_ATTR or RKNN_QUERY_NATIVE_NHWC_INPUT_ATTR
+	 * @return The packer
+	 * @throws RuntimeException if the native input is not UINT8 or INT8, or its layout is unsupported
+	 */
+	public static InputPacker of(rknn_tensor_attr inputAttr, rknn_tensor_attr nativeAttr) {
+		if(nativeAttr.getType() != rknn_tensor_type.RKNN_TENSOR_UINT8 && nativeAttr.getType() != rknn_tensor_type.RKNN_TENSOR_INT8)
+			throw new RuntimeException("Unsupported native input type "+nativeAttr.getType());
+		return new InputPacker(TensorLayout.of(inputAttr, nativeAttr), nativeAttr);
+	}
+	/**
+	 * @return Bytes of the native input tensor, size_with_stride if larger than size
+	 */
+	public int size() {
+		return size;
+	}
+	/**
+	 * Set the whole tensor to the quantized 0, the value the padding keeps, pack writing only the pixels.
+	 * Called once on the tensor memory or buffer, before the first pack.
+	 * @param dst The input tensor memory, at least {@link #size()} bytes
+	 */
+	public void clear(MemorySegment dst) {
+		dst.asSlice(0, size).fill(lut[0]);
+	}
+	/**
+	 * Pack the pixels into the native layout.
+	 * @param rgb RGB888 pixels, rows of width * channels bytes, as Instance.getRGB888
+	 * @param dst The input tensor memory, at least {@link #size()} bytes
+	 */
+	public void pack(byte[] rgb, MemorySegment dst) {
+		int channels = layout.channels;
+		int row = layout.w * channels;
+		if(run && layout.c2 == channels) {
+			for(int i = 0; i < layout.h; i++) {
+				long offset = layout.cell(i, 0);
+				if(mask == 0)
+					MemorySegment.copy(rgb, i * row, dst, JAVA_BYTE, offset, row);
+				else if(detect_result.VECTORIZE)
+					PackKernels.xorRun(rgb, i * row, dst, offset, row, mask);
+				else
+					for(int k = 0; k < row; k++)
+						dst.set(JAVA_BYTE, offset + k, (byte)(rgb[i * row + k] ^ mask));
+			}
+			return;
+		}
+		for(int i = 0; i < layout.h; i++) {
+			for(int j = 0; j < layout.w; j++) {
+				int p = i * row + j * channels;
+				long cell = layout.cell(i, j);
+				for(int c = 0; c < channels; c++)
+					dst.set(JAVA_BYTE, cell + layout.channel(c), lut[rgb[p + c] & 0xFF]);
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "InputPacker "+layout+(run ? (mask == 0 ? " copy" : " xor") : " table");
+	}
+}
@@ -5,11 +5,14 @@ import java.awt.Font;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.Image;
-import java.awt.Point;
 import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
 import java.awt.image.DataBufferByte;
 import java.awt.image.DataBufferInt;
-import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
@@ -50,16 +53,7 @@ public class Instance {
 		this.width = image.getWidth();
 		this.height = image.getHeight();
 		this.channels = computeChannels(image);
-		ByteBuffer bb = ByteBuffer.allocate(this.width*this.height*3);
-		for (int row = 0; row < this.height; ++row) {
-			for (int col = 0; col < this.width; ++col) {
-				Color c = new Color(this.image.getRGB(col, row));
-				bb.put((byte)c.getRed());
-				bb.put((byte)c.getGreen());
-				bb.put((byte)c.getBlue());
-			}
-		}
-		this.imageByteArray = bb.array();
+		this.imageByteArray = toRGB888(this.image);
 	}
 	
 	/**
@@ -105,20 +99,9 @@ public class Instance {
 			throw new RuntimeException("Image resize error");
 	
 		this.image = new BufferedImage(fixWidth, fixHeight, BufferedImage.TYPE_INT_RGB);
-	    final ByteBuffer bb = ByteBuffer.wrap(this.imageByteArray);//.order(ByteOrder.LITTLE_ENDIAN);
-	    final int[] ret = new int[this.imageByteArray.length / 3];
-	    int iret = 0;
-		for (int row = 0; row < fixHeight; ++row) {
-			for (int col = 0; col < fixWidth; ++col) {
-				int r= Byte.toUnsignedInt(bb.get());
-				int g= Byte.toUnsignedInt(bb.get());
-				int b= Byte.toUnsignedInt(bb.get());
-				//System.out.println("row="+row+" col="+col+" r="+r+" g="+g+" b="+b);
-				Color c = new Color(r, g, b);
-				ret[iret++] = c.getRGB();
-			}
-		}
-	    this.image.setData(Raster.createRaster(this.image.getSampleModel(), new DataBufferInt(ret, ret.length), new Point() ) );
+		// the pixels straight into the raster of the new image, contiguous rows of 0x00RRGGBB
+		int[] pixels = ((DataBufferInt)this.image.getRaster().getDataBuffer()).getData();
+		packRGB(this.imageByteArray, 0, pixels, 0, fixWidth * fixHeight);
 	}
 	/** 
 	 * Constructs the Instance from a BufferedImage after resizing
@@ -142,16 +125,7 @@ public class Instance {
 		}
 		g.dispose();
 		this.channels = computeChannels(this.image);
-		ByteBuffer bb = ByteBuffer.allocate(this.width*this.height*3);
-		for (int row = 0; row < this.height; ++row) {
-			for (int col = 0; col < this.width; ++col) {
-				Color c = new Color(this.image.getRGB(col, row));
-				bb.put((byte)c.getRed());
-				bb.put((byte)c.getGreen());
-				bb.put((byte)c.getBlue());
-			}
-		}
-		this.imageByteArray = bb.array();
+		this.imageByteArray = toRGB888(this.image);
 	}
 	/**
 	 * Return converted RGB array bytes from previous image
@@ -318,11 +292,20 @@ public class Instance {
 	}
 	
 	/**
-	 * Fill the data array with grayscale adjusted image data from sourceImage
+	 * RGB888 bytes of sourceImage, TYPE_INT_RGB and TYPE_INT_ARGB read straight from the raster as by
+	 * {@link #toRGB888(BufferedImage)}, the gray types replicated to the three channels. TYPE_3BYTE_BGR gives the
+	 * bytes in B, G, R order, as it always has, copied a row at a time from the raster. For RGB888 bytes of any
+	 * type use toRGB888.
+	 * @throws IllegalArgumentException for the types not listed
 	 */
 	public static byte[] readRGB(BufferedImage sourceImage) {
-		ByteBuffer bb = ByteBuffer.allocate(sourceImage.getWidth()*sourceImage.getHeight()*3);
+		byte[] bytes = new byte[sourceImage.getWidth()*sourceImage.getHeight()*3];
 		int type = sourceImage.getType();
+		if((type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB) && readRaster(sourceImage, bytes))
+			return bytes;
+		if(type == BufferedImage.TYPE_3BYTE_BGR && copyRaster(sourceImage, bytes))
+			return bytes;
+		ByteBuffer bb = ByteBuffer.wrap(bytes);
 		if (type == BufferedImage.TYPE_CUSTOM || type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB) {
 			int[] pixels = (int[]) sourceImage.getData().getDataElements(0, 0, sourceImage.getWidth(), sourceImage.getHeight(), null);
 			for (int i = 0; i < pixels.length; i++) {
@@ -368,6 +351,151 @@ public class Instance {
 		return bb.array();
 	}
 
+	/**
+	 * RGB888 bytes of an image, the red, green and blue of BufferedImage.getRGB for each pixel, left to right,
+	 * top to bottom, converted in bulk rather than a pixel and a Color at a time. TYPE_INT_RGB, TYPE_INT_ARGB,
+	 * TYPE_INT_BGR, TYPE_3BYTE_BGR and TYPE_4BYTE_ABGR images are read from their DataBufferInt or DataBufferByte,
+	 * whose samples getRGB returns unchanged, any other from one call to getRGB for the whole image, so the bytes
+	 * are those of getRGB whatever the type.
+	 * @param sourceImage The image
+	 * @return width * height * 3 bytes
+	 */
+	public static byte[] toRGB888(BufferedImage sourceImage) {
+		int w = sourceImage.getWidth();
+		int h = sourceImage.getHeight();
+		byte[] rgb = new byte[w * h * 3];
+		if(!readRaster(sourceImage, rgb)) {
+			int[] pixels = sourceImage.getRGB(0, 0, w, h, null, 0, w);
+			unpackRGB(pixels, 0, rgb, 0, pixels.length, false);
+		}
+		return rgb;
+	}
+	/**
+	 * Copy the B, G, R bytes of a TYPE_3BYTE_BGR image from its DataBufferByte, a row at a time.
+	 * @return false if the raster is not the standard layout of the type, the caller reading it otherwise
+	 */
+	private static boolean copyRaster(BufferedImage sourceImage, byte[] bgr) {
+		WritableRaster raster = sourceImage.getRaster();
+		SampleModel sm = raster.getSampleModel();
+		DataBuffer db = raster.getDataBuffer();
+		if(db.getNumBanks() != 1 || !(sm instanceof ComponentSampleModel) || !(db instanceof DataBufferByte))
+			return false;
+		ComponentSampleModel cs = (ComponentSampleModel)sm;
+		int[] bands = cs.getBandOffsets();
+		if(cs.getPixelStride() != 3 || bands[0] != 2 || bands[1] != 1 || bands[2] != 0)
+			return false;
+		int w = sourceImage.getWidth();
+		int h = sourceImage.getHeight();
+		byte[] data = ((DataBufferByte)db).getData();
+		int stride = cs.getScanlineStride();
+		int base = db.getOffset() - raster.getSampleModelTranslateY() * stride - raster.getSampleModelTranslateX() * 3;
+		for(int row = 0; row < h; row++)
+			System.arraycopy(data, base + row * stride, bgr, row * w * 3, w * 3);
+		return true;
+	}
+	/**
+	 * Read the RGB888 bytes of an image of a standard type straight from the data buffer of its raster,
+	 * row by row through the strides of its sample model.
+	 * @param sourceImage The image
+	 * @param rgb receives width * height * 3 bytes
+	 * @return false if the image is not one of the types, or its raster not laid out as they are, rgb untouched
+	 */
+	private static boolean readRaster(BufferedImage sourceImage, byte[] rgb) {
+		WritableRaster raster = sourceImage.getRaster();
+		SampleModel sm = raster.getSampleModel();
+		DataBuffer db = raster.getDataBuffer();
+		if(db.getNumBanks() != 1)
+			return false;
+		int w = sourceImage.getWidth();
+		int h = sourceImage.getHeight();
+		int x0 = -raster.getSampleModelTranslateX();
+		int y0 = -raster.getSampleModelTranslateY();
+		int type = sourceImage.getType();
+		switch(type) {
+			case BufferedImage.TYPE_INT_RGB:
+			case BufferedImage.TYPE_INT_ARGB:
+			case BufferedImage.TYPE_INT_BGR: {
+				if(!(sm instanceof SinglePixelPackedSampleModel) || !(db instanceof DataBufferInt))
+					return false;
+				SinglePixelPackedSampleModel sp = (SinglePixelPackedSampleModel)sm;
+				int[] data = ((DataBufferInt)db).getData();
+				int stride = sp.getScanlineStride();
+				int base = db.getOffset() + sp.getOffset(x0, y0);
+				for(int row = 0; row < h; row++)
+					unpackRGB(data, base + row * stride, rgb, row * w * 3, w, type == BufferedImage.TYPE_INT_BGR);
+				return true;
+			}
+			case BufferedImage.TYPE_3BYTE_BGR:
+			case BufferedImage.TYPE_4BYTE_ABGR: {
+				if(!(sm instanceof ComponentSampleModel) || !(db instanceof DataBufferByte))
+					return false;
+				ComponentSampleModel cs = (ComponentSampleModel)sm;
+				int[] bands = cs.getBandOffsets();
+				int ps = cs.getPixelStride();
+				// R, G, B at bytes 2, 1, 0 of a BGR pixel, 3, 2, 1 of an ABGR one
+				int r = ps - 1;
+				if(ps != (type == BufferedImage.TYPE_3BYTE_BGR ? 3 : 4) || bands[0] != r || bands[1] != r - 1 || bands[2] != r - 2)
+					return false;
+				byte[] data = ((DataBufferByte)db).getData();
+				int stride = cs.getScanlineStride();
+				int base = db.getOffset() + y0 * stride + x0 * ps;
+				for(int row = 0; row < h; row++) {
+					int src = base + row * stride;
+					int dst = row * w * 3;
+					int done = 0;
+					if(detect_result.VECTORIZE)
+						done = ps == 3 ? PackKernels.bgrToRgb(data, src, rgb, dst, w) : PackKernels.abgrToRgb(data, src, rgb, dst, w);
+					for(int col = done; col < w; col++) {
+						int p = src + col * ps;
+						rgb[dst + col * 3] = data[p + r];
+						rgb[dst + col * 3 + 1] = data[p + r - 1];
+						rgb[dst + col * 3 + 2] = data[p + r - 2];
+					}
+				}
+				return true;
+			}
+			default:
+				return false;
+		}
+	}
+	/**
+	 * Unpack int pixels to RGB888.
+	 * @param pixels 0xAARRGGBB, or 0xAABBGGRR if bgr
+	 * @param src index of the first pixel
+	 * @param rgb RGB888 bytes
+	 * @param dst index of the first byte
+	 * @param n number of pixels
+	 * @param bgr true for TYPE_INT_BGR pixels
+	 */
+	private static void unpackRGB(int[] pixels, int src, byte[] rgb, int dst, int n, boolean bgr) {
+		int done = 0;
+		if(detect_result.VECTORIZE)
+			done = bgr ? PackKernels.xbgrToRgb(pixels, src, rgb, dst, n) : PackKernels.xrgbToRgb(pixels, src, rgb, dst, n);
+		for(int i = done; i < n; i++) {
+			int p = pixels[src + i];
+			rgb[dst + i * 3] = (byte)(bgr ? p : p >> 16);
+			rgb[dst + i * 3 + 1] = (byte)(p >> 8);
+			rgb[dst + i * 3 + 2] = (byte)(bgr ? p >> 16 : p);
+		}
+	}
+	/**
+	 * Pack RGB888 to TYPE_INT_RGB pixels, 0x00RRGGBB.
+	 * @param rgb RGB888 bytes
+	 * @param src index of the first byte
+	 * @param pixels receives the pixels
+	 * @param dst index of the first pixel
+	 * @param n number of pixels
+	 */
+	static void packRGB(byte[] rgb, int src, int[] pixels, int dst, int n) {
+		int done = 0;
+		if(detect_result.VECTORIZE)
+			done = PackKernels.rgbToXrgb(rgb, src, pixels, dst, n);
+		for(int i = done; i < n; i++) {
+			int p = src + i * 3;
+			pixels[dst + i] = (rgb[p] & 0xff) << 16 | (rgb[p + 1] & 0xff) << 8 | (rgb[p + 2] & 0xff);
+		}
+	}
+
 	public static BufferedImage readBufferedImage(String fileName) {
 		File fi = new File(fileName);
 		BufferedImage img = null;
@@ -0,0 +1,198 @@
+package com.neocoretechs.rknn4j.image;
+
+import static java.lang.foreign.ValueLayout.JAVA_BYTE;
+
+import java.lang.foreign.MemorySegment;
+
+/**
+ * Decoders of quantized outputs left in the native NHWC or NC1HWC2 layout of the NPU, bound as tensor memory with
+ * their native attributes, so the runtime skips the conversion to NCHW.<p/>
+ * Each reads its tensors through the {@link TensorLayout} of the plan and decodes as the planar decoders of
+ * {@link detect_result} do, cell by cell in row order, so the candidates, and the detections, are the same as those
+ * of the NCHW outputs. Where the planar decoders stride a plane per class, the classes of a cell are adjacent here,
+ * in NHWC all of them, in NC1HWC2 those of a block, and the YOLOv5 class argmax of a contiguous run goes through
+ * DetectKernels.firstMax when the Vector API is present.
+ * @author Jonathan Groff Copyright (C) NeoCoreTechs 2025
+ *
+ */
+final class NativeDecode {
+	private static boolean DEBUG = false;
+
+	private NativeDecode() {}
+	/**
+	 * YOLOv5 decode of the cells from..to of anchor a of a branch.
+	 * @param plan plan of the model, with native layouts
+	 * @param branch the branch
+	 * @param a the anchor
+	 * @param input output tensor of the branch
+	 * @param candidates receives the candidates
+	 * @param from first cell, at the start of a row
+	 * @param to cell after the last, at the end of a row
+	 * @return Count of the candidates decoded
+	 */
+	static int yolov5(PostProcessPlan plan, int branch, int a, MemorySegment input, detect_candidates candidates, int from, int to) {
+		TensorLayout layout = plan.nativeLayouts[branch];
+		QuantTable table = plan.tables[branch];
+		int[] anchor = plan.anchors[branch];
+		int grid_w = plan.grid_w[branch];
+		int stride = plan.stride[branch];
+		byte thres_i8 = plan.thres_i8[branch];
+		int nClass = plan.numClasses;
+		int base = plan.prop_box_size * a;
+		long x = layout.channel(base);
+		long y = layout.channel(base + 1);
+		long w = layout.channel(base + 2);
+		long h = layout.channel(base + 3);
+		long conf = layout.channel(base + 4);
+		long cls = layout.channel(base + 5);
+		boolean contiguous = detect_result.VECTORIZE && layout.contiguous(base + 5, nClass);
+		int validCount = 0;
+		for (int i = from / grid_w; i < to / grid_w; i++) {
+			for (int j = 0; j < grid_w; j++) {
+				long cell = layout.cell(i, j);
+				byte box_confidence = input.get(JAVA_BYTE, cell + conf);
+				if (box_confidence < thres_i8)
+					continue;
+				float   box_x  = (float) (table.sigmoid(input.get(JAVA_BYTE, cell + x)) * 2.0 - 0.5);
+				float   box_y  = (float) (table.sigmoid(input.get(JAVA_BYTE, cell + y)) * 2.0 - 0.5);
+				float   box_w  = (float) (table.sigmoid(input.get(JAVA_BYTE, cell + w)) * 2.0);
+				float   box_h  = (float) (table.sigmoid(input.get(JAVA_BYTE, cell + h)) * 2.0);
+				box_x          = (box_x + j) * (float)stride;
+				box_y          = (box_y + i) * (float)stride;
+				box_w          = box_w * box_w * (float)anchor[a * 2];
+				box_h          = box_h * box_h * (float)anchor[a * 2 + 1];
+				box_x -= (box_w / 2.0f);
+				box_y -= (box_h / 2.0f);
+				int maxClassId;
+				byte maxClassProbs;
+				if (contiguous) {
+					maxClassId = DetectKernels.firstMax(input, cell + cls, nClass);
+					maxClassProbs = input.get(JAVA_BYTE, cell + cls + maxClassId);
+				} else {
+					maxClassId = 0;
+					maxClassProbs = input.get(JAVA_BYTE, cell + cls);
+					for (int k = 1; k < nClass; k++) {
+						byte prob = input.get(JAVA_BYTE, cell + layout.channel(base + 5 + k));
+						if (prob > maxClassProbs) {
+							maxClassId    = k;
+							maxClassProbs = prob;
+						}
+					}
+				}
+				if (maxClassProbs > thres_i8) {
+					float fProb = (float)table.sigmoid(maxClassProbs);
+					float boxConf = (float)table.sigmoid(box_confidence);
+					candidates.add(box_x, box_y, box_w, box_h, fProb*boxConf, maxClassId);
+					validCount++;
+				}
+			}
+		}
+		if(DEBUG)
+			System.out.printf("Native YOLOv5 branch %d anchor %d %s valid=%d%n", branch, a, layout, validCount);
+		return validCount;
+	}
+	/**
+	 * YOLOv11 decode of the cells from..to of a branch, the class argmax and DFL reading the channels of a cell.
+	 * @param plan plan of the model, with native layouts
+	 * @param branch the branch
+	 * @param bufs output tensors
+	 * @param candidates receives the candidates
+	 * @param from first cell, at the start of a row
+	 * @param to cell after the last, at the end of a row
+	 * @return Count of the candidates decoded
+	 */
+	static int yolov11(PostProcessPlan plan, int branch, MemorySegment[] bufs, detect_candidates candidates, int from, int to) {
+		int grid_w = plan.grid_w[branch];
+		int stride = plan.stride[branch];
+		int dfl_len = plan.dfl_len;
+		int nClass = plan.numClasses;
+		int box_idx = branch * plan.output_per_branch;
+		MemorySegment input = bufs[box_idx];
+		TensorLayout box_layout = plan.nativeLayouts[box_idx];
+		QuantTable box_table = plan.tables[box_idx];
+		MemorySegment score_tensor = bufs[box_idx + 1];
+		TensorLayout score_layout = plan.nativeLayouts[box_idx + 1];
+		QuantTable score_table = plan.tables[box_idx + 1];
+		MemorySegment score_sum_tensor = plan.output_per_branch == 3 ? bufs[box_idx + 2] : null;
+		TensorLayout sum_layout = plan.output_per_branch == 3 ? plan.nativeLayouts[box_idx + 2] : null;
+		byte score_thres_i8 = plan.thres_i8[branch];
+		byte score_sum_thres_i8 = plan.sum_thres_i8[branch];
+		byte init = (byte) -score_table.zp;
+		float[] box = candidates.dflBox();
+		float[] exps = candidates.dflExps(dfl_len * 4);
+		int validCount = 0;
+		for (int i = from / grid_w; i < to / grid_w; i++) {
+			for (int j = 0; j < grid_w; j++) {
+				if ((score_sum_tensor != null) &&
+					(score_sum_tensor.get(JAVA_BYTE, sum_layout.at(0, i, j)) < score_sum_thres_i8)) {
+					continue;
+				}
+				long cell = score_layout.cell(i, j);
+				int max_class_id = -1;
+				byte max_score = init;
+				for (int c = 0; c < nClass; c++) {
+					byte score = score_tensor.get(JAVA_BYTE, cell + score_layout.channel(c));
+					if (((score & 0xFF) > (score_thres_i8 & 0xFF)) &&
+						((score & 0xFF) > (max_score & 0xFF))) {
+						max_score = score;
+						max_class_id = c;
+					}
+				}
+				if (max_score <= score_thres_i8)
+					continue;
+				// DFL, the exp of each bin looked up by its raw byte
+				long box_cell = box_layout.cell(i, j);
+				for (int k = 0; k < dfl_len * 4; k++)
+					exps[k] = box_table.exp(input.get(JAVA_BYTE, box_cell + box_layout.channel(k)));
+				detect_result.compute_dfl_exp(exps, dfl_len, box);
+				float x1, y1, x2, y2;
+				x1 = (-box[0] + (float)j + 0.5f) * (float)stride;
+				y1 = (-box[1] + (float)i + 0.5f) * (float)stride;
+				x2 = (box[2] + (float)j + 0.5f) * (float)stride;
+				y2 = (box[3] + (float)i + 0.5f) * (float)stride;
+				candidates.add(x1, y1, x2 - x1, y2 - y1, score_table.deqnt(max_score), max_class_id);
+				validCount++;
+			}
+		}
+		if(DEBUG)
+			System.out.printf("Native YOLOv11 branch %d %s valid=%d%n", branch, score_layout, validCount);
+		return validCount;
+	}
+	/**
+	 * InceptionSSD class filter, as detect_result.filterValidResult of the quantized classes, each class of a prior
+	 * read at its place in the native layout.
+	 * @param outputClasses quantized output classes
+	 * @param layout native layout of the output classes
+	 * @param table dequant and sigmoid table of the output classes
+	 * @param output receives the prior and class of each result
+	 * @param numResults number of priors
+	 * @param numClasses number of classes, the catch-all class 0 included
+	 * @param props receives the score of each result
+	 * @param min_score quantized minimum score, see QuantTable.atLeast
+	 * @return number of results
+	 */
+	static int filterSSD(MemorySegment outputClasses, TensorLayout layout, QuantTable table, int[][] output, int numResults,
+			int numClasses, float[] props, int min_score) {
+		int validCount = 0;
+		for (int i = 0; i < numResults; i++) {
+			long row = (long)i * numClasses;
+			int topClass = Integer.MIN_VALUE;
+			int topClassScoreIndex = -1;
+			// Skip the first catch-all class.
+			for (int j = 1; j < numClasses; j++) {
+				byte q = outputClasses.get(JAVA_BYTE, layout.at(row + j));
+				if (q > topClass) {
+					topClassScoreIndex = j;
+					topClass           = q;
+				}
+			}
+			if (topClass >= min_score) {
+				output[0][validCount] = i;
+				output[1][validCount] = topClassScoreIndex;
+				props[validCount]     = (float) table.sigmoid((byte)topClass);
+				++validCount;
+			}
+		}
+		return validCount;
+	}
+}
@@ -0,0 +1,321 @@
+package com.neocoretechs.rknn4j.image;
+
+import java.util.Arrays;
+
+/**
+ * Non-maximal suppression with the candidates partitioned by class once, rather than a full pass over all candidates
+ * for each class id.<p/>
+ * Positions are those of the score ordered array, position i holding candidate order[i], with -1 marking a suppressed
+ * position. As nmsYOLO does, the bucket of position i is classId[i], buckets are taken in ascending class order, the
+ * positions of a bucket in ascending order, and a surviving position suppresses any later position of any class whose
+ * overlap exceeds the threshold, so the result is identical to calling nmsYOLO for each class. For InceptionSSD all
+ * positions fall in one bucket, as nmsSSD.<p/>
+ * From GRID_MIN candidates, GRID_MIN_VECTOR with the Vector API present, the boxes are also binned in a uniform grid,
+ * and a position is tested only against the positions sharing a cell with it. Below that a position is tested against
+ * all later positions, several at once in float lanes by DetectKernels when the Vector API is present, with the same
+ * result as the scalar overlap. Boxes that could exceed a positive threshold always share a cell, so the result
+ * is unchanged, and the plain scan is used whenever that does not hold, a threshold at or below zero or a box
+ * that is not finite or inverted.<p/>
+ * With a maximum number of detections the bucket heads are merged, the positions of all buckets taken in ascending
+ * order, which is score order, so suppression can stop once that many positions survive, the remaining positions
+ * being suppressed. The result is the first maxDetections survivors without a limit. In bucket order a position acts
+ * if it survived the positions before it of its own or a lower bucket, positions of a higher bucket only suppressing
+ * it after it has acted, so taken in score order a position that suppresses one of a lower bucket leaves it able
+ * to act. Whether a position survives is known once it is reached, every position able to suppress it coming before it.<p/>
+ * One instance of the scratch arrays is kept per thread, see {@link #get()}.
+ * @author Jonathan Groff Copyright (C) NeoCoreTechs 2025
+ *
+ */
+final class NmsBuckets {
+	private static final ThreadLocal<NmsBuckets> perThread = ThreadLocal.withInitial(NmsBuckets::new);
+	static int GRID_MIN = 64; // candidates from which the grid is used
+	static int GRID_MIN_VECTOR = 512; // the same when the later positions are scanned in vector lanes
+	private static final int GRID_MAX = 16; // cells per side
+	// box of each position
+	private float[] xmin = new float[0];
+	private float[] ymin = new float[0];
+	private float[] xmax = new float[0];
+	private float[] ymax = new float[0];
+	// positions grouped by bucket, bucket b is bucketPos[bucketStart[b]..bucketStart[b+1])
+	private int[] bucketStart = new int[2];
+	private int[] bucketPos = new int[0];
+	// positions grouped by grid cell, cell c is cellPos[cellStart[c]..cellStart[c+1])
+	private int[] cellStart = new int[0];
+	private int[] cellFill = new int[0];
+	private int[] cellPos = new int[0];
+	private int[] seen = new int[0];
+	private boolean[] silent = new boolean[0]; // position suppressed before its bucket acts, with a limit
+	private int grid;
+	private float gridX, gridY, cellW, cellH;
+
+	private NmsBuckets() {}
+	/**
+	 * @return The scratch of the calling thread
+	 */
+	static NmsBuckets get() {
+		return perThread.get();
+	}
+	/**
+	 * YOLO suppression of all classes, the same as nmsYOLO called for each class id in ascending order.
+	 * @param validCount Number of positions
+	 * @param candidates Boxes and class ids
+	 * @param order Candidate of each position in descending score order, suppressed positions set to -1
+	 * @param threshold IoU above which a later position is suppressed, see calculateOverlapYOLO
+	 * @param maxDetections Maximum positions kept, in score order, 0 for no limit
+	 */
+	void yolo(int validCount, detect_candidates candidates, int[] order, float threshold, int maxDetections) {
+		ensure(validCount);
+		for (int p = 0; p < validCount; p++) {
+			int n = order[p];
+			if (n == -1)
+				continue;
+			xmin[p] = candidates.x[n];
+			ymin[p] = candidates.y[n];
+			xmax[p] = candidates.x[n] + candidates.w[n];
+			ymax[p] = candidates.y[n] + candidates.h[n];
+		}
+		if (maxDetections > 0)
+			suppressLimited(validCount, candidates.classId, order, threshold, true, maxDetections);
+		else
+			suppress(validCount, bucket(validCount, candidates.classId), order, threshold, true);
+	}
+	/**
+	 * InceptionSSD suppression, all positions in one bucket in score order.
+	 * @param validCount Number of positions
+	 * @param boxes Decoded box of each position
+	 * @param output output[0] prior of each position in descending score order, suppressed positions set to -1
+	 * @param threshold IoU at or above which a later position is suppressed, see calculateOverlapSSD
+	 * @param maxDetections Maximum positions kept, 0 for no limit
+	 */
+	void ssd(int validCount, SsdBoxes boxes, int[][] output, float threshold, int maxDetections) {
+		ensure(validCount);
+		System.arraycopy(boxes.xmin, 0, xmin, 0, validCount);
+		System.arraycopy(boxes.ymin, 0, ymin, 0, validCount);
+		System.arraycopy(boxes.xmax, 0, xmax, 0, validCount);
+		System.arraycopy(boxes.ymax, 0, ymax, 0, validCount);
+		if (maxDetections > 0)
+			suppressLimited(validCount, null, output[0], threshold, false, maxDetections);
+		else
+			suppress(validCount, single(validCount), output[0], threshold, false);
+	}
+
+	private void ensure(int n) {
+		if (xmin.length < n) {
+			xmin = new float[n];
+			ymin = new float[n];
+			xmax = new float[n];
+			ymax = new float[n];
+			bucketPos = new int[n];
+			seen = new int[n];
+			silent = new boolean[n];
+		}
+	}
+	/**
+	 * All positions in one bucket in score order.
+	 * @return 1
+	 */
+	private int single(int n) {
+		for (int p = 0; p < n; p++)
+			bucketPos[p] = p;
+		bucketStart[0] = 0;
+		bucketStart[1] = n;
+		return 1;
+	}
+	/**
+	 * Counting sort of the positions by the class id at each position, ascending positions within a class.
+	 * @return The number of buckets, one per class id from the lowest to the highest present
+	 */
+	private int bucket(int n, int[] classId) {
+		if (n == 0)
+			return 0;
+		int lo = Integer.MAX_VALUE;
+		int hi = Integer.MIN_VALUE;
+		for (int p = 0; p < n; p++) {
+			lo = Math.min(lo, classId[p]);
+			hi = Math.max(hi, classId[p]);
+		}
+		int nBuckets = hi - lo + 1;
+		if (bucketStart.length < nBuckets + 1)
+			bucketStart = new int[nBuckets + 1];
+		Arrays.fill(bucketStart, 0, nBuckets + 1, 0);
+		for (int p = 0; p < n; p++)
+			++bucketStart[classId[p] - lo + 1];
+		for (int b = 0; b < nBuckets; b++)
+			bucketStart[b + 1] += bucketStart[b];
+		// place from the end of each bucket backward so the starts are left intact
+		for (int p = n - 1; p >= 0; p--)
+			bucketPos[--bucketStart[classId[p] - lo + 1]] = p;
+		// bucketStart[b+1] now holds the start of bucket b, shift down
+		System.arraycopy(bucketStart, 1, bucketStart, 0, nBuckets);
+		bucketStart[nBuckets] = n;
+		return nBuckets;
+	}
+
+	private boolean useGrid(int n, int[] order, float threshold, boolean yolo) {
+		boolean useGrid = n >= (detect_result.VECTORIZE ? GRID_MIN_VECTOR : GRID_MIN) && (yolo ? threshold >= 0.0f : threshold > 0.0f) && buildGrid(n, order, yolo ? 1.0f : 0.0f);
+		if (useGrid)
+			Arrays.fill(seen, 0, n, 0);
+		return useGrid;
+	}
+
+	private void suppress(int n, int nBuckets, int[] order, float threshold, boolean yolo) {
+		boolean useGrid = useGrid(n, order, threshold, yolo);
+		for (int b = 0; b < nBuckets; b++) {
+			for (int k = bucketStart[b]; k < bucketStart[b + 1]; k++) {
+				int i = bucketPos[k];
+				if (order[i] == -1)
+					continue;
+				if (useGrid) {
+					suppressNear(i, order, threshold, yolo, false, null);
+				} else if (detect_result.VECTORIZE) {
+					if (yolo)
+						DetectKernels.suppressYOLO(xmin, ymin, xmax, ymax, i, n, threshold, order);
+					else
+						DetectKernels.suppressSSD(xmin, ymin, xmax, ymax, i, n, threshold, order);
+				} else {
+					for (int j = i + 1; j < n; j++) {
+						if (order[j] != -1 && overlaps(i, j, threshold, yolo))
+							order[j] = -1;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Suppression stopping at maxDetections survivors, the bucket heads merged so the positions are taken in score
+	 * order. A position suppressed by one of its own or a lower bucket is silent and no longer acts, one suppressed
+	 * by a higher bucket still acts, as it would have before that bucket in bucket order.
+	 * @param classId bucket of each position, null for one bucket
+	 */
+	private void suppressLimited(int n, int[] classId, int[] order, float threshold, boolean yolo, int maxDetections) {
+		boolean useGrid = useGrid(n, order, threshold, yolo);
+		for (int p = 0; p < n; p++)
+			silent[p] = order[p] == -1;
+		int kept = 0;
+		for (int i = 0; i < n; i++) {
+			if (order[i] != -1 && ++kept == maxDetections) {
+				// the last kept, suppress the rest
+				for (int j = i + 1; j < n; j++)
+					order[j] = -1;
+				return;
+			}
+			if (silent[i])
+				continue;
+			if (useGrid) {
+				suppressNear(i, order, threshold, yolo, true, classId);
+			} else {
+				for (int j = i + 1; j < n; j++)
+					silence(i, j, classId, order, threshold, yolo);
+			}
+		}
+	}
+	/**
+	 * Suppress position j if position i overlaps it, silencing it if of the same or a higher bucket.
+	 */
+	private void silence(int i, int j, int[] classId, int[] order, float threshold, boolean yolo) {
+		if (!silent[j] && overlaps(i, j, threshold, yolo)) {
+			order[j] = -1;
+			if (classId == null || classId[j] >= classId[i])
+				silent[j] = true;
+		}
+	}
+
+	private boolean overlaps(int i, int j, float threshold, boolean yolo) {
+		if (yolo)
+			return detect_result.calculateOverlapYOLO(xmin[i], ymin[i], xmax[i], ymax[i], xmin[j], ymin[j], xmax[j], ymax[j]) > threshold;
+		return detect_result.calculateOverlapSSD(xmin[i], ymin[i], xmax[i], ymax[i], xmin[j], ymin[j], xmax[j], ymax[j]) >= threshold;
+	}
+	/**
+	 * Test position i against the later positions sharing a grid cell with it.
+	 * @param limited silence the positions suppressed, see suppressLimited
+	 * @param classId bucket of each position when limited, null for one bucket
+	 */
+	private void suppressNear(int i, int[] order, float threshold, boolean yolo, boolean limited, int[] classId) {
+		int cx0 = cellX(xmin[i]);
+		int cx1 = cellX(xmax[i]);
+		int cy0 = cellY(ymin[i]);
+		int cy1 = cellY(ymax[i]);
+		int stamp = i + 1;
+		for (int cy = cy0; cy <= cy1; cy++) {
+			for (int cx = cx0; cx <= cx1; cx++) {
+				int c = cy * grid + cx;
+				for (int e = cellStart[c]; e < cellStart[c + 1]; e++) {
+					int j = cellPos[e];
+					if (j <= i || seen[j] == stamp)
+						continue;
+					seen[j] = stamp;
+					if (limited)
+						silence(i, j, classId, order, threshold, yolo);
+					else if (order[j] != -1 && overlaps(i, j, threshold, yolo))
+						order[j] = -1;
+				}
+			}
+		}
+	}
+	/**
+	 * Bin each position into the cells covered by its box widened by margin. Boxes whose overlap is positive, with the
+	 * +1 of calculateOverlapYOLO when margin is 1, then share at least one cell.
+	 * @return false if a box is not finite or inverted, the plain scan is used instead
+	 */
+	private boolean buildGrid(int n, int[] order, float margin) {
+		float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY;
+		float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY;
+		for (int p = 0; p < n; p++) {
+			if (order[p] == -1)
+				continue;
+			if (!Float.isFinite(xmin[p]) || !Float.isFinite(ymin[p]) || !Float.isFinite(xmax[p]) || !Float.isFinite(ymax[p]) ||
+				xmin[p] > xmax[p] || ymin[p] > ymax[p])
+				return false;
+			minX = Math.min(minX, xmin[p] - margin);
+			minY = Math.min(minY, ymin[p] - margin);
+			maxX = Math.max(maxX, xmax[p] + margin);
+			maxY = Math.max(maxY, ymax[p] + margin);
+		}
+		grid = Math.min(GRID_MAX, Math.max(1, (int)Math.sqrt(n / 4)));
+		gridX = minX;
+		gridY = minY;
+		cellW = (maxX - minX) / grid;
+		cellH = (maxY - minY) / grid;
+		if (!(cellW > 0.0f) || !(cellH > 0.0f) || !Float.isFinite(cellW) || !Float.isFinite(cellH))
+			return false;
+		int cells = grid * grid;
+		if (cellStart.length < cells + 1) {
+			cellStart = new int[cells + 1];
+			cellFill = new int[cells];
+		}
+		Arrays.fill(cellStart, 0, cells + 1, 0);
+		for (int p = 0; p < n; p++) {
+			if (order[p] == -1)
+				continue;
+			int cx0 = cellX(xmin[p] - margin), cx1 = cellX(xmax[p] + margin);
+			int cy0 = cellY(ymin[p] - margin), cy1 = cellY(ymax[p] + margin);
+			for (int cy = cy0; cy <= cy1; cy++)
+				for (int cx = cx0; cx <= cx1; cx++)
+					++cellStart[cy * grid + cx + 1];
+		}
+		for (int c = 0; c < cells; c++)
+			cellStart[c + 1] += cellStart[c];
+		if (cellPos.length < cellStart[cells])
+			cellPos = new int[cellStart[cells]];
+		System.arraycopy(cellStart, 0, cellFill, 0, cells);
+		for (int p = 0; p < n; p++) {
+			if (order[p] == -1)
+				continue;
+			int cx0 = cellX(xmin[p] - margin), cx1 = cellX(xmax[p] + margin);
+			int cy0 = cellY(ymin[p] - margin), cy1 = cellY(ymax[p] + margin);
+			for (int cy = cy0; cy <= cy1; cy++)
+				for (int cx = cx0; cx <= cx1; cx++)
+					cellPos[cellFill[cy * grid + cx]++] = p;
+		}
+		return true;
+	}
+
+	private int cellX(float x) {
+		return Math.min(grid - 1, Math.max(0, (int)((x - gridX) / cellW)));
+	}
+
+	private int cellY(float y) {
+		return Math.min(grid - 1, Math.max(0, (int)((y - gridY) / cellH)));
+	}
+}
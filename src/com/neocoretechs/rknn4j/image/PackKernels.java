@@ -0,0 +1,171 @@
+package com.neocoretechs.rknn4j.image;
+
+import static java.lang.foreign.ValueLayout.JAVA_BYTE;
+
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteOrder;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShuffle;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Vector API kernels for the input packer, {@link InputPacker}, and the pixel conversions of {@link Instance}.<p/>
+ * Only called when jdk.incubator.vector is present, see detect_result.VECTORIZE, the callers
+ * retain their scalar loops as the fallback and the kernels write identical bytes.<p/>
+ * The pixel conversions rearrange the bytes of a vector of whole pixels with one shuffle, such as the B, G, R of
+ * TYPE_3BYTE_BGR to R, G, B, then store the whole vector. The lanes past the last whole pixel are written over by
+ * the next step, so a step stores only while a whole vector fits the destination, and each returns the pixels it
+ * converted, the caller converting the rest. Lanes of an int are bytes in little-endian order on all platforms,
+ * see Vector.reinterpretAsBytes, so the shuffles of int pixels do not depend on the byte order of the CPU.
+ * @author Jonathan Groff Copyright (C) NeoCoreTechs 2025
+ *
+ */
+final class PackKernels {
+	private static final VectorSpecies<Byte> BYTES = ByteVector.SPECIES_PREFERRED;
+	private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED; // same bytes as BYTES
+	// R, G, B from the bytes of a pixel, lanes of an int pixel little-endian
+	private static final Swizzle BGR_RGB = new Swizzle(3, 3, 2, 1, 0); // TYPE_3BYTE_BGR
+	private static final Swizzle ABGR_RGB = new Swizzle(4, 3, 3, 2, 1); // TYPE_4BYTE_ABGR
+	private static final Swizzle XRGB_RGB = new Swizzle(4, 3, 2, 1, 0); // TYPE_INT_RGB, TYPE_INT_ARGB
+	private static final Swizzle XBGR_RGB = new Swizzle(4, 3, 0, 1, 2); // TYPE_INT_BGR
+	// B, G, R, 0 of a TYPE_INT_RGB pixel from R, G, B
+	private static final Swizzle RGB_XRGB = new Swizzle(3, 4, 2, 1, 0, -1);
+
+	private PackKernels() {}
+
+	/**
+	 * Shuffle of the whole pixels of a byte vector.
+	 */
+	private static final class Swizzle {
+		final int srcBytes; // bytes of a source pixel
+		final int dstBytes; // bytes of a destination pixel
+		final int pixels; // whole pixels converted per vector
+		final VectorShuffle<Byte> shuffle;
+		final VectorMask<Byte> zeros; // lanes set to 0, null if none
+
+		/**
+		 * @param from source byte of each destination byte of a pixel, -1 for 0
+		 */
+		Swizzle(int srcBytes, int dstBytes, int... from) {
+			this.srcBytes = srcBytes;
+			this.dstBytes = dstBytes;
+			this.pixels = BYTES.length() / Math.max(srcBytes, dstBytes);
+			int[] index = new int[BYTES.length()];
+			boolean[] zero = new boolean[BYTES.length()];
+			boolean any = false;
+			for(int i = 0; i < pixels * dstBytes; i++) {
+				int c = from[i % dstBytes];
+				index[i] = c < 0 ? 0 : (i / dstBytes) * srcBytes + c;
+				zero[i] = c < 0;
+				any |= c < 0;
+			}
+			this.shuffle = VectorShuffle.fromArray(BYTES, index, 0);
+			this.zeros = any ? VectorMask.fromArray(BYTES, zero, 0) : null;
+		}
+	}
+	/**
+	 * TYPE_3BYTE_BGR pixels to RGB888.
+	 * @param src B, G, R bytes of the image
+	 * @param srcOffset index of the first pixel in src
+	 * @param dst RGB888 bytes
+	 * @param dstOffset index of the first pixel in dst
+	 * @param n number of pixels
+	 * @return number of pixels converted, the first ones
+	 */
+	static int bgrToRgb(byte[] src, int srcOffset, byte[] dst, int dstOffset, int n) {
+		return swizzle(BGR_RGB, src, srcOffset, dst, dstOffset, n);
+	}
+	/**
+	 * TYPE_4BYTE_ABGR pixels to RGB888, as bgrToRgb.
+	 */
+	static int abgrToRgb(byte[] src, int srcOffset, byte[] dst, int dstOffset, int n) {
+		return swizzle(ABGR_RGB, src, srcOffset, dst, dstOffset, n);
+	}
+	/**
+	 * TYPE_INT_RGB or TYPE_INT_ARGB pixels, or those of BufferedImage.getRGB, to RGB888.
+	 * @param src pixels of the image, 0xAARRGGBB
+	 * @param srcOffset index of the first pixel in src
+	 * @param dst RGB888 bytes
+	 * @param dstOffset index of the first pixel in dst
+	 * @param n number of pixels
+	 * @return number of pixels converted, the first ones
+	 */
+	static int xrgbToRgb(int[] src, int srcOffset, byte[] dst, int dstOffset, int n) {
+		return swizzle(XRGB_RGB, src, srcOffset, dst, dstOffset, n);
+	}
+	/**
+	 * TYPE_INT_BGR pixels to RGB888, as xrgbToRgb.
+	 */
+	static int xbgrToRgb(int[] src, int srcOffset, byte[] dst, int dstOffset, int n) {
+		return swizzle(XBGR_RGB, src, srcOffset, dst, dstOffset, n);
+	}
+	/**
+	 * RGB888 to TYPE_INT_RGB pixels, 0x00RRGGBB.
+	 * @param src RGB888 bytes
+	 * @param srcOffset index of the first pixel in src
+	 * @param dst pixels of the image
+	 * @param dstOffset index of the first pixel in dst
+	 * @param n number of pixels
+	 * @return number of pixels converted, the first ones
+	 */
+	static int rgbToXrgb(byte[] src, int srcOffset, int[] dst, int dstOffset, int n) {
+		Swizzle s = RGB_XRGB;
+		int done = 0;
+		int last = src.length - BYTES.length();
+		for(; n - done >= s.pixels && srcOffset <= last; done += s.pixels) {
+			ByteVector v = ByteVector.fromArray(BYTES, src, srcOffset).rearrange(s.shuffle).blend((byte)0, s.zeros);
+			v.reinterpretAsInts().intoArray(dst, dstOffset);
+			srcOffset += s.pixels * 3;
+			dstOffset += s.pixels;
+		}
+		return done;
+	}
+
+	private static int swizzle(Swizzle s, byte[] src, int srcOffset, byte[] dst, int dstOffset, int n) {
+		int done = 0;
+		int lastSrc = src.length - BYTES.length();
+		int lastDst = dst.length - BYTES.length();
+		for(; n - done >= s.pixels && srcOffset <= lastSrc && dstOffset <= lastDst; done += s.pixels) {
+			ByteVector.fromArray(BYTES, src, srcOffset).rearrange(s.shuffle).intoArray(dst, dstOffset);
+			srcOffset += s.pixels * s.srcBytes;
+			dstOffset += s.pixels * s.dstBytes;
+		}
+		return done;
+	}
+
+	private static int swizzle(Swizzle s, int[] src, int srcOffset, byte[] dst, int dstOffset, int n) {
+		int done = 0;
+		int lastSrc = src.length - INTS.length();
+		int lastDst = dst.length - BYTES.length();
+		for(; n - done >= s.pixels && srcOffset <= lastSrc && dstOffset <= lastDst; done += s.pixels) {
+			IntVector.fromArray(INTS, src, srcOffset).reinterpretAsBytes().rearrange(s.shuffle).intoArray(dst, dstOffset);
+			srcOffset += s.pixels;
+			dstOffset += s.pixels * s.dstBytes;
+		}
+		return done;
+	}
+
+	/**
+	 * Write a run of pixel bytes to tensor memory, each XORed with a mask, 0x80 converting UINT8 pixels to INT8
+	 * of zero point -128 and scale 1, the common quantization of an image input.
+	 * @param src The pixels
+	 * @param srcOffset Index of the first pixel byte
+	 * @param dst The input tensor memory
+	 * @param dstOffset Byte offset of the first value
+	 * @param len Number of bytes
+	 * @param mask The mask
+	 */
+	static void xorRun(byte[] src, int srcOffset, MemorySegment dst, long dstOffset, int len, byte mask) {
+		int i = 0;
+		int upper = BYTES.loopBound(len);
+		for(; i < upper; i += BYTES.length())
+			ByteVector.fromArray(BYTES, src, srcOffset + i).lanewise(VectorOperators.XOR, mask)
+				.intoMemorySegment(dst, dstOffset + i, ByteOrder.nativeOrder());
+		for(; i < len; i++)
+			dst.set(JAVA_BYTE, dstOffset + i, (byte)(src[srcOffset + i] ^ mask));
+	}
+}
@@ -0,0 +1,113 @@
+package com.neocoretechs.rknn4j.image;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Parallel decode of the YOLO output branches, opt in through detect_result.setParallel.<p/>
+ * Each branch, or each anchor plane of a YOLOv5 branch, is added as a band of grid cells, and those large enough,
+ * the 80x80 head of a 640 model, are split into row bands. Every band becomes a task on the common fork-join pool that
+ * decodes into candidates of its own, then the candidates of the bands are appended in the order the bands were added,
+ * which is the order of the sequential decode, so the merged candidates are the same frame after frame whatever the
+ * scheduling. Without a budget they are the same as those of the sequential decode; with one, each band keeps its own
+ * highest and the merge keeps the highest of those.<p/>
+ * One instance of the band candidates is kept per calling thread, see {@link #get()}.
+ * @author Jonathan Groff Copyright (C) NeoCoreTechs 2025
+ *
+ */
+final class ParallelDecode {
+	private static final ThreadLocal<ParallelDecode> perThread = ThreadLocal.withInitial(ParallelDecode::new);
+	// fewest cells worth a row band of their own
+	static int MIN_BAND_CELLS = 1600;
+	private detect_candidates[] parts = new detect_candidates[0];
+	private Band[] bands = new Band[0];
+	private int[] from = new int[0];
+	private int[] to = new int[0];
+	private ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[0];
+	private int n;
+	/**
+	 * The decode of the grid cells from..to of a branch into candidates.
+	 */
+	interface Band {
+		/**
+		 * @param part Candidates of the band
+		 * @param from First cell, at the start of a row
+		 * @param to Cell after the last
+		 * @return Count of the candidates decoded
+		 */
+		int decode(detect_candidates part, int from, int to);
+	}
+
+	private ParallelDecode() {}
+	/**
+	 * @return true if parallel decode is set and the common pool has more than one worker
+	 */
+	static boolean enabled() {
+		return detect_result.isParallel() && ForkJoinPool.getCommonPoolParallelism() > 1;
+	}
+	/**
+	 * @return The bands of the calling thread, cleared
+	 */
+	static ParallelDecode get() {
+		ParallelDecode p = perThread.get();
+		p.n = 0;
+		return p;
+	}
+	/**
+	 * Add the cells of a branch, split in row bands of at least MIN_BAND_CELLS cells, up to one per worker.
+	 * @param band Decode of the branch
+	 * @param grid_h Rows
+	 * @param grid_w Cells per row
+	 */
+	void add(Band band, int grid_h, int grid_w) {
+		int count = Math.max(1, Math.min(ForkJoinPool.getCommonPoolParallelism(), grid_h * grid_w / MIN_BAND_CELLS));
+		count = Math.min(count, Math.max(grid_h, 1));
+		for(int b = 0; b < count; b++) {
+			ensure(n + 1);
+			bands[n] = band;
+			from[n] = grid_h * b / count * grid_w;
+			to[n] = grid_h * (b + 1) / count * grid_w;
+			++n;
+		}
+	}
+	/**
+	 * Decode the bands in parallel, then append their candidates in the order the bands were added.
+	 * @param candidates Receives the candidates
+	 * @return Sum of the counts of the bands
+	 */
+	int run(detect_candidates candidates) {
+		for(int k = 0; k < n; k++) {
+			detect_candidates part = parts[k];
+			part.clear();
+			part.setBudget(candidates.getBudget());
+			Band band = bands[k];
+			int bandFrom = from[k];
+			int bandTo = to[k];
+			tasks[k] = ForkJoinPool.commonPool().submit(() -> band.decode(part, bandFrom, bandTo));
+		}
+		int validCount = 0;
+		for(int k = 0; k < n; k++) {
+			validCount += (Integer)tasks[k].join();
+			candidates.addAll(parts[k]);
+			tasks[k] = null;
+			bands[k] = null;
+		}
+		return validCount;
+	}
+
+	private void ensure(int size) {
+		if(parts.length < size) {
+			int length = Math.max(size, parts.length * 2);
+			detect_candidates[] p = new detect_candidates[length];
+			System.arraycopy(parts, 0, p, 0, parts.length);
+			for(int k = parts.length; k < length; k++)
+				p[k] = new detect_candidates();
+			parts = p;
+			bands = Arrays.copyOf(bands, length);
+			from = Arrays.copyOf(from, length);
+			to = Arrays.copyOf(to, length);
+			tasks = Arrays.copyOf(tasks, length);
+		}
+	}
+}
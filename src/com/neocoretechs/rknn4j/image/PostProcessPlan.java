@@ -0,0 +1,386 @@
+package com.neocoretechs.rknn4j.image;
+
+import java.util.List;
+
+import com.neocoretechs.rknn4j.rknn_tensor_attr;
+import com.neocoretechs.rknn4j.RKNN.rknn_tensor_format;
+import com.neocoretechs.rknn4j.RKNN.rknn_tensor_type;
+
+/**
+ * Post processing plan of a model, computed once at initNPU from its output tensor attributes and immutable after.<p/>
+ * The plan holds what the decoders would otherwise derive frame after frame: the kind of model, chosen from the
+ * signature of the output tensors rather than a MODEL int, and for each output tensor its layout and lookup table,
+ * for each YOLO branch its grid, stride, anchors and quantized thresholds, and for InceptionSSD the quantized
+ * minimum score. The class count, the planes per YOLOv5 anchor and the number of InceptionSSD priors are taken from the
+ * dims of the output tensors, so a model of any class count decodes without recompiling, and YOLOv5 anchors other
+ * than the default ones may be given, see {@link #of(Kind, List, int, int, float, float, boolean, int[][])}.
+ * Outputs left in the native NHWC or NC1HWC2 layout of the NPU are decoded in place through the layouts of a plan
+ * from {@link #withNativeLayouts(List, List)}. The FLOAT16 outputs of a float model, retrieved without want_float, are
+ * read as halves by the float decoders, each half converted as it is read, see {@link #half}.
+ * {@link detect_result#post_process(PostProcessPlan, java.lang.foreign.MemorySegment[], float[][], float, float, int, int, detect_result_group, String[])}
+ * then decodes with no per frame recomputation.<p/>
+ * Output tensor signatures:<br/>
+ * 2 tensors, InceptionSSD predictions and output classes<br/>
+ * 3 tensors of 3 * (5 + classes) channels, YOLOv5, strides 8, 16, 32<br/>
+ * 6 or 9 tensors, 2 or 3 per branch, box of 4 * dfl_len channels, scores of one channel per class and optional score sum, YOLOv11
+ * @author Jonathan Groff Copyright (C) NeoCoreTechs 2025
+ *
+ */
+public final class PostProcessPlan {
+	public enum Kind { YOLOV5, YOLOV11, INCEPTION_SSD }
+	private static final int[][] YOLOV5_ANCHORS = {detect_result.anchor0, detect_result.anchor1, detect_result.anchor2};
+
+	public final Kind kind;
+	public final boolean wantFloat; // want_float outputs, read through float views, else INT8 affine read in place
+	public final boolean half; // FLOAT16 outputs of a float model, read in place by the float decoders a half at a time
+	public final int model_in_w;
+	public final int model_in_h;
+	public final float conf_threshold;
+	public final float nms_threshold;
+	public final int numClasses; // YOLO classes, InceptionSSD classes including the catch-all class 0
+	// per output tensor
+	final rknn_tensor_format[] layouts;
+	final boolean floating; // wantFloat or half, decoded by the float decoders
+	final QuantTable[] tables; // null when floating
+	final TensorLayout[] nativeLayouts; // null for the NCHW outputs of rknn_outputs_get
+	// per YOLO branch
+	final int branches;
+	final int[] grid_h;
+	final int[] grid_w;
+	final int[] stride;
+	final int[][] anchors; // YOLOv5, width and height of each anchor of a branch
+	final int prop_box_size; // YOLOv5 planes per anchor, 5 + numClasses
+	final byte[] thres_i8; // YOLOv5 objectness and class threshold, YOLOv11 score threshold
+	final byte[] sum_thres_i8; // YOLOv11 score sum threshold
+	final float thres; // YOLOv5 want_float threshold, unsigmoid(conf_threshold)
+	// YOLOv11
+	final int dfl_len;
+	final int output_per_branch;
+	// InceptionSSD
+	final int numResults; // priors
+	final int min_score; // quantized MIN_SCORE, see QuantTable.atLeast
+
+	private PostProcessPlan(Kind kind, boolean wantFloat, boolean half, int model_in_w, int model_in_h, float conf_threshold,
+			float nms_threshold, int numClasses, rknn_tensor_format[] layouts, QuantTable[] tables, int[] grid_h, int[] grid_w, int[] stride,
+			int[][] anchors, int dfl_len, int output_per_branch, int numResults) {
+		this.kind = kind;
+		this.wantFloat = wantFloat;
+		this.half = half;
+		this.floating = wantFloat || half;
+		this.model_in_w = model_in_w;
+		this.model_in_h = model_in_h;
+		this.conf_threshold = conf_threshold;
+		this.nms_threshold = nms_threshold;
+		this.numClasses = numClasses;
+		this.prop_box_size = 5 + numClasses;
+		this.numResults = numResults;
+		this.layouts = layouts;
+		this.tables = floating ? null : tables;
+		this.nativeLayouts = null;
+		this.branches = grid_h.length;
+		this.grid_h = grid_h;
+		this.grid_w = grid_w;
+		this.stride = stride;
+		this.dfl_len = dfl_len;
+		this.output_per_branch = output_per_branch;
+		this.anchors = new int[branches][];
+		if(kind == Kind.YOLOV5 && anchors.length < branches)
+			throw new RuntimeException("Anchors for "+anchors.length+" of "+branches+" branches");
+		this.thres_i8 = new byte[branches];
+		this.sum_thres_i8 = new byte[branches];
+		this.thres = (float) detect_result.unsigmoid(conf_threshold);
+		for(int i = 0; i < branches; i++) {
+			switch(kind) {
+				case YOLOV5:
+					this.anchors[i] = anchors[i].clone();
+					if(!floating)
+						thres_i8[i] = tables[i].quantize(thres);
+					break;
+				case YOLOV11:
+					if(floating)
+						break;
+					thres_i8[i] = tables[i * output_per_branch + 1].quantize(conf_threshold);
+					sum_thres_i8[i] = output_per_branch == 3 ? tables[i * output_per_branch + 2].quantize(conf_threshold) :
+						detect_result.qnt_f32_to_affine(conf_threshold, 0, 1.0f);
+					break;
+				default:
+					break;
+			}
+		}
+		this.min_score = kind == Kind.INCEPTION_SSD && !floating ? tables[1].atLeast((float) detect_result.unsigmoid(detect_result.MIN_SCORE)) : 0;
+	}
+	/**
+	 * Copy of a plan reading its outputs in native layouts.
+	 */
+	private PostProcessPlan(PostProcessPlan plan, rknn_tensor_format[] layouts, TensorLayout[] nativeLayouts) {
+		this.kind = plan.kind;
+		this.wantFloat = plan.wantFloat;
+		this.half = plan.half;
+		this.floating = plan.floating;
+		this.model_in_w = plan.model_in_w;
+		this.model_in_h = plan.model_in_h;
+		this.conf_threshold = plan.conf_threshold;
+		this.nms_threshold = plan.nms_threshold;
+		this.numClasses = plan.numClasses;
+		this.layouts = layouts;
+		this.tables = plan.tables;
+		this.nativeLayouts = nativeLayouts;
+		this.branches = plan.branches;
+		this.grid_h = plan.grid_h;
+		this.grid_w = plan.grid_w;
+		this.stride = plan.stride;
+		this.anchors = plan.anchors;
+		this.prop_box_size = plan.prop_box_size;
+		this.thres_i8 = plan.thres_i8;
+		this.sum_thres_i8 = plan.sum_thres_i8;
+		this.thres = plan.thres;
+		this.dfl_len = plan.dfl_len;
+		this.output_per_branch = plan.output_per_branch;
+		this.numResults = plan.numResults;
+		this.min_score = plan.min_score;
+	}
+	/**
+	 * Plan for the model whose output tensors have the given attributes, the kind chosen from their signature, with the
+	 * default thresholds BOX_THRESH, and NMS_THRESH or NMS_THRESH_SSD.
+	 * @param attrs output tensor attributes queried at initNPU
+	 * @param model_in_w model input width
+	 * @param model_in_h model input height
+	 * @param wantFloat true if the outputs are retrieved with want_float
+	 * @return The plan
+	 * @throws RuntimeException if the signature is not one of a supported model
+	 */
+	public static PostProcessPlan of(List<rknn_tensor_attr> attrs, int model_in_w, int model_in_h, boolean wantFloat) {
+		Kind kind = kind(attrs);
+		return of(kind, attrs, model_in_w, model_in_h, detect_result.BOX_THRESH,
+				kind == Kind.INCEPTION_SSD ? detect_result.NMS_THRESH_SSD : detect_result.NMS_THRESH, wantFloat);
+	}
+	/**
+	 * Plan for a model of the given kind.
+	 * @param kind kind of model
+	 * @param attrs output tensor attributes queried at initNPU
+	 * @param model_in_w model input width
+	 * @param model_in_h model input height
+	 * @param conf_threshold confidence threshold
+	 * @param nms_threshold non maximal suppression threshold
+	 * @param wantFloat true if the outputs are retrieved with want_float
+	 * @return The plan
+	 */
+	public static PostProcessPlan of(Kind kind, List<rknn_tensor_attr> attrs, int model_in_w, int model_in_h, float conf_threshold,
+			float nms_threshold, boolean wantFloat) {
+		return of(kind, attrs, model_in_w, model_in_h, conf_threshold, nms_threshold, wantFloat, null);
+	}
+	/**
+	 * Plan for a model of the given kind, with the anchors of a custom YOLOv5 model.
+	 * @param kind kind of model
+	 * @param attrs output tensor attributes queried at initNPU
+	 * @param model_in_w model input width
+	 * @param model_in_h model input height
+	 * @param conf_threshold confidence threshold
+	 * @param nms_threshold non maximal suppression threshold
+	 * @param wantFloat true if the outputs are retrieved with want_float
+	 * @param anchors YOLOv5 width, height pairs of the anchors of each branch, null for the defaults anchor0..2
+	 * @return The plan, reading halves if the outputs are FLOAT16 and not want_float
+	 * @throws RuntimeException if the channels of a YOLOv5 branch are not a multiple of its anchors
+	 */
+	public static PostProcessPlan of(Kind kind, List<rknn_tensor_attr> attrs, int model_in_w, int model_in_h, float conf_threshold,
+			float nms_threshold, boolean wantFloat, int[][] anchors) {
+		rknn_tensor_format[] layouts = new rknn_tensor_format[attrs.size()];
+		for(int i = 0; i < layouts.length; i++)
+			layouts[i] = attrs.get(i).getFmt();
+		QuantTable[] tables = QuantTable.of(attrs);
+		boolean half = !wantFloat && half(attrs);
+		switch(kind) {
+			case YOLOV5:
+				if(anchors == null)
+					anchors = YOLOV5_ANCHORS;
+				int planes = anchors[0].length / 2;
+				int c = channels(attrs.get(0));
+				if(c % planes != 0 || c / planes <= 5)
+					throw new RuntimeException("YOLOv5 output of "+c+" channels for "+planes+" anchors");
+				return yolov5(layouts, tables, model_in_w, model_in_h, conf_threshold, nms_threshold, wantFloat, half, anchors,
+						c / planes - 5);
+			case YOLOV11:
+				return yolov11(layouts, tables, attrs, model_in_w, model_in_h, conf_threshold, nms_threshold, wantFloat);
+			case INCEPTION_SSD:
+			default:
+				// predictions of 4 per prior, output classes of numClasses per prior
+				int numResults = attrs.get(0).getN_elems() / 4;
+				if(numResults == 0)
+					return ssd(layouts, tables, model_in_w, model_in_h, nms_threshold, wantFloat, half, detect_result.NUM_RESULTS,
+							detect_result.NUM_CLASS);
+				return ssd(layouts, tables, model_in_w, model_in_h, nms_threshold, wantFloat, half, numResults,
+						attrs.get(1).getN_elems() / numResults);
+		}
+	}
+	/**
+	 * Choose the kind of model from the number and channels of its output tensors.
+	 * @param attrs output tensor attributes
+	 * @return The kind
+	 * @throws RuntimeException if the signature is not one of a supported model
+	 */
+	public static Kind kind(List<rknn_tensor_attr> attrs) {
+		int n = attrs.size();
+		if(n == 2)
+			return Kind.INCEPTION_SSD;
+		if(n == 3 && channels(attrs.get(0)) % 3 == 0 && channels(attrs.get(0)) / 3 > 5)
+			return Kind.YOLOV5;
+		if((n == 6 || n == 9) && channels(attrs.get(0)) % 4 == 0)
+			return Kind.YOLOV11;
+		throw new RuntimeException("Unsupported output tensor signature, "+n+" outputs of "+channels(attrs.get(0))+" channels");
+	}
+
+	private static int channels(rknn_tensor_attr attr) {
+		return attr.getWidthHeightChannel()[2];
+	}
+	/**
+	 * @return true if every output is FLOAT16, those of a float model
+	 */
+	private static boolean half(List<rknn_tensor_attr> attrs) {
+		for(rknn_tensor_attr attr : attrs)
+			if(attr.getType() != rknn_tensor_type.RKNN_TENSOR_FLOAT16)
+				return false;
+		return !attrs.isEmpty();
+	}
+	/**
+	 * YOLOv5 plan of the default anchors and class count, 3 branches of strides 8, 16, 32 over the model input.
+	 * @param layouts layout of each output tensor, null if unknown
+	 * @param tables lookup table of each output tensor, unused when wantFloat
+	 */
+	static PostProcessPlan yolov5(rknn_tensor_format[] layouts, QuantTable[] tables, int model_in_w, int model_in_h,
+			float conf_threshold, float nms_threshold, boolean wantFloat) {
+		return yolov5(layouts, tables, model_in_w, model_in_h, conf_threshold, nms_threshold, wantFloat, YOLOV5_ANCHORS,
+				detect_result.OBJ_CLASS_NUM);
+	}
+	/**
+	 * YOLOv5 plan, 3 branches of strides 8, 16, 32 over the model input.
+	 * @param anchors width, height pairs of the anchors of each branch
+	 * @param numClasses number of classes
+	 */
+	static PostProcessPlan yolov5(rknn_tensor_format[] layouts, QuantTable[] tables, int model_in_w, int model_in_h,
+			float conf_threshold, float nms_threshold, boolean wantFloat, int[][] anchors, int numClasses) {
+		return yolov5(layouts, tables, model_in_w, model_in_h, conf_threshold, nms_threshold, wantFloat, false, anchors, numClasses);
+	}
+	/**
+	 * YOLOv5 plan, as above, of FLOAT16 outputs if half.
+	 * @param half true if the outputs are FLOAT16
+	 */
+	static PostProcessPlan yolov5(rknn_tensor_format[] layouts, QuantTable[] tables, int model_in_w, int model_in_h,
+			float conf_threshold, float nms_threshold, boolean wantFloat, boolean half, int[][] anchors, int numClasses) {
+		int branches = Math.min(tables == null ? 3 : tables.length, 3);
+		int[] grid_h = new int[branches];
+		int[] grid_w = new int[branches];
+		int[] stride = new int[branches];
+		for(int i = 0; i < branches; i++) {
+			stride[i] = 8 << i;
+			grid_h[i] = model_in_h / stride[i];
+			grid_w[i] = model_in_w / stride[i];
+		}
+		return new PostProcessPlan(Kind.YOLOV5, wantFloat, half, model_in_w, model_in_h, conf_threshold, nms_threshold, numClasses,
+				layouts, tables, grid_h, grid_w, stride, anchors, 0, 0, 0);
+	}
+	/**
+	 * YOLOv11 plan, 3 branches of 2 or 3 tensors, the grid of each branch from its box tensor, the class count from
+	 * the channels of its score tensor, reading halves if the outputs are FLOAT16.
+	 * @param layouts layout of each output tensor, null if unknown
+	 * @param tables lookup table of each output tensor, unused when wantFloat
+	 * @param attrs output tensor attributes
+	 * @param wantFloat true if the outputs are retrieved with want_float
+	 */
+	static PostProcessPlan yolov11(rknn_tensor_format[] layouts, QuantTable[] tables, List<rknn_tensor_attr> attrs,
+			int model_in_w, int model_in_h, float conf_threshold, float nms_threshold, boolean wantFloat) {
+		int output_per_branch = attrs.size() / 3;
+		int[] grid_h = new int[3];
+		int[] grid_w = new int[3];
+		int[] stride = new int[3];
+		for(int i = 0; i < 3; i++) {
+			int[] whc = attrs.get(i * output_per_branch).getWidthHeightChannel();
+			grid_h[i] = whc[1];
+			grid_w[i] = whc[0];
+			stride[i] = model_in_h / grid_h[i];
+		}
+		return new PostProcessPlan(Kind.YOLOV11, wantFloat, !wantFloat && half(attrs), model_in_w, model_in_h, conf_threshold, nms_threshold,
+				channels(attrs.get(1)), layouts, tables, grid_h, grid_w, stride, null, channels(attrs.get(0)) / 4, output_per_branch, 0);
+	}
+	/**
+	 * InceptionSSD plan of the default NUM_RESULTS priors and NUM_CLASS classes, predictions and output classes.
+	 * @param layouts layout of each output tensor, null if unknown
+	 * @param tables lookup table of each output tensor, unused when wantFloat
+	 */
+	static PostProcessPlan ssd(rknn_tensor_format[] layouts, QuantTable[] tables, int model_in_w, int model_in_h,
+			float nms_threshold, boolean wantFloat) {
+		return ssd(layouts, tables, model_in_w, model_in_h, nms_threshold, wantFloat, detect_result.NUM_RESULTS, detect_result.NUM_CLASS);
+	}
+	/**
+	 * InceptionSSD plan, predictions and output classes.
+	 * @param numResults number of priors
+	 * @param numClasses number of classes, the catch-all class 0 included
+	 */
+	static PostProcessPlan ssd(rknn_tensor_format[] layouts, QuantTable[] tables, int model_in_w, int model_in_h,
+			float nms_threshold, boolean wantFloat, int numResults, int numClasses) {
+		return ssd(layouts, tables, model_in_w, model_in_h, nms_threshold, wantFloat, false, numResults, numClasses);
+	}
+	/**
+	 * InceptionSSD plan, as above, of FLOAT16 outputs if half.
+	 * @param half true if the outputs are FLOAT16
+	 */
+	static PostProcessPlan ssd(rknn_tensor_format[] layouts, QuantTable[] tables, int model_in_w, int model_in_h,
+			float nms_threshold, boolean wantFloat, boolean half, int numResults, int numClasses) {
+		return new PostProcessPlan(Kind.INCEPTION_SSD, wantFloat, half, model_in_w, model_in_h, detect_result.MIN_SCORE, nms_threshold,
+				numClasses, layouts, tables, new int[0], new int[0], new int[0], null, 0, 0, numResults);
+	}
+	/**
+	 * This plan reading quantized outputs left in the native layout of the NPU, as bound by rknn_set_io_mem with the
+	 * attributes of RKNN_QUERY_NATIVE_OUTPUT_ATTR or RKNN_QUERY_NATIVE_NHWC_OUTPUT_ATTR. Each output is then read
+	 * in place by its w_stride and native dims, within its size_with_stride.
+	 * @param attrs output tensor attributes in NCHW, as the plan was built from
+	 * @param nativeAttrs the native attributes of the same outputs
+	 * @return The plan with native layouts
+	 * @throws RuntimeException if the outputs are want_float or FLOAT16, or a native layout is not one the decoders read
+	 */
+	public PostProcessPlan withNativeLayouts(List<rknn_tensor_attr> attrs, List<rknn_tensor_attr> nativeAttrs) {
+		if(floating)
+			throw new RuntimeException("Native layouts are quantized, not want_float or FLOAT16");
+		rknn_tensor_format[] formats = new rknn_tensor_format[nativeAttrs.size()];
+		TensorLayout[] native_ = new TensorLayout[nativeAttrs.size()];
+		for(int i = 0; i < native_.length; i++) {
+			native_[i] = TensorLayout.of(attrs.get(i), nativeAttrs.get(i));
+			formats[i] = native_[i].format;
+		}
+		return new PostProcessPlan(this, formats, native_);
+	}
+	/**
+	 * @return true if the outputs are read in the native layout of the NPU, from tensor memory bound with native attributes
+	 */
+	public boolean isNative() {
+		return nativeLayouts != null;
+	}
+	/**
+	 * @param tensor index of the output tensor
+	 * @return The layout of the tensor, null if unknown
+	 */
+	public rknn_tensor_format getLayout(int tensor) {
+		return layouts == null ? null : layouts[tensor];
+	}
+	/**
+	 * @param tensor index of the output tensor
+	 * @return The lookup table of the tensor, null for want_float and FLOAT16 outputs
+	 */
+	public QuantTable getTable(int tensor) {
+		return tables == null ? null : tables[tensor];
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(kind).append(wantFloat ? " FLOAT" : half ? " FLOAT16" : " INT8").append(" in=").append(model_in_w).append('x').append(model_in_h)
+			.append(" conf=").append(conf_threshold).append(" nms=").append(nms_threshold).append(" classes=").append(numClasses);
+		if(kind == Kind.INCEPTION_SSD)
+			sb.append(" priors=").append(numResults);
+		if(nativeLayouts != null)
+			for(int i = 0; i < nativeLayouts.length; i++)
+				sb.append(" out").append(i).append('=').append(nativeLayouts[i]);
+		for(int i = 0; i < branches; i++)
+			sb.append(" branch").append(i).append('=').append(grid_w[i]).append('x').append(grid_h[i]).append('/').append(stride[i]);
+		return sb.toString();
+	}
+}
@@ -0,0 +1,100 @@
+package com.neocoretechs.rknn4j.image;
+
+import java.util.List;
+
+import com.neocoretechs.rknn4j.rknn_tensor_attr;
+
+/**
+ * Lookup tables for an INT8 affine quantized output tensor.<p/>
+ * A quantized value is one of 256 bytes, so for the zero point and scale of a tensor the dequantized value,
+ * its sigmoid and its exponential are computed once for each byte, and the decoders look them up rather than calling
+ * Math.exp per value. The results are identical to deqnt_affine_to_f32, sigmoid and the exp of compute_dfl.
+ * @author Jonathan Groff Copyright (C) NeoCoreTechs 2025
+ *
+ */
+public final class QuantTable {
+	public final int zp;
+	public final float scale;
+	private final float[] deqnt = new float[256]; // indexed by the byte as unsigned
+	private final double[] sigmoid = new double[256];
+	private final float[] exp = new float[256];
+
+	public QuantTable(int zp, float scale) {
+		this.zp = zp;
+		this.scale = scale;
+		for(int q = Byte.MIN_VALUE; q <= Byte.MAX_VALUE; q++) {
+			float f = detect_result.deqnt_affine_to_f32((byte)q, zp, scale);
+			deqnt[q & 0xFF] = f;
+			sigmoid[q & 0xFF] = detect_result.sigmoid(f);
+			exp[q & 0xFF] = (float)Math.exp(f);
+		}
+	}
+	/**
+	 * Build the tables for each output tensor, as at initNPU.
+	 * @param attrs The output tensor attributes
+	 * @return A table per tensor, in output order
+	 */
+	public static QuantTable[] of(List<rknn_tensor_attr> attrs) {
+		QuantTable[] tables = new QuantTable[attrs.size()];
+		for(int i = 0; i < tables.length; i++)
+			tables[i] = new QuantTable(attrs.get(i).getZp(), attrs.get(i).getScale());
+		return tables;
+	}
+	/**
+	 * Build the tables from parallel lists of zero points and scales.
+	 * @param zps zero point of each tensor
+	 * @param scales scale of each tensor
+	 * @return A table per tensor
+	 */
+	public static QuantTable[] of(List<Integer> zps, List<Float> scales) {
+		QuantTable[] tables = new QuantTable[zps.size()];
+		for(int i = 0; i < tables.length; i++)
+			tables[i] = new QuantTable(zps.get(i), scales.get(i));
+		return tables;
+	}
+	/**
+	 * @param q quantized value
+	 * @return (q - zp) * scale
+	 */
+	public float deqnt(byte q) {
+		return deqnt[q & 0xFF];
+	}
+	/**
+	 * @param q quantized value
+	 * @return sigmoid((q - zp) * scale)
+	 */
+	public double sigmoid(byte q) {
+		return sigmoid[q & 0xFF];
+	}
+	/**
+	 * @param q quantized value
+	 * @return (float)exp((q - zp) * scale), the softmax term of compute_dfl
+	 */
+	public float exp(byte q) {
+		return exp[q & 0xFF];
+	}
+	/**
+	 * The threshold f quantized for comparison in the quantized domain: since the scale is positive the dequantized value
+	 * is monotonic in q, so deqnt(q) &gt;= f exactly when q &gt;= the returned value.
+	 * @param f float threshold
+	 * @return The least quantized value whose dequantized value is at least f, Byte.MAX_VALUE + 1 if there is none
+	 */
+	public int atLeast(float f) {
+		for(int q = Byte.MIN_VALUE; q <= Byte.MAX_VALUE; q++)
+			if(deqnt[q & 0xFF] >= f)
+				return q;
+		return Byte.MAX_VALUE + 1;
+	}
+	/**
+	 * @param f32 float value
+	 * @return the value quantized with the zero point and scale of the table
+	 */
+	public byte quantize(float f32) {
+		return detect_result.qnt_f32_to_affine(f32, zp, scale);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("zp=%d scale=%f", zp, scale);
+	}
+}
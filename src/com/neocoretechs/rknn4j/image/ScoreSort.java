@@ -0,0 +1,89 @@
+package com.neocoretechs.rknn4j.image;
+
+import java.util.Arrays;
+
+/**
+ * Descending sort of scores carrying parallel index arrays along, shared by the YOLO and InceptionSSD paths.<p/>
+ * Each score is mapped to an int that orders as the float does, inverted for descending order, and packed with the
+ * position of the score into one long, so a single primitive sort of the longs orders the scores, and equal scores
+ * keep their original order. The sort is the dual-pivot sort of Arrays.sort(long[]), so there is no boxing and no
+ * recursion on the caller's part, however many scores are equal.<p/>
+ * One instance of the scratch arrays is kept per thread, see {@link #get()}.
+ * @author Jonathan Groff Copyright (C) NeoCoreTechs 2025
+ *
+ */
+final class ScoreSort {
+	private static final ThreadLocal<ScoreSort> perThread = ThreadLocal.withInitial(ScoreSort::new);
+	private long[] keys = new long[0];
+	private float[] floats = new float[0];
+	private int[] ints = new int[0];
+
+	private ScoreSort() {}
+	/**
+	 * @return The scratch of the calling thread
+	 */
+	static ScoreSort get() {
+		return perThread.get();
+	}
+	/**
+	 * Sort scores[0..n) in descending order and indices along with them.
+	 * @param scores The scores
+	 * @param indices Carried with the scores
+	 * @param n Number of scores
+	 */
+	void sort(float[] scores, int[] indices, int n) {
+		if (n < 2)
+			return;
+		order(scores, n);
+		permute(indices, n);
+		permute(scores, n);
+	}
+	/**
+	 * Sort scores[0..n) in descending order and the two arrays along with them, such as output[0] and output[1] of InceptionSSD.
+	 * @param scores The scores
+	 * @param first Carried with the scores
+	 * @param second Carried with the scores
+	 * @param n Number of scores
+	 */
+	void sort(float[] scores, int[] first, int[] second, int n) {
+		if (n < 2)
+			return;
+		order(scores, n);
+		permute(first, n);
+		permute(second, n);
+		permute(scores, n);
+	}
+	/**
+	 * @param f float value
+	 * @return An int that orders as f, ascending
+	 */
+	static int sortable(float f) {
+		int bits = Float.floatToIntBits(f);
+		return bits ^ ((bits >> 31) & 0x7FFFFFFF);
+	}
+	/**
+	 * Pack the inverted key and position of each score and sort, the position of the k-th score is then the low int of keys[k].
+	 */
+	private void order(float[] scores, int n) {
+		if (keys.length < n) {
+			keys = new long[n];
+			floats = new float[n];
+			ints = new int[n];
+		}
+		for (int p = 0; p < n; p++)
+			keys[p] = ((long)~sortable(scores[p]) << 32) | p;
+		Arrays.sort(keys, 0, n);
+	}
+
+	private void permute(int[] a, int n) {
+		System.arraycopy(a, 0, ints, 0, n);
+		for (int k = 0; k < n; k++)
+			a[k] = ints[(int)keys[k]];
+	}
+
+	private void permute(float[] a, int n) {
+		System.arraycopy(a, 0, floats, 0, n);
+		for (int k = 0; k < n; k++)
+			a[k] = floats[(int)keys[k]];
+	}
+}
@@ -0,0 +1,161 @@
+package com.neocoretechs.rknn4j.image;
+
+import static java.lang.foreign.ValueLayout.JAVA_BYTE;
+
+import java.lang.foreign.MemorySegment;
+
+/**
+ * InceptionSSD boxes decoded for the priors that survive class filtering only, rather than all NUM_RESULTS priors.<p/>
+ * The raw predictions and the box priors of the surviving positions are gathered into parallel arrays, the box priors
+ * being read from their rows ycenter, xcenter, h, w of box_priors[4][NUM_RESULTS], and decoded as
+ * decodeCenterSizeBoxes did into ymin[p], xmin[p], ymax[p], xmax[p] for each position p of output[0].
+ * With the Vector API present the decode, exp included, runs in float lanes, see DetectKernels.decodeSSD,
+ * where the exp may differ from Math.exp in the last bit.<p/>
+ * One instance of the arrays is kept per thread, see {@link #get()}.
+ * @author Jonathan Groff Copyright (C) NeoCoreTechs 2025
+ *
+ */
+final class SsdBoxes {
+	private static final ThreadLocal<SsdBoxes> perThread = ThreadLocal.withInitial(SsdBoxes::new);
+	// decoded box of each position
+	float[] ymin = new float[0];
+	float[] xmin = new float[0];
+	float[] ymax = new float[0];
+	float[] xmax = new float[0];
+	// gathered predictions and box priors of each position
+	float[] ty = new float[0];
+	float[] tx = new float[0];
+	float[] th = new float[0];
+	float[] tw = new float[0];
+	float[] py = new float[0];
+	float[] px = new float[0];
+	float[] ph = new float[0];
+	float[] pw = new float[0];
+
+	private SsdBoxes() {}
+	/**
+	 * @return The boxes of the calling thread
+	 */
+	static SsdBoxes get() {
+		return perThread.get();
+	}
+	/**
+	 * Decode the boxes of the quantized predictions, dequantized through the table of the tensor.
+	 * @param predictions quantized predictions, 4 per prior
+	 * @param table lookup table of the predictions
+	 * @param boxPriors box priors, rows ycenter, xcenter, h, w
+	 * @param priors prior of each position, output[0]
+	 * @param n number of positions
+	 */
+	void decode(MemorySegment predictions, QuantTable table, float[][] boxPriors, int[] priors, int n) {
+		ensure(n);
+		for (int p = 0; p < n; p++) {
+			long i = priors[p] * 4L;
+			ty[p] = table.deqnt(predictions.get(JAVA_BYTE, i));
+			tx[p] = table.deqnt(predictions.get(JAVA_BYTE, i + 1));
+			th[p] = table.deqnt(predictions.get(JAVA_BYTE, i + 2));
+			tw[p] = table.deqnt(predictions.get(JAVA_BYTE, i + 3));
+		}
+		decode(boxPriors, priors, n);
+	}
+	/**
+	 * Decode the boxes of quantized predictions left in the native layout of the NPU.
+	 * @param predictions quantized predictions, 4 per prior
+	 * @param layout native layout of the predictions
+	 * @param table lookup table of the predictions
+	 * @param boxPriors box priors, rows ycenter, xcenter, h, w
+	 * @param priors prior of each position, output[0]
+	 * @param n number of positions
+	 */
+	void decode(MemorySegment predictions, TensorLayout layout, QuantTable table, float[][] boxPriors, int[] priors, int n) {
+		ensure(n);
+		for (int p = 0; p < n; p++) {
+			long i = priors[p] * 4L;
+			ty[p] = table.deqnt(predictions.get(JAVA_BYTE, layout.at(i)));
+			tx[p] = table.deqnt(predictions.get(JAVA_BYTE, layout.at(i + 1)));
+			th[p] = table.deqnt(predictions.get(JAVA_BYTE, layout.at(i + 2)));
+			tw[p] = table.deqnt(predictions.get(JAVA_BYTE, layout.at(i + 3)));
+		}
+		decode(boxPriors, priors, n);
+	}
+	/**
+	 * Decode the boxes of float predictions.
+	 * @param predictions predictions, 4 per prior
+	 * @param boxPriors box priors, rows ycenter, xcenter, h, w
+	 * @param priors prior of each position, output[0]
+	 * @param n number of positions
+	 */
+	void decode(float[] predictions, float[][] boxPriors, int[] priors, int n) {
+		decode(MemorySegment.ofArray(predictions), boxPriors, priors, n);
+	}
+	/**
+	 * Decode the boxes of want_float predictions indexed in place through their float view, see detect_result.floats.
+	 * @param predictions float view of the predictions, 4 per prior
+	 * @param boxPriors box priors, rows ycenter, xcenter, h, w
+	 * @param priors prior of each position, output[0]
+	 * @param n number of positions
+	 */
+	void decode(MemorySegment predictions, float[][] boxPriors, int[] priors, int n) {
+		decode(predictions, boxPriors, priors, n, false);
+	}
+	/**
+	 * Decode the boxes of want_float or FLOAT16 predictions, the halves of the surviving priors only converted.
+	 * @param predictions predictions, 4 per prior
+	 * @param boxPriors box priors, rows ycenter, xcenter, h, w
+	 * @param priors prior of each position, output[0]
+	 * @param n number of positions
+	 * @param half true if the predictions are FLOAT16
+	 */
+	void decode(MemorySegment predictions, float[][] boxPriors, int[] priors, int n, boolean half) {
+		ensure(n);
+		for (int p = 0; p < n; p++) {
+			long i = priors[p] * 4L;
+			ty[p] = detect_result.value(predictions, i, half);
+			tx[p] = detect_result.value(predictions, i + 1, half);
+			th[p] = detect_result.value(predictions, i + 2, half);
+			tw[p] = detect_result.value(predictions, i + 3, half);
+		}
+		decode(boxPriors, priors, n);
+	}
+
+	private void decode(float[][] boxPriors, int[] priors, int n) {
+		for (int p = 0; p < n; p++) {
+			int i = priors[p];
+			py[p] = boxPriors[0][i];
+			px[p] = boxPriors[1][i];
+			ph[p] = boxPriors[2][i];
+			pw[p] = boxPriors[3][i];
+		}
+		if (detect_result.VECTORIZE) {
+			DetectKernels.decodeSSD(this, n);
+			return;
+		}
+		for (int p = 0; p < n; p++) {
+			float ycenter = ty[p] / detect_result.Y_SCALE * ph[p] + py[p];
+			float xcenter = tx[p] / detect_result.X_SCALE * pw[p] + px[p];
+			float h       = (float)Math.exp(th[p] / detect_result.H_SCALE) * ph[p];
+			float w       = (float)Math.exp(tw[p] / detect_result.W_SCALE) * pw[p];
+			ymin[p] = ycenter - h / 2.0f;
+			xmin[p] = xcenter - w / 2.0f;
+			ymax[p] = ycenter + h / 2.0f;
+			xmax[p] = xcenter + w / 2.0f;
+		}
+	}
+
+	private void ensure(int n) {
+		if (ymin.length < n) {
+			ymin = new float[n];
+			xmin = new float[n];
+			ymax = new float[n];
+			xmax = new float[n];
+			ty = new float[n];
+			tx = new float[n];
+			th = new float[n];
+			tw = new float[n];
+			py = new float[n];
+			px = new float[n];
+			ph = new float[n];
+			pw = new float[n];
+		}
+	}
+}
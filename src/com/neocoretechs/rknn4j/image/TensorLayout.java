@@ -0,0 +1,167 @@
+package com.neocoretechs.rknn4j.image;
+
+import com.neocoretechs.rknn4j.rknn_tensor_attr;
+import com.neocoretechs.rknn4j.RKNN.rknn_tensor_format;
+
+/**
+ * Where each element of an output tensor lies in the native layout the NPU wrote it in, so the decoders can read
+ * NHWC and NC1HWC2 outputs in place rather than have the runtime convert them to NCHW, and {@link InputPacker} write
+ * the input in the layout the NPU reads it in.<p/>
+ * An element is addressed by its channel c and its cell, the row i and column j of the logical NCHW tensor.
+ * The three layouts are the one form, blocks of c2 channels, each block holding its cells in rows of w_stride
+ * with the c2 channels of a cell adjacent:<br/>
+ * offset = (c / c2) * block + (i * w_stride + j) * c2 + c % c2<br/>
+ * NCHW is c2 = 1, a block being a channel plane, NHWC is a single block of all channels, c2 the channels of a
+ * cell, and NC1HWC2 is C1 blocks of C2 channels. In NHWC the classes of a cell are then contiguous, as are the
+ * classes of a block in NC1HWC2. The strides come from w_stride, h_stride and the native dims, and the extent of the
+ * tensor from size_with_stride.<p/>
+ * Offsets are in elements, bytes for the quantized outputs.
+ * @author Jonathan Groff Copyright (C) NeoCoreTechs 2025
+ *
+ */
+final class TensorLayout {
+	final rknn_tensor_format format;
+	final int channels; // logical channels
+	final int h;
+	final int w;
+	final int w_stride; // cells per row
+	final int c2; // adjacent channels of a cell
+	final long block; // elements of a block of c2 channels
+	final long size; // elements of the tensor, size_with_stride
+	private final long[] channel; // offset of each channel within its cell
+
+	private TensorLayout(rknn_tensor_format format, int channels, int h, int w, int w_stride, int h_stride, int c2, long size) {
+		this.format = format;
+		this.channels = channels;
+		this.h = h;
+		this.w = w;
+		this.w_stride = w_stride;
+		this.c2 = c2;
+		this.block = (long)h_stride * w_stride * c2;
+		this.channel = new long[channels];
+		for(int c = 0; c < channels; c++)
+			channel[c] = (c / c2) * block + c % c2;
+		long extent = channels == 0 ? 0 : at(channels - 1, h - 1, w - 1) + 1;
+		if(size < extent)
+			throw new RuntimeException("Native "+format+" tensor of "+size+" elements, "+extent+" addressed");
+		this.size = size;
+	}
+	/**
+	 * The dense NCHW layout of the converted outputs.
+	 * @param attr output tensor attributes
+	 * @return The layout
+	 */
+	static TensorLayout of(rknn_tensor_attr attr) {
+		int[] chw = logical(attr);
+		return new TensorLayout(rknn_tensor_format.RKNN_TENSOR_NCHW, chw[0], chw[1], chw[2], chw[2], chw[1], 1,
+				(long)chw[0] * chw[1] * chw[2]);
+	}
+	/**
+	 * The native layout of an output or input tensor.
+	 * @param attr tensor attributes, as queried with RKNN_QUERY_OUTPUT_ATTR or RKNN_QUERY_INPUT_ATTR
+	 * @param nativeAttr the same tensor as queried with RKNN_QUERY_NATIVE_OUTPUT_ATTR, RKNN_QUERY_NATIVE_NHWC_OUTPUT_ATTR,
+	 * RKNN_QUERY_NATIVE_INPUT_ATTR or RKNN_QUERY_NATIVE_NHWC_INPUT_ATTR
+	 * @return The layout
+	 * @throws RuntimeException if the native format is not NCHW, NHWC or NC1HWC2, or the tensor does not fit its size
+	 */
+	static TensorLayout of(rknn_tensor_attr attr, rknn_tensor_attr nativeAttr) {
+		int[] chw = logical(attr);
+		int[] dims = nativeAttr.getDims();
+		int w_stride = nativeAttr.getW_stride() > 0 ? nativeAttr.getW_stride() : chw[2];
+		int h_stride = nativeAttr.getH_stride() > 0 ? nativeAttr.getH_stride() : chw[1];
+		long size = Math.max(nativeAttr.getSize(), nativeAttr.getSize_with_stride()) / elementSize(nativeAttr);
+		switch(nativeAttr.getFmt()) {
+			case RKNN_TENSOR_NCHW:
+				return new TensorLayout(nativeAttr.getFmt(), chw[0], chw[1], chw[2], w_stride, h_stride, 1, size);
+			case RKNN_TENSOR_NHWC:
+				// dims N, H, W, C with any padding of C
+				return new TensorLayout(nativeAttr.getFmt(), chw[0], chw[1], chw[2], w_stride, h_stride,
+						Math.max(dims[nativeAttr.getN_dims() - 1], chw[0]), size);
+			case RKNN_TENSOR_NC1HWC2:
+				// dims N, C1, H, W, C2
+				return new TensorLayout(nativeAttr.getFmt(), chw[0], chw[1], chw[2], w_stride, h_stride,
+						dims[nativeAttr.getN_dims() - 1], size);
+			default:
+				throw new RuntimeException("Unsupported native format "+nativeAttr.getFmt());
+		}
+	}
+	/**
+	 * @return channels, height and width of the tensor, trailing dims of 1 where it has fewer than 4
+	 */
+	private static int[] logical(rknn_tensor_attr attr) {
+		int[] dims = attr.getDims();
+		int n = attr.getN_dims();
+		if(n == 4 && attr.getFmt() == rknn_tensor_format.RKNN_TENSOR_NHWC)
+			return new int[] {dims[3], dims[1], dims[2]};
+		return new int[] {n > 1 ? dims[1] : 1, n > 2 ? dims[2] : 1, n > 3 ? dims[3] : 1};
+	}
+
+	private static int elementSize(rknn_tensor_attr attr) {
+		if(attr.getType() == null)
+			return 1;
+		switch(attr.getType()) {
+			case RKNN_TENSOR_FLOAT32:
+			case RKNN_TENSOR_INT32:
+			case RKNN_TENSOR_UINT32:
+				return 4;
+			case RKNN_TENSOR_FLOAT16:
+			case RKNN_TENSOR_INT16:
+			case RKNN_TENSOR_UINT16:
+				return 2;
+			case RKNN_TENSOR_INT64:
+				return 8;
+			default:
+				return 1;
+		}
+	}
+	/**
+	 * @return true if NCHW, read by the planar decoders
+	 */
+	boolean planar() {
+		return c2 == 1;
+	}
+	/**
+	 * @param c logical channel
+	 * @return Offset of the channel within its cell, add to {@link #cell(int, int)}
+	 */
+	long channel(int c) {
+		return channel[c];
+	}
+	/**
+	 * @param i row
+	 * @param j column
+	 * @return Offset of the cell, channel 0
+	 */
+	long cell(int i, int j) {
+		return ((long)i * w_stride + j) * c2;
+	}
+	/**
+	 * @return Offset of channel c of cell i, j
+	 */
+	long at(int c, int i, int j) {
+		return channel[c] + cell(i, j);
+	}
+	/**
+	 * @param index element index in the dense NCHW tensor
+	 * @return Offset of the element
+	 */
+	long at(long index) {
+		int plane = h * w;
+		int c = (int)(index / plane);
+		int r = (int)(index % plane);
+		return at(c, r / w, r % w);
+	}
+	/**
+	 * @param c first channel
+	 * @param n number of channels
+	 * @return true if the channels c..c+n-1 of a cell are adjacent
+	 */
+	boolean contiguous(int c, int n) {
+		return n <= 1 || c / c2 == (c + n - 1) / c2;
+	}
+
+	@Override
+	public String toString() {
+		return format+" c="+channels+" h="+h+" w="+w+" w_stride="+w_stride+" c2="+c2+" block="+block+" size="+size;
+	}
+}
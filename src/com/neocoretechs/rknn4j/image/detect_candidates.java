@@ -0,0 +1,236 @@
+package com.neocoretechs.rknn4j.image;
+
+import java.util.Arrays;
+
+/**
+ * Candidate boxes gathered by the decoders ahead of non-maximal suppression.<p/>
+ * The candidates are held as parallel primitive arrays, structure of arrays, which grow as needed and are reused
+ * frame after frame, so decoding neither boxes values nor copies them into arrays afterward.
+ * Candidate i is the box x[i], y[i], w[i], h[i] with upper left corner x,y, its score[i] and classId[i].<p/>
+ * With a budget set, at most budget candidates are kept, those of highest score, by a min-heap of the candidate
+ * slots on score: once full, a candidate scoring above the lowest kept replaces it, otherwise it is dropped.
+ * Sorting and NMS then see a bounded number of candidates however crowded the frame or low the threshold.<p/>
+ * One instance is kept per thread, see {@link #get()}.
+ * @author Jonathan Groff Copyright (C) NeoCoreTechs 2025
+ *
+ */
+public class detect_candidates {
+	private static final int INITIAL_CAPACITY = 256;
+	private static final ThreadLocal<detect_candidates> perThread = ThreadLocal.withInitial(detect_candidates::new);
+	public float[] x;
+	public float[] y;
+	public float[] w;
+	public float[] h;
+	public float[] score;
+	public int[] classId;
+	public int count;
+	// maximum candidates kept, 0 for no limit, and the min-heap on score of the candidate slots when limited
+	private int budget;
+	private int[] heap;
+	// sort scratch, the scores in descending order and the candidate index of each
+	float[] sortedScore;
+	int[] order;
+	// decoder scratch, the grid cells that pass a screening scan
+	private int[] cells;
+	private byte[] cellScores;
+	private int[] cellClasses;
+	// YOLOv11 DFL scratch, the exponentials of the box bins of a cell and the decoded distances
+	private float[] dflExps;
+	private final float[] dflBox = new float[4];
+
+	public detect_candidates() {
+		this(INITIAL_CAPACITY);
+	}
+
+	public detect_candidates(int capacity) {
+		capacity = Math.max(capacity, 1);
+		x = new float[capacity];
+		y = new float[capacity];
+		w = new float[capacity];
+		h = new float[capacity];
+		score = new float[capacity];
+		classId = new int[capacity];
+	}
+	/**
+	 * @return The candidates of the calling thread, cleared
+	 */
+	public static detect_candidates get() {
+		return get(0);
+	}
+	/**
+	 * @param budget Maximum number of candidates kept, the highest scoring, 0 for no limit
+	 * @return The candidates of the calling thread, cleared, with the budget set
+	 */
+	public static detect_candidates get(int budget) {
+		detect_candidates c = perThread.get();
+		c.clear();
+		c.setBudget(budget);
+		return c;
+	}
+
+	public void clear() {
+		count = 0;
+	}
+
+	public int getBudget() {
+		return budget;
+	}
+	/**
+	 * @param budget Maximum number of candidates kept, the highest scoring, 0 for no limit. Set while empty, see get(int).
+	 */
+	void setBudget(int budget) {
+		this.budget = Math.max(budget, 0);
+		if(this.budget > 0 && (heap == null || heap.length < this.budget))
+			heap = new int[this.budget];
+	}
+
+	public int size() {
+		return count;
+	}
+
+	public int capacity() {
+		return x.length;
+	}
+	/**
+	 * Append a candidate, growing the arrays if full.
+	 * @param bx upper left x
+	 * @param by upper left y
+	 * @param bw width
+	 * @param bh height
+	 * @param s score
+	 * @param id class id
+	 */
+	public void add(float bx, float by, float bw, float bh, float s, int id) {
+		int slot;
+		if(budget > 0 && count == budget) {
+			// full, replace the lowest score if this one is higher
+			slot = heap[0];
+			if(!(s > score[slot]))
+				return;
+			set(slot, bx, by, bw, bh, s, id);
+			siftDown(0);
+			return;
+		}
+		if(count == x.length)
+			grow(count * 2);
+		slot = count++;
+		set(slot, bx, by, bw, bh, s, id);
+		if(budget > 0) {
+			heap[slot] = slot;
+			siftUp(slot);
+		}
+	}
+
+	/**
+	 * Append the candidates of another, in its order, as by add.
+	 * @param other Candidates to append
+	 */
+	public void addAll(detect_candidates other) {
+		for(int i = 0; i < other.count; i++)
+			add(other.x[i], other.y[i], other.w[i], other.h[i], other.score[i], other.classId[i]);
+	}
+
+	private void set(int slot, float bx, float by, float bw, float bh, float s, int id) {
+		x[slot] = bx;
+		y[slot] = by;
+		w[slot] = bw;
+		h[slot] = bh;
+		score[slot] = s;
+		classId[slot] = id;
+	}
+
+	private void siftUp(int k) {
+		int slot = heap[k];
+		while(k > 0) {
+			int parent = (k - 1) >>> 1;
+			if(!(score[slot] < score[heap[parent]]))
+				break;
+			heap[k] = heap[parent];
+			k = parent;
+		}
+		heap[k] = slot;
+	}
+
+	private void siftDown(int k) {
+		int slot = heap[k];
+		int half = count >>> 1;
+		while(k < half) {
+			int child = 2 * k + 1;
+			if(child + 1 < count && score[heap[child + 1]] < score[heap[child]])
+				++child;
+			if(!(score[heap[child]] < score[slot]))
+				break;
+			heap[k] = heap[child];
+			k = child;
+		}
+		heap[k] = slot;
+	}
+
+	private void grow(int capacity) {
+		x = Arrays.copyOf(x, capacity);
+		y = Arrays.copyOf(y, capacity);
+		w = Arrays.copyOf(w, capacity);
+		h = Arrays.copyOf(h, capacity);
+		score = Arrays.copyOf(score, capacity);
+		classId = Arrays.copyOf(classId, capacity);
+	}
+	/**
+	 * @param size Minimum length
+	 * @return Scratch for the grid cell indexes produced by a screening scan
+	 */
+	int[] cells(int size) {
+		if(cells == null || cells.length < size)
+			cells = new int[size];
+		return cells;
+	}
+	/**
+	 * @param size Minimum length
+	 * @return Scratch for the quantized score of each cell from cells
+	 */
+	byte[] cellScores(int size) {
+		if(cellScores == null || cellScores.length < size)
+			cellScores = new byte[size];
+		return cellScores;
+	}
+	/**
+	 * @param size Minimum length
+	 * @return Scratch for the class of each cell from cells
+	 */
+	int[] cellClasses(int size) {
+		if(cellClasses == null || cellClasses.length < size)
+			cellClasses = new int[size];
+		return cellClasses;
+	}
+	/**
+	 * @param size Minimum length, dfl_len * 4
+	 * @return Scratch for the exponentials of the DFL bins of one cell
+	 */
+	float[] dflExps(int size) {
+		if(dflExps == null || dflExps.length < size)
+			dflExps = new float[size];
+		return dflExps;
+	}
+	/**
+	 * @return Scratch for the 4 distances decoded by DFL
+	 */
+	float[] dflBox() {
+		return dflBox;
+	}
+	/**
+	 * Fill order with 0..count-1 and sortedScore with the scores, ready to be sorted together.
+	 */
+	void prepareSort() {
+		if(order == null || order.length < count) {
+			order = new int[x.length];
+			sortedScore = new float[x.length];
+		}
+		for(int i = 0; i < count; i++)
+			order[i] = i;
+		System.arraycopy(score, 0, sortedScore, 0, count);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("count=%d capacity=%d budget=%d", count, x.length, budget);
+	}
+}
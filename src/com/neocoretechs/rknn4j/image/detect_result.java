@@ -1,11 +1,18 @@
 package com.neocoretechs.rknn4j.image;
 
+import static java.lang.foreign.ValueLayout.JAVA_BYTE;
+import static java.lang.foreign.ValueLayout.JAVA_FLOAT_UNALIGNED;
+import static java.lang.foreign.ValueLayout.JAVA_SHORT_UNALIGNED;
+
+import java.lang.foreign.MemorySegment;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 import com.neocoretechs.rknn4j.rknn_input_output_num;
 import com.neocoretechs.rknn4j.rknn_output;
@@ -26,22 +33,29 @@ import com.neocoretechs.rknn4j.rknn_tensor_attr;
 public class detect_result {
 	private static boolean DEBUG = false;
 	private static boolean DEBUG_VERBOSE = false;
+	// use the Vector API kernels of DetectKernels when the incubator module is present
+	static final boolean VECTORIZE = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+	// split post processing over the common fork-join pool, see setParallel
+	private static volatile boolean parallel = false;
+	// fewest InceptionSSD priors worth a fork-join chunk
+	static int FILTER_CHUNK_MIN = 256;
 	String name;
 	float probability;
 	Rectangle box; //upper left x and y, width, height
 	
+	// default class count of YOLO models, the plan of a model takes its own from the output tensors, see PostProcessPlan
 	public static final int OBJ_CLASS_NUM  =   80;
 	public static final float NMS_THRESH   = 0.45f;
 	public static final float BOX_THRESH   = 0.15f;//   0.25f;
 	public static final int PROP_BOX_SIZE   = (5+OBJ_CLASS_NUM);
 	
-	// constants for SSD
+	// constants for SSD, NUM_RESULTS and NUM_CLASS are the defaults of the calls without a plan
 	public static final int NUM_RESULTS = 1917;
 	public static float MIN_SCORE     = .15f;//0.4f;
 	public static int NUM_CLASS = 91;
 	public static final float NMS_THRESH_SSD   = 0.5f;
 	
-	// anchors for YOLOV5
+	// default anchors for YOLOV5, a plan may be given others, see PostProcessPlan
 	public static final int anchor0[] = {10, 13, 16, 30, 33, 23};
 	public static final int anchor1[] = {30, 61, 62, 45, 59, 119};
 	public static final int anchor2[] = {116, 90, 156, 198, 373, 326};
@@ -195,29 +209,6 @@ public class detect_result {
 		return (u <= 0.f ? 0.f : (i / u));
 	}
 	
-	/**
-	 * InceptionSSD detection box anchors
-	 * @param predictions Populated array which will be re-ordered
-	 * @param boxPriors Populated array which will be read-only
-	 */
-	static void decodeCenterSizeBoxes(float[] predictions, float[][] boxPriors) {
-	  for (int i = 0; i < NUM_RESULTS; i++) {
-	    float ycenter = predictions[i * 4 + 0] / Y_SCALE * boxPriors[2][i] + boxPriors[0][i];
-	    float xcenter = predictions[i * 4 + 1] / X_SCALE * boxPriors[3][i] + boxPriors[1][i];
-	    float h       = (float)Math.exp(predictions[i * 4 + 2] / H_SCALE) * boxPriors[2][i];
-	    float w       = (float)Math.exp(predictions[i * 4 + 3] / W_SCALE) * boxPriors[3][i];
-
-	    float ymin = ycenter - h / 2.0f;
-	    float xmin = xcenter - w / 2.0f;
-	    float ymax = ycenter + h / 2.0f;
-	    float xmax = xcenter + w / 2.0f;
-
-	    predictions[i * 4 + 0] = ymin;
-	    predictions[i * 4 + 1] = xmin;
-	    predictions[i * 4 + 2] = ymax;
-	    predictions[i * 4 + 3] = xmax;
-	  }
-	}
 	/**
 	 * FIlter results based on MIN_SCORE and NUM_RESULTS
 	 * @param outputClasses
@@ -227,10 +218,30 @@ public class detect_result {
 	 * @return validResult
 	 */
 	static int filterValidResult(float[] outputClasses, int[][] output, int numClasses, float[] props) {
+	  return filterValidResult(MemorySegment.ofArray(outputClasses), output, NUM_RESULTS, numClasses, props);
+	}
+	/**
+	 * FIlter results based on MIN_SCORE and NUM_RESULTS, indexing want_float output classes in place, see {@link #floats(byte[])}
+	 * @param outputClasses float view of the output classes
+	 * @param output
+	 * @param numResults number of priors
+	 * @param numClasses
+	 * @param props
+	 * @return validResult
+	 */
+	static int filterValidResult(MemorySegment outputClasses, int[][] output, int numResults, int numClasses, float[] props) {
+	  return filterValidResult(outputClasses, output, numResults, numClasses, props, false);
+	}
+	/**
+	 * FIlter results based on MIN_SCORE and NUM_RESULTS, as above, of want_float or FLOAT16 output classes.
+	 * @param half true if the output classes are FLOAT16
+	 */
+	static int filterValidResult(MemorySegment outputClasses, int[][] output, int numResults, int numClasses, float[] props,
+			boolean half) {
 	  int   validCount = 0;
 	  float min_score  = (float) unsigmoid(MIN_SCORE);
 	  // Scale them back to the input size.
-	  for (int i = 0; i < NUM_RESULTS; i++) {
+	  for (int i = 0; i < numResults; i++) {
 	    float topClassScore      = -1000.0f;
 	    int   topClassScoreIndex = -1;
 	    // Skip the first catch-all class.
@@ -238,7 +249,7 @@ public class detect_result {
 	      // x and sigmoid(x) has same monotonicity
 	      // so compare x and compare sigmoid(x) is same
 	      // float score = (float) sigmoid(outputClasses[i*numClasses+j]);
-	      float score = outputClasses[i * numClasses + j];
+	      float score = value(outputClasses, (long)i * numClasses + j, half);
 	      if(DEBUG)
 	    	  System.out.println("filterValidResult Result#="+i+" Class#="+j+" Score="+score+" min_score="+min_score);
 	      if (score > topClassScore) {
@@ -251,7 +262,7 @@ public class detect_result {
 	    if (topClassScore >= min_score) {
 	      output[0][validCount] = i;
 	      output[1][validCount] = topClassScoreIndex;
-	      props[validCount]     = (float) sigmoid(outputClasses[i * numClasses + topClassScoreIndex]);
+	      props[validCount]     = (float) sigmoid(topClassScore);
 	      if(DEBUG) {
 	    	  System.out.println("***filterValidResult New output validCount="+validCount+" output[0]="+i+" output[1]="+topClassScoreIndex+" props[validCount]="+props[validCount]+" topClassSCore="+topClassScore+" min_score="+min_score);
 	      }
@@ -260,25 +271,121 @@ public class detect_result {
 	  }
 	  return validCount;
 	}
+	/**
+	 * FIlter results based on MIN_SCORE and NUM_RESULTS, comparing the quantized output classes in place against
+	 * MIN_SCORE quantized once, since the dequantized value is monotonic in the quantized one. Only the winning logit of
+	 * each surviving prior is dequantized, through the sigmoid table of the tensor.<p/>
+	 * When parallel is set, see {@link #setParallel(boolean)}, the priors are split in chunks over the common fork-join pool,
+	 * the survivors of each chunk are then gathered in prior order, so the result is the same as the sequential filter.
+	 * @param outputClasses quantized output classes
+	 * @param table dequant and sigmoid table of the output classes
+	 * @param output
+	 * @param numClasses
+	 * @param props
+	 * @return validResult
+	 */
+	static int filterValidResult(MemorySegment outputClasses, QuantTable table, int[][] output, int numClasses, float[] props) {
+	  return filterValidResult(outputClasses, table, output, NUM_RESULTS, numClasses, props,
+			  table.atLeast((float) unsigmoid(MIN_SCORE)));
+	}
+	/**
+	 * As above, with MIN_SCORE quantized ahead and the number of priors, as in the plan of the model.
+	 * @param numResults number of priors
+	 * @param min_score quantized minimum score, see QuantTable.atLeast
+	 */
+	static int filterValidResult(MemorySegment outputClasses, QuantTable table, int[][] output, int numResults, int numClasses,
+			float[] props, int min_score) {
+	  int chunks = parallel ? Math.min(ForkJoinPool.getCommonPoolParallelism(), numResults / FILTER_CHUNK_MIN) : 1;
+	  if (chunks < 2)
+		  return filterValidResult(outputClasses, table, output, numClasses, props, min_score, 0, numResults);
+	  // each chunk fills output and props from its first prior on, a prior yields at most one result
+	  ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[chunks];
+	  int[] counts = new int[chunks];
+	  for (int c = 0; c < chunks; c++) {
+		  final int chunk = c;
+		  final int from = numResults * c / chunks;
+		  final int to = numResults * (c + 1) / chunks;
+		  tasks[c] = ForkJoinPool.commonPool().submit(() -> {
+			  counts[chunk] = filterValidResult(outputClasses, table, output, numClasses, props, min_score, from, to);
+		  });
+	  }
+	  int validCount = 0;
+	  for (int c = 0; c < chunks; c++) {
+		  tasks[c].join();
+		  int from = numResults * c / chunks;
+		  if (from != validCount) {
+			  System.arraycopy(output[0], from, output[0], validCount, counts[c]);
+			  System.arraycopy(output[1], from, output[1], validCount, counts[c]);
+			  System.arraycopy(props, from, props, validCount, counts[c]);
+		  }
+		  validCount += counts[c];
+	  }
+	  return validCount;
+	}
+	/**
+	 * Filter the priors from..to, filling output and props from index from.
+	 * @param min_score quantized minimum score, see QuantTable.atLeast
+	 * @return number of results of the priors
+	 */
+	private static int filterValidResult(MemorySegment outputClasses, QuantTable table, int[][] output, int numClasses, float[] props,
+			int min_score, int from, int to) {
+	  int   validCount = from;
+	  for (int i = from; i < to; i++) {
+	    long  row                = (long)i * numClasses;
+	    int   topClass           = Integer.MIN_VALUE;
+	    int   topClassScoreIndex = -1;
+	    // Skip the first catch-all class.
+	    for (int j = 1; j < numClasses; j++) {
+	      byte q = outputClasses.get(JAVA_BYTE, row + j);
+	      if (q > topClass) {
+	        topClassScoreIndex = j;
+	        topClass           = q;
+	      }
+	    }
+	    if (topClass >= min_score) {
+	      output[0][validCount] = i;
+	      output[1][validCount] = topClassScoreIndex;
+	      props[validCount]     = (float) table.sigmoid((byte)topClass);
+	      if(DEBUG) {
+	    	  System.out.println("***filterValidResult New output validCount="+validCount+" output[0]="+i+" output[1]="+topClassScoreIndex+" props[validCount]="+props[validCount]+" topClass="+topClass+" min_score="+min_score);
+	      }
+	      ++validCount;
+	    }
+	  }
+	  return validCount - from;
+	}
+	/**
+	 * Split post processing over the common fork-join pool when it has more than one worker, off by default.
+	 * The results are the same as those of sequential processing.
+	 * @param parallel true to split
+	 */
+	public static void setParallel(boolean parallel) {
+		detect_result.parallel = parallel;
+	}
+	/**
+	 * @return true if post processing is split over the common fork-join pool
+	 */
+	public static boolean isParallel() {
+		return parallel;
+	}
 	/**
 	 * Perform NMS (Non-Maximal Suppression) to eliminate overlapping bounding boxes in the YOLO model
 	 * @param validCount
-	 * @param outputLocations
-	 * @param classIds
+	 * @param candidates boxes and class ids
 	 * @param order
 	 * @param filterId
 	 * @param threshold
 	 */
-	static void nmsYOLO(int validCount, float[] outputLocations, int[] classIds, int[] order, int filterId, float threshold) {
+	static void nmsYOLO(int validCount, detect_candidates candidates, int[] order, int filterId, float threshold) {
 		for (int i = 0; i < validCount; i++) {
 			int n = order[i];
-			if (n == -1 || classIds[i] != filterId) {
+			if (n == -1 || candidates.classId[i] != filterId) {
 				continue;
 			}
-			float xmin0 = outputLocations[n * 4 + 0];
-			float ymin0 = outputLocations[n * 4 + 1];
-			float xmax0 = outputLocations[n * 4 + 0] + outputLocations[n * 4 + 2];
-			float ymax0 = outputLocations[n * 4 + 1] + outputLocations[n * 4 + 3];
+			float xmin0 = candidates.x[n];
+			float ymin0 = candidates.y[n];
+			float xmax0 = candidates.x[n] + candidates.w[n];
+			float ymax0 = candidates.y[n] + candidates.h[n];
 
 			for (int j = i + 1; j < validCount; j++) {
 				int m = order[j];
@@ -286,10 +393,10 @@ public class detect_result {
 					continue;
 				}
 
-				float xmin1 = outputLocations[m * 4 + 0];
-				float ymin1 = outputLocations[m * 4 + 1];
-				float xmax1 = outputLocations[m * 4 + 0] + outputLocations[m * 4 + 2];
-				float ymax1 = outputLocations[m * 4 + 1] + outputLocations[m * 4 + 3];
+				float xmin1 = candidates.x[m];
+				float ymin1 = candidates.y[m];
+				float xmax1 = candidates.x[m] + candidates.w[m];
+				float ymax1 = candidates.y[m] + candidates.h[m];
 
 				float iou = calculateOverlapYOLO(xmin0, ymin0, xmax0, ymax0, xmin1, ymin1, xmax1, ymax1);
 
@@ -299,44 +406,50 @@ public class detect_result {
 			}
 		}
 	}
+	/**
+	 * Perform NMS (Non-Maximal Suppression) for all classes in the YOLO model, with the same result as nmsYOLO
+	 * called for each class id in ascending order, but with the candidates bucketed by class once, see {@link NmsBuckets}.
+	 * @param validCount
+	 * @param candidates boxes and class ids
+	 * @param order
+	 * @param threshold
+	 */
+	static void nmsYOLO(int validCount, detect_candidates candidates, int[] order, float threshold) {
+		nmsYOLO(validCount, candidates, order, threshold, 0);
+	}
+	/**
+	 * Perform NMS (Non-Maximal Suppression) for all classes in the YOLO model, stopping once maxDetections boxes are kept.
+	 * The result is that without a limit truncated to maxDetections boxes, see {@link NmsBuckets}.
+	 * @param validCount
+	 * @param candidates boxes and class ids
+	 * @param order
+	 * @param threshold
+	 * @param maxDetections maximum boxes kept, 0 for no limit
+	 */
+	static void nmsYOLO(int validCount, detect_candidates candidates, int[] order, float threshold, int maxDetections) {
+		NmsBuckets.get().yolo(validCount, candidates, order, threshold, maxDetections);
+	}
 	
 	/**
 	 * Perform NMS (Non-Maximal Suppression) to eliminate overlapping bounding boxes in the InceptionSSD model.
 	 * @param validCount
-	 * @param outputLocations
+	 * @param boxes
 	 * @param output
 	 * @param threshold
 	 */
-	static void nmsSSD(int validCount, float[] outputLocations, int[][] output, float threshold) {
-	  for (int i = 0; i < validCount; i++) {
-	    if (output[0][i] == -1) {
-	      continue;
-	    }
-	    int n = output[0][i];
-	    for (int j = i + 1; j < validCount; j++) {
-	      int m = output[0][j];
-	      if (m == -1) {
-	        continue;
-	      }
-	      float xmin0 = outputLocations[n * 4 + 1];
-	      float ymin0 = outputLocations[n * 4 + 0];
-	      float xmax0 = outputLocations[n * 4 + 3];
-	      float ymax0 = outputLocations[n * 4 + 2];
-
-	      float xmin1 = outputLocations[m * 4 + 1];
-	      float ymin1 = outputLocations[m * 4 + 0];
-	      float xmax1 = outputLocations[m * 4 + 3];
-	      float ymax1 = outputLocations[m * 4 + 2];
-
-	      float iou = calculateOverlapSSD(xmin0, ymin0, xmax0, ymax0, xmin1, ymin1, xmax1, ymax1);
-
-	      if (iou >= threshold) {
-				if(DEBUG)
-					System.out.printf("nmsSSD Source=%d, target=%d xmin0=%f ymin0=%f xmax0=%f ymax0=%f xmin1=%f ymin1=%f xmax1=%f ymax1=%f iou=%f >= threshold=%f overwriting output[0][j]=%d%n",i,j,xmin0,ymin0,xmax0,ymax0,xmin1,ymin1,xmax1,ymax1,iou,threshold,output[0][j]);
-	        output[0][j] = -1;
-	      }
-	    }
-	  }
+	static void nmsSSD(int validCount, SsdBoxes boxes, int[][] output, float threshold) {
+		nmsSSD(validCount, boxes, output, threshold, 0);
+	}
+	/**
+	 * Perform NMS (Non-Maximal Suppression) in the InceptionSSD model, stopping once maxDetections boxes are kept.
+	 * @param validCount
+	 * @param boxes decoded box of each position
+	 * @param output
+	 * @param threshold
+	 * @param maxDetections maximum boxes kept, 0 for no limit
+	 */
+	static void nmsSSD(int validCount, SsdBoxes boxes, int[][] output, float threshold, int maxDetections) {
+		NmsBuckets.get().ssd(validCount, boxes, output, threshold, maxDetections);
 	}
 	
 	static double sigmoid(float x) { return 1.0 / (1.0 + Math.exp(-x)); }
@@ -379,73 +492,42 @@ public class detect_result {
 	static float extractFloat(byte[] buffer, int ptr, int zp, float scale) {
 		return deqnt_affine_to_f32(buffer[ptr], zp, scale);
 	}
+	
+	static float extractFloat(MemorySegment buffer, long ptr, int zp, float scale) {
+		return deqnt_affine_to_f32(buffer.get(JAVA_BYTE, ptr), zp, scale);
+	}
+	/**
+	 * View each output buffer as a segment, so the quantized decoders read the Java arrays and
+	 * NPU resident tensor memory alike.
+	 * @param bufs The outputs from rknn_outputs_get
+	 * @return The buffers as heap segments
+	 */
+	public static MemorySegment[] segments(rknn_output[] bufs) {
+		MemorySegment[] segs = new MemorySegment[bufs.length];
+		for(int i = 0; i < bufs.length; i++)
+			segs[i] = MemorySegment.ofArray(bufs[i].getBuf());
+		return segs;
+	}
 
 	/**
-	 * Perform a quicksort on the indexes involved in the YOLO model.
-	 * @param input
-	 * @param left
-	 * @param right
-	 * @param indices
-	 * @return
+	 * Sort the scores of the YOLO model in descending order, with the candidate indexes along with them.
+	 * Equal scores keep their order, see {@link ScoreSort}.
+	 * @param input scores
+	 * @param n number of scores
+	 * @param indices candidate indexes
 	 */
-	static int quick_sort_indice_inverse(float[] input, int left, int right, int[] indices) {
-	  float key;
-	  int   key_index;
-	  int   low  = left;
-	  int   high = right;
-	  if (left < right) {
-	    key_index = indices[left];
-	    key       = input[left];
-	    while (low < high) {
-	      while (low < high && input[high] <= key) {
-	        high--;
-	      }
-	      input[low]   = input[high];
-	      indices[low] = indices[high];
-	      while (low < high && input[low] >= key) {
-	        low++;
-	      }
-	      input[high]   = input[low];
-	      indices[high] = indices[low];
-	    }
-	    input[low]   = key;
-	    indices[low] = key_index;
-	    quick_sort_indice_inverse(input, left, low - 1, indices);
-	    quick_sort_indice_inverse(input, low + 1, right, indices);
-	  }
-	  return low;
+	static void sort_indice_inverse(float[] input, int n, int[] indices) {
+		ScoreSort.get().sort(input, indices, n);
 	}
 	/**
-	 * Sort the InceptSSD parameters
+	 * Sort the InceptSSD parameters in descending order of props, output[0] and output[1] along with them.
+	 * Equal props keep their order, see {@link ScoreSort}.
 	 * @param output
 	 * @param props
 	 * @param sz
 	 */
 	static void sort(int[][] output, float[] props, int sz) {
-	  int i = 0;
-	  int j = 0;
-	  if (sz < 2) {
-	    return;
-	  }
-	  for (i = 0; i < sz - 1; i++) {
-	    int top = i;
-	    for (j = i + 1; j < sz; j++) {
-	      if (props[top] < props[j]) {
-	        top = j;
-	      }
-	    }
-	    if (i != top) {
-	      int   tmp1     = output[0][i];
-	      int   tmp2     = output[1][i];
-	      float prop     = props[i];
-	      output[0][i]   = output[0][top];
-	      output[1][i]   = output[1][top];
-	      props[i]       = props[top];
-	      output[0][top] = tmp1;
-	      output[1][top] = tmp2;
-	      props[top]     = prop;
-	    }
-	  }
+		ScoreSort.get().sort(props, output[0], output[1], sz);
 	}
 	
 	/**
@@ -456,9 +538,28 @@ public class detect_result {
 	 * @param qnt_zp 
 	 */
 	public static float[] process(byte[] input0, Integer qnt_zp, Float qnt_scale) {
-		float[] floatArray = new float[input0.length];
-		for(int i = 0; i < input0.length; i++)
-			floatArray[i] = extractFloat(input0, i, qnt_zp, qnt_scale);
+		return process(MemorySegment.ofArray(input0), qnt_zp.intValue(), qnt_scale.floatValue());
+	}
+	/**
+	 * FLOAT <p/>
+	 * Dequantize the InceptionSSD INT8 output layer read in place from a Java array or NPU tensor memory
+	 * @param input0 Input segment from NPU run convert to predictions
+	 * @param qnt_zp zero point
+	 * @param qnt_scale scale
+	 */
+	public static float[] process(MemorySegment input0, int qnt_zp, float qnt_scale) {
+		return process(input0, new QuantTable(qnt_zp, qnt_scale));
+	}
+	/**
+	 * FLOAT <p/>
+	 * Dequantize the InceptionSSD INT8 output layer through the lookup table of the tensor
+	 * @param input0 Input segment from NPU run convert to predictions
+	 * @param table dequant table of the tensor
+	 */
+	public static float[] process(MemorySegment input0, QuantTable table) {
+		float[] floatArray = new float[(int)input0.byteSize()];
+		for(int i = 0; i < floatArray.length; i++)
+			floatArray[i] = table.deqnt(input0.get(JAVA_BYTE, i));
 		return floatArray;
 	}
 	/**
@@ -480,28 +581,63 @@ public class detect_result {
 		}
 		return floatArray;
 	}
+	/**
+	 * FLOAT <p/>
+	 * Read only float view of a want_float output buffer, in the native order the NPU writes, little endian on the RK3588.
+	 * The float decoders index the view in place with JAVA_FLOAT_UNALIGNED rather than copying the buffer as process(byte[]) does.
+	 * @param buf output buffer from NPU run
+	 * @return The view, float i at byte 4*i
+	 */
+	public static MemorySegment floats(byte[] buf) {
+		return MemorySegment.ofArray(buf).asReadOnly();
+	}
+	/**
+	 * FLOAT <p/>
+	 * @param bufs want_float output buffers from NPU run
+	 * @return The float view of each, see {@link #floats(byte[])}
+	 */
+	public static MemorySegment[] floats(rknn_output[] bufs) {
+		MemorySegment[] segs = new MemorySegment[bufs.length];
+		for(int i = 0; i < bufs.length; i++)
+			segs[i] = floats(bufs[i].getBuf());
+		return segs;
+	}
+	/**
+	 * FLOAT <p/>
+	 * Value i of a float output layer, want_float, or FLOAT16 as a float model writes it when want_float is not set,
+	 * the half converted as it is read, so only the values a decoder touches are converted.
+	 * Float.float16ToFloat is an intrinsic where the CPU converts halves, F16C on x86, the FP16 conversions of ARMv8.
+	 * @param input the output layer
+	 * @param i index of the value
+	 * @param half true if FLOAT16
+	 * @return The value
+	 */
+	static float value(MemorySegment input, long i, boolean half) {
+		return half ? Float.float16ToFloat(input.getAtIndex(JAVA_SHORT_UNALIGNED, i)) : input.getAtIndex(JAVA_FLOAT_UNALIGNED, i);
+	}
 	/**
 	 * Process the InceptSSD arrays assembled from post processing output layers after extracting buffer data and
 	 * assembling regions and probabilities. Perform the non-maximal suppression and populate detect_result_group group object.
 	 * @param output 2 Layers output from NPU
-	 * @param predictionsArray Array of detection boxes
+	 * @param boxes Detection box of each position of output, decoded for the surviving priors only
 	 * @param props Array of object probabilities
 	 * @param labels category labels
 	 * @param group Instance of detect_result_group to be populated by processing
 	 * @param nms_threshold Non-Maximal suppression threshold
-	 * @param validCount Count of current valid (detected) prospective objects from the NPU
+	 * @param validCount Count of current valid (detected) prospective objects from the NPU, within the budget
+	 * @param maxDetections Maximum number of objects kept, NMS stops once reached, 0 for no limit
 	 * @param model_in_w width of model input
 	 * @param model_in_h height of model input
 	 * @param scale_w
 	 * @param scale_h
 	 * @return The size of the detected objects collection after processing
 	 */
-	static int process_arraysSSD(int[][] output, float[] predictionsArray, float[] props, String[] labels, 
-			detect_result_group group, float nms_threshold, int validCount, int model_in_w, int model_in_h, float scale_w, float scale_h) {
-		//
-		nmsSSD(validCount, predictionsArray, output, nms_threshold);
+	static int process_arraysSSD(int[][] output, SsdBoxes boxes, float[] props, String[] labels, 
+			detect_result_group group, float nms_threshold, int validCount, int maxDetections,
+			int model_in_w, int model_in_h, float scale_w, float scale_h) {
+		nmsSSD(validCount, boxes, output, nms_threshold, maxDetections);
 		if(DEBUG)
-			System.out.println("NonMaximal suppression done filterBoxesArray:"+Arrays.toString(predictionsArray));
+			System.out.println("NonMaximal suppression done output0:"+Arrays.toString(Arrays.copyOf(output[0], validCount)));
 	
 		ArrayList<detect_result> groupArray = new ArrayList<detect_result>();
 		/* box valid detect target */
@@ -512,10 +648,10 @@ public class detect_result {
 			int n = output[0][i];
 		    int topClassScoreIndex = output[1][i];
 
-		    int x1 = (int)(predictionsArray[n * 4 + 1] * model_in_w);
-		    int y1 = (int)(predictionsArray[n * 4 + 0] * model_in_h);
-		    int x2 = (int)(predictionsArray[n * 4 + 3] * model_in_w);
-		    int y2 = (int)(predictionsArray[n * 4 + 2] * model_in_h);
+		    int x1 = (int)(boxes.xmin[i] * model_in_w);
+		    int y1 = (int)(boxes.ymin[i] * model_in_h);
+		    int x2 = (int)(boxes.xmax[i] * model_in_w);
+		    int y2 = (int)(boxes.ymax[i] * model_in_h);
 		    // There's a bug that always shows toothbrush?
 		    if (x1 == 0 && x2 == 0 && y1 == 0 && y2 == 0)
 		    	continue;
@@ -561,6 +697,30 @@ public class detect_result {
 	        box[b] = acc_sum / exp_sum;
 	    }
 	}
+	/**
+	 * DFL softmax expectation as compute_dfl, from the exponentials of the bins already looked up in the
+	 * QuantTable of the box tensor. With the Vector API present the sums are taken in lanes, which may differ from
+	 * compute_dfl in the last bits, as the order of the float additions differs.
+	 * @param exps exp of each bin, 4 runs of dfl_len
+	 * @param dfl_len bins per distance
+	 * @param box receives the 4 distances
+	 */
+	static void compute_dfl_exp(float[] exps, int dfl_len, float[] box) {
+		if(VECTORIZE) {
+			DetectKernels.dfl(exps, dfl_len, box);
+			return;
+		}
+	    for (int b = 0; b < 4; b++) {
+	        float exp_sum = 0.0f;
+	        float acc_sum = 0.0f;
+	        for (int i = 0; i < dfl_len; i++) {
+	            float exp_val = exps[i + b * dfl_len];
+	            exp_sum += exp_val;
+	            acc_sum += exp_val * i;
+	        }
+	        box[b] = acc_sum / exp_sum;
+	    }
+	}
 	/**
 	 * INT8 AFFINE YOLOv5<p/>
 	 * Perform post processing on one of the output layers which was generated in INT8 default AFFINE format
@@ -571,156 +731,286 @@ public class detect_result {
 	 * @param height height from model
 	 * @param width width from model
 	 * @param stride stride from model
-	 * @param boxes float collection of boxes populated by method x,y,width,height
-	 * @param objProbs float collection of object probabilities populated by method
-	 * @param classId int collection of class Id indexes populated by method
+	 * @param candidates boxes x,y,width,height, object probabilities and class Id indexes populated by method
 	 * @param threshold Box threshold constant to pass to unsigmoid function to determine confidence in box overlap
 	 * @param zp Affine conversion factor compressing float to INT8 Zero Point offset for quantization
 	 * @param scale Used to map input range to output range for quantization of float to INT8
 	 * @return Count of instances where max probability exceeded NMS threshold
 	 */
 	public static int process(byte[] input, int[] anchor, int grid_h, int grid_w, int height, int width, int stride,
-            ArrayList<Float> boxes, ArrayList<Float> objProbs, ArrayList<Integer> classId, float threshold, int zp, float scale) {
+            detect_candidates candidates, float threshold, int zp, float scale) {
+		return process(MemorySegment.ofArray(input), anchor, grid_h, grid_w, height, width, stride, candidates, threshold, zp, scale);
+	}
+	/**
+	 * Find the cells of an INT8 objectness plane at or above the threshold, with ByteVector lanes when the
+	 * Vector API is present, else one cell at a time.
+	 * @param input The quantized output layer
+	 * @param planeOffset Offset of the plane in input
+	 * @param grid_len Cells in the plane
+	 * @param thres_i8 Quantized threshold
+	 * @param cells Receives the surviving cell indexes in ascending order
+	 * @return The number of surviving cells
+	 */
+	static int scanObjectness(MemorySegment input, int planeOffset, int grid_len, byte thres_i8, int[] cells) {
+		if(VECTORIZE)
+			return DetectKernels.scanGE(input, planeOffset, grid_len, thres_i8, cells);
+		int n = 0;
+		for (int k = 0; k < grid_len; k++)
+			if (input.get(JAVA_BYTE, planeOffset + k) >= thres_i8)
+				cells[n++] = k;
+		return n;
+	}
+	/**
+	 * INT8 AFFINE YOLOv5<p/>
+	 * As above, reading the quantized output layer in place from a Java array or NPU tensor memory.
+	 */
+	public static int process(MemorySegment input, int[] anchor, int grid_h, int grid_w, int height, int width, int stride,
+            detect_candidates candidates, float threshold, int zp, float scale) {
+		return process(input, anchor, grid_h, grid_w, height, width, stride, candidates, threshold, new QuantTable(zp, scale));
+	}
+	/**
+	 * INT8 AFFINE YOLOv5<p/>
+	 * As above, with the sigmoid of each quantized value looked up in the table of the output layer.
+	 * @param table dequant and sigmoid table of the output layer, built once at initNPU
+	 */
+	public static int process(MemorySegment input, int[] anchor, int grid_h, int grid_w, int height, int width, int stride,
+            detect_candidates candidates, float threshold, QuantTable table) {
 		int    validCount = 0;
 		int    grid_len   = grid_h * grid_w;
 		float  thres      = (float) unsigmoid(threshold);
-		int thres_i8   = qnt_f32_to_affine(thres, zp, scale);
-		for (int a = 0; a < 3; a++) {
-			for (int i = 0; i < grid_h; i++) {
-				for (int j = 0; j < grid_w; j++) {
-					byte box_confidence = input[(PROP_BOX_SIZE * a + 4) * grid_len + i * grid_w + j];
-					if (box_confidence >= thres_i8) {
-						int     offset = (PROP_BOX_SIZE * a) * grid_len + i * grid_w + j;
-						//int8_t* in_ptr = input + offset;
-						//float   box_x  = sigmoid(deqnt_affine_to_f32(*in_ptr, zp, scale)) * 2.0 - 0.5;
-						//float   box_y  = sigmoid(deqnt_affine_to_f32(in_ptr[grid_len], zp, scale)) * 2.0 - 0.5;
-						//float   box_w  = sigmoid(deqnt_affine_to_f32(in_ptr[2 * grid_len], zp, scale)) * 2.0;
-						//float   box_h  = sigmoid(deqnt_affine_to_f32(in_ptr[3 * grid_len], zp, scale)) * 2.0;
-						float   box_x  = (float) (sigmoid(extractFloat(input, offset, zp, scale)) * 2.0 - 0.5);
-						float   box_y  = (float) (sigmoid(extractFloat(input, offset+grid_len, zp, scale)) * 2.0 - 0.5);
-						float   box_w  = (float) (sigmoid(extractFloat(input, offset + (2 * grid_len), zp, scale)) * 2.0);
-						float   box_h  = (float) (sigmoid(extractFloat(input, offset + (3 * grid_len), zp, scale)) * 2.0);
-						if(DEBUG )
-							System.out.printf("Extracted raw coords %f %f %f %f%n", box_x,box_y,box_w,box_h);
-						box_x          = (box_x + j) * (float)stride;
-						box_y          = (box_y + i) * (float)stride;
-						box_w          = box_w * box_w * (float)anchor[a * 2];
-						box_h          = box_h * box_h * (float)anchor[a * 2 + 1];
-						box_x -= (box_w / 2.0);
-						box_y -= (box_h / 2.0);
-						if(DEBUG )
-							System.out.printf("Processed raw coords %f %f %f %f%n", box_x,box_y,box_w,box_h);
-						//int maxClassProbs = in_ptr[5 * grid_len];
-						byte maxClassProbs = input[offset + (5 * grid_len)];
-						int    maxClassId    = 0;
-						for (int k = 1; k < OBJ_CLASS_NUM; k++) {
-							//int prob = in_ptr[(5 + k) * grid_len];
-							byte prob = input[offset+((5 + k) * grid_len)];
-							if(DEBUG_VERBOSE )
-								System.out.println("K="+k+" prob="+prob+" maxClassProbs="+maxClassProbs);
-							if (prob > maxClassProbs) {
-								if(DEBUG_VERBOSE)
-									System.out.println("****K="+k+" prob="+prob+" maxClassProbs="+maxClassProbs);
-								maxClassId    = k;
-								maxClassProbs = prob;
-							}
-						}
-						if(DEBUG_VERBOSE)
-							System.out.println("maxClassProbs="+maxClassProbs+" thres_i8="+thres_i8+" box_conf="+box_confidence+" maxClassId="+maxClassId);
-						if (maxClassProbs > thres_i8){
-							float fProb = (float)(sigmoid(deqnt_affine_to_f32(maxClassProbs, zp, scale)));
-							float boxConf = (float)(sigmoid(deqnt_affine_to_f32(box_confidence, zp, scale)));
-							if(DEBUG)
-								System.out.println("Float prob="+fProb+" boxConf="+boxConf);
-							objProbs.add(fProb*boxConf);
-							classId.add(maxClassId);
-							validCount++;
-							boxes.add(box_x);
-							boxes.add(box_y);
-							boxes.add(box_w);
-							boxes.add(box_h);
-						}
-					}
+		byte thres_i8   = table.quantize(thres);
+		for (int a = 0; a < 3; a++)
+			validCount += processBand(input, anchor, a, PROP_BOX_SIZE, grid_w, grid_len, stride, candidates, thres_i8, table, 0, grid_len);
+		return validCount;
+	}
+	/**
+	 * INT8 AFFINE YOLOv5<p/>
+	 * Decode the cells from..to of the planes of anchor a, the whole plane or a row band of it.
+	 * @param prop_box_size planes per anchor, 5 + the number of classes
+	 * @return Count of instances where max probability exceeded the threshold
+	 */
+	private static int processBand(MemorySegment input, int[] anchor, int a, int prop_box_size, int grid_w, int grid_len, int stride,
+            detect_candidates candidates, byte thres_i8, QuantTable table, int from, int to) {
+		int    validCount = 0;
+		int[] cells = candidates.cells(to - from);
+		// screen the objectness plane of the anchor, then decode only the cells that pass, in row order
+		int nCells = scanObjectness(input, (prop_box_size * a + 4) * grid_len + from, to - from, thres_i8, cells);
+		for (int c = 0; c < nCells; c++) {
+			int i = (from + cells[c]) / grid_w;
+			int j = (from + cells[c]) % grid_w;
+			byte box_confidence = input.get(JAVA_BYTE, (prop_box_size * a + 4) * grid_len + i * grid_w + j);
+			int     offset = (prop_box_size * a) * grid_len + i * grid_w + j;
+			//int8_t* in_ptr = input + offset;
+			//float   box_x  = sigmoid(deqnt_affine_to_f32(*in_ptr, zp, scale)) * 2.0 - 0.5;
+			//float   box_y  = sigmoid(deqnt_affine_to_f32(in_ptr[grid_len], zp, scale)) * 2.0 - 0.5;
+			//float   box_w  = sigmoid(deqnt_affine_to_f32(in_ptr[2 * grid_len], zp, scale)) * 2.0;
+			//float   box_h  = sigmoid(deqnt_affine_to_f32(in_ptr[3 * grid_len], zp, scale)) * 2.0;
+			float   box_x  = (float) (table.sigmoid(input.get(JAVA_BYTE, offset)) * 2.0 - 0.5);
+			float   box_y  = (float) (table.sigmoid(input.get(JAVA_BYTE, offset + grid_len)) * 2.0 - 0.5);
+			float   box_w  = (float) (table.sigmoid(input.get(JAVA_BYTE, offset + (2 * grid_len))) * 2.0);
+			float   box_h  = (float) (table.sigmoid(input.get(JAVA_BYTE, offset + (3 * grid_len))) * 2.0);
+			if(DEBUG )
+				System.out.printf("Extracted raw coords %f %f %f %f%n", box_x,box_y,box_w,box_h);
+			box_x          = (box_x + j) * (float)stride;
+			box_y          = (box_y + i) * (float)stride;
+			box_w          = box_w * box_w * (float)anchor[a * 2];
+			box_h          = box_h * box_h * (float)anchor[a * 2 + 1];
+			box_x -= (box_w / 2.0);
+			box_y -= (box_h / 2.0);
+			if(DEBUG )
+				System.out.printf("Processed raw coords %f %f %f %f%n", box_x,box_y,box_w,box_h);
+			//int maxClassProbs = in_ptr[5 * grid_len];
+			byte maxClassProbs = input.get(JAVA_BYTE, offset + (5 * grid_len));
+			int    maxClassId    = 0;
+			for (int k = 1; k < prop_box_size - 5; k++) {
+				//int prob = in_ptr[(5 + k) * grid_len];
+				byte prob = input.get(JAVA_BYTE, offset+((5 + k) * grid_len));
+				if(DEBUG_VERBOSE )
+					System.out.println("K="+k+" prob="+prob+" maxClassProbs="+maxClassProbs);
+				if (prob > maxClassProbs) {
+					if(DEBUG_VERBOSE)
+						System.out.println("****K="+k+" prob="+prob+" maxClassProbs="+maxClassProbs);
+					maxClassId    = k;
+					maxClassProbs = prob;
 				}
 			}
+			if(DEBUG_VERBOSE)
+				System.out.println("maxClassProbs="+maxClassProbs+" thres_i8="+thres_i8+" box_conf="+box_confidence+" maxClassId="+maxClassId);
+			if (maxClassProbs > thres_i8){
+				float fProb = (float)table.sigmoid(maxClassProbs);
+				float boxConf = (float)table.sigmoid(box_confidence);
+				if(DEBUG)
+					System.out.println("Float prob="+fProb+" boxConf="+boxConf);
+				candidates.add(box_x, box_y, box_w, box_h, fProb*boxConf, maxClassId);
+				validCount++;
+			}
 		}
 		return validCount;
 	}
+	/**
+	 * YOLOv11 class argmax of each grid cell, keeping the cells whose best class score exceeds the threshold.
+	 * Cells whose score_sum falls below its threshold are rejected first. Whole vectors of cells go through
+	 * DetectKernels when the Vector API is present, the remainder, or all cells without it, one at a time here.
+	 * @param score_tensor Quantized class scores, nClass planes of grid_len
+	 * @param score_sum_tensor Quantized score sums or null
+	 * @param grid_len Cells per plane
+	 * @param from First cell
+	 * @param to Cell after the last
+	 * @param nClass Number of classes
+	 * @param score_thres_i8 Quantized score threshold
+	 * @param score_sum_thres_i8 Quantized score sum threshold
+	 * @param init Initial max score, the quantized zero
+	 * @param cells Receives the surviving cells in ascending order
+	 * @param maxScores Receives the best score of each surviving cell
+	 * @param maxClasses Receives the best class of each surviving cell
+	 * @return Number of surviving cells
+	 */
+	static int argmaxClasses(MemorySegment score_tensor, MemorySegment score_sum_tensor, int grid_len, int from, int to, int nClass,
+			byte score_thres_i8, byte score_sum_thres_i8, byte init, int[] cells, byte[] maxScores, int[] maxClasses) {
+		int n = 0;
+		int start = from;
+		if(VECTORIZE && nClass <= Byte.MAX_VALUE) {
+			n = DetectKernels.argmaxClasses(score_tensor, score_sum_tensor, grid_len, from, to, nClass, score_thres_i8,
+					score_sum_thres_i8, init, cells, maxScores, maxClasses);
+			start = from + DetectKernels.byteLoopBound(to - from);
+		}
+		for (int cell = start; cell < to; cell++) {
+			// score_sum_tensor
+			if ((score_sum_tensor != null) && (score_sum_tensor.get(JAVA_BYTE, cell) < score_sum_thres_i8)) {
+				continue; 
+			}
+			int offset = cell;
+			int max_class_id = -1;
+			byte max_score = init;
+			for (int c = 0; c < nClass; c++) {
+				byte score = score_tensor.get(JAVA_BYTE, offset);
+				if (((score & 0xFF) > (score_thres_i8 & 0xFF)) && 
+					((score & 0xFF) > (max_score & 0xFF))) {
+					max_score = score;
+					max_class_id = c;
+				}
+				offset += grid_len;
+			}
+			if (max_score > score_thres_i8) {
+				cells[n] = cell;
+				maxScores[n] = max_score;
+				maxClasses[n] = max_class_id;
+				++n;
+			}
+		}
+		return n;
+	}
 	/** 
-	 * YOLOv11 int8 AFFINE processing
-	 * @param input Input buffer from NPU run
-	 * @param grid_h grid height
-	 * @param grid_w grid width
-	 * @param stride:
-	 * @param box_zp
-	 * @param box_scale
-	 * @param score_tensor:
-	 * @param score_zp
-	 * @param score_scale:
-	 * @param score_sum_tensor 
-	 * @param score_sum_zp, score_sum_scale: 
-	 * @param dfl_len:（Distributed Focal Loss）
-	 * @param boxes float collection of boxes populated by method x,y,width,height
-	 * @param objProbs float collection of object probabilities populated by method
-	 * @param classId int collection of class Id indexes populated by method
-	 * @param threshold Box threshold constant to pass to unsigmoid function to determine confidence in box overlap
+	 * YOLOv11 int8 AFFINE processing of the cells from..to of a branch
+	 * @param plan post processing plan of the model, the grid, stride, dfl_len, tables and quantized thresholds of the branch
+	 * @param branch the branch, 0 to 2
+	 * @param bufs output tensors from NPU run
+	 * @param candidates boxes x,y,width,height, object probabilities and class Id indexes populated by method
+	 * @param from First cell, 0 or the start of a row band
+	 * @param to Cell after the last, grid_h * grid_w or the end of a row band
 	 */
-	private static int process(byte[] input, int grid_h, int grid_w, int stride, int dfl_len, int box_zp, float box_scale, 
-		byte[] score_tensor, int score_zp, float score_scale, byte[] score_sum_tensor,
-		int score_sum_zp, float score_sum_scale, 
-		ArrayList<Float> boxes, ArrayList<Float> objProbs, ArrayList<Integer> classId, float threshold) {
+	private static int process(PostProcessPlan plan, int branch, MemorySegment[] bufs, detect_candidates candidates, int from, int to) {
 	
 	    int validCount = 0;
-	    int grid_len = grid_h * grid_w;
-	    byte score_thres_i8 = qnt_f32_to_affine(threshold, score_zp, score_scale);
-	    byte score_sum_thres_i8 = qnt_f32_to_affine(threshold, score_sum_zp, score_sum_scale);
+	    int grid_w = plan.grid_w[branch];
+	    int grid_len = plan.grid_h[branch] * grid_w;
+	    int stride = plan.stride[branch];
+	    int dfl_len = plan.dfl_len;
+	    int box_idx = branch * plan.output_per_branch;
+	    MemorySegment input = bufs[box_idx];
+	    QuantTable box_table = plan.tables[box_idx];
+	    MemorySegment score_tensor = bufs[box_idx + 1];
+	    QuantTable score_table = plan.tables[box_idx + 1];
+	    // score_sum
+	    MemorySegment score_sum_tensor = plan.output_per_branch == 3 ? bufs[box_idx + 2] : null;
 	    //scale
 	    //float box_scale_inv = 1.0f / box_scale;
 	    //float score_scale_inv = 1.0f / score_scale;
-	    for (int i = 0; i < grid_h; i++) {
-	    	for (int j = 0; j < grid_w; j++) {
-	           int offset = i * grid_w + j;
-	            int max_class_id = -1;
-	            // score_sum_tensor
-	            if ((score_sum_tensor != null) && (score_sum_tensor[offset] < score_sum_thres_i8)) {
-	                continue; 
-	            }
-	            byte max_score = (byte) -score_zp;
-	            for (int c = 0; c < OBJ_CLASS_NUM; c++) {
-	                if (((score_tensor[offset] & 0xFF) > (score_thres_i8 & 0xFF)) && 
-	                	((score_tensor[offset] & 0xFF) > (max_score & 0xFF))) {
-	                    max_score = score_tensor[offset];
-	                    max_class_id = c;
-	                }
-	                offset += grid_len;
-	            }
-	            if (max_score > score_thres_i8) {
-	                offset = i * grid_w + j;
-	                // （Distributed Focal Loss）
-	                float[] box = new float[4];
-	                float[] before_dfl = new float[dfl_len * 4];
-	                //DFL 
-	                for (int k = 0; k < dfl_len * 4; k++) {
-	                    before_dfl[k] = deqnt_affine_to_f32(input[offset], box_zp, box_scale);
-	                    offset += grid_len;
-	                }
-	                compute_dfl(before_dfl, dfl_len, box); 
-	                float x1, y1, x2, y2, w, h;
-	                x1 = (-box[0] + (float)j + 0.5f) * (float)stride;
-	                y1 = (-box[1] + (float)i + 0.5f) * (float)stride;
-	                x2 = (box[2] + (float)j + 0.5f) * (float)stride;
-	                y2 = (box[3] + (float)i + 0.5f) * (float)stride;
-	                w = x2 - x1;
-	                h = y2 - y1;
-	                boxes.add(x1);
-	                boxes.add(y1);
-	                boxes.add(w);
-	                boxes.add(h);
-	                objProbs.add(deqnt_affine_to_f32(max_score, score_zp, score_scale));
-	                classId.add(max_class_id);
-	                validCount++;
+	    int[] cells = candidates.cells(to - from);
+	    byte[] maxScores = candidates.cellScores(to - from);
+	    int[] maxClasses = candidates.cellClasses(to - from);
+	    int nCells = argmaxClasses(score_tensor, score_sum_tensor, grid_len, from, to, plan.numClasses, plan.thres_i8[branch],
+	    		plan.sum_thres_i8[branch],
+	    		(byte) -score_table.zp, cells, maxScores, maxClasses);
+	    float[] box = candidates.dflBox();
+	    float[] exps = candidates.dflExps(dfl_len * 4);
+	    for (int s = 0; s < nCells; s++) {
+	        int i = cells[s] / grid_w;
+	        int j = cells[s] % grid_w;
+	        int offset = cells[s];
+	        byte max_score = maxScores[s];
+	        int max_class_id = maxClasses[s];
+	        // （Distributed Focal Loss）
+	        //DFL, the exp of each bin looked up by its raw byte
+	        for (int k = 0; k < dfl_len * 4; k++) {
+	            exps[k] = box_table.exp(input.get(JAVA_BYTE, offset));
+	            offset += grid_len;
+	        }
+	        compute_dfl_exp(exps, dfl_len, box); 
+	        float x1, y1, x2, y2, w, h;
+	        x1 = (-box[0] + (float)j + 0.5f) * (float)stride;
+	        y1 = (-box[1] + (float)i + 0.5f) * (float)stride;
+	        x2 = (box[2] + (float)j + 0.5f) * (float)stride;
+	        y2 = (box[3] + (float)i + 0.5f) * (float)stride;
+	        w = x2 - x1;
+	        h = y2 - y1;
+	        candidates.add(x1, y1, w, h, score_table.deqnt(max_score), max_class_id);
+	        validCount++;
+	    }
+	    return validCount;
+	}
+	/** 
+	 * YOLOv11 FLOAT16 processing of the cells from..to of a branch. The score sum of a cell is converted first, when
+	 * present, then its class scores, and the box of the cells scoring above threshold only.
+	 * @param plan post processing plan of the model, the grid, stride and dfl_len of the branch
+	 * @param branch the branch, 0 to 2
+	 * @param bufs output tensors from NPU run
+	 * @param candidates boxes x,y,width,height, object probabilities and class Id indexes populated by method
+	 * @param from First cell, 0 or the start of a row band
+	 * @param to Cell after the last, grid_h * grid_w or the end of a row band
+	 */
+	private static int processFloat(PostProcessPlan plan, int branch, MemorySegment[] bufs, detect_candidates candidates,
+			int from, int to) {
+	    int validCount = 0;
+	    int grid_w = plan.grid_w[branch];
+	    int grid_len = plan.grid_h[branch] * grid_w;
+	    int stride = plan.stride[branch];
+	    int dfl_len = plan.dfl_len;
+	    int nClass = plan.numClasses;
+	    boolean half = plan.half;
+	    float threshold = plan.conf_threshold;
+	    int box_idx = branch * plan.output_per_branch;
+	    MemorySegment input = bufs[box_idx];
+	    MemorySegment score_tensor = bufs[box_idx + 1];
+	    MemorySegment score_sum_tensor = plan.output_per_branch == 3 ? bufs[box_idx + 2] : null;
+	    float[] box = candidates.dflBox();
+	    float[] before_dfl = candidates.dflExps(dfl_len * 4); // the raw bins, compute_dfl takes their exp
+	    for (int offset = from; offset < to; offset++) {
+	        if (score_sum_tensor != null && value(score_sum_tensor, offset, half) < threshold)
+	            continue;
+	        int max_class_id = -1;
+	        float max_score = 0;
+	        for (int c = 0; c < nClass; c++) {
+	            float score = value(score_tensor, (long)c * grid_len + offset, half);
+	            if (score > threshold && score > max_score) {
+	                max_score = score;
+	                max_class_id = c;
 	            }
 	        }
+	        if (max_score <= threshold)
+	            continue;
+	        for (int k = 0; k < dfl_len * 4; k++)
+	            before_dfl[k] = value(input, (long)k * grid_len + offset, half);
+	        compute_dfl(before_dfl, dfl_len, box);
+	        int i = offset / grid_w;
+	        int j = offset % grid_w;
+	        float x1, y1, x2, y2;
+	        x1 = (-box[0] + (float)j + 0.5f) * (float)stride;
+	        y1 = (-box[1] + (float)i + 0.5f) * (float)stride;
+	        x2 = (box[2] + (float)j + 0.5f) * (float)stride;
+	        y2 = (box[3] + (float)i + 0.5f) * (float)stride;
+	        candidates.add(x1, y1, x2 - x1, y2 - y1, max_score, max_class_id);
+	        validCount++;
 	    }
 	    return validCount;
 	}
@@ -740,85 +1030,34 @@ public class detect_result {
 	public static int post_process(rknn_output[] bufs, ArrayList<rknn_tensor_attr> output_attrs, rknn_input_output_num ioNum, 
 			float scale_w, float scale_h, int model_in_h, int model_in_w, float conf_threshold,
             float nms_threshold, detect_result_group group, String[] labels) {
-
-		ArrayList<Float> filterBoxes = new ArrayList<Float>();
-		ArrayList<Float> objProbs = new ArrayList<Float>();
-		ArrayList<Integer> classId = new ArrayList<Integer>();
-		
-	    int validCount = 0; 
-	    int stride = 0; 
-	    int grid_h = 0; 
-	    int grid_w = 0; 
-
-	    int dfl_len = output_attrs.get(0).getDims()[1] / 4;
-	    int output_per_branch = ioNum.getN_output() / 3; 
-	
-	    for (int i = 0; i < 3; i++) {
-	        int score_sum_zp = 0;
-	        float score_sum_scale = 1.0f;
-	        // score_sum
-	        byte[] score_sum = null;
-			if (output_per_branch == 3) {
-	        	score_sum  = bufs[i * output_per_branch + 2].getBuf();
-	            score_sum_zp = output_attrs.get(i * output_per_branch + 2).getZp();
-	            score_sum_scale = output_attrs.get(i * output_per_branch + 2).getScale();
-	        }
-	        int box_idx = i * output_per_branch;
-	        int score_idx = i * output_per_branch + 1;
-	        grid_h = output_attrs.get(box_idx).getWidthHeightChannel()[1];
-	        grid_w = output_attrs.get(box_idx).getWidthHeightChannel()[0];
-	        stride = model_in_h / grid_h;
-   
-	        validCount += process(bufs[box_idx].getBuf(), grid_h, grid_w, stride, dfl_len, output_attrs.get(box_idx).getZp(),
-	        		output_attrs.get(box_idx).getScale(), bufs[score_idx].getBuf(), output_attrs.get(score_idx).getZp(),
-	        		output_attrs.get(score_idx).getScale(), score_sum, score_sum_zp, score_sum_scale,
-	        		filterBoxes, objProbs, classId, conf_threshold);
-	    }
-	    // NMS
-		// no object detected
-		if (validCount <= 0) {
-			return 0;
-		}
-		int[] indexArray = new int[validCount];
-		for (int i = 0; i < validCount; i++) {
-			indexArray[i] = i;
-		}
-		float[] objProbsArray =  new float[validCount];
-		int i = 0;
-		for(int j = 0; j < objProbs.size(); j++) {
-			objProbsArray[i++] = objProbs.get(j).floatValue();
-		}
-		if(DEBUG) {
-			System.out.println("UnSorted ObjProbsArray:"+Arrays.toString(objProbsArray));
-			System.out.println("UnSorted IndexArray:"+Arrays.toString(indexArray));
-			System.out.println("Quicksort..");
-		}
-		quick_sort_indice_inverse(objProbsArray, 0, validCount - 1, indexArray);
-		if(DEBUG) {
-			System.out.println("Quicksort done");	
-			System.out.println("Sorted ObjProbsArray:"+Arrays.toString(objProbsArray));
-			System.out.println("Sorted IndexArray:"+Arrays.toString(indexArray));
-		}	
-		float[] filterBoxesArray = new float[validCount*4];
-		if(DEBUG)
-			System.out.println("Filterboxes sizes ="+filterBoxes.size());
-		i = 0;
-		for(int j = 0; j < filterBoxes.size(); j++) {
-			filterBoxesArray[i++] = filterBoxes.get(j);
-		}	
-		int[] classIdArray = new int[validCount];
-		if(DEBUG)
-			System.out.println("ClassId sizes ="+classId.size());
-		i = 0;
-		for(int j = 0; j < classId.size(); j++) {
-			classIdArray[i++] = classId.get(j);
-		}	
-		if(DEBUG) {
-			System.out.println("raw ClassIdArray:"+Arrays.toString(classIdArray));
-			System.out.println("raw filterBoxesArray:"+Arrays.toString(filterBoxesArray));
-		}	
-		return process_arraysYOLO(classIdArray, indexArray, filterBoxesArray, objProbsArray, labels, 
-				group, nms_threshold, validCount, model_in_w, model_in_h, scale_w, scale_h);
+		return post_process(segments(bufs), output_attrs, ioNum, scale_w, scale_h, model_in_h, model_in_w, conf_threshold,
+				nms_threshold, group, labels);
+	}
+	/**
+	 * YOLOv11 post processing pipeline, reading the quantized outputs in place from Java arrays or NPU tensor memory.
+	 * @param bufs output buffers from NPU
+	 * @see #post_process(rknn_output[], ArrayList, rknn_input_output_num, float, float, int, int, float, float, detect_result_group, String[])
+	 */
+	public static int post_process(MemorySegment[] bufs, ArrayList<rknn_tensor_attr> output_attrs, rknn_input_output_num ioNum, 
+			float scale_w, float scale_h, int model_in_h, int model_in_w, float conf_threshold,
+            float nms_threshold, detect_result_group group, String[] labels) {
+		return post_process(bufs, output_attrs, QuantTable.of(output_attrs), 0, 0, ioNum, scale_w, scale_h, model_in_h, model_in_w,
+				conf_threshold, nms_threshold, group, labels);
+	}
+	/**
+	 * YOLOv11 post processing pipeline, dequantizing through the lookup tables of the output tensors.
+	 * For a model loaded by initNPU see {@link #post_process(PostProcessPlan, MemorySegment[], float[][], float, float, int, int, detect_result_group, String[])}
+	 * @param bufs output buffers from NPU
+	 * @param tables dequant table of each output tensor, built once at initNPU
+	 * @param budget Maximum number of the highest scoring candidates kept while decoding, 0 for no limit
+	 * @param maxDetections Maximum number of objects kept, NMS stops once reached, 0 for no limit
+	 * @see #post_process(rknn_output[], ArrayList, rknn_input_output_num, float, float, int, int, float, float, detect_result_group, String[])
+	 */
+	public static int post_process(MemorySegment[] bufs, ArrayList<rknn_tensor_attr> output_attrs, QuantTable[] tables, int budget,
+			int maxDetections, rknn_input_output_num ioNum, float scale_w, float scale_h, int model_in_h, int model_in_w, float conf_threshold,
+            float nms_threshold, detect_result_group group, String[] labels) {
+		return post_process(PostProcessPlan.yolov11(null, tables, output_attrs, model_in_w, model_in_h, conf_threshold, nms_threshold, false),
+				bufs, null, scale_w, scale_h, budget, maxDetections, group, labels);
 	}
 	
 	/**
@@ -831,68 +1070,83 @@ public class detect_result {
 	 * @param height height from model
 	 * @param width width from model
 	 * @param stride stride from model
-	 * @param boxes float collection of boxes populated by method x,y,width,height
-	 * @param objProbs float collection of object probabilities populated by method
-	 * @param classId int collection of class Id indexes populated by method
+	 * @param candidates boxes x,y,width,height, object probabilities and class Id indexes populated by method
 	 * @param threshold Box threshold constant to pass to unsigmoid function to determine confidence in box overlap
 	 * @param zp Affine conversion factor compressing float to INT8 Zero Point offset for quantization
 	 * @param scale Used to map input range to output range for quantization of float to INT8
 	 * @return Count of instances where max probability exceeded NMS threshold
 	 */
 	public static int process(float[] input, int[] anchor, int grid_h, int grid_w, int height, int width, int stride,
-            ArrayList<Float> boxes, ArrayList<Float> objProbs, ArrayList<Integer> classId, float threshold) {
+            detect_candidates candidates, float threshold) {
+		return process(MemorySegment.ofArray(input), anchor, grid_h, grid_w, height, width, stride, candidates, threshold);
+	}
+	/**
+	 * FLOAT <p/>
+	 * As above, indexing the want_float output layer in place through its float view, see {@link #floats(byte[])}
+	 * @param input float view of the output layer
+	 */
+	public static int process(MemorySegment input, int[] anchor, int grid_h, int grid_w, int height, int width, int stride,
+            detect_candidates candidates, float threshold) {
 		int    validCount = 0;
 		int    grid_len   = grid_h * grid_w;
 		float  thres      = (float) unsigmoid(threshold);
-		for (int a = 0; a < 3; a++) {
-			for (int i = 0; i < grid_h; i++) {
-				for (int j = 0; j < grid_w; j++) {
-					float box_confidence = input[(PROP_BOX_SIZE * a + 4) * grid_len + i * grid_w + j];
-					if (box_confidence >= thres) {
-						int     offset = (PROP_BOX_SIZE * a) * grid_len + i * grid_w + j;
-						float   box_x  = (float) (sigmoid(input[offset]) * 2.0 - 0.5);
-						float   box_y  = (float) (sigmoid(input[offset+grid_len]) * 2.0 - 0.5);
-						float   box_w  = (float) (sigmoid(input[offset + (2 * grid_len)]) * 2.0);
-						float   box_h  = (float) (sigmoid(input[offset + (3 * grid_len)]) * 2.0);
-						if(DEBUG )
-							System.out.printf("Extracted raw coords %f %f %f %f%n", box_x,box_y,box_w,box_h);
-						box_x          = (box_x + j) * (float)stride;
-						box_y          = (box_y + i) * (float)stride;
-						box_w          = box_w * box_w * (float)anchor[a * 2];
-						box_h          = box_h * box_h * (float)anchor[a * 2 + 1];
-						box_x -= (box_w / 2.0);
-						box_y -= (box_h / 2.0);
-						if(DEBUG )
-							System.out.printf("Processed raw coords %f %f %f %f%n", box_x,box_y,box_w,box_h);
-						float maxClassProbs = input[offset + (5 * grid_len)];
-						int    maxClassId    = 0;
-						for (int k = 1; k < OBJ_CLASS_NUM; k++) {
-							float prob = input[offset+((5 + k) * grid_len)];
-							if(DEBUG_VERBOSE )
-								System.out.println("K="+k+" prob="+prob+" maxClassProbs="+maxClassProbs);
-							if (prob > maxClassProbs) {
-								if(DEBUG_VERBOSE)
-									System.out.println("****K="+k+" prob="+prob+" maxClassProbs="+maxClassProbs);
-								maxClassId    = k;
-								maxClassProbs = prob;
-							}
-						}
-						if(DEBUG_VERBOSE)
-							System.out.println("maxClassProbs="+maxClassProbs+" thres_i8="+thres+" box_conf="+box_confidence+" maxClassId="+maxClassId);
-						if (maxClassProbs > thres){
-							float fProb = (float)(sigmoid(maxClassProbs));
-							float boxConf = (float)(sigmoid(box_confidence));
-							if(DEBUG)
-								System.out.println("Float prob="+fProb+" boxConf="+boxConf);
-							objProbs.add(fProb*boxConf);
-							classId.add(maxClassId);
-							validCount++;
-							boxes.add(box_x);
-							boxes.add(box_y);
-							boxes.add(box_w);
-							boxes.add(box_h);
+		for (int a = 0; a < 3; a++)
+			validCount += processBand(input, anchor, a, PROP_BOX_SIZE, grid_w, grid_len, stride, candidates, thres, false, 0, grid_len);
+		return validCount;
+	}
+	/**
+	 * FLOAT YOLOv5 <p/>
+	 * Decode the rows of cells from..to of the planes of anchor a, the whole plane or a row band of it.
+	 * Of FLOAT16 planes only the objectness of each cell is converted, the box and classes of the cells above threshold.
+	 * @param prop_box_size planes per anchor, 5 + the number of classes
+	 * @param half true if the output layer is FLOAT16
+	 * @return Count of instances where max probability exceeded the threshold
+	 */
+	private static int processBand(MemorySegment input, int[] anchor, int a, int prop_box_size, int grid_w, int grid_len, int stride,
+            detect_candidates candidates, float thres, boolean half, int from, int to) {
+		int    validCount = 0;
+		for (int i = from / grid_w; i < to / grid_w; i++) {
+			for (int j = 0; j < grid_w; j++) {
+				float box_confidence = value(input, (prop_box_size * a + 4) * grid_len + i * grid_w + j, half);
+				if (box_confidence >= thres) {
+					int     offset = (prop_box_size * a) * grid_len + i * grid_w + j;
+					float   box_x  = (float) (sigmoid(value(input, offset, half)) * 2.0 - 0.5);
+					float   box_y  = (float) (sigmoid(value(input, offset+grid_len, half)) * 2.0 - 0.5);
+					float   box_w  = (float) (sigmoid(value(input, offset + (2 * grid_len), half)) * 2.0);
+					float   box_h  = (float) (sigmoid(value(input, offset + (3 * grid_len), half)) * 2.0);
+					if(DEBUG )
+						System.out.printf("Extracted raw coords %f %f %f %f%n", box_x,box_y,box_w,box_h);
+					box_x          = (box_x + j) * (float)stride;
+					box_y          = (box_y + i) * (float)stride;
+					box_w          = box_w * box_w * (float)anchor[a * 2];
+					box_h          = box_h * box_h * (float)anchor[a * 2 + 1];
+					box_x -= (box_w / 2.0);
+					box_y -= (box_h / 2.0);
+					if(DEBUG )
+						System.out.printf("Processed raw coords %f %f %f %f%n", box_x,box_y,box_w,box_h);
+					float maxClassProbs = value(input, offset + (5 * grid_len), half);
+					int    maxClassId    = 0;
+					for (int k = 1; k < prop_box_size - 5; k++) {
+						float prob = value(input, offset+((5 + k) * grid_len), half);
+						if(DEBUG_VERBOSE )
+							System.out.println("K="+k+" prob="+prob+" maxClassProbs="+maxClassProbs);
+						if (prob > maxClassProbs) {
+							if(DEBUG_VERBOSE)
+								System.out.println("****K="+k+" prob="+prob+" maxClassProbs="+maxClassProbs);
+							maxClassId    = k;
+							maxClassProbs = prob;
 						}
 					}
+					if(DEBUG_VERBOSE)
+						System.out.println("maxClassProbs="+maxClassProbs+" thres_i8="+thres+" box_conf="+box_confidence+" maxClassId="+maxClassId);
+					if (maxClassProbs > thres){
+						float fProb = (float)(sigmoid(maxClassProbs));
+						float boxConf = (float)(sigmoid(box_confidence));
+						if(DEBUG)
+							System.out.println("Float prob="+fProb+" boxConf="+boxConf);
+						candidates.add(box_x, box_y, box_w, box_h, fProb*boxConf, maxClassId);
+						validCount++;
+					}
 				}
 			}
 		}
@@ -902,40 +1156,42 @@ public class detect_result {
 	static int clamp(float val, int min, int max) { return (int) (val > min ? (val < max ? val : max) : min); }
 	
 	/**
-	 * Process the YOLOv5 arrays assembled from post processing output layers after extracting buffer data and
-	 * assembling regions and probabilities. Perform the non-maximal suppression and populate detect_result_group group object.
-	 * @param classIdArray
-	 * @param indexArray
-	 * @param filterBoxesArray
-	 * @param objProbsArray
+	 * Process the YOLO candidates assembled from post processing output layers after extracting buffer data and
+	 * assembling regions and probabilities. Sort by score, perform the non-maximal suppression and populate detect_result_group group object.
+	 * @param candidates the decoded boxes, scores and class ids
 	 * @param labels
 	 * @param group
 	 * @param nms_threshold Intersection over Union threshold for overlapping rectangular detection area non-maximal suppression
-	 * @param validCount
+	 * @param maxDetections Maximum number of objects kept, NMS stops once reached, 0 for no limit
 	 * @param model_in_w
 	 * @param model_in_h
 	 * @param scale_w
 	 * @param scale_h
 	 * @return The number of objects in detect_result_group
 	 */
-	static int process_arraysYOLO(int[] classIdArray, int[] indexArray, float[] filterBoxesArray, float[] objProbsArray, String[] labels, 
-			detect_result_group group, float nms_threshold, int validCount, int model_in_w, int model_in_h, float scale_w, float scale_h) {
-		//Set<Integer> classSet = new LinkedHashSet<Integer>();
-		//Arrays.stream(classIdArray).boxed().sorted().forEach(e->classSet.add(e));
-		int[] classSet = Arrays.copyOf(classIdArray, classIdArray.length);
-		Arrays.sort(classSet);
-		if(DEBUG_VERBOSE)
-			System.out.println("Arrays loaded");
-		for(Integer c: classSet) {
-			if(DEBUG_VERBOSE)
-				System.out.println("NMS for "+c);
-			nmsYOLO(validCount, filterBoxesArray, classIdArray, indexArray, c, nms_threshold);
+	static int process_arraysYOLO(detect_candidates candidates, String[] labels, 
+			detect_result_group group, float nms_threshold, int maxDetections, int model_in_w, int model_in_h, float scale_w, float scale_h) {
+		int validCount = candidates.size();
+		candidates.prepareSort();
+		int[] indexArray = candidates.order;
+		float[] objProbsArray = candidates.sortedScore;
+		if(DEBUG) {
+			System.out.println("UnSorted ObjProbsArray:"+Arrays.toString(Arrays.copyOf(objProbsArray, validCount)));
+			System.out.println("UnSorted IndexArray:"+Arrays.toString(Arrays.copyOf(indexArray, validCount)));
+			System.out.println("Sort..");
+		}
+		sort_indice_inverse(objProbsArray, validCount, indexArray);
+		if(DEBUG) {
+			System.out.println("Sort done");	
+			System.out.println("Sorted ObjProbsArray:"+Arrays.toString(Arrays.copyOf(objProbsArray, validCount)));
+			System.out.println("Sorted IndexArray:"+Arrays.toString(Arrays.copyOf(indexArray, validCount)));
 		}
+		// all classes in one pass, bucketed by class
+		nmsYOLO(validCount, candidates, indexArray, nms_threshold, maxDetections);
 		
 		if(DEBUG) {
-			System.out.println("NonMaximal suppression done indexArray:"+Arrays.toString(indexArray));
-			System.out.println("NonMaximal suppression done classIdArray:"+Arrays.toString(classIdArray));
-			System.out.println("NonMaximal suppression done filterBoxesArray:"+Arrays.toString(filterBoxesArray));
+			System.out.println("NonMaximal suppression done indexArray:"+Arrays.toString(Arrays.copyOf(indexArray, validCount)));
+			System.out.println("NonMaximal suppression done classIdArray:"+Arrays.toString(Arrays.copyOf(candidates.classId, validCount)));
 		}
 	
 		ArrayList<detect_result> groupArray = new ArrayList<detect_result>();
@@ -948,11 +1204,11 @@ public class detect_result {
 			int n = indexArray[i];
 			if(DEBUG)
 				System.out.println("IndexArray "+i+" n="+n);
-			float x1       = filterBoxesArray[n * 4 + 0];
-			float y1       = filterBoxesArray[n * 4 + 1];
-			float x2       = x1 + filterBoxesArray[n * 4 + 2];
-			float y2       = y1 + filterBoxesArray[n * 4 + 3];
-			int   id       = classIdArray[n];
+			float x1       = candidates.x[n];
+			float y1       = candidates.y[n];
+			float x2       = x1 + candidates.w[n];
+			float y2       = y1 + candidates.h[n];
+			int   id       = candidates.classId[n];
 			float obj_conf = objProbsArray[i];
 			if(DEBUG)
 				System.out.println("x1="+x1+" y1="+y1+" x2="+x2+" y2="+y2+" id="+id+" obj_conf="+obj_conf);
@@ -998,115 +1254,34 @@ public class detect_result {
 	public static int post_process(rknn_output[] bufs, int model_in_h, int model_in_w, float conf_threshold,
             float nms_threshold, float scale_w, float scale_h, ArrayList<Integer> qnt_zps,
             ArrayList<Float> qnt_scales, detect_result_group group, String[] labels) {
-
-		ArrayList<Float> filterBoxes0 = new ArrayList<Float>();
-		ArrayList<Float> objProbs0 = new ArrayList<Float>();
-		ArrayList<Integer> classId0 = new ArrayList<Integer>();
-		
-		ArrayList<Float> filterBoxes1 = new ArrayList<Float>();
-		ArrayList<Float> objProbs1 = new ArrayList<Float>();
-		ArrayList<Integer> classId1 = new ArrayList<Integer>();
-		
-		ArrayList<Float> filterBoxes2 = new ArrayList<Float>();
-		ArrayList<Float> objProbs2 = new ArrayList<Float>();
-		ArrayList<Integer> classId2 = new ArrayList<Integer>();
-
-		// stride 8
-		int stride0     = 8;
-		int grid_h0     = model_in_h / stride0;
-		int grid_w0     = model_in_w / stride0;
-		int validCount0 = 0;
-		validCount0 = process(bufs[0].getBuf(), anchor0, grid_h0, grid_w0, model_in_h, model_in_w, stride0, filterBoxes0, objProbs0,
-                   classId0, conf_threshold, qnt_zps.get(0), qnt_scales.get(0));
-
-		// stride 16
-		int stride1     = 16;
-		int grid_h1     = model_in_h / stride1;
-		int grid_w1     = model_in_w / stride1;
-		int validCount1 = 0;
-		if(bufs.length > 1)
-			validCount1 = process(bufs[1].getBuf(), anchor1, grid_h1, grid_w1, model_in_h, model_in_w, stride1, filterBoxes1, objProbs1,
-                   classId1, conf_threshold, qnt_zps.get(1), qnt_scales.get(1));
-
-		// stride 32
-		int stride2     = 32;
-		int grid_h2     = model_in_h / stride2;
-		int grid_w2     = model_in_w / stride2;
-		int validCount2 = 0;
-		if(bufs.length > 2)
-			validCount2 = process(bufs[2].getBuf(), anchor2, grid_h2, grid_w2, model_in_h, model_in_w, stride2, filterBoxes2, objProbs2,
-                   classId2, conf_threshold, qnt_zps.get(2), qnt_scales.get(2));
-
-		int validCount = validCount0 + validCount1 + validCount2;
-		if(DEBUG)
-			System.out.printf("Valid count total =%d, 0=%d, 1=%d, 2=%d%n", validCount,validCount0,validCount1,validCount2);
-		// no object detected
-		if (validCount <= 0) {
-			return 0;
-		}
-
-		int[] indexArray = new int[validCount];
-		for (int i = 0; i < validCount; i++) {
-			indexArray[i] = i;
-		}
-		float[] objProbsArray =  new float[validCount];
-		int i = 0;
-		for(int j = 0; j < objProbs0.size(); j++) {
-			objProbsArray[i++] = objProbs0.get(j).floatValue();
-		}
-		for(int j = 0; j < objProbs1.size(); j++) {
-			objProbsArray[i++] = objProbs1.get(j).floatValue();
-		}
-		for(int j = 0; j < objProbs2.size(); j++) {
-			objProbsArray[i++] = objProbs2.get(j).floatValue();
-		}
-		if(DEBUG) {
-			System.out.println("UnSorted ObjProbsArray:"+Arrays.toString(objProbsArray));
-			System.out.println("UnSorted IndexArray:"+Arrays.toString(indexArray));
-			System.out.println("Quicksort..");
-		}
-		quick_sort_indice_inverse(objProbsArray, 0, validCount - 1, indexArray);
-		if(DEBUG) {
-			System.out.println("Quicksort done");	
-			System.out.println("Sorted ObjProbsArray:"+Arrays.toString(objProbsArray));
-			System.out.println("Sorted IndexArray:"+Arrays.toString(indexArray));
-		}
-		
-		float[] filterBoxesArray = new float[validCount*4];
-		if(DEBUG)
-			System.out.println("Filterboxes sizes 0="+filterBoxes0.size()+" 1="+filterBoxes1.size()+" 2="+filterBoxes2.size());
-		i = 0;
-		for(int j = 0; j < filterBoxes0.size(); j++) {
-			filterBoxesArray[i++] = filterBoxes0.get(j);
-		}
-		for(int j = 0; j < filterBoxes1.size(); j++) {
-			filterBoxesArray[i++] = filterBoxes1.get(j);
-		}
-		for(int j = 0; j < filterBoxes2.size(); j++) {
-			filterBoxesArray[i++] = filterBoxes2.get(j);
-		}
-		
-		int[] classIdArray = new int[validCount];
-		if(DEBUG)
-			System.out.println("ClassId sizes 0="+classId0.size()+" 1="+classId1.size()+" 2="+classId2.size());
-		i = 0;
-		for(int j = 0; j < classId0.size(); j++) {
-			classIdArray[i++] = classId0.get(j);
-		}
-		for(int j = 0; j < classId1.size(); j++) {
-			classIdArray[i++] = classId1.get(j);
-		}
-		for(int j = 0; j < classId2.size(); j++) {
-			classIdArray[i++] = classId2.get(j);
-		}
-		if(DEBUG) {
-			System.out.println("raw ClassIdArray:"+Arrays.toString(classIdArray));
-			System.out.println("raw filterBoxesArray:"+Arrays.toString(filterBoxesArray));
-		}
-		
-		return process_arraysYOLO(classIdArray, indexArray, filterBoxesArray, objProbsArray, labels, 
-				group, nms_threshold, validCount, model_in_w, model_in_h, scale_w, scale_h);
-
+		return post_process(segments(bufs), model_in_h, model_in_w, conf_threshold, nms_threshold, scale_w, scale_h,
+				qnt_zps, qnt_scales, group, labels);
+	}
+	/**
+	 * INT8 AFFINE YOLOv5<p/>
+	 * As above, reading the quantized output layers in place from Java arrays or NPU tensor memory.
+	 * @param bufs output layers from NPU
+	 */
+	public static int post_process(MemorySegment[] bufs, int model_in_h, int model_in_w, float conf_threshold,
+            float nms_threshold, float scale_w, float scale_h, ArrayList<Integer> qnt_zps,
+            ArrayList<Float> qnt_scales, detect_result_group group, String[] labels) {
+		return post_process(bufs, model_in_h, model_in_w, conf_threshold, nms_threshold, scale_w, scale_h,
+				QuantTable.of(qnt_zps, qnt_scales), 0, 0, group, labels);
+	}
+	/**
+	 * INT8 AFFINE YOLOv5<p/>
+	 * As above, with the dequant and sigmoid lookup tables of the output layers.
+	 * For a model loaded by initNPU see {@link #post_process(PostProcessPlan, MemorySegment[], float[][], float, float, int, int, detect_result_group, String[])}
+	 * @param bufs output layers from NPU
+	 * @param tables lookup table of each output layer
+	 * @param budget Maximum number of the highest scoring candidates kept while decoding, 0 for no limit
+	 * @param maxDetections Maximum number of objects kept, NMS stops once reached, 0 for no limit
+	 */
+	public static int post_process(MemorySegment[] bufs, int model_in_h, int model_in_w, float conf_threshold,
+            float nms_threshold, float scale_w, float scale_h, QuantTable[] tables, int budget, int maxDetections,
+            detect_result_group group, String[] labels) {
+		return post_process(PostProcessPlan.yolov5(null, tables, model_in_w, model_in_h, conf_threshold, nms_threshold, false),
+				bufs, null, scale_w, scale_h, budget, maxDetections, group, labels);
 	}
 	/**
 	 * FLOAT YOLOv5<p/>
@@ -1125,120 +1300,18 @@ public class detect_result {
 	 */
 	public static int post_process(rknn_output[] bufs, int model_in_h, int model_in_w, float conf_threshold,
             float nms_threshold, float scale_w, float scale_h, detect_result_group group, String[] labels) {
-
-		ArrayList<Float> filterBoxes0 = new ArrayList<Float>();
-		ArrayList<Float> objProbs0 = new ArrayList<Float>();
-		ArrayList<Integer> classId0 = new ArrayList<Integer>();
-		
-		ArrayList<Float> filterBoxes1 = new ArrayList<Float>();
-		ArrayList<Float> objProbs1 = new ArrayList<Float>();
-		ArrayList<Integer> classId1 = new ArrayList<Integer>();
-		
-		ArrayList<Float> filterBoxes2 = new ArrayList<Float>();
-		ArrayList<Float> objProbs2 = new ArrayList<Float>();
-		ArrayList<Integer> classId2 = new ArrayList<Integer>();
-
-		// stride 8
-		int stride0     = 8;
-		int grid_h0     = model_in_h / stride0;
-		int grid_w0     = model_in_w / stride0;
-		int validCount0 = 0;
-		float[] fbuf0 = process(bufs[0].getBuf());
-		validCount0 = process(fbuf0, anchor0, grid_h0, grid_w0, model_in_h, model_in_w, stride0, filterBoxes0, objProbs0,
-                   classId0, conf_threshold);
-
-		// stride 16
-		int stride1     = 16;
-		int grid_h1     = model_in_h / stride1;
-		int grid_w1     = model_in_w / stride1;
-		int validCount1 = 0;
-		if(bufs.length > 1) {
-			float[] fbuf1 = process(bufs[1].getBuf());
-			validCount1 = process(fbuf1, anchor1, grid_h1, grid_w1, model_in_h, model_in_w, stride1, filterBoxes1, objProbs1,
-                   classId1, conf_threshold);
-		}
-
-		// stride 32
-		int stride2     = 32;
-		int grid_h2     = model_in_h / stride2;
-		int grid_w2     = model_in_w / stride2;
-		int validCount2 = 0;
-		if(bufs.length > 2) {
-			float[] fbuf2 = process(bufs[2].getBuf());
-			validCount2 = process(fbuf2, anchor2, grid_h2, grid_w2, model_in_h, model_in_w, stride2, filterBoxes2, objProbs2,
-                   classId2, conf_threshold);
-		}
-
-		int validCount = validCount0 + validCount1 + validCount2;
-		if(DEBUG)
-			System.out.printf("Valid count total =%d, 0=%d, 1=%d, 2=%d%n", validCount,validCount0,validCount1,validCount2);
-		// no object detected
-		if (validCount <= 0) {
-			return 0;
-		}
-
-		int[] indexArray = new int[validCount];
-		for (int i = 0; i < validCount; i++) {
-			indexArray[i] = i;
-		}
-		float[] objProbsArray =  new float[validCount];
-		int i = 0;
-		for(int j = 0; j < objProbs0.size(); j++) {
-			objProbsArray[i++] = objProbs0.get(j).floatValue();
-		}
-		for(int j = 0; j < objProbs1.size(); j++) {
-			objProbsArray[i++] = objProbs1.get(j).floatValue();
-		}
-		for(int j = 0; j < objProbs2.size(); j++) {
-			objProbsArray[i++] = objProbs2.get(j).floatValue();
-		}
-		if(DEBUG) {
-			System.out.println("UnSorted ObjProbsArray:"+Arrays.toString(objProbsArray));
-			System.out.println("UnSorted IndexArray:"+Arrays.toString(indexArray));
-			System.out.println("Quicksort..");
-		}
-		quick_sort_indice_inverse(objProbsArray, 0, validCount - 1, indexArray);
-		if(DEBUG) {
-			System.out.println("Quicksort done");	
-			System.out.println("Sorted ObjProbsArray:"+Arrays.toString(objProbsArray));
-			System.out.println("Sorted IndexArray:"+Arrays.toString(indexArray));
-		}
-		
-		float[] filterBoxesArray = new float[validCount*4];
-		if(DEBUG)
-			System.out.println("Filterboxes sizes 0="+filterBoxes0.size()+" 1="+filterBoxes1.size()+" 2="+filterBoxes2.size());
-		i = 0;
-		for(int j = 0; j < filterBoxes0.size(); j++) {
-			filterBoxesArray[i++] = filterBoxes0.get(j);
-		}
-		for(int j = 0; j < filterBoxes1.size(); j++) {
-			filterBoxesArray[i++] = filterBoxes1.get(j);
-		}
-		for(int j = 0; j < filterBoxes2.size(); j++) {
-			filterBoxesArray[i++] = filterBoxes2.get(j);
-		}
-		
-		int[] classIdArray = new int[validCount];
-		if(DEBUG)
-			System.out.println("ClassId sizes 0="+classId0.size()+" 1="+classId1.size()+" 2="+classId2.size());
-		i = 0;
-		for(int j = 0; j < classId0.size(); j++) {
-			classIdArray[i++] = classId0.get(j);
-		}
-		for(int j = 0; j < classId1.size(); j++) {
-			classIdArray[i++] = classId1.get(j);
-		}
-		for(int j = 0; j < classId2.size(); j++) {
-			classIdArray[i++] = classId2.get(j);
-		}
-		if(DEBUG) {
-			System.out.println("raw ClassIdArray:"+Arrays.toString(classIdArray));
-			System.out.println("raw filterBoxesArray:"+Arrays.toString(filterBoxesArray));
-		}
-		
-		return process_arraysYOLO(classIdArray, indexArray, filterBoxesArray, objProbsArray, labels, 
-				group, nms_threshold, validCount, model_in_w, model_in_h, scale_w, scale_h);
-
+		return post_process(bufs, model_in_h, model_in_w, conf_threshold, nms_threshold, scale_w, scale_h, 0, 0, group, labels);
+	}
+	/**
+	 * FLOAT YOLOv5<p/>
+	 * As above, with a candidate budget and a maximum number of detections.
+	 * @param budget Maximum number of the highest scoring candidates kept while decoding, 0 for no limit
+	 * @param maxDetections Maximum number of objects kept, NMS stops once reached, 0 for no limit
+	 */
+	public static int post_process(rknn_output[] bufs, int model_in_h, int model_in_w, float conf_threshold,
+            float nms_threshold, float scale_w, float scale_h, int budget, int maxDetections, detect_result_group group, String[] labels) {
+		return post_process(PostProcessPlan.yolov5(null, null, model_in_w, model_in_h, conf_threshold, nms_threshold, true),
+				floats(bufs), null, scale_w, scale_h, budget, maxDetections, group, labels);
 	}
 	/**
 	 * InceptionSSD Data that conforms to the parameters of a 2 layer structure of quantized INT8 output.<p/>
@@ -1261,65 +1334,33 @@ public class detect_result {
 	public static int post_process(byte[] input0, byte[] input1, float[][] box_priors, int model_in_h, int model_in_w,
             float nms_threshold, float scale_w, float scale_h, ArrayList<Integer> qnt_zps,
             ArrayList<Float> qnt_scales, detect_result_group group, String[] labels) {
-	
-		int validCount = 0;
-		// convert input0 to 'predictions', convert input1 to 'output_classes'
-
-		float[] predictionsArray =  process(input0, qnt_zps.get(0), qnt_scales.get(0));
-		if(DEBUG) {
-			System.out.println("Predictions array:"+predictionsArray.length);
-			for(int i = 0; i < predictionsArray.length; i+=4) {
-				System.out.printf("SSD postproc prediction %d xmin=%f ymin=%f xmax=%f ymax=%f%n", i,predictionsArray[i],
-				predictionsArray[i+ 1],
-				predictionsArray[i+ 2],
-				predictionsArray[i+ 3]);
-			}
-		}
-		float[] outputClassesArray =  process(input1, qnt_zps.get(1), qnt_scales.get(1));
-
-		if(DEBUG) {
-			System.out.println("Output classes array:"+outputClassesArray.length);
-			  for (int i = 0; i < outputClassesArray.length; i++) {
-				      System.out.printf("outputClasses Class#=%d outputClass=%f%n",i, outputClassesArray[i]);
-			  }
-		}
-		
-		int[][] output = new int[2][NUM_RESULTS];
-		float[] props = new float[NUM_RESULTS];
-
-		decodeCenterSizeBoxes(predictionsArray, box_priors);
-		if(DEBUG) {
-			for(int i = 0; i < predictionsArray.length; i+=4) {
-				System.out.printf("prediction postdecodeCSB %d xmin=%f ymin=%f xmax=%f ymax=%f%n", i,predictionsArray[i * 4 + 0],
-				predictionsArray[i * 4 + 1],
-				predictionsArray[i * 4 + 2],
-				predictionsArray[i * 4 + 3]);
-			}
-		}
-
-		validCount = filterValidResult(outputClassesArray, output, NUM_CLASS, props);
-		if(DEBUG)
-			System.out.printf("Valid count total =%d", validCount);
-		// no object detected
-		if (validCount <= 0) {
-			return 0;
-		}
-		if(DEBUG) {
-			System.out.println("UnSorted output0:"+Arrays.toString(output[0]));
-			System.out.println("UnSorted output1:"+Arrays.toString(output[1]));
-			System.out.println("UnSorted props:"+Arrays.toString(props));
-			System.out.println("sort..");
-		}
-		sort(output, props, validCount);
-		if(DEBUG) {
-			System.out.println("sort done");
-			System.out.println("Sorted output0:"+Arrays.toString(output[0]));
-			System.out.println("Sorted output1:"+Arrays.toString(output[1]));
-			System.out.println("Sorted props:"+Arrays.toString(props));
-		}
-			
-		return process_arraysSSD(output, predictionsArray, props, labels, group, nms_threshold, validCount, model_in_w, model_in_h, scale_w, scale_h);
-
+		return post_process(MemorySegment.ofArray(input0), MemorySegment.ofArray(input1), box_priors, model_in_h, model_in_w,
+				nms_threshold, scale_w, scale_h, qnt_zps, qnt_scales, group, labels);
+	}
+	/**
+	 * InceptionSSD quantized INT8 output, as above, reading the layers in place from Java arrays or NPU tensor memory.
+	 * @param input0 Layer 0 output from NPU, Contains 'predictions'
+	 * @param input1 Layer 1 output from NPU Contains 'output_classes'
+	 */
+	public static int post_process(MemorySegment input0, MemorySegment input1, float[][] box_priors, int model_in_h, int model_in_w,
+            float nms_threshold, float scale_w, float scale_h, ArrayList<Integer> qnt_zps,
+            ArrayList<Float> qnt_scales, detect_result_group group, String[] labels) {
+		return post_process(input0, input1, box_priors, model_in_h, model_in_w, nms_threshold, scale_w, scale_h,
+				QuantTable.of(qnt_zps, qnt_scales), 0, 0, group, labels);
+	}
+	/**
+	 * InceptionSSD quantized INT8 output, as above, with the lookup tables of the layers.
+	 * The output classes are compared through the table in place rather than dequantized as a whole.
+	 * For a model loaded by initNPU see {@link #post_process(PostProcessPlan, MemorySegment[], float[][], float, float, int, int, detect_result_group, String[])}
+	 * @param tables lookup table of each output layer
+	 * @param budget Maximum number of the highest props passed to NMS, 0 for no limit
+	 * @param maxDetections Maximum number of objects kept, NMS stops once reached, 0 for no limit
+	 */
+	public static int post_process(MemorySegment input0, MemorySegment input1, float[][] box_priors, int model_in_h, int model_in_w,
+            float nms_threshold, float scale_w, float scale_h, QuantTable[] tables, int budget, int maxDetections,
+            detect_result_group group, String[] labels) {
+		return post_process(PostProcessPlan.ssd(null, tables, model_in_w, model_in_h, nms_threshold, false),
+				new MemorySegment[] {input0, input1}, box_priors, scale_w, scale_h, budget, maxDetections, group, labels);
 	}
 	/**
 	 * FLOAT InceptionSSD<p/>
@@ -1341,41 +1382,149 @@ public class detect_result {
 	 */
 	public static int post_process(byte[] input0, byte[] input1, float[][] box_priors, int model_in_h, int model_in_w,
             float nms_threshold, float scale_w, float scale_h, detect_result_group group, String[] labels) {
-	
-		int validCount = 0;
-		// convert input0 to 'predictions', convert input1 to 'output_classes'
+		return post_process(input0, input1, box_priors, model_in_h, model_in_w, nms_threshold, scale_w, scale_h, 0, 0, group, labels);
+	}
+	/**
+	 * FLOAT InceptionSSD<p/>
+	 * As above, with a candidate budget and a maximum number of detections.
+	 * @param budget Maximum number of the highest props passed to NMS, 0 for no limit
+	 * @param maxDetections Maximum number of objects kept, NMS stops once reached, 0 for no limit
+	 */
+	public static int post_process(byte[] input0, byte[] input1, float[][] box_priors, int model_in_h, int model_in_w,
+            float nms_threshold, float scale_w, float scale_h, int budget, int maxDetections, detect_result_group group, String[] labels) {
+		return post_process(PostProcessPlan.ssd(null, null, model_in_w, model_in_h, nms_threshold, true),
+				new MemorySegment[] {floats(input0), floats(input1)}, box_priors, scale_w, scale_h, budget, maxDetections, group, labels);
+	}
 
-		float[] predictionsArray =  process(input0);
-		if(DEBUG) {
-			for(int i = 0; i < predictionsArray.length; i+=4) {
-				System.out.printf("prediction %d xmin=%f ymin=%f xmax=%f ymax=%f%n", i,predictionsArray[i * 4 + 0],
-				predictionsArray[i * 4 + 1],
-				predictionsArray[i * 4 + 2],
-				predictionsArray[i * 4 + 3]);
-			}
+	/**
+	 * Post processing by the plan of the model, computed once at initNPU, see {@link PostProcessPlan}.
+	 * The grids, strides, anchors, lookup tables and quantized thresholds come from the plan, nothing is derived per frame.
+	 * With {@link #setParallel(boolean)} the YOLO branches are decoded in parallel, see ParallelDecode.
+	 * @param plan post processing plan of the model
+	 * @param bufs output tensors from NPU, quantized INT8 read in place, in NCHW or the native layouts of the plan, or want_float read
+	 * through their float views, see {@link #floats(rknn_output[])}
+	 * @param box_priors InceptionSSD box priors, unused for YOLO
+	 * @param scale_w Scale width
+	 * @param scale_h Scale height
+	 * @param budget Maximum number of the highest scoring candidates kept, 0 for no limit
+	 * @param maxDetections Maximum number of objects kept, NMS stops once reached, 0 for no limit
+	 * @param group Output structure initialized to accept output groups
+	 * @param labels the Class Id labels acquired from whatever source
+	 * @return number of objects detected from detect_result_group populated with results array
+	 */
+	public static int post_process(PostProcessPlan plan, MemorySegment[] bufs, float[][] box_priors, float scale_w, float scale_h,
+			int budget, int maxDetections, detect_result_group group, String[] labels) {
+		switch(plan.kind) {
+			case YOLOV5:
+			case YOLOV11:
+				detect_candidates candidates = detect_candidates.get(budget);
+				int validCount = decodeYOLO(plan, bufs, candidates);
+				if(DEBUG)
+					System.out.printf("Valid count total =%d%n", validCount);
+				// no object detected
+				if (validCount <= 0) {
+					return 0;
+				}
+				return process_arraysYOLO(candidates, labels, group, plan.nms_threshold, maxDetections, plan.model_in_w, plan.model_in_h,
+						scale_w, scale_h);
+			case INCEPTION_SSD:
+			default:
+				return post_processSSD(plan, bufs[0], bufs[1], box_priors, scale_w, scale_h, budget, maxDetections, group, labels);
 		}
-		float[] outputClassesArray =  process(input1);
-		if(DEBUG) {
-			  for (int i = 0; i < outputClassesArray.length; i++) {
-				    // Skip the first catch-all class.
-				      System.out.printf("outputClasses Class#=%d outputClass=%f%n",i, outputClassesArray[i]);
-			  }
+	}
+	/**
+	 * Decode the YOLO branches into candidates, in branch order, and anchor order for YOLOv5, or split in bands over
+	 * the common fork-join pool in parallel mode.
+	 * @return Count of the candidates decoded
+	 */
+	private static int decodeYOLO(PostProcessPlan plan, MemorySegment[] bufs, detect_candidates candidates) {
+		int validCount = 0;
+		ParallelDecode bands = ParallelDecode.enabled() ? ParallelDecode.get() : null;
+		int branches = plan.kind == PostProcessPlan.Kind.YOLOV5 ? Math.min(plan.branches, bufs.length) : plan.branches;
+		for (int b = 0; b < branches; b++) {
+			int branch = b;
+			int grid_h = plan.grid_h[b];
+			int grid_w = plan.grid_w[b];
+			if (plan.kind == PostProcessPlan.Kind.YOLOV11) {
+				if (bands != null)
+					bands.add((part, from, to) -> processYOLOv11(plan, branch, bufs, part, from, to), grid_h, grid_w);
+				else
+					validCount += processYOLOv11(plan, branch, bufs, candidates, 0, grid_h * grid_w);
+				continue;
+			}
+			for (int a = 0; a < plan.anchors[b].length / 2; a++) {
+				int plane = a;
+				if (bands != null)
+					bands.add((part, from, to) -> processYOLOv5(plan, branch, plane, bufs[branch], part, from, to), grid_h, grid_w);
+				else
+					validCount += processYOLOv5(plan, branch, a, bufs[b], candidates, 0, grid_h * grid_w);
+			}
 		}
-		
-		int[][] output = new int[2][NUM_RESULTS];
-		float[] props = new float[NUM_RESULTS];
-
-		decodeCenterSizeBoxes(predictionsArray, box_priors);
+		if (bands != null)
+			validCount = bands.run(candidates);
+		return validCount;
+	}
+	/**
+	 * YOLOv11 decode of the cells from..to of a branch, INT8 or FLOAT16 as the plan has it, planar or in the native
+	 * layouts of the plan.
+	 */
+	private static int processYOLOv11(PostProcessPlan plan, int branch, MemorySegment[] bufs, detect_candidates candidates,
+			int from, int to) {
+		if (plan.nativeLayouts != null)
+			return NativeDecode.yolov11(plan, branch, bufs, candidates, from, to);
+		if (plan.floating)
+			return processFloat(plan, branch, bufs, candidates, from, to);
+		return process(plan, branch, bufs, candidates, from, to);
+	}
+	/**
+	 * YOLOv5 decode of the cells from..to of anchor a of a branch, INT8, want_float or FLOAT16 as the plan has it,
+	 * planar or in the native layouts of the plan.
+	 */
+	private static int processYOLOv5(PostProcessPlan plan, int branch, int a, MemorySegment input, detect_candidates candidates,
+			int from, int to) {
+		if (plan.nativeLayouts != null)
+			return NativeDecode.yolov5(plan, branch, a, input, candidates, from, to);
+		int grid_len = plan.grid_h[branch] * plan.grid_w[branch];
+		if (plan.floating)
+			return processBand(input, plan.anchors[branch], a, plan.prop_box_size, plan.grid_w[branch], grid_len, plan.stride[branch],
+					candidates, plan.thres, plan.half, from, to);
+		return processBand(input, plan.anchors[branch], a, plan.prop_box_size, plan.grid_w[branch], grid_len, plan.stride[branch],
+				candidates, plan.thres_i8[branch], plan.tables[branch], from, to);
+	}
+	/**
+	 * InceptionSSD by plan: the classes are filtered first, in the quantized domain for INT8, sorted, bounded by the
+	 * budget, then the boxes of the surviving priors only are decoded ahead of NMS.
+	 * @param input0 'predictions'
+	 * @param input1 'output_classes'
+	 */
+	private static int post_processSSD(PostProcessPlan plan, MemorySegment input0, MemorySegment input1, float[][] box_priors,
+			float scale_w, float scale_h, int budget, int maxDetections, detect_result_group group, String[] labels) {
+		int validCount = 0;
 		if(DEBUG) {
-			for(int i = 0; i < predictionsArray.length; i+=4) {
-				System.out.printf("prediction postdecodeCSB %d xmin=%f ymin=%f xmax=%f ymax=%f%n", i,predictionsArray[i * 4 + 0],
-				predictionsArray[i * 4 + 1],
-				predictionsArray[i * 4 + 2],
-				predictionsArray[i * 4 + 3]);
+			long n = plan.floating ? input0.byteSize() / (plan.half ? 2 : 4) : input0.byteSize();
+			System.out.println("Predictions array:"+n);
+			for(int i = 0; i < n; i+=4) {
+				System.out.printf("SSD postproc prediction %d xmin=%f ymin=%f xmax=%f ymax=%f%n", i, ssdValue(plan, 0, input0, i),
+				ssdValue(plan, 0, input0, i + 1),
+				ssdValue(plan, 0, input0, i + 2),
+				ssdValue(plan, 0, input0, i + 3));
+			}
+			n = plan.floating ? input1.byteSize() / (plan.half ? 2 : 4) : input1.byteSize();
+			System.out.println("Output classes array:"+n);
+			for (int i = 0; i < n; i++) {
+				System.out.printf("outputClasses Class#=%d outputClass=%f%n",i, ssdValue(plan, 1, input1, i));
 			}
 		}
+		
+		int[][] output = new int[2][plan.numResults];
+		float[] props = new float[plan.numResults];
 
-		validCount = filterValidResult(outputClassesArray, output, NUM_CLASS, props);
+		if(plan.nativeLayouts != null)
+			validCount = NativeDecode.filterSSD(input1, plan.nativeLayouts[1], plan.tables[1], output, plan.numResults, plan.numClasses,
+					props, plan.min_score);
+		else
+			validCount = plan.floating ? filterValidResult(input1, output, plan.numResults, plan.numClasses, props, plan.half) :
+				filterValidResult(input1, plan.tables[1], output, plan.numResults, plan.numClasses, props, plan.min_score);
 		if(DEBUG)
 			System.out.printf("Valid count total =%d", validCount);
 		// no object detected
@@ -1395,9 +1544,32 @@ public class detect_result {
 			System.out.println("Sorted output1:"+Arrays.toString(output[1]));
 			System.out.println("Sorted props:"+Arrays.toString(props));
 		}
+		// props are sorted, the budget keeps the highest
+		if(budget > 0 && validCount > budget)
+			validCount = budget;
+		// decode the boxes of the surviving priors only
+		SsdBoxes boxes = SsdBoxes.get();
+		if(plan.floating)
+			boxes.decode(input0, box_priors, output[0], validCount, plan.half);
+		else if(plan.nativeLayouts != null)
+			boxes.decode(input0, plan.nativeLayouts[0], plan.tables[0], box_priors, output[0], validCount);
+		else
+			boxes.decode(input0, plan.tables[0], box_priors, output[0], validCount);
+		if(DEBUG) {
+			for(int i = 0; i < validCount; i++) {
+				System.out.printf("prediction postdecodeCSB %d xmin=%f ymin=%f xmax=%f ymax=%f%n", output[0][i], boxes.xmin[i],
+				boxes.ymin[i],
+				boxes.xmax[i],
+				boxes.ymax[i]);
+			}
+		}
 			
-		return process_arraysSSD(output, predictionsArray, props, labels, group, nms_threshold, validCount, model_in_w, model_in_h, scale_w, scale_h);
+		return process_arraysSSD(output, boxes, props, labels, group, plan.nms_threshold, validCount, maxDetections,
+				plan.model_in_w, plan.model_in_h, scale_w, scale_h);
+	}
 
+	private static float ssdValue(PostProcessPlan plan, int tensor, MemorySegment input, long i) {
+		return plan.floating ? value(input, i, plan.half) : plan.tables[tensor].deqnt(input.get(JAVA_BYTE, i));
 	}
 
 	@Override
@@ -0,0 +1,163 @@
+package com.neocoretechs.rknn4j;
+
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteBuffer;
+
+/**
+ * The calls into the RKNN runtime, as declared in rknn_api.h.<p/>
+ * Implemented by the JNI glue in {@link rknpu2} and by the Foreign Function and Memory
+ * binding to librknnrt.so in {@link rknpu2ffm}. The implementation is selected with the system property
+ * rknn4j.backend=jni|ffm, JNI being the default.
+ * @author Jonathan Groff Copyright (C) NeoCoreTechs 2025
+ *
+ */
+public interface rknn_api {
+	/**
+	 * @return The implementation selected by system property rknn4j.backend, jni or ffm
+	 */
+	public static rknn_api getInstance() {
+		if("ffm".equalsIgnoreCase(System.getProperty("rknn4j.backend", "jni")))
+			return new rknpu2ffm();
+		return new rknpu2();
+	}
+	/**
+	 * rknn_init, initial the context and load the rknn model.
+	 * @param model rknn model.
+	 * @param size the size of rknn model.
+	 * @param flag extend flag, see the define of RKNN_FLAG_XXX_XXX.
+	 * @return the context, or error code if <= 0.
+	 */
+	public long rknn_init(byte[] model, int size, int flag);
+	/**
+	 * rknn_init with the extend information of init.
+	 * @param model rknn model.
+	 * @param size the size of rknn model.
+	 * @param flag extend flag, see the define of RKNN_FLAG_XXX_XXX.
+	 * @param extend the extend information of init.
+	 * @return the context, or error code if <= 0.
+	 */
+	public long rknn_init2(byte[] model, int size, int flag, rknn_init_extend extend);
+	/**
+	 * rknn_dup_context, initialize a new context sharing the loaded model weights.
+	 * @param ctx the context to duplicate.
+	 * @return the new context, or error code if <= 0.
+	 */
+	public long rknn_dup_context(long ctx);
+	/**
+	 * rknn_set_core_mask, set the NPU core(s) the context runs on.
+	 * @param ctx the context.
+	 * @param core_mask one of the RKNN.RKNN_NPU_CORE_XXX values.
+	 * @return int error code.
+	 */
+	public int rknn_set_core_mask(long ctx, int core_mask);
+	/**
+	 * rknn_destroy, unload the rknn model and destroy the context.
+	 * @return int error code.
+	 */
+	public int rknn_destroy(long ctx);
+	/**
+	 * rknn_query RKNN_QUERY_SDK_VERSION.
+	 * @return int error code.
+	 */
+	public int rknn_query_sdk(long ctx, rknn_sdk_version info);
+	/**
+	 * rknn_query RKNN_QUERY_IN_OUT_NUM.
+	 * @return int error code.
+	 */
+	public int rknn_query_IO_num(long ctx, rknn_input_output_num info);
+	/**
+	 * rknn_query RKNN_QUERY_INPUT_ATTR, index of info set before the call.
+	 * @return int error code.
+	 */
+	public int rknn_query_input_attr(long ctx, rknn_tensor_attr info);
+	/**
+	 * rknn_query RKNN_QUERY_OUTPUT_ATTR, index of info set before the call.
+	 * @return int error code.
+	 */
+	public int rknn_query_output_attr(long ctx, rknn_tensor_attr info);
+	/**
+	 * rknn_query RKNN_QUERY_NATIVE_INPUT_ATTR, the input as the NPU lays it out, index of info set before the call.
+	 * @return int error code.
+	 */
+	public int rknn_query_native_input_attr(long ctx, rknn_tensor_attr info);
+	/**
+	 * rknn_query RKNN_QUERY_NATIVE_NHWC_INPUT_ATTR, the input in native NHWC layout, index of info set before the call.
+	 * @return int error code.
+	 */
+	public int rknn_query_native_nhwc_input_attr(long ctx, rknn_tensor_attr info);
+	/**
+	 * rknn_query RKNN_QUERY_NATIVE_OUTPUT_ATTR, the output as the NPU lays it out, typically NC1HWC2,
+	 * index of info set before the call.
+	 * @return int error code.
+	 */
+	public int rknn_query_native_output_attr(long ctx, rknn_tensor_attr info);
+	/**
+	 * rknn_query RKNN_QUERY_NATIVE_NHWC_OUTPUT_ATTR, the output in native NHWC layout, index of info set before the call.
+	 * @return int error code.
+	 */
+	public int rknn_query_native_nhwc_output_attr(long ctx, rknn_tensor_attr info);
+	/**
+	 * rknn_inputs_set, set inputs information by input index of rknn model.
+	 * @return int error code.
+	 */
+	public int rknn_inputs_set(long ctx, int n_inputs, rknn_input inputs[]);
+	/**
+	 * rknn_inputs_set of a single input from a direct buffer, the buf field of input is ignored.
+	 * @return int error code.
+	 */
+	public int rknn_inputs_set(long ctx, rknn_input input, ByteBuffer buf);
+	/**
+	 * rknn_inputs_set of a single input from a native address, the buf field of input is ignored.
+	 * @return int error code.
+	 */
+	public int rknn_inputs_set(long ctx, rknn_input input, long address);
+	/**
+	 * rknn_inputs_set of a single input from a native segment, the buf field of input is ignored.
+	 * @return int error code.
+	 */
+	public int rknn_inputs_set(long ctx, rknn_input input, MemorySegment buf);
+	/**
+	 * rknn_run, run the model to execute inference.
+	 * @param extend the extend information of run, may be null.
+	 * @return int error code.
+	 */
+	public int rknn_run(long ctx, rknn_run_extend extend);
+	/**
+	 * rknn_outputs_get, wait the inference to finish and get the outputs.
+	 * @param extend the extend information of output, may be null.
+	 * @return int error code.
+	 */
+	public int rknn_outputs_get(long ctx, int n_outputs, rknn_output outputs[], rknn_output_extend extend);
+	/**
+	 * rknn_outputs_release, release the outputs that get by rknn_outputs_get.
+	 * @return int error code.
+	 */
+	public int rknn_outputs_release(long ctx, int n_ouputs, rknn_output outputs[]);
+	/**
+	 * rknn_create_mem, create tensor memory allocated by the runtime.
+	 * @param size the size of tensor buffer.
+	 * @return the tensor memory information, or null on failure.
+	 */
+	public rknn_tensor_mem rknn_create_mem(long ctx, int size);
+	/**
+	 * rknn_create_mem_from_fd, create tensor memory from a buffer allocated outside, such as a DMA buffer.
+	 * @param fd the fd of the buffer.
+	 * @param virt_addr the virtual address of the buffer.
+	 * @param size the size of tensor buffer.
+	 * @param offset the offset of the tensor within the buffer.
+	 * @return the tensor memory information, or null on failure.
+	 */
+	public rknn_tensor_mem rknn_create_mem_from_fd(long ctx, int fd, long virt_addr, int size, int offset);
+	/**
+	 * rknn_destroy_mem, destroy tensor memory created by rknn_create_mem or rknn_create_mem_from_fd.
+	 * @return int error code.
+	 */
+	public int rknn_destroy_mem(long ctx, rknn_tensor_mem mem);
+	/**
+	 * rknn_set_io_mem, bind tensor memory as the buffer of the input or output tensor described by attr.
+	 * Inference then reads and writes the buffer directly, without rknn_inputs_set or rknn_outputs_get.
+	 * @param attr the attribute of the input or output tensor buffer.
+	 * @return int error code.
+	 */
+	public int rknn_set_io_mem(long ctx, rknn_tensor_mem mem, rknn_tensor_attr attr);
+}
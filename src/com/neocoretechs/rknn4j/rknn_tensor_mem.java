@@ -0,0 +1,83 @@
+package com.neocoretechs.rknn4j;
+
+import java.lang.foreign.MemorySegment;
+/**
+ * The memory information of tensor, from rknn_create_mem or rknn_create_mem_from_fd, for rknn_set_io_mem.<p/>
+ * The tensor buffer is mapped into the process at virt_addr, and may be read and written in place
+ * through {@link #getSegment()}. The structure itself is owned by the runtime until rknn_destroy_mem.
+ * @author Jonathan Groff Copyright (C) NeoCoreTechs 2025
+ *
+ */
+public class rknn_tensor_mem {
+	long mem;                                           /* the address of the rknn_tensor_mem structure itself, passed back to the runtime. */
+	long virt_addr;                                     /* the virtual address of tensor buffer. */
+	long phys_addr;                                     /* the physical address of tensor buffer. */
+	int fd;                                             /* the fd of tensor buffer. */
+	int offset;                                         /* indicates the offset of the memory. */
+	int size;                                           /* the size of tensor buffer. */
+	int flags;                                          /* the flags of tensor buffer, reserved */
+	long priv_data;                                     /* the private data of tensor buffer. */
+	private MemorySegment segment;
+	/**
+	 * @return the address of the native rknn_tensor_mem structure
+	 */
+	public long getMem() {
+		return mem;
+	}
+	/**
+	 * @return the virt_addr
+	 */
+	public long getVirt_addr() {
+		return virt_addr;
+	}
+	/**
+	 * @return the phys_addr
+	 */
+	public long getPhys_addr() {
+		return phys_addr;
+	}
+	/**
+	 * @return the fd
+	 */
+	public int getFd() {
+		return fd;
+	}
+	/**
+	 * @return the offset
+	 */
+	public int getOffset() {
+		return offset;
+	}
+	/**
+	 * @return the size
+	 */
+	public int getSize() {
+		return size;
+	}
+	/**
+	 * @return the flags
+	 */
+	public int getFlags() {
+		return flags;
+	}
+	/**
+	 * @return the priv_data
+	 */
+	public long getPriv_data() {
+		return priv_data;
+	}
+	/**
+	 * The tensor buffer mapped as native memory of size bytes. Not valid after rknn_destroy_mem.
+	 * @return the segment at virt_addr
+	 */
+	public synchronized MemorySegment getSegment() {
+		if(segment == null)
+			segment = MemorySegment.ofAddress(virt_addr).reinterpret(Integer.toUnsignedLong(size));
+		return segment;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("virt_addr=%x phys_addr=%x fd=%d offset=%d size=%d flags=%d", virt_addr, phys_addr, fd, offset, size, flags);
+	}
+}
@@ -2,12 +2,14 @@ package com.neocoretechs.rknn4j;
 
 import java.io.File;
 import java.io.IOException;
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicReference;
 
-public class rknpu2 {
+public class rknpu2 implements rknn_api {
 	 private enum LibraryState {
 		    NOT_LOADED,
 		    LOADING,
@@ -65,6 +67,19 @@ public class rknpu2 {
 		    }
 	 }
 
+	/**
+	 * The calls added to rknn_api after librknn4j.so 1.0.1 are bound to natives of names of their own, the public
+	 * method catching the UnsatisfiedLinkError a library without the glue throws on the first call. Each native has
+	 * a name no other native shares, as HotSpot binds the short JNI name, Java_..._rknn_1inputs_1set say, to every
+	 * overload of that name before it tries the long names carrying the signature.
+	 * @param call The rknn_api call
+	 * @param e The link error
+	 * @return The exception to throw, naming the call and the FFM backend that implements it
+	 */
+	private static RuntimeException noGlue(String call, UnsatisfiedLinkError e) {
+		return new RuntimeException(call+" is not in the loaded librknn4j JNI glue, use the FFM backend, -Drknn4j.backend=ffm", e);
+	}
+
 	/**
 	 * rknn_init
      * initial the context and load the rknn model. We will keep context internal
@@ -86,6 +101,43 @@ public class rknpu2 {
 	 */
 	public native long rknn_init2(byte[] model, int size, int flag, rknn_init_extend extend);
 
+	/**
+	 * rknn_dup_context
+	 * initialize a new context from an existing one, sharing the loaded model weights.
+	 * librknn4j.so 1.0.1 has no glue for it, use the FFM backend.
+	 * @param ctx the context to duplicate, from rknn_init.
+	 * @return long the new context, or error code if <= 0.
+	 * @throws RuntimeException if the loaded librknn4j has no glue for it
+	 */
+	public long rknn_dup_context(long ctx) {
+		try {
+			return rknn_dup_context0(ctx);
+		} catch(UnsatisfiedLinkError e) {
+			throw noGlue("rknn_dup_context", e);
+		}
+	}
+
+	private native long rknn_dup_context0(long ctx);
+
+	/**
+	 * rknn_set_core_mask
+	 * set the NPU core(s) the context runs on (only supported on RK3588).
+	 * librknn4j.so 1.0.1 has no glue for it, use the FFM backend.
+	 * @param ctx the context from rknn_init or rknn_dup_context.
+	 * @param core_mask one of the RKNN.RKNN_NPU_CORE_XXX values.
+	 * @return int error code.
+	 * @throws RuntimeException if the loaded librknn4j has no glue for it
+	 */
+	public int rknn_set_core_mask(long ctx, int core_mask) {
+		try {
+			return rknn_set_core_mask0(ctx, core_mask);
+		} catch(UnsatisfiedLinkError e) {
+			throw noGlue("rknn_set_core_mask", e);
+		}
+	}
+
+	private native int rknn_set_core_mask0(long ctx, int core_mask);
+
 	/**
 	 * rknn_destroy
      * unload the rknn model and destroy the context.
@@ -145,6 +197,82 @@ public class rknpu2 {
 	*/
 	public native int rknn_query_output_attr(long ctx, rknn_tensor_attr info);
 	
+	/**  
+	* rknn_query native input layer.
+    * query RKNN_QUERY_NATIVE_INPUT_ATTR, the input tensor as laid out by the NPU, with its type, quantization,
+    * w_stride, h_stride and size_with_stride. Input written in this layout is set with pass_through, sparing
+    * the runtime the conversion. Set the index of info before the call.
+    * librknn4j.so 1.0.1 has no glue for it, use the FFM backend.
+    * @param the input tensor attribute instance to set
+    * @return int error code.
+    * @throws RuntimeException if the loaded librknn4j has no glue for it
+	*/
+	public int rknn_query_native_input_attr(long ctx, rknn_tensor_attr info) {
+		try {
+			return rknn_query_native_input_attr0(ctx, info);
+		} catch(UnsatisfiedLinkError e) {
+			throw noGlue("rknn_query_native_input_attr", e);
+		}
+	}
+
+	private native int rknn_query_native_input_attr0(long ctx, rknn_tensor_attr info);
+	
+	/**  
+	* rknn_query native NHWC input layer.
+    * query RKNN_QUERY_NATIVE_NHWC_INPUT_ATTR, as above in NHWC layout. Set the index of info before the call.
+    * librknn4j.so 1.0.1 has no glue for it, use the FFM backend.
+    * @param the input tensor attribute instance to set
+    * @return int error code.
+    * @throws RuntimeException if the loaded librknn4j has no glue for it
+	*/
+	public int rknn_query_native_nhwc_input_attr(long ctx, rknn_tensor_attr info) {
+		try {
+			return rknn_query_native_nhwc_input_attr0(ctx, info);
+		} catch(UnsatisfiedLinkError e) {
+			throw noGlue("rknn_query_native_nhwc_input_attr", e);
+		}
+	}
+
+	private native int rknn_query_native_nhwc_input_attr0(long ctx, rknn_tensor_attr info);
+	
+	/**  
+	* rknn_query native output layer.
+    * query RKNN_QUERY_NATIVE_OUTPUT_ATTR, the output tensor as laid out by the NPU, typically NC1HWC2,
+    * with its w_stride and size_with_stride. Bound with rknn_set_io_mem the output is left in this layout,
+    * saving the runtime the conversion to NCHW. Set the index of info before the call.
+    * librknn4j.so 1.0.1 has no glue for it, use the FFM backend.
+    * @param the output tensor attribute instance to set
+    * @return int error code.
+    * @throws RuntimeException if the loaded librknn4j has no glue for it
+	*/
+	public int rknn_query_native_output_attr(long ctx, rknn_tensor_attr info) {
+		try {
+			return rknn_query_native_output_attr0(ctx, info);
+		} catch(UnsatisfiedLinkError e) {
+			throw noGlue("rknn_query_native_output_attr", e);
+		}
+	}
+
+	private native int rknn_query_native_output_attr0(long ctx, rknn_tensor_attr info);
+	
+	/**  
+	* rknn_query native NHWC output layer.
+    * query RKNN_QUERY_NATIVE_NHWC_OUTPUT_ATTR, as above in NHWC layout. Set the index of info before the call.
+    * librknn4j.so 1.0.1 has no glue for it, use the FFM backend.
+    * @param the output tensor attribute instance to set
+    * @return int error code.
+    * @throws RuntimeException if the loaded librknn4j has no glue for it
+	*/
+	public int rknn_query_native_nhwc_output_attr(long ctx, rknn_tensor_attr info) {
+		try {
+			return rknn_query_native_nhwc_output_attr0(ctx, info);
+		} catch(UnsatisfiedLinkError e) {
+			throw noGlue("rknn_query_native_nhwc_output_attr", e);
+		}
+	}
+
+	private native int rknn_query_native_nhwc_output_attr0(long ctx, rknn_tensor_attr info);
+	
 	/**
 	* rknn_inputs_set
     * set inputs information by input index of rknn model.
@@ -155,6 +283,60 @@ public class rknpu2 {
 	 */
 	public native int rknn_inputs_set(long ctx, int n_inputs, rknn_input inputs[]);
 
+	/**
+	* rknn_inputs_set from a direct buffer
+    * set a single input by input index of rknn model, the address of the direct buffer is handed
+    * to the runtime without copying through a Java array.
+    * @param input the input information, see rknn_input. The buf field is ignored.
+    * librknn4j.so 1.0.1 has no glue for it, use the FFM backend.
+    * @param buf direct ByteBuffer holding input.size bytes from position 0
+    * @return int error code
+    * @throws RuntimeException if the loaded librknn4j has no glue for it
+	 */
+	public int rknn_inputs_set(long ctx, rknn_input input, ByteBuffer buf) {
+		try {
+			return rknn_inputs_set_buffer(ctx, input, buf);
+		} catch(UnsatisfiedLinkError e) {
+			throw noGlue("rknn_inputs_set of a direct buffer", e);
+		}
+	}
+
+	private native int rknn_inputs_set_buffer(long ctx, rknn_input input, ByteBuffer buf);
+
+	/**
+	* rknn_inputs_set from a native address
+    * set a single input by input index of rknn model from native memory.
+    * @param input the input information, see rknn_input. The buf field is ignored.
+    * librknn4j.so 1.0.1 has no glue for it, use the FFM backend.
+    * @param address native address holding input.size bytes
+    * @return int error code
+    * @throws RuntimeException if the loaded librknn4j has no glue for it
+	 */
+	public int rknn_inputs_set(long ctx, rknn_input input, long address) {
+		try {
+			return rknn_inputs_set_address(ctx, input, address);
+		} catch(UnsatisfiedLinkError e) {
+			throw noGlue("rknn_inputs_set of a native address", e);
+		}
+	}
+
+	private native int rknn_inputs_set_address(long ctx, rknn_input input, long address);
+
+	/**
+	* rknn_inputs_set from a native MemorySegment
+    * set a single input by input index of rknn model, the segment address is handed to the runtime.
+    * @param input the input information, see rknn_input. The buf field is ignored.
+    * As the address overload, librknn4j.so 1.0.1 has no glue for it, use the FFM backend.
+    * @param buf native segment of at least input.size bytes
+    * @return int error code
+    * @throws RuntimeException if the loaded librknn4j has no glue for it
+	 */
+	public int rknn_inputs_set(long ctx, rknn_input input, MemorySegment buf) {
+		if(!buf.isNative() || buf.byteSize() < input.getSize())
+			return RKNN.RKNN_ERR_PARAM_INVALID;
+		return rknn_inputs_set(ctx, input, buf.address());
+	}
+
 	/**
 	*   rknn_run
     * run the model to execute inference.
@@ -188,4 +370,80 @@ public class rknpu2 {
 	 */
 	public native int rknn_outputs_release(long ctx, int n_ouputs, rknn_output outputs[]);
 
+	/**
+	* rknn_create_mem
+    * create tensor memory allocated inside the runtime.
+    * librknn4j.so 1.0.1 has no glue for it, use the FFM backend.
+    * @param size the size of tensor buffer.
+    * @return rknn_tensor_mem the tensor memory information, null on failure.
+    * @throws RuntimeException if the loaded librknn4j has no glue for it
+	 */
+	public rknn_tensor_mem rknn_create_mem(long ctx, int size) {
+		try {
+			return rknn_create_mem0(ctx, size);
+		} catch(UnsatisfiedLinkError e) {
+			throw noGlue("rknn_create_mem", e);
+		}
+	}
+
+	private native rknn_tensor_mem rknn_create_mem0(long ctx, int size);
+
+	/**
+	* rknn_create_mem_from_fd
+    * initialize tensor memory from file descriptor, memory allocated outside.
+    * librknn4j.so 1.0.1 has no glue for it, use the FFM backend.
+    * @param fd the fd of memory.
+    * @param virt_addr the virtual address of memory.
+    * @param size the size of tensor buffer.
+    * @param offset indicates the offset of the memory.
+    * @return rknn_tensor_mem the tensor memory information, null on failure.
+    * @throws RuntimeException if the loaded librknn4j has no glue for it
+	 */
+	public rknn_tensor_mem rknn_create_mem_from_fd(long ctx, int fd, long virt_addr, int size, int offset) {
+		try {
+			return rknn_create_mem_from_fd0(ctx, fd, virt_addr, size, offset);
+		} catch(UnsatisfiedLinkError e) {
+			throw noGlue("rknn_create_mem_from_fd", e);
+		}
+	}
+
+	private native rknn_tensor_mem rknn_create_mem_from_fd0(long ctx, int fd, long virt_addr, int size, int offset);
+
+	/**
+	* rknn_destroy_mem
+    * destroy tensor memory, allocated inside or outside.
+    * librknn4j.so 1.0.1 has no glue for it, use the FFM backend.
+    * @param mem the tensor memory information.
+    * @return int error code.
+    * @throws RuntimeException if the loaded librknn4j has no glue for it
+	 */
+	public int rknn_destroy_mem(long ctx, rknn_tensor_mem mem) {
+		try {
+			return rknn_destroy_mem0(ctx, mem);
+		} catch(UnsatisfiedLinkError e) {
+			throw noGlue("rknn_destroy_mem", e);
+		}
+	}
+
+	private native int rknn_destroy_mem0(long ctx, rknn_tensor_mem mem);
+
+	/**
+	* rknn_set_io_mem
+    * set the input and output tensors buffer.
+    * librknn4j.so 1.0.1 has no glue for it, use the FFM backend.
+    * @param mem the tensor memory information.
+    * @param attr the attribute of input or output tensor buffer.
+    * @return int error code.
+    * @throws RuntimeException if the loaded librknn4j has no glue for it
+	 */
+	public int rknn_set_io_mem(long ctx, rknn_tensor_mem mem, rknn_tensor_attr attr) {
+		try {
+			return rknn_set_io_mem0(ctx, mem, attr);
+		} catch(UnsatisfiedLinkError e) {
+			throw noGlue("rknn_set_io_mem", e);
+		}
+	}
+
+	private native int rknn_set_io_mem0(long ctx, rknn_tensor_mem mem, rknn_tensor_attr attr);
+
 }
@@ -0,0 +1,680 @@
+package com.neocoretechs.rknn4j;
+
+import static java.lang.foreign.ValueLayout.ADDRESS;
+import static java.lang.foreign.ValueLayout.JAVA_BYTE;
+import static java.lang.foreign.ValueLayout.JAVA_FLOAT;
+import static java.lang.foreign.ValueLayout.JAVA_INT;
+import static java.lang.foreign.ValueLayout.JAVA_LONG;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemoryLayout;
+import java.lang.foreign.MemoryLayout.PathElement;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.StructLayout;
+import java.lang.foreign.SymbolLookup;
+import java.lang.invoke.MethodHandle;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.neocoretechs.rknn4j.RKNN.rknn_query_cmd;
+import com.neocoretechs.rknn4j.RKNN.rknn_tensor_format;
+import com.neocoretechs.rknn4j.RKNN.rknn_tensor_qnt_type;
+import com.neocoretechs.rknn4j.RKNN.rknn_tensor_type;
+
+/**
+ * Foreign Function and Memory binding to the RKNN runtime librknnrt.so, an alternative to the JNI glue of {@link rknpu2}.<p/>
+ * The runtime functions are called through Linker downcall handles, and the structures are laid out in native memory
+ * to match rknn_api.h of runtime/RK3588/Linux/librknn_api/include for 64 bit targets.<p/>
+ * The library is loaded from the path in system property rknn4j.librknnrt, default /usr/lib/jni/librknnrt.so,
+ * so a stub library exporting the same symbols may be substituted on other platforms.
+ * @author Jonathan Groff Copyright (C) NeoCoreTechs 2025
+ *
+ */
+public class rknpu2ffm implements rknn_api {
+	private static boolean DEBUG = false;
+	public static final String LIBRARY = System.getProperty("rknn4j.librknnrt", "/usr/lib/jni/librknnrt.so");
+
+	/* rknn_input_output_num */
+	public static final StructLayout RKNN_INPUT_OUTPUT_NUM = MemoryLayout.structLayout(
+			JAVA_INT.withName("n_input"),
+			JAVA_INT.withName("n_output"));
+
+	/* rknn_tensor_attr */
+	public static final StructLayout RKNN_TENSOR_ATTR = MemoryLayout.structLayout(
+			JAVA_INT.withName("index"),
+			JAVA_INT.withName("n_dims"),
+			MemoryLayout.sequenceLayout(RKNN.RKNN_MAX_DIMS, JAVA_INT).withName("dims"),
+			MemoryLayout.sequenceLayout(RKNN.RKNN_MAX_NAME_LEN, JAVA_BYTE).withName("name"),
+			JAVA_INT.withName("n_elems"),
+			JAVA_INT.withName("size"),
+			JAVA_INT.withName("fmt"),
+			JAVA_INT.withName("type"),
+			JAVA_INT.withName("qnt_type"),
+			JAVA_BYTE.withName("fl"),
+			MemoryLayout.paddingLayout(3),
+			JAVA_INT.withName("zp"),
+			JAVA_FLOAT.withName("scale"),
+			JAVA_INT.withName("w_stride"),
+			JAVA_INT.withName("size_with_stride"),
+			JAVA_BYTE.withName("pass_through"),
+			MemoryLayout.paddingLayout(3),
+			JAVA_INT.withName("h_stride"));
+
+	/* rknn_sdk_version */
+	public static final StructLayout RKNN_SDK_VERSION = MemoryLayout.structLayout(
+			MemoryLayout.sequenceLayout(256, JAVA_BYTE).withName("api_version"),
+			MemoryLayout.sequenceLayout(256, JAVA_BYTE).withName("drv_version"));
+
+	/* rknn_input */
+	public static final StructLayout RKNN_INPUT = MemoryLayout.structLayout(
+			JAVA_INT.withName("index"),
+			MemoryLayout.paddingLayout(4),
+			ADDRESS.withName("buf"),
+			JAVA_INT.withName("size"),
+			JAVA_BYTE.withName("pass_through"),
+			MemoryLayout.paddingLayout(3),
+			JAVA_INT.withName("type"),
+			JAVA_INT.withName("fmt"));
+
+	/* rknn_output */
+	public static final StructLayout RKNN_OUTPUT = MemoryLayout.structLayout(
+			JAVA_BYTE.withName("want_float"),
+			JAVA_BYTE.withName("is_prealloc"),
+			MemoryLayout.paddingLayout(2),
+			JAVA_INT.withName("index"),
+			ADDRESS.withName("buf"),
+			JAVA_INT.withName("size"),
+			MemoryLayout.paddingLayout(4));
+
+	/* rknn_init_extend */
+	public static final StructLayout RKNN_INIT_EXTEND = MemoryLayout.structLayout(
+			JAVA_LONG.withName("ctx"),
+			JAVA_INT.withName("real_model_offset"),
+			JAVA_INT.withName("real_model_size"),
+			MemoryLayout.sequenceLayout(120, JAVA_BYTE).withName("reserved"));
+
+	/* rknn_run_extend */
+	public static final StructLayout RKNN_RUN_EXTEND = MemoryLayout.structLayout(
+			JAVA_LONG.withName("frame_id"),
+			JAVA_INT.withName("non_block"),
+			JAVA_INT.withName("timeout_ms"),
+			JAVA_INT.withName("fence_fd"),
+			MemoryLayout.paddingLayout(4));
+
+	/* rknn_output_extend */
+	public static final StructLayout RKNN_OUTPUT_EXTEND = MemoryLayout.structLayout(
+			JAVA_LONG.withName("frame_id"));
+
+	/* rknn_tensor_mem */
+	public static final StructLayout RKNN_TENSOR_MEM = MemoryLayout.structLayout(
+			ADDRESS.withName("virt_addr"),
+			JAVA_LONG.withName("phys_addr"),
+			JAVA_INT.withName("fd"),
+			JAVA_INT.withName("offset"),
+			JAVA_INT.withName("size"),
+			JAVA_INT.withName("flags"),
+			ADDRESS.withName("priv_data"));
+
+	// field offsets
+	public static final long ATTR_INDEX = offset(RKNN_TENSOR_ATTR, "index");
+	public static final long ATTR_N_DIMS = offset(RKNN_TENSOR_ATTR, "n_dims");
+	public static final long ATTR_DIMS = offset(RKNN_TENSOR_ATTR, "dims");
+	public static final long ATTR_NAME = offset(RKNN_TENSOR_ATTR, "name");
+	public static final long ATTR_N_ELEMS = offset(RKNN_TENSOR_ATTR, "n_elems");
+	public static final long ATTR_SIZE = offset(RKNN_TENSOR_ATTR, "size");
+	public static final long ATTR_FMT = offset(RKNN_TENSOR_ATTR, "fmt");
+	public static final long ATTR_TYPE = offset(RKNN_TENSOR_ATTR, "type");
+	public static final long ATTR_QNT_TYPE = offset(RKNN_TENSOR_ATTR, "qnt_type");
+	public static final long ATTR_FL = offset(RKNN_TENSOR_ATTR, "fl");
+	public static final long ATTR_ZP = offset(RKNN_TENSOR_ATTR, "zp");
+	public static final long ATTR_SCALE = offset(RKNN_TENSOR_ATTR, "scale");
+	public static final long ATTR_W_STRIDE = offset(RKNN_TENSOR_ATTR, "w_stride");
+	public static final long ATTR_SIZE_WITH_STRIDE = offset(RKNN_TENSOR_ATTR, "size_with_stride");
+	public static final long ATTR_PASS_THROUGH = offset(RKNN_TENSOR_ATTR, "pass_through");
+	public static final long ATTR_H_STRIDE = offset(RKNN_TENSOR_ATTR, "h_stride");
+
+	static final long INPUT_INDEX = offset(RKNN_INPUT, "index");
+	static final long INPUT_BUF = offset(RKNN_INPUT, "buf");
+	static final long INPUT_SIZE = offset(RKNN_INPUT, "size");
+	static final long INPUT_PASS_THROUGH = offset(RKNN_INPUT, "pass_through");
+	static final long INPUT_TYPE = offset(RKNN_INPUT, "type");
+	static final long INPUT_FMT = offset(RKNN_INPUT, "fmt");
+
+	static final long OUTPUT_WANT_FLOAT = offset(RKNN_OUTPUT, "want_float");
+	static final long OUTPUT_IS_PREALLOC = offset(RKNN_OUTPUT, "is_prealloc");
+	static final long OUTPUT_INDEX = offset(RKNN_OUTPUT, "index");
+	static final long OUTPUT_BUF = offset(RKNN_OUTPUT, "buf");
+	static final long OUTPUT_SIZE = offset(RKNN_OUTPUT, "size");
+
+	static final long INIT_EXTEND_CTX = offset(RKNN_INIT_EXTEND, "ctx");
+	static final long INIT_EXTEND_REAL_MODEL_OFFSET = offset(RKNN_INIT_EXTEND, "real_model_offset");
+	static final long INIT_EXTEND_REAL_MODEL_SIZE = offset(RKNN_INIT_EXTEND, "real_model_size");
+
+	static final long RUN_EXTEND_FRAME_ID = offset(RKNN_RUN_EXTEND, "frame_id");
+	static final long RUN_EXTEND_NON_BLOCK = offset(RKNN_RUN_EXTEND, "non_block");
+	static final long RUN_EXTEND_TIMEOUT_MS = offset(RKNN_RUN_EXTEND, "timeout_ms");
+	static final long RUN_EXTEND_FENCE_FD = offset(RKNN_RUN_EXTEND, "fence_fd");
+
+	static final long MEM_VIRT_ADDR = offset(RKNN_TENSOR_MEM, "virt_addr");
+	static final long MEM_PHYS_ADDR = offset(RKNN_TENSOR_MEM, "phys_addr");
+	static final long MEM_FD = offset(RKNN_TENSOR_MEM, "fd");
+	static final long MEM_OFFSET = offset(RKNN_TENSOR_MEM, "offset");
+	static final long MEM_SIZE = offset(RKNN_TENSOR_MEM, "size");
+	static final long MEM_FLAGS = offset(RKNN_TENSOR_MEM, "flags");
+	static final long MEM_PRIV_DATA = offset(RKNN_TENSOR_MEM, "priv_data");
+
+	private static final Linker LINKER = Linker.nativeLinker();
+	private static final SymbolLookup RKNNRT = SymbolLookup.libraryLookup(Path.of(LIBRARY), Arena.global());
+
+	// int rknn_init(rknn_context* context, void* model, uint32_t size, uint32_t flag, rknn_init_extend* extend);
+	private static final MethodHandle rknn_init = downcall("rknn_init", FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS, JAVA_INT, JAVA_INT, ADDRESS));
+	// int rknn_dup_context(rknn_context* context_in, rknn_context* context_out);
+	private static final MethodHandle rknn_dup_context = downcall("rknn_dup_context", FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS));
+	// int rknn_destroy(rknn_context context);
+	private static final MethodHandle rknn_destroy = downcall("rknn_destroy", FunctionDescriptor.of(JAVA_INT, JAVA_LONG));
+	// int rknn_query(rknn_context context, rknn_query_cmd cmd, void* info, uint32_t size);
+	private static final MethodHandle rknn_query = downcall("rknn_query", FunctionDescriptor.of(JAVA_INT, JAVA_LONG, JAVA_INT, ADDRESS, JAVA_INT));
+	// int rknn_inputs_set(rknn_context context, uint32_t n_inputs, rknn_input inputs[]);
+	private static final MethodHandle rknn_inputs_set = downcall("rknn_inputs_set", FunctionDescriptor.of(JAVA_INT, JAVA_LONG, JAVA_INT, ADDRESS));
+	// int rknn_set_core_mask(rknn_context context, rknn_core_mask core_mask);
+	private static final MethodHandle rknn_set_core_mask = downcall("rknn_set_core_mask", FunctionDescriptor.of(JAVA_INT, JAVA_LONG, JAVA_INT));
+	// int rknn_run(rknn_context context, rknn_run_extend* extend);
+	private static final MethodHandle rknn_run = downcall("rknn_run", FunctionDescriptor.of(JAVA_INT, JAVA_LONG, ADDRESS));
+	// int rknn_outputs_get(rknn_context context, uint32_t n_outputs, rknn_output outputs[], rknn_output_extend* extend);
+	private static final MethodHandle rknn_outputs_get = downcall("rknn_outputs_get", FunctionDescriptor.of(JAVA_INT, JAVA_LONG, JAVA_INT, ADDRESS, ADDRESS));
+	// int rknn_outputs_release(rknn_context context, uint32_t n_ouputs, rknn_output outputs[]);
+	private static final MethodHandle rknn_outputs_release = downcall("rknn_outputs_release", FunctionDescriptor.of(JAVA_INT, JAVA_LONG, JAVA_INT, ADDRESS));
+
+	// rknn_tensor_mem* rknn_create_mem(rknn_context ctx, uint32_t size);
+	private static final MethodHandle rknn_create_mem = downcall("rknn_create_mem", FunctionDescriptor.of(ADDRESS, JAVA_LONG, JAVA_INT));
+	// rknn_tensor_mem* rknn_create_mem_from_fd(rknn_context ctx, int32_t fd, void *virt_addr, uint32_t size, int32_t offset);
+	private static final MethodHandle rknn_create_mem_from_fd = downcall("rknn_create_mem_from_fd", FunctionDescriptor.of(ADDRESS, JAVA_LONG, JAVA_INT, ADDRESS, JAVA_INT, JAVA_INT));
+	// int rknn_destroy_mem(rknn_context ctx, rknn_tensor_mem *mem);
+	private static final MethodHandle rknn_destroy_mem = downcall("rknn_destroy_mem", FunctionDescriptor.of(JAVA_INT, JAVA_LONG, ADDRESS));
+	// int rknn_set_io_mem(rknn_context ctx, rknn_tensor_mem *mem, rknn_tensor_attr *attr);
+	private static final MethodHandle rknn_set_io_mem = downcall("rknn_set_io_mem", FunctionDescriptor.of(JAVA_INT, JAVA_LONG, ADDRESS, ADDRESS));
+
+	// rknn_output arrays whose buffers are owned by the runtime, held until rknn_outputs_release
+	private final ConcurrentHashMap<rknn_output[], MemorySegment> runtimeOutputs = new ConcurrentHashMap<rknn_output[], MemorySegment>();
+	// native memory reused by the calls on each context, dropped by rknn_destroy
+	private final ConcurrentHashMap<Long, ContextMemory> contextMemory = new ConcurrentHashMap<Long, ContextMemory>();
+
+	/**
+	 * Native memory of a context reused from call to call, the rknn_input and rknn_output arrays, the buffers the
+	 * inputs are copied into and the buffers preallocated outputs are received in, each grown as needed. A context
+	 * is used by one thread at a time, as the runtime requires, so a call has the memory of its context to itself.
+	 * The runtime copies the inputs when they are set, and preallocated outputs are copied out before
+	 * rknn_outputs_get returns, so nothing is held across calls.
+	 */
+	private static final class ContextMemory {
+		private MemorySegment inputs = MemorySegment.NULL;
+		private MemorySegment outputs = MemorySegment.NULL;
+		private MemorySegment outputExtend = MemorySegment.NULL;
+		private MemorySegment[] inputBufs = new MemorySegment[0];
+		private MemorySegment[] outputBufs = new MemorySegment[0];
+
+		MemorySegment inputs(int n) {
+			return inputs = fit(inputs, RKNN_INPUT.byteSize() * n, RKNN_INPUT.byteAlignment());
+		}
+
+		MemorySegment outputs(int n) {
+			return outputs = fit(outputs, RKNN_OUTPUT.byteSize() * n, RKNN_OUTPUT.byteAlignment());
+		}
+
+		MemorySegment outputExtend() {
+			return outputExtend = fit(outputExtend, RKNN_OUTPUT_EXTEND.byteSize(), RKNN_OUTPUT_EXTEND.byteAlignment());
+		}
+
+		MemorySegment inputBuf(int i, int size) {
+			if(inputBufs.length <= i)
+				inputBufs = Arrays.copyOf(inputBufs, i + 1);
+			return inputBufs[i] = fit(inputBufs[i], size, Long.BYTES);
+		}
+
+		MemorySegment outputBuf(int i, int size) {
+			if(outputBufs.length <= i)
+				outputBufs = Arrays.copyOf(outputBufs, i + 1);
+			return outputBufs[i] = fit(outputBufs[i], size, Long.BYTES);
+		}
+
+		/**
+		 * @return seg if it holds size bytes, else new memory freed with the context memory once unreachable
+		 */
+		private static MemorySegment fit(MemorySegment seg, long size, long alignment) {
+			if(seg != null && seg.byteSize() >= size)
+				return seg;
+			return Arena.ofAuto().allocate(size, alignment);
+		}
+	}
+
+	private ContextMemory memory(long ctx) {
+		return contextMemory.computeIfAbsent(ctx, k -> new ContextMemory());
+	}
+
+	private static long offset(StructLayout layout, String name) {
+		return layout.byteOffset(PathElement.groupElement(name));
+	}
+
+	private static MethodHandle downcall(String name, FunctionDescriptor fd) {
+		return LINKER.downcallHandle(RKNNRT.find(name).orElseThrow(() -> new UnsatisfiedLinkError(name+" not found in "+LIBRARY)), fd);
+	}
+
+	private static String getString(MemorySegment seg, long offset, int maxLen) {
+		int len = 0;
+		while(len < maxLen && seg.get(JAVA_BYTE, offset + len) != 0)
+			++len;
+		byte[] b = new byte[len];
+		MemorySegment.copy(seg, JAVA_BYTE, offset, b, 0, len);
+		return new String(b, StandardCharsets.UTF_8);
+	}
+
+	private static <T extends Enum<T>> T toEnum(T[] values, int ordinal) {
+		return (ordinal >= 0 && ordinal < values.length ? values[ordinal] : null);
+	}
+
+	/**
+	 * Fill rknn_tensor_attr from the native structure.
+	 * @param seg native rknn_tensor_attr
+	 * @param attr the instance to fill
+	 */
+	public static void readTensorAttr(MemorySegment seg, rknn_tensor_attr attr) {
+		attr.setIndex(seg.get(JAVA_INT, ATTR_INDEX));
+		attr.setN_dims(seg.get(JAVA_INT, ATTR_N_DIMS));
+		for(int i = 0; i < RKNN.RKNN_MAX_DIMS; i++)
+			attr.setDim(i, seg.get(JAVA_INT, ATTR_DIMS + (long)i * Integer.BYTES));
+		attr.setName(getString(seg, ATTR_NAME, RKNN.RKNN_MAX_NAME_LEN));
+		attr.setN_elems(seg.get(JAVA_INT, ATTR_N_ELEMS));
+		attr.setSize(seg.get(JAVA_INT, ATTR_SIZE));
+		attr.setFmt(toEnum(rknn_tensor_format.values(), seg.get(JAVA_INT, ATTR_FMT)));
+		attr.setType(toEnum(rknn_tensor_type.values(), seg.get(JAVA_INT, ATTR_TYPE)));
+		attr.setQnt_type(toEnum(rknn_tensor_qnt_type.values(), seg.get(JAVA_INT, ATTR_QNT_TYPE)));
+		attr.setFl(seg.get(JAVA_BYTE, ATTR_FL));
+		attr.setZp(seg.get(JAVA_INT, ATTR_ZP));
+		attr.setScale(seg.get(JAVA_FLOAT, ATTR_SCALE));
+		attr.setW_stride(seg.get(JAVA_INT, ATTR_W_STRIDE));
+		attr.setSize_with_stride(seg.get(JAVA_INT, ATTR_SIZE_WITH_STRIDE));
+		attr.setPass_through(seg.get(JAVA_BYTE, ATTR_PASS_THROUGH));
+		attr.setH_stride(seg.get(JAVA_INT, ATTR_H_STRIDE));
+	}
+
+	/**
+	 * Fill the native structure from rknn_tensor_attr.
+	 * @param attr the instance to read
+	 * @param seg native rknn_tensor_attr
+	 */
+	public static void writeTensorAttr(rknn_tensor_attr attr, MemorySegment seg) {
+		seg.fill((byte)0);
+		seg.set(JAVA_INT, ATTR_INDEX, attr.getIndex());
+		seg.set(JAVA_INT, ATTR_N_DIMS, attr.getN_dims());
+		for(int i = 0; i < RKNN.RKNN_MAX_DIMS; i++)
+			seg.set(JAVA_INT, ATTR_DIMS + (long)i * Integer.BYTES, attr.getDim(i));
+		if(attr.getName() != null) {
+			byte[] name = attr.getName().getBytes(StandardCharsets.UTF_8);
+			MemorySegment.copy(name, 0, seg, JAVA_BYTE, ATTR_NAME, Math.min(name.length, RKNN.RKNN_MAX_NAME_LEN - 1));
+		}
+		seg.set(JAVA_INT, ATTR_N_ELEMS, attr.getN_elems());
+		seg.set(JAVA_INT, ATTR_SIZE, attr.getSize());
+		seg.set(JAVA_INT, ATTR_FMT, attr.getFmt() == null ? 0 : attr.getFmt().ordinal());
+		seg.set(JAVA_INT, ATTR_TYPE, attr.getType() == null ? 0 : attr.getType().ordinal());
+		seg.set(JAVA_INT, ATTR_QNT_TYPE, attr.getQnt_type() == null ? 0 : attr.getQnt_type().ordinal());
+		seg.set(JAVA_BYTE, ATTR_FL, attr.getFl());
+		seg.set(JAVA_INT, ATTR_ZP, attr.getZp());
+		seg.set(JAVA_FLOAT, ATTR_SCALE, attr.getScale());
+		seg.set(JAVA_INT, ATTR_W_STRIDE, attr.getW_stride());
+		seg.set(JAVA_INT, ATTR_SIZE_WITH_STRIDE, attr.getSize_with_stride());
+		seg.set(JAVA_BYTE, ATTR_PASS_THROUGH, attr.getPass_through());
+		seg.set(JAVA_INT, ATTR_H_STRIDE, attr.getH_stride());
+	}
+
+	/**
+	 * Read the runtime owned rknn_tensor_mem structure at the given address.
+	 * @param mem address returned by rknn_create_mem
+	 * @return the tensor memory information, or null if the address is NULL
+	 */
+	static rknn_tensor_mem readTensorMem(MemorySegment mem) {
+		if(mem.address() == 0L)
+			return null;
+		MemorySegment seg = mem.reinterpret(RKNN_TENSOR_MEM.byteSize());
+		rknn_tensor_mem tm = new rknn_tensor_mem();
+		tm.mem = mem.address();
+		tm.virt_addr = seg.get(ADDRESS, MEM_VIRT_ADDR).address();
+		tm.phys_addr = seg.get(JAVA_LONG, MEM_PHYS_ADDR);
+		tm.fd = seg.get(JAVA_INT, MEM_FD);
+		tm.offset = seg.get(JAVA_INT, MEM_OFFSET);
+		tm.size = seg.get(JAVA_INT, MEM_SIZE);
+		tm.flags = seg.get(JAVA_INT, MEM_FLAGS);
+		tm.priv_data = seg.get(ADDRESS, MEM_PRIV_DATA).address();
+		return tm;
+	}
+
+	private static void writeInput(rknn_input input, MemorySegment buf, MemorySegment seg) {
+		seg.set(JAVA_INT, INPUT_INDEX, input.getIndex());
+		seg.set(ADDRESS, INPUT_BUF, buf);
+		seg.set(JAVA_INT, INPUT_SIZE, input.getSize());
+		seg.set(JAVA_BYTE, INPUT_PASS_THROUGH, (byte)(input.getPass_through() ? 1 : 0));
+		seg.set(JAVA_INT, INPUT_TYPE, input.getType().ordinal());
+		seg.set(JAVA_INT, INPUT_FMT, input.getFmt().ordinal());
+	}
+
+	private static void writeOutput(rknn_output output, MemorySegment buf, MemorySegment seg) {
+		seg.set(JAVA_BYTE, OUTPUT_WANT_FLOAT, (byte)(output.getWant_float() ? 1 : 0));
+		seg.set(JAVA_BYTE, OUTPUT_IS_PREALLOC, (byte)(output.getIs_prealloc() ? 1 : 0));
+		seg.set(JAVA_INT, OUTPUT_INDEX, output.getIndex());
+		seg.set(ADDRESS, OUTPUT_BUF, buf);
+		seg.set(JAVA_INT, OUTPUT_SIZE, output.getSize());
+	}
+
+	@Override
+	public long rknn_init(byte[] model, int size, int flag) {
+		return rknn_init2(model, size, flag, null);
+	}
+
+	@Override
+	public long rknn_init2(byte[] model, int size, int flag, rknn_init_extend extend) {
+		try (Arena arena = Arena.ofConfined()) {
+			MemorySegment context = arena.allocate(JAVA_LONG);
+			MemorySegment nmodel = arena.allocate(size);
+			MemorySegment.copy(model, 0, nmodel, JAVA_BYTE, 0, size);
+			MemorySegment next = MemorySegment.NULL;
+			if(extend != null) {
+				next = arena.allocate(RKNN_INIT_EXTEND);
+				next.set(JAVA_LONG, INIT_EXTEND_CTX, extend.ctx);
+			}
+			int res = (int) rknn_init.invokeExact(context, nmodel, size, flag, next);
+			if(res != RKNN.RKNN_SUCC)
+				return res;
+			if(extend != null) {
+				extend.ctx = next.get(JAVA_LONG, INIT_EXTEND_CTX);
+				extend.real_model_offset = next.get(JAVA_INT, INIT_EXTEND_REAL_MODEL_OFFSET);
+				extend.real_model_size = next.get(JAVA_INT, INIT_EXTEND_REAL_MODEL_SIZE);
+			}
+			return context.get(JAVA_LONG, 0);
+		} catch(Throwable t) {
+			throw new RuntimeException(t);
+		}
+	}
+
+	@Override
+	public long rknn_dup_context(long ctx) {
+		try (Arena arena = Arena.ofConfined()) {
+			MemorySegment in = arena.allocate(JAVA_LONG);
+			MemorySegment out = arena.allocate(JAVA_LONG);
+			in.set(JAVA_LONG, 0, ctx);
+			int res = (int) rknn_dup_context.invokeExact(in, out);
+			if(res != RKNN.RKNN_SUCC)
+				return res;
+			return out.get(JAVA_LONG, 0);
+		} catch(Throwable t) {
+			throw new RuntimeException(t);
+		}
+	}
+
+	@Override
+	public int rknn_set_core_mask(long ctx, int core_mask) {
+		try {
+			return (int) rknn_set_core_mask.invokeExact(ctx, core_mask);
+		} catch(Throwable t) {
+			throw new RuntimeException(t);
+		}
+	}
+
+	@Override
+	public int rknn_destroy(long ctx) {
+		contextMemory.remove(ctx);
+		try {
+			return (int) rknn_destroy.invokeExact(ctx);
+		} catch(Throwable t) {
+			throw new RuntimeException(t);
+		}
+	}
+
+	/**
+	 * rknn_query into native memory, without marshalling into a Java object.
+	 * For tensor attributes, allocate RKNN_TENSOR_ATTR and set the index before the call, the fields may then
+	 * be read in place with the ATTR_XXX offsets.
+	 * @param ctx the context
+	 * @param cmd rknn_query_cmd value
+	 * @param info native structure matching the command
+	 * @return int error code
+	 */
+	public int rknn_query(long ctx, int cmd, MemorySegment info) {
+		try {
+			return (int) rknn_query.invokeExact(ctx, cmd, info, (int)info.byteSize());
+		} catch(Throwable t) {
+			throw new RuntimeException(t);
+		}
+	}
+
+	@Override
+	public int rknn_query_sdk(long ctx, rknn_sdk_version info) {
+		try (Arena arena = Arena.ofConfined()) {
+			MemorySegment seg = arena.allocate(RKNN_SDK_VERSION);
+			int res = rknn_query(ctx, rknn_query_cmd.RKNN_QUERY_SDK_VERSION.ordinal(), seg);
+			if(res == RKNN.RKNN_SUCC) {
+				info.setApi_version(getString(seg, 0, 256));
+				info.setDrv_version(getString(seg, 256, 256));
+			}
+			return res;
+		}
+	}
+
+	@Override
+	public int rknn_query_IO_num(long ctx, rknn_input_output_num info) {
+		try (Arena arena = Arena.ofConfined()) {
+			MemorySegment seg = arena.allocate(RKNN_INPUT_OUTPUT_NUM);
+			int res = rknn_query(ctx, rknn_query_cmd.RKNN_QUERY_IN_OUT_NUM.ordinal(), seg);
+			if(res == RKNN.RKNN_SUCC) {
+				info.setN_input(seg.get(JAVA_INT, 0));
+				info.setN_output(seg.get(JAVA_INT, 4));
+			}
+			return res;
+		}
+	}
+
+	private int queryTensorAttr(long ctx, int cmd, rknn_tensor_attr info) {
+		try (Arena arena = Arena.ofConfined()) {
+			MemorySegment seg = arena.allocate(RKNN_TENSOR_ATTR);
+			seg.set(JAVA_INT, ATTR_INDEX, info.getIndex());
+			int res = rknn_query(ctx, cmd, seg);
+			if(res == RKNN.RKNN_SUCC)
+				readTensorAttr(seg, info);
+			if(DEBUG)
+				System.out.println(RKNN.dump_tensor_attr(info));
+			return res;
+		}
+	}
+
+	@Override
+	public int rknn_query_input_attr(long ctx, rknn_tensor_attr info) {
+		return queryTensorAttr(ctx, rknn_query_cmd.RKNN_QUERY_INPUT_ATTR.ordinal(), info);
+	}
+
+	@Override
+	public int rknn_query_output_attr(long ctx, rknn_tensor_attr info) {
+		return queryTensorAttr(ctx, rknn_query_cmd.RKNN_QUERY_OUTPUT_ATTR.ordinal(), info);
+	}
+
+	@Override
+	public int rknn_query_native_input_attr(long ctx, rknn_tensor_attr info) {
+		return queryTensorAttr(ctx, rknn_query_cmd.RKNN_QUERY_NATIVE_INPUT_ATTR.ordinal(), info);
+	}
+
+	@Override
+	public int rknn_query_native_nhwc_input_attr(long ctx, rknn_tensor_attr info) {
+		return queryTensorAttr(ctx, rknn_query_cmd.RKNN_QUERY_NATIVE_NHWC_INPUT_ATTR.ordinal(), info);
+	}
+
+	@Override
+	public int rknn_query_native_output_attr(long ctx, rknn_tensor_attr info) {
+		return queryTensorAttr(ctx, rknn_query_cmd.RKNN_QUERY_NATIVE_OUTPUT_ATTR.ordinal(), info);
+	}
+
+	@Override
+	public int rknn_query_native_nhwc_output_attr(long ctx, rknn_tensor_attr info) {
+		return queryTensorAttr(ctx, rknn_query_cmd.RKNN_QUERY_NATIVE_NHWC_OUTPUT_ATTR.ordinal(), info);
+	}
+
+	@Override
+	public int rknn_inputs_set(long ctx, int n_inputs, rknn_input[] inputs) {
+		ContextMemory mem = memory(ctx);
+		try {
+			MemorySegment seg = mem.inputs(n_inputs);
+			for(int i = 0; i < n_inputs; i++) {
+				MemorySegment buf = mem.inputBuf(i, inputs[i].getSize());
+				MemorySegment.copy(inputs[i].getBuf(), 0, buf, JAVA_BYTE, 0, inputs[i].getSize());
+				writeInput(inputs[i], buf, seg.asSlice(RKNN_INPUT.byteSize() * i, RKNN_INPUT));
+			}
+			return (int) rknn_inputs_set.invokeExact(ctx, n_inputs, seg);
+		} catch(Throwable t) {
+			throw new RuntimeException(t);
+		}
+	}
+
+	@Override
+	public int rknn_inputs_set(long ctx, rknn_input input, ByteBuffer buf) {
+		if(!buf.isDirect())
+			return RKNN.RKNN_ERR_PARAM_INVALID;
+		return rknn_inputs_set(ctx, input, MemorySegment.ofBuffer(buf));
+	}
+
+	@Override
+	public int rknn_inputs_set(long ctx, rknn_input input, long address) {
+		return rknn_inputs_set(ctx, input, MemorySegment.ofAddress(address).reinterpret(input.getSize()));
+	}
+
+	@Override
+	public int rknn_inputs_set(long ctx, rknn_input input, MemorySegment buf) {
+		if(!buf.isNative() || buf.byteSize() < input.getSize())
+			return RKNN.RKNN_ERR_PARAM_INVALID;
+		try {
+			MemorySegment seg = memory(ctx).inputs(1);
+			writeInput(input, buf, seg);
+			return (int) rknn_inputs_set.invokeExact(ctx, 1, seg);
+		} catch(Throwable t) {
+			throw new RuntimeException(t);
+		}
+	}
+
+	@Override
+	public int rknn_run(long ctx, rknn_run_extend extend) {
+		try (Arena arena = Arena.ofConfined()) {
+			MemorySegment next = MemorySegment.NULL;
+			if(extend != null) {
+				next = arena.allocate(RKNN_RUN_EXTEND);
+				next.set(JAVA_INT, RUN_EXTEND_NON_BLOCK, extend.non_block);
+				next.set(JAVA_INT, RUN_EXTEND_TIMEOUT_MS, extend.timeout_ms);
+				next.set(JAVA_INT, RUN_EXTEND_FENCE_FD, extend.fence_fd);
+			}
+			int res = (int) rknn_run.invokeExact(ctx, next);
+			if(extend != null)
+				extend.frame_id = next.get(JAVA_LONG, RUN_EXTEND_FRAME_ID);
+			return res;
+		} catch(Throwable t) {
+			throw new RuntimeException(t);
+		}
+	}
+
+	/**
+	 * rknn_outputs_get. Preallocated outputs are received in the native buffers of the context and copied into the
+	 * existing Java buffers. Runtime allocated outputs are copied into new Java buffers, and the native buffers are held
+	 * until rknn_outputs_release.
+	 */
+	@Override
+	public int rknn_outputs_get(long ctx, int n_outputs, rknn_output[] outputs, rknn_output_extend extend) {
+		ContextMemory mem = memory(ctx);
+		try {
+			MemorySegment seg = mem.outputs(n_outputs);
+			boolean runtimeOwned = false;
+			for(int i = 0; i < n_outputs; i++) {
+				MemorySegment buf = MemorySegment.NULL;
+				if(outputs[i].getIs_prealloc())
+					buf = mem.outputBuf(i, outputs[i].getSize());
+				else
+					runtimeOwned = true;
+				writeOutput(outputs[i], buf, seg.asSlice(RKNN_OUTPUT.byteSize() * i, RKNN_OUTPUT));
+			}
+			MemorySegment next = (extend != null ? mem.outputExtend() : MemorySegment.NULL);
+			int res = (int) rknn_outputs_get.invokeExact(ctx, n_outputs, seg, next);
+			if(res != RKNN.RKNN_SUCC)
+				return res;
+			if(extend != null)
+				extend.frame_id = next.get(JAVA_LONG, 0);
+			for(int i = 0; i < n_outputs; i++) {
+				MemorySegment out = seg.asSlice(RKNN_OUTPUT.byteSize() * i, RKNN_OUTPUT);
+				int size = out.get(JAVA_INT, OUTPUT_SIZE);
+				MemorySegment buf = out.get(ADDRESS, OUTPUT_BUF).reinterpret(size);
+				if(outputs[i].getBuf() == null || outputs[i].getBuf().length < size)
+					outputs[i].setBuf(new byte[size]);
+				MemorySegment.copy(buf, JAVA_BYTE, 0, outputs[i].getBuf(), 0, size);
+				outputs[i].setSize(size);
+			}
+			if(runtimeOwned) {
+				MemorySegment held = Arena.ofAuto().allocate(RKNN_OUTPUT.byteSize() * n_outputs, RKNN_OUTPUT.byteAlignment());
+				held.copyFrom(seg.asSlice(0, held.byteSize()));
+				runtimeOutputs.put(outputs, held);
+			}
+			return res;
+		} catch(Throwable t) {
+			throw new RuntimeException(t);
+		}
+	}
+
+	@Override
+	public int rknn_outputs_release(long ctx, int n_ouputs, rknn_output[] outputs) {
+		try (Arena arena = Arena.ofConfined()) {
+			MemorySegment seg = runtimeOutputs.remove(outputs);
+			if(seg == null) {
+				// preallocated, the runtime frees nothing of ours
+				seg = arena.allocate(RKNN_OUTPUT.byteSize() * n_ouputs, RKNN_OUTPUT.byteAlignment());
+				for(int i = 0; i < n_ouputs; i++)
+					writeOutput(outputs[i], MemorySegment.NULL, seg.asSlice(RKNN_OUTPUT.byteSize() * i, RKNN_OUTPUT));
+			}
+			return (int) rknn_outputs_release.invokeExact(ctx, n_ouputs, seg);
+		} catch(Throwable t) {
+			throw new RuntimeException(t);
+		}
+	}
+
+	@Override
+	public rknn_tensor_mem rknn_create_mem(long ctx, int size) {
+		try {
+			return readTensorMem((MemorySegment) rknn_create_mem.invokeExact(ctx, size));
+		} catch(Throwable t) {
+			throw new RuntimeException(t);
+		}
+	}
+
+	@Override
+	public rknn_tensor_mem rknn_create_mem_from_fd(long ctx, int fd, long virt_addr, int size, int offset) {
+		try {
+			return readTensorMem((MemorySegment) rknn_create_mem_from_fd.invokeExact(ctx, fd, MemorySegment.ofAddress(virt_addr), size, offset));
+		} catch(Throwable t) {
+			throw new RuntimeException(t);
+		}
+	}
+
+	@Override
+	public int rknn_destroy_mem(long ctx, rknn_tensor_mem mem) {
+		try {
+			return (int) rknn_destroy_mem.invokeExact(ctx, MemorySegment.ofAddress(mem.getMem()));
+		} catch(Throwable t) {
+			throw new RuntimeException(t);
+		}
+	}
+
+	@Override
+	public int rknn_set_io_mem(long ctx, rknn_tensor_mem mem, rknn_tensor_attr attr) {
+		try (Arena arena = Arena.ofConfined()) {
+			MemorySegment seg = arena.allocate(RKNN_TENSOR_ATTR);
+			writeTensorAttr(attr, seg);
+			return (int) rknn_set_io_mem.invokeExact(ctx, MemorySegment.ofAddress(mem.getMem()), seg);
+		} catch(Throwable t) {
+			throw new RuntimeException(t);
+		}
+	}
+}
@@ -0,0 +1,35 @@
+package com.neocoretechs.rknn4j.runtime;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.ArrayBlockingQueue;
+
+import com.neocoretechs.rknn4j.rknn_output;
+import com.neocoretechs.rknn4j.rknn_tensor_mem;
+
+/**
+ * Buffers allocated once for an NPU context and reused for every frame run on it.
+ * A context is used by one thread at a time, so the buffers need no further locking.
+ * @author Jonathan Groff Copyright (C) NeoCoreTechs 2025
+ *
+ */
+class ContextBuffers {
+	final long ctx;
+	private ByteBuffer input; // direct, its address is handed to rknn_inputs_set
+	ArrayBlockingQueue<rknn_output[]> outputs; // preallocated output sets, taken for a run and returned after post-processing
+	rknn_tensor_mem[] inputMems; // NPU resident tensor memory bound with rknn_set_io_mem, null when not in use
+	rknn_tensor_mem[] outputMems;
+
+	ContextBuffers(long ctx) {
+		this.ctx = ctx;
+	}
+	/**
+	 * @param size The input size in bytes
+	 * @return The direct input buffer, allocated on first use
+	 */
+	ByteBuffer getInput(int size) {
+		if(input == null || input.capacity() < size)
+			input = ByteBuffer.allocateDirect(size).order(ByteOrder.nativeOrder());
+		return input;
+	}
+}
@@ -1,16 +1,27 @@
 package com.neocoretechs.rknn4j.runtime;
 
+import static java.lang.foreign.ValueLayout.JAVA_BYTE;
+
 import java.awt.image.BufferedImage;
 import java.awt.image.RenderedImage;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import javax.imageio.ImageIO;
 
@@ -22,8 +33,13 @@ import com.neocoretechs.rknn4j.rknn_input_output_num;
 import com.neocoretechs.rknn4j.rknn_output;
 import com.neocoretechs.rknn4j.rknn_sdk_version;
 import com.neocoretechs.rknn4j.rknn_tensor_attr;
+import com.neocoretechs.rknn4j.rknn_tensor_mem;
+import com.neocoretechs.rknn4j.rknn_api;
 import com.neocoretechs.rknn4j.rknpu2;
+import com.neocoretechs.rknn4j.rknpu2ffm;
+import com.neocoretechs.rknn4j.image.InputPacker;
 import com.neocoretechs.rknn4j.image.Instance;
+import com.neocoretechs.rknn4j.image.PostProcessPlan;
 import com.neocoretechs.rknn4j.image.detect_result;
 import com.neocoretechs.rknn4j.image.detect_result_group;
 /**
@@ -38,10 +54,13 @@ import com.neocoretechs.rknn4j.image.detect_result_group;
  */
 public class Model {
 	private static boolean DEBUG = false;
-	private rknpu2 npu = new rknpu2();
+	private final rknn_api npu;
 	
 	private static boolean INCEPTION = false;
-	private static boolean WANTFLOAT = false;
+	private static boolean WANTFLOAT = false; // else INT8 outputs read in place, or the FLOAT16 outputs of a float model as halves
+	private static boolean DIRECTINPUT = false; // pass inputs through the direct buffer of the context, needs the FFM backend
+	private static boolean PREALLOC = true; // reuse output buffers allocated per context, else the runtime allocates them
+	static final int OUTPUT_SETS = 2; // output sets per context, one being filled by the NPU while one is post-processed
 	
 	// NPU constants
 	long ctx; // context for NPU
@@ -51,10 +70,57 @@ public class Model {
 	rknn_input_output_num ioNum;
 	rknn_tensor_attr[] inputAttrs;
 	ArrayList<rknn_tensor_attr> tensorAttrs = new ArrayList<rknn_tensor_attr>();
+	PostProcessPlan plan; // post processing plan chosen from the output tensor signature at initNPU, null if unrecognized
+	RuntimeException planError; // why no plan was chosen at initNPU, the cause when a call needs the plan
+	private final PostProcessPlan[] plans = new PostProcessPlan[PostProcessPlan.Kind.values().length]; // plans by MODEL int
+	// buffers allocated once per context
+	private final ConcurrentHashMap<Long, ContextBuffers> contextBuffers = new ConcurrentHashMap<Long, ContextBuffers>();
+	boolean ioMem = false; // tensor memory bound with setIOMem, duplicated contexts are bound as well
+	List<rknn_tensor_attr> nativeAttrs; // native output attributes the output memory is bound with, null for NCHW
+	rknn_tensor_attr nativeInputAttr; // native input attributes, pass through, null if the runtime converts the input
+	InputPacker packer; // packs the pixels in the native input layout, with nativeInputAttr
+	// bounds on post-processing, 0 for no limit
+	private volatile int candidateBudget = 0; // highest scoring candidates kept while decoding, ahead of sort and NMS
+	private volatile int maxDetections = 0; // objects kept, NMS stops once reached
 	
 	String[] labels;
 	float[][] boxPriors;
+	
+	// inferAsync pipeline stages
+	boolean asyncMode = false; // RKNN_FLAG_ASYNC_MASK, outputs are those of the previous run
+	private ExecutorService preStage, npuStage, postStage;
+	private PendingFrame lastFrame; // accessed by npuStage only
 
+	/**
+	 * Create the Model bound to the runtime implementation selected by system property rknn4j.backend.
+	 */
+	public Model() {
+		this(rknn_api.getInstance());
+	}
+	/**
+	 * Create the Model bound to the given runtime implementation.
+	 * @param npu The JNI {@link rknpu2} or FFM {@link rknpu2ffm} implementation
+	 */
+	public Model(rknn_api npu) {
+		this.npu = npu;
+	}
+	/**
+	 * @return The runtime implementation the Model is bound to
+	 */
+	public rknn_api getNpu() {
+		return npu;
+	}
+	/**
+	 * Fail before anything is created if the Model is bound to the JNI backend, whose glue in librknn4j.so 1.0.1
+	 * lacks the calls added since, see {@link rknpu2}.
+	 * @param what What needs the FFM backend
+	 * @throws RuntimeException on the JNI backend
+	 */
+	private void requireFFM(String what) {
+		if(npu instanceof rknpu2)
+			throw new RuntimeException(what+" needs the FFM backend, -Drknn4j.backend=ffm, the JNI glue of librknn4j has no such call");
+	}
+	
 	/**
 	 * Load a file and return byte array, presumably to load model from storage.
 	 * @param file
@@ -81,6 +147,18 @@ public class Model {
 	public int getChannel() {
 		return widthHeightChannel[2];
 	}
+	/**
+	 * @return The output tensor attributes queried at initNPU
+	 */
+	public List<rknn_tensor_attr> getOutputAttrs() {
+		return tensorAttrs;
+	}
+	/**
+	 * @return The context created by initNPU
+	 */
+	public long getContext() {
+		return ctx;
+	}
 	/**
 	 * Load the detection box anchors for InceptionSSD model from designated file
 	 * @param file                                                                                                                                                                                                                                                                                                                                                                                                                                               
@@ -112,13 +190,84 @@ public class Model {
 	 * @throws RuntimeException if query fails
 	 */
 	public long init(byte[] model) {
-		long res = npu.rknn_init(model, model.length, RKNN.RKNN_FLAG_PRIOR_HIGH);
+		return init(model, RKNN.RKNN_FLAG_PRIOR_HIGH);
+	}
+	
+	/**
+	 * Initialize the given model with extended flags. Performs rknn_init
+	 * @param model The model loaded from desired source in rknn format.
+	 * @param flag RKNN.RKNN_FLAG_XXX values or'd together
+	 * @throws RuntimeException if query fails
+	 */
+	public long init(byte[] model, int flag) {
+		long res = npu.rknn_init(model, model.length, flag);
 		//if(res != RKNN.RKNN_SUCC)
 		if(res >= -11 && res <=0) // return codes that are not valid context
 			throw new RuntimeException(RKNN.get_error_string((int) res));
 		return res;
 	}
 	
+	/**
+	 * Duplicate an initialized context, sharing the model weights already loaded into the NPU.
+	 * Performs rknn_dup_context.
+	 * @param ctx The context returned from init
+	 * @return The new context
+	 * @throws RuntimeException if duplication fails
+	 */
+	public long dupContext(long ctx) {
+		long res = npu.rknn_dup_context(ctx);
+		if(res >= -11 && res <=0) // return codes that are not valid context
+			throw new RuntimeException(RKNN.get_error_string((int) res));
+		try {
+			if(PREALLOC && !tensorAttrs.isEmpty())
+				recycleOutputs(res, acquireOutputs(res));
+			if(ioMem)
+				setIOMem(res);
+		} catch(RuntimeException e) {
+			destroy(res);
+			throw e;
+		}
+		return res;
+	}
+	
+	/**
+	 * Pin the context to one or more NPU cores.
+	 * Performs rknn_set_core_mask.
+	 * @param ctx The context
+	 * @param coreMask One of the RKNN.RKNN_NPU_CORE_XXX values
+	 * @throws RuntimeException if the mask cannot be set
+	 */
+	public void setCoreMask(long ctx, int coreMask) {
+		int res = npu.rknn_set_core_mask(ctx, coreMask);
+		if(res != RKNN.RKNN_SUCC)
+			throw new RuntimeException(RKNN.get_error_string(res));
+	}
+	
+	/**
+	 * Bound the candidates reaching sort and NMS to the highest scoring, for a fixed worst case post-processing time
+	 * in crowded frames or with low thresholds.
+	 * @param candidateBudget Maximum candidates kept while decoding, 0 for no limit
+	 */
+	public void setCandidateBudget(int candidateBudget) {
+		this.candidateBudget = Math.max(candidateBudget, 0);
+	}
+
+	public int getCandidateBudget() {
+		return candidateBudget;
+	}
+	/**
+	 * Keep at most maxDetections objects, NMS stopping once they are accepted. YOLO NMS still suppresses within
+	 * each class, the result being that without a limit truncated to the maxDetections highest scoring.
+	 * @param maxDetections Maximum objects detected, 0 for no limit
+	 */
+	public void setMaxDetections(int maxDetections) {
+		this.maxDetections = Math.max(maxDetections, 0);
+	}
+
+	public int getMaxDetections() {
+		return maxDetections;
+	}
+	
 	/**
 	 * Query the SDK version used to interface to the NPU.
 	 * Performs rknn_query_sdk.
@@ -155,6 +304,40 @@ public class Model {
 			throw new RuntimeException(RKNN.get_error_string(res));
 		return outputAttrs;
 	}
+	/**
+	 * Query the attributes of an output in the layout the NPU writes it in.
+	 * Performs rknn_query_native_output_attr for NC1HWC2, or rknn_query_native_nhwc_output_attr for NHWC.
+	 * @param index model attribute index
+	 * @param fmt RKNN_TENSOR_NC1HWC2 or RKNN_TENSOR_NHWC
+	 * @return the queried rknn_tensor_attr, with its w_stride and size_with_stride
+	 * @throws RuntimeException if query fails
+	 */
+	public rknn_tensor_attr queryNativeOutputAttrs(long ctx, int index, rknn_tensor_format fmt) {
+		rknn_tensor_attr outputAttrs = new rknn_tensor_attr();
+		outputAttrs.setIndex(index);
+		int res = (fmt == rknn_tensor_format.RKNN_TENSOR_NHWC ? npu.rknn_query_native_nhwc_output_attr(ctx, outputAttrs) :
+			npu.rknn_query_native_output_attr(ctx, outputAttrs));
+		if(res != RKNN.RKNN_SUCC)
+			throw new RuntimeException(RKNN.get_error_string(res));
+		return outputAttrs;
+	}
+	/**
+	 * Query the attributes of an input in the layout the NPU reads it in.
+	 * Performs rknn_query_native_input_attr, or rknn_query_native_nhwc_input_attr for NHWC.
+	 * @param index model attribute index
+	 * @param fmt RKNN_TENSOR_NC1HWC2 or RKNN_TENSOR_NHWC
+	 * @return the queried rknn_tensor_attr, with its w_stride, h_stride and size_with_stride
+	 * @throws RuntimeException if query fails
+	 */
+	public rknn_tensor_attr queryNativeInputAttrs(long ctx, int index, rknn_tensor_format fmt) {
+		rknn_tensor_attr inputAttrs = new rknn_tensor_attr();
+		inputAttrs.setIndex(index);
+		int res = (fmt == rknn_tensor_format.RKNN_TENSOR_NHWC ? npu.rknn_query_native_nhwc_input_attr(ctx, inputAttrs) :
+			npu.rknn_query_native_input_attr(ctx, inputAttrs));
+		if(res != RKNN.RKNN_SUCC)
+			throw new RuntimeException(RKNN.get_error_string(res));
+		return inputAttrs;
+	}
 	/**
 	 * Query the input attributes. will perform the rknn_query_input_attr call to NPU.
 	 * @param index model attribute index
@@ -184,6 +367,17 @@ public class Model {
 	 * @throws RuntimeException i input call fails.
 	 */
 	public void setInputs(long ctx, int size, rknn_tensor_type type, rknn_tensor_format fmt, byte[] buf) {
+		setInputs(ctx, createInputs(size, type, fmt, buf));
+	}
+	/**
+	 * Build the single input layer for setInputs.
+	 * @param size size of buffer
+	 * @param type rknn_tensor_type from enum
+	 * @param fmt rknn_tensor_fmt from enum
+	 * @param buf image bytes in format to match model
+	 * @return the array of one rknn_input
+	 */
+	public rknn_input[] createInputs(int size, rknn_tensor_type type, rknn_tensor_format fmt, byte[] buf) {
 		rknn_input[] inputs = new rknn_input[1];
 		inputs[0] = new rknn_input();
 		inputs[0].setIndex(0);
@@ -192,10 +386,219 @@ public class Model {
 		inputs[0].setFmt(fmt);
 		inputs[0].setBuf(buf);
 		inputs[0].setPass_through(false);
-		int res = npu.rknn_inputs_set(ctx, 1, inputs);
+		return inputs;
+	}
+	/**
+	 * Set the input vector from prepared inputs. Performs rknn_inputs_set.
+	 * If DIRECTINPUT is set the image bytes are placed in the reusable direct buffer of the context
+	 * and its address is handed to the runtime, rather than passing the managed array through JNI. That is still
+	 * one copy of the bytes, and the JNI glue of librknn4j has no rknn_inputs_set of a direct buffer, it needs the
+	 * FFM backend, so it is off by default. To save the copy write the image straight into getInputBuffer and set it with the direct buffer
+	 * setInputs below.
+	 * @param ctx The context
+	 * @param inputs The inputs from createInputs
+	 * @throws RuntimeException if input call fails.
+	 */
+	public void setInputs(long ctx, rknn_input[] inputs) {
+		int res;
+		if(DIRECTINPUT && inputs.length == 1) {
+			ByteBuffer direct = getContextBuffers(ctx).getInput(inputs[0].getSize());
+			direct.clear();
+			direct.put(inputs[0].getBuf(), 0, inputs[0].getSize());
+			res = npu.rknn_inputs_set(ctx, inputs[0], direct);
+		} else {
+			res = npu.rknn_inputs_set(ctx, inputs.length, inputs);
+		}
+		if(res != RKNN.RKNN_SUCC)
+			throw new RuntimeException(RKNN.get_error_string(res));
+	}
+	/**
+	 * Set the input vector from a direct buffer, such as the one from getInputBuffer, whose address
+	 * is handed straight to the runtime. Performs rknn_inputs_set.
+	 * @param ctx The context
+	 * @param size size of buffer
+	 * @param type rknn_tensor_type from enum
+	 * @param fmt rknn_tensor_fmt from enum
+	 * @param buf direct buffer holding image bytes from position 0
+	 * @throws RuntimeException if input call fails, or on the JNI backend, which has no glue for it.
+	 */
+	public void setInputs(long ctx, int size, rknn_tensor_type type, rknn_tensor_format fmt, ByteBuffer buf) {
+		if(!buf.isDirect())
+			throw new IllegalArgumentException("Input buffer must be direct");
+		int res = npu.rknn_inputs_set(ctx, createInputs(size, type, fmt, null)[0], buf);
+		if(res != RKNN.RKNN_SUCC)
+			throw new RuntimeException(RKNN.get_error_string(res));
+	}
+	/**
+	 * Set the input vector from native memory, whose address is handed straight to the runtime.
+	 * Performs rknn_inputs_set.
+	 * @param ctx The context
+	 * @param size size of buffer
+	 * @param type rknn_tensor_type from enum
+	 * @param fmt rknn_tensor_fmt from enum
+	 * @param buf native segment holding image bytes
+	 * @throws RuntimeException if input call fails, or on the JNI backend, which has no glue for it.
+	 */
+	public void setInputs(long ctx, int size, rknn_tensor_type type, rknn_tensor_format fmt, MemorySegment buf) {
+		int res = npu.rknn_inputs_set(ctx, createInputs(size, type, fmt, null)[0], buf);
 		if(res != RKNN.RKNN_SUCC)
 			throw new RuntimeException(RKNN.get_error_string(res));
 	}
+	/**
+	 * Get the direct input buffer allocated once for the context, sized to the model input.
+	 * Pixels may be written here and passed to setInputs without further copying.
+	 * @param ctx The context
+	 * @return The direct buffer for the context
+	 */
+	public ByteBuffer getInputBuffer(long ctx) {
+		return getContextBuffers(ctx).getInput(packer != null ? packer.size() : inputAttrs[0].getSize());
+	}
+	
+	/**
+	 * Write the input in the layout the NPU reads it in, NC1HWC2 or NHWC with its w_stride and h_stride padding,
+	 * quantized to its type, and pass it through, sparing the runtime the conversion. The native input attributes
+	 * are queried and the pixels of each image are packed by an {@link InputPacker}, into the input tensor memory
+	 * bound by {@link #setIOMem(long)}, or into the buffer of the input set with pass_through by prepareInputs.
+	 * Call after initNPU and before setIOMem and setNativeOutputs. Needs the FFM backend, librknn4j having no glue
+	 * for the native input queries.
+	 * @param fmt RKNN_TENSOR_NC1HWC2 or RKNN_TENSOR_NHWC
+	 * @throws RuntimeException if the tensor memory is already bound, the native input is not UINT8 or INT8,
+	 * the query fails, or on the JNI backend
+	 */
+	public void setNativeInput(rknn_tensor_format fmt) {
+		requireFFM("Native input");
+		if(ioMem)
+			throw new RuntimeException("Tensor memory already bound, set native input before setIOMem");
+		rknn_tensor_attr attr = queryNativeInputAttrs(ctx, 0, fmt);
+		attr.setPass_through((byte)1);
+		packer = InputPacker.of(inputAttrs[0], attr);
+		nativeInputAttr = attr;
+		if(DEBUG)
+			System.out.println("Native input "+packer);
+	}
+	
+	/**
+	 * Leave the outputs in the layout the NPU writes them in, NC1HWC2 or NHWC, sparing the runtime the conversion
+	 * to NCHW. The native output attributes are queried, the tensor memory of the context is bound with them, see
+	 * {@link #setIOMem(long)}, and the plan of the model becomes one reading the outputs in place in that layout, see
+	 * {@link PostProcessPlan#withNativeLayouts(List, List)}. Call after initNPU and before setIOMem. Native outputs
+	 * are read from tensor memory only, not by inferAsync. Needs the FFM backend, as setIOMem.
+	 * @param fmt RKNN_TENSOR_NC1HWC2 or RKNN_TENSOR_NHWC
+	 * @throws RuntimeException if the tensor memory is already bound, the outputs are want_float or unrecognized,
+	 * the query or binding fails, or on the JNI backend
+	 */
+	public void setNativeOutputs(rknn_tensor_format fmt) {
+		requireFFM("Native outputs");
+		if(ioMem)
+			throw new RuntimeException("Tensor memory already bound, set native outputs before setIOMem");
+		requirePlan();
+		List<rknn_tensor_attr> attrs = new ArrayList<rknn_tensor_attr>(tensorAttrs.size());
+		for(int i = 0; i < tensorAttrs.size(); i++)
+			attrs.add(queryNativeOutputAttrs(ctx, i, fmt));
+		setPlan(plan.withNativeLayouts(tensorAttrs, attrs));
+		nativeAttrs = attrs;
+		if(DEBUG)
+			System.out.println("Native outputs, plan:"+plan);
+		setIOMem(ctx);
+	}
+	
+	/**
+	 * Bind NPU resident tensor memory to the inputs and outputs of the context, the zero copy path.
+	 * Performs rknn_create_mem and rknn_set_io_mem for each tensor. Once bound, inference on the context writes
+	 * the image straight into the input memory and decodes the quantized outputs in place, with no
+	 * rknn_inputs_set or rknn_outputs_get. The memory lives until the context is destroyed, and contexts
+	 * duplicated afterward by dupContext are bound as well. Not used by inferAsync, whose outputs must outlive the next run.
+	 * Needs the FFM backend, librknn4j having no glue for rknn_create_mem or rknn_set_io_mem.
+	 * @param ctx The context, after initNPU
+	 * @throws RuntimeException if the memory cannot be created or bound, or on the JNI backend
+	 */
+	public void setIOMem(long ctx) {
+		requireFFM("Tensor memory");
+		ContextBuffers cb = getContextBuffers(ctx);
+		synchronized(cb) {
+			if(cb.inputMems != null)
+				return;
+			rknn_tensor_mem[] inputMems = new rknn_tensor_mem[inputAttrs.length];
+			rknn_tensor_mem[] outputMems = new rknn_tensor_mem[tensorAttrs.size()];
+			try {
+				for(int i = 0; i < inputMems.length; i++)
+					inputMems[i] = createIOMem(ctx, i == 0 && nativeInputAttr != null ? nativeInputAttr : inputAttrs[i]);
+				if(packer != null)
+					packer.clear(inputMems[0].getSegment());
+				for(int i = 0; i < outputMems.length; i++)
+					outputMems[i] = createIOMem(ctx, outputAttrs(i));
+			} catch(RuntimeException e) {
+				destroyIOMem(ctx, inputMems);
+				destroyIOMem(ctx, outputMems);
+				throw e;
+			}
+			cb.inputMems = inputMems;
+			cb.outputMems = outputMems;
+		}
+		ioMem = true;
+	}
+	
+	private rknn_tensor_mem createIOMem(long ctx, rknn_tensor_attr attr) {
+		rknn_tensor_mem mem = npu.rknn_create_mem(ctx, Math.max(attr.getSize(), attr.getSize_with_stride()));
+		if(mem == null)
+			throw new RuntimeException(RKNN.get_error_string(RKNN.RKNN_ERR_MALLOC_FAIL));
+		int res = npu.rknn_set_io_mem(ctx, mem, attr);
+		if(res != RKNN.RKNN_SUCC) {
+			npu.rknn_destroy_mem(ctx, mem);
+			throw new RuntimeException(RKNN.get_error_string(res));
+		}
+		if(DEBUG)
+			System.out.println("Tensor memory "+attr.getName()+" "+mem);
+		return mem;
+	}
+	
+	private void destroyIOMem(long ctx, rknn_tensor_mem[] mems) {
+		if(mems == null)
+			return;
+		for(rknn_tensor_mem mem : mems)
+			if(mem != null)
+				npu.rknn_destroy_mem(ctx, mem);
+	}
+	/**
+	 * Get the NPU input tensor memory bound by setIOMem. The preprocessor may write pixels here in the
+	 * model input format, or the native layout if set, see {@link #setNativeInput(rknn_tensor_format)},
+	 * and call {@link #inference(long, int)}.
+	 * @param ctx The context
+	 * @return The input tensor memory, or null if setIOMem has not been called for the context
+	 */
+	public MemorySegment getInputMem(long ctx) {
+		ContextBuffers cb = contextBuffers.get(ctx);
+		if(cb == null || cb.inputMems == null)
+			return null;
+		return cb.inputMems[0].getSegment();
+	}
+	/**
+	 * Get the NPU output tensor memory bound by setIOMem, each sized to its quantized output tensor, or to its
+	 * size_with_stride in native layout, see {@link #setNativeOutputs(rknn_tensor_format)}.
+	 * Valid until the next run on the context.
+	 * @param ctx The context
+	 * @return The output tensor memory, or null if setIOMem has not been called for the context
+	 */
+	public MemorySegment[] getOutputMems(long ctx) {
+		ContextBuffers cb = contextBuffers.get(ctx);
+		if(cb == null || cb.outputMems == null)
+			return null;
+		MemorySegment[] segs = new MemorySegment[cb.outputMems.length];
+		for(int i = 0; i < segs.length; i++)
+			segs[i] = cb.outputMems[i].getSegment().asSlice(0, nativeAttrs != null ?
+					Math.max(nativeAttrs.get(i).getSize(), nativeAttrs.get(i).getSize_with_stride()) : tensorAttrs.get(i).getSize());
+		return segs;
+	}
+	/**
+	 * @return The attributes output i is bound with, native if set
+	 */
+	private rknn_tensor_attr outputAttrs(int i) {
+		return nativeAttrs != null ? nativeAttrs.get(i) : tensorAttrs.get(i);
+	}
+	
+	ContextBuffers getContextBuffers(long ctx) {
+		return contextBuffers.computeIfAbsent(ctx, c -> new ContextBuffers(c));
+	}
 	/**
 	 * Set the outputs to prepare for extraction after rknn_run.<p/>
 	 * There are two ways to store buffers for output data:
@@ -225,6 +628,71 @@ public class Model {
 		}
 		return outputs;
 	}
+	/**
+	 * Set up preallocated outputs, case 1) above, with buffers sized from the output tensor attributes.
+	 * The set can be reused for every run on the context.
+	 * @param outputAttrs The output tensor attributes from queryOutputAttrs
+	 * @param wantFloat Force output to floating point, buffers are sized for 4 byte floats
+	 * @return the array of rknn_output output objects with is_prealloc set and buffers allocated
+	 */
+	public rknn_output[] setOutputs(List<rknn_tensor_attr> outputAttrs, boolean wantFloat) {
+		rknn_output[] outputs = setOutputs(outputAttrs.size(), true, wantFloat);
+		for(int i = 0; i < outputs.length; i++) {
+			rknn_tensor_attr attr = outputAttrs.get(i);
+			int size = (wantFloat ? attr.getN_elems() * Float.BYTES : attr.getSize());
+			outputs[i].setSize(size);
+			outputs[i].setBuf(new byte[size]);
+		}
+		return outputs;
+	}
+	/**
+	 * Take a preallocated output set from the context, allocating the sets on first use.
+	 * Blocks if all sets of the context are still being post-processed.
+	 * @param ctx The context
+	 * @return The output set
+	 */
+	rknn_output[] acquireOutputs(long ctx) {
+		ContextBuffers cb = getContextBuffers(ctx);
+		synchronized(cb) {
+			if(cb.outputs == null) {
+				cb.outputs = new ArrayBlockingQueue<rknn_output[]>(OUTPUT_SETS);
+				for(int i = 0; i < OUTPUT_SETS; i++)
+					cb.outputs.add(setOutputs(tensorAttrs, WANTFLOAT));
+			}
+		}
+		try {
+			return cb.outputs.take();
+		} catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	/**
+	 * Done with the outputs of a run once post-processing is complete. Preallocated sets go back to the
+	 * context for reuse, runtime allocated buffers are released.
+	 * @param ctx The context the outputs were retrieved from
+	 * @param outputs The outputs from execute
+	 */
+	public void recycleOutputs(long ctx, rknn_output[] outputs) {
+		if(outputs[0].getIs_prealloc()) {
+			ContextBuffers cb = contextBuffers.get(ctx);
+			if(cb != null && cb.outputs != null)
+				cb.outputs.offer(outputs);
+		} else {
+			releaseOutputs(ctx, outputs);
+		}
+	}
+	/**
+	 * Release the outputs retrieved by getOutputs. When is_prealloc is false the buffers are owned by the runtime
+	 * and are no longer valid after this call. Performs rknn_outputs_release.
+	 * @param ctx The context
+	 * @param outputs The outputs from getOutputs
+	 * @throws RuntimeException if release fails
+	 */
+	public void releaseOutputs(long ctx, rknn_output[] outputs) {
+		int res = npu.rknn_outputs_release(ctx, outputs.length, outputs);
+		if(res != RKNN.RKNN_SUCC)
+			throw new RuntimeException(RKNN.get_error_string(res));
+	}
 	/**
 	 * Retrieve the outputs from the result of the inference run.
 	 * Performs rknn_outputs_get
@@ -253,6 +721,11 @@ public class Model {
 	 * @param ctx
 	 */
 	public void destroy(long ctx) {
+		ContextBuffers cb = contextBuffers.remove(ctx);
+		if(cb != null) {
+			destroyIOMem(ctx, cb.inputMems);
+			destroyIOMem(ctx, cb.outputMems);
+		}
 		int res = npu.rknn_destroy(ctx);
 		if(res != RKNN.RKNN_SUCC)
 			throw new RuntimeException(RKNN.get_error_string(res));
@@ -265,11 +738,23 @@ public class Model {
 	 * @throws IOException If a file cant be loaded or the NPU initialized
 	 */
 	public synchronized void initNPU(String modelFile, String[] labels, float[][] boxPriors) throws IOException {
+		initNPU(modelFile, labels, boxPriors, false);
+	}
+	/**
+	 * Initialize the NPU as step 1.
+	 * @param modelFile The path to the RKNN model file.
+	 * @param labels The category labels, loaded from file or other source.
+	 * @param boxPriors For InceptionSSD model, the box priors for anchor points
+	 * @param async true to initialize with RKNN_FLAG_ASYNC_MASK, where rknn_outputs_get returns the previous frame, see inferAsync
+	 * @throws IOException If a file cant be loaded or the NPU initialized
+	 */
+	public synchronized void initNPU(String modelFile, String[] labels, float[][] boxPriors, boolean async) throws IOException {
 		this.labels = labels;
 		this.boxPriors = boxPriors;
+		this.asyncMode = async;
 		byte[] bmodel = load(modelFile);
 		long tim = System.currentTimeMillis();
-		ctx = init(bmodel);
+		ctx = init(bmodel, async ? (RKNN.RKNN_FLAG_PRIOR_HIGH | RKNN.RKNN_FLAG_ASYNC_MASK) : RKNN.RKNN_FLAG_PRIOR_HIGH);
 		if(DEBUG)
 			System.out.println("Init time:"+(System.currentTimeMillis()-tim)+" ms.");
 		rknn_sdk_version sdk = querySDK(ctx);
@@ -308,26 +793,152 @@ public class Model {
 			}
 			tensorAttrs.add(outputAttr);
 		}
+		try {
+			plan = PostProcessPlan.of(tensorAttrs, widthHeightChannel[0], widthHeightChannel[1], WANTFLOAT);
+			plans[plan.kind.ordinal()] = plan;
+			planError = null;
+		} catch(RuntimeException e) {
+			// not a detector this library decodes, or a mismatched one, the MODEL int selects the plan
+			plan = null;
+			planError = e;
+		}
+		if(DEBUG)
+			System.out.println("Post processing plan:"+(plan != null ? plan : planError));
 		//
 		//System.out.println("Setting up I/O..");
-		// no preallocation of output image buffers for YOLO, no force floating output
+		// preallocate the reusable output buffers for the context, no force floating output
 		// InceptionSSD required want_float = true, it has 2 layers of output vs 3 for YOLO
+		if(PREALLOC)
+			recycleOutputs(ctx, acquireOutputs(ctx));
 		//tim = System.currentTimeMillis();
 		if(DEBUG)
 			System.out.println("Total category labels="+labels.length);
 		//System.out.println("Setup time:"+(System.currentTimeMillis()-tim)+" ms.");
 	}
 	
+	/**
+	 * Perform inference on the context created by initNPU, post processing by the plan chosen at initNPU.
+	 * Calls are serialized on this Model, use {@link ModelPool} to run several contexts concurrently.
+	 * @param image The image, sized to the model input
+	 * @return The detected objects
+	 * @throws IllegalStateException if no plan was chosen at initNPU, caused by the reason it was not
+	 */
+	public synchronized detect_result_group inference(Instance image) {
+		return inference(ctx, image, requirePlan());
+	}
+	/**
+	 * Perform inference on the context created by initNPU. Calls are serialized on this Model,
+	 * use {@link ModelPool} to run several contexts concurrently.
+	 * @param image The image, sized to the model input
+	 * @param MODEL 0 YOLOv5, 1 YOLOv11, 2 InceptionSSD
+	 * @return The detected objects
+	 */
 	public synchronized detect_result_group inference(Instance image, int MODEL) {
+		return inference(ctx, image, MODEL);
+	}
+	
+	/**
+	 * Perform inference on the given context, which must have been created by initNPU or duplicated
+	 * from it by dupContext. Not synchronized, the caller must ensure a context is used by one thread at a time.
+	 * @param ctx The context to run
+	 * @param image The image, sized to the model input
+	 * @param MODEL 0 YOLOv5, 1 YOLOv11, 2 InceptionSSD
+	 * @return The detected objects
+	 */
+	public detect_result_group inference(long ctx, Instance image, int MODEL) {
+		return inference(ctx, image, planFor(MODEL));
+	}
+	
+	/**
+	 * Perform inference on the given context, as above, post processing by the given plan.
+	 * @param ctx The context to run
+	 * @param image The image, sized to the model input
+	 * @param plan The post processing plan, see {@link #getPlan()}
+	 * @return The detected objects
+	 */
+	public detect_result_group inference(long ctx, Instance image, PostProcessPlan plan) {
+			ContextBuffers cb = contextBuffers.get(ctx);
+			if(cb != null && cb.inputMems != null) {
+				// zero copy, the pixels go straight to NPU memory
+				if(packer != null)
+					packer.pack(image.getRGB888(), cb.inputMems[0].getSegment());
+				else
+					MemorySegment.copy(image.getRGB888(), 0, cb.inputMems[0].getSegment(), JAVA_BYTE, 0, inputAttrs[0].getSize());
+				return inference(ctx, plan);
+			}
+			rknn_input[] inputs = prepareInputs(image);
+			rknn_output[] outputs = execute(ctx, inputs);
+			try {
+				return postProcess(outputs, plan);
+			} finally {
+				recycleOutputs(ctx, outputs);
+			}
+			//m.destroy(ctx);
+	}
+	
+	/**
+	 * Perform inference on the pixels already written to the input tensor memory of the context,
+	 * decoding the quantized outputs in place. Requires setIOMem.
+	 * @param ctx The context to run
+	 * @param MODEL 0 YOLOv5, 1 YOLOv11, 2 InceptionSSD
+	 * @return The detected objects
+	 * @throws RuntimeException if run fails
+	 */
+	public detect_result_group inference(long ctx, int MODEL) {
+		return inference(ctx, planFor(MODEL));
+	}
+	
+	/**
+	 * Perform inference on the pixels already written to the input tensor memory of the context, as above,
+	 * post processing by the given plan.
+	 * @param ctx The context to run
+	 * @param plan The post processing plan, see {@link #getPlan()}
+	 * @return The detected objects
+	 * @throws RuntimeException if run fails
+	 */
+	public detect_result_group inference(long ctx, PostProcessPlan plan) {
+			long tim = System.currentTimeMillis();
+			run(ctx);
+			if(DEBUG)
+				System.out.println("Run time:"+(System.currentTimeMillis()-tim)+" ms.");
+			return postProcess(getOutputMems(ctx), plan);
+	}
+	
+	/**
+	 * Pre-processing stage, build the input layer from the image, packed in the native layout and passed
+	 * through if set, see {@link #setNativeInput(rknn_tensor_format)}.
+	 * @param image The image, sized to the model input
+	 * @return The inputs ready for setInputs
+	 */
+	public rknn_input[] prepareInputs(Instance image) {
 			// Set input data
 			if(DEBUG)
-			System.out.println(ctx+" "+widthHeightChannel[0]+" "+widthHeightChannel[1]+" "+widthHeightChannel[2]+" "+inputAttrs[0].getType()+" "+
+			System.out.println(widthHeightChannel[0]+" "+widthHeightChannel[1]+" "+widthHeightChannel[2]+" "+inputAttrs[0].getType()+" "+
 					inputAttrs[0].getFmt()+" "+image.getRGB888().length);
-			
-			setInputs(ctx,inputAttrs[0].getSize(),inputAttrs[0].getType(),inputAttrs[0].getFmt(),image.getRGB888());
+			if(packer != null) {
+				byte[] buf = new byte[packer.size()];
+				MemorySegment seg = MemorySegment.ofArray(buf);
+				packer.clear(seg);
+				packer.pack(image.getRGB888(), seg);
+				rknn_input[] inputs = createInputs(buf.length, nativeInputAttr.getType(), nativeInputAttr.getFmt(), buf);
+				inputs[0].setPass_through(true);
+				return inputs;
+			}
+			return createInputs(inputAttrs[0].getSize(),inputAttrs[0].getType(),inputAttrs[0].getFmt(),image.getRGB888());
+	}
+	
+	/**
+	 * NPU stage, set the inputs, run the model and retrieve the outputs on the given context.
+	 * @param ctx The context to run
+	 * @param inputs The inputs from prepareInputs
+	 * @return The outputs retrieved by rknn_outputs_get, to be passed to recycleOutputs after post-processing
+	 */
+	public rknn_output[] execute(long ctx, rknn_input[] inputs) {
+			setInputs(ctx, inputs);
 			if(DEBUG)
 				System.out.println("Inputs set");
-			rknn_output[] outputs = setOutputs(ioNum.getN_output(), false, WANTFLOAT); // last param is wantFloat, to force output to floating
+			// preallocated set of the context, else the runtime allocates the buffers
+			rknn_output[] outputs = PREALLOC ? acquireOutputs(ctx) : setOutputs(ioNum.getN_output(), false, WANTFLOAT);
 			if(DEBUG)
 				System.out.println("Outputs set");	
 			long tim = System.currentTimeMillis();
@@ -346,54 +957,290 @@ public class Model {
 				System.out.println("Get outputs time:"+(System.currentTimeMillis()-tim)+" ms.");
 				System.out.println("Outputs:"+Arrays.toString(outputs));
 			}
+			// preallocated buffers now hold the data, the runtime side can be released at once
+			if(outputs[0].getIs_prealloc())
+				releaseOutputs(ctx, outputs);
+			return outputs;
+	}
+	
+	/**
+	 * Post-processing stage, decode the outputs and perform non-maximal suppression for the given model type.
+	 * @param outputs The outputs from execute
+	 * @param MODEL 0 YOLOv5, 1 YOLOv11, 2 InceptionSSD
+	 * @return The detected objects
+	 */
+	public detect_result_group postProcess(rknn_output[] outputs, int MODEL) {
+			return postProcess(outputs, planFor(MODEL));
+	}
+	
+	/**
+	 * Post-processing stage, decode the outputs and perform non-maximal suppression by the given plan.
+	 * Quantized outputs are decoded in place through segments over the buffers, want_float outputs through float views.
+	 * @param outputs The outputs from execute
+	 * @param plan The post processing plan, see {@link #getPlan()}
+	 * @return The detected objects
+	 */
+	public detect_result_group postProcess(rknn_output[] outputs, PostProcessPlan plan) {
+			if(plan.isNative())
+				throw new RuntimeException("rknn_outputs_get returns NCHW outputs, native layouts are read from tensor memory");
+			return postProcess(plan.wantFloat ? detect_result.floats(outputs) : detect_result.segments(outputs), plan);
+	}
+	
+	/**
+	 * Post-processing stage for quantized outputs, read in place from output buffers or NPU tensor memory.
+	 * @param outputs The quantized output tensors
+	 * @param MODEL 0 YOLOv5, 1 YOLOv11, 2 InceptionSSD
+	 * @return The detected objects
+	 */
+	public detect_result_group postProcess(MemorySegment[] outputs, int MODEL) {
+			return postProcess(outputs, planFor(MODEL));
+	}
+	
+	/**
+	 * Post-processing stage for output tensors read in place, by the given plan.
+	 * @param outputs The output tensors, or their float views for want_float outputs
+	 * @param plan The post processing plan, see {@link #getPlan()}
+	 * @return The detected objects
+	 */
+	public detect_result_group postProcess(MemorySegment[] outputs, PostProcessPlan plan) {
 			detect_result_group drg = new detect_result_group();
-			ArrayList<Float> scales = null;
-			ArrayList<Integer> zps = null;
-			// If wantFloat is false, we would need the zero point and scaling
-			if(!WANTFLOAT) {
-				scales = new ArrayList<Float>();
-				zps = new ArrayList<Integer>();
-				for(int i = 0; i < ioNum.getN_output(); i++) {
-					rknn_tensor_attr outputAttr = tensorAttrs.get(i);
-					zps.add(outputAttr.getZp());
-					scales.add(outputAttr.getScale());
-				}
-			}
-			int num_detected = 0;
-			switch(MODEL) {
-				case 0: //YOLOv5
-					num_detected = detect_result.post_process(outputs, widthHeightChannel[1], widthHeightChannel[0], 
-						detect_result.BOX_THRESH, detect_result.NMS_THRESH, 
-						scale_w, scale_h, zps, scales, drg, labels);
-				break;
-				case 1:// YOLOv11
-					num_detected = detect_result.post_process(outputs, tensorAttrs, ioNum, scale_w, scale_h, widthHeightChannel[1], widthHeightChannel[0], 
-							detect_result.BOX_THRESH, detect_result.NMS_THRESH, drg, labels);
-					//image.drawDetections(drg);
-				break;
-				case 2:  // InceptionSSD 
-					if(WANTFLOAT) {
-						num_detected = detect_result.post_process(outputs[0].getBuf(), outputs[1].getBuf(), boxPriors,
-							widthHeightChannel[1], widthHeightChannel[0], detect_result.NMS_THRESH_SSD, 
-							scale_w, scale_h, drg, labels);
-					} else {
-						num_detected = detect_result.post_process(outputs[0].getBuf(), outputs[1].getBuf(), boxPriors,
-							widthHeightChannel[1], widthHeightChannel[0], detect_result.NMS_THRESH_SSD, 
-							scale_w, scale_h, zps, scales, drg, labels);	
-					}
-					//image.detectionsToJPEGBytes(drg);
-				break;
-				default:
-					System.out.println("MODEL unknown...");
-					System.exit(1);
-			}
+			int num_detected = detect_result.post_process(plan, outputs, boxPriors, scale_w, scale_h, candidateBudget,
+					maxDetections, drg, labels);
 			if(DEBUG)
 				if(num_detected == 0)
 					System.out.println("Nothing detected");
 				else
 					System.out.println("Detected Result Group:"+drg);
 			return drg;
-			//m.destroy(ctx);
+	}
+	
+	/**
+	 * @return The post processing plan chosen from the output tensor signature at initNPU, null if the signature is not
+	 * one of a supported detector
+	 */
+	public PostProcessPlan getPlan() {
+		return plan;
+	}
+	
+	/**
+	 * The plan chosen at initNPU, or set since, for the calls without a MODEL int.
+	 * @return The plan
+	 * @throws IllegalStateException if there is none, caused by the reason initNPU chose none
+	 */
+	PostProcessPlan requirePlan() {
+		if(plan == null)
+			throw new IllegalStateException("no post processing plan, pass MODEL", planError);
+		return plan;
+	}
+	
+	/**
+	 * Replace the plan chosen at initNPU, with one built from a per-model configuration, such as the anchors of a custom
+	 * YOLOv5 model, see {@link PostProcessPlan#of(PostProcessPlan.Kind, java.util.List, int, int, float, float, boolean, int[][])}.
+	 * The plan then serves the calls without a MODEL int and those with the MODEL int of its kind.
+	 * @param plan The post processing plan
+	 */
+	public void setPlan(PostProcessPlan plan) {
+		this.plan = plan;
+		plans[plan.kind.ordinal()] = plan;
+	}
+	
+	/**
+	 * The plan for a MODEL int, the one chosen at initNPU if of that kind, else one built once for the kind.
+	 * @param MODEL 0 YOLOv5, 1 YOLOv11, 2 InceptionSSD
+	 * @return The plan
+	 * @throws IllegalArgumentException if MODEL is unknown
+	 */
+	PostProcessPlan planFor(int MODEL) {
+		if(MODEL < 0 || MODEL >= plans.length)
+			throw new IllegalArgumentException("MODEL unknown:"+MODEL+", 0 YOLOv5, 1 YOLOv11, 2 InceptionSSD");
+		PostProcessPlan p = plans[MODEL];
+		if(p == null) {
+			PostProcessPlan.Kind kind = PostProcessPlan.Kind.values()[MODEL];
+			p = PostProcessPlan.of(kind, tensorAttrs, widthHeightChannel[0], widthHeightChannel[1], detect_result.BOX_THRESH,
+					kind == PostProcessPlan.Kind.INCEPTION_SSD ? detect_result.NMS_THRESH_SSD : detect_result.NMS_THRESH, WANTFLOAT);
+			plans[MODEL] = p;
+		}
+		return p;
+	}
+	
+	/**
+	 * Submit a frame to the three stage pipeline on the context created by initNPU. While frame N runs on the NPU,
+	 * frame N+1 is being prepared and frame N-1 post-processed, each stage on its own thread, so frames complete
+	 * in submission order.<p/>
+	 * If the NPU was initialized in asynchronous mode (RKNN_FLAG_ASYNC_MASK) rknn_outputs_get returns the outputs
+	 * of the previous run, so each frame is completed when the following frame has run, and the outputs of the
+	 * first run are discarded. Call {@link #flushAsync()} to complete the last frame when no more frames follow.<p/>
+	 * Do not mix with the synchronous inference on the same context.
+	 * @param image The image, sized to the model input
+	 * @param MODEL 0 YOLOv5, 1 YOLOv11, 2 InceptionSSD
+	 * @return The future detected objects
+	 */
+	public CompletableFuture<detect_result_group> inferAsync(Instance image, int MODEL) {
+		return inferAsync(image, planFor(MODEL));
+	}
+	
+	/**
+	 * Submit a frame to the three stage pipeline, as above, post processing by the plan chosen at initNPU.
+	 * @param image The image, sized to the model input
+	 * @return The future detected objects
+	 * @throws IllegalStateException if no plan was chosen at initNPU, caused by the reason it was not
+	 */
+	public CompletableFuture<detect_result_group> inferAsync(Instance image) {
+		return inferAsync(image, requirePlan());
+	}
+	
+	/**
+	 * Submit a frame to the three stage pipeline, as above, post processing by the given plan.
+	 * @param image The image, sized to the model input
+	 * @param plan The post processing plan, see {@link #getPlan()}
+	 * @return The future detected objects
+	 */
+	public CompletableFuture<detect_result_group> inferAsync(Instance image, PostProcessPlan plan) {
+		ExecutorService pre, npu, post;
+		synchronized(this) {
+			startPipeline();
+			pre = preStage;
+			npu = npuStage;
+			post = postStage;
+		}
+		PendingFrame frame = new PendingFrame(plan);
+		CompletableFuture.supplyAsync(() -> prepareInputs(image), pre)
+			.thenAcceptAsync(inputs -> {
+				frame.inputs = inputs;
+				PendingFrame done = frame;
+				rknn_output[] outputs;
+				synchronized(this) {
+					outputs = execute(ctx, inputs);
+				}
+				if(asyncMode) {
+					// outputs belong to the previous run
+					done = lastFrame;
+					lastFrame = frame;
+				}
+				complete(done, outputs, npu, post);
+			}, npu)
+			.exceptionally(t -> {
+				frame.result.completeExceptionally(t);
+				return null;
+			});
+		return frame.result;
+	}
+	
+	/**
+	 * In asynchronous mode, re-run the inputs of the last frame submitted to retrieve its outputs and complete it.
+	 * The outputs of the re-run are discarded by the next frame. Has no effect in synchronous mode.
+	 */
+	public void flushAsync() {
+		ExecutorService npu, post;
+		synchronized(this) {
+			npu = npuStage;
+			post = postStage;
+		}
+		if(!asyncMode || npu == null)
+			return;
+		npu.execute(() -> flushLast(npu, post));
+	}
+	
+	private void flushLast(ExecutorService npu, ExecutorService post) {
+		PendingFrame done = lastFrame;
+		if(done == null)
+			return;
+		lastFrame = null;
+		try {
+			rknn_output[] outputs;
+			synchronized(this) {
+				outputs = execute(ctx, done.inputs);
+			}
+			complete(done, outputs, npu, post);
+		} catch(RuntimeException e) {
+			done.result.completeExceptionally(e);
+		}
+	}
+	
+	/**
+	 * Stop the pipeline threads started by inferAsync, frames already submitted are completed first. Each stage is
+	 * shut down and drained in turn, pre, NPU then post, so a frame finishing one stage still finds the next running.
+	 * In asynchronous mode the last frame is flushed before the NPU stage stops. Frames submitted while stopping are
+	 * rejected. Not to be called from a pipeline thread, such as a non-async continuation of a returned future.
+	 */
+	public void stopAsync() {
+		ExecutorService pre, npu, post;
+		synchronized(this) {
+			pre = preStage;
+			npu = npuStage;
+			post = postStage;
+		}
+		if(pre == null)
+			return;
+		drain(pre);
+		if(asyncMode)
+			npu.execute(() -> flushLast(npu, post));
+		drain(npu);
+		drain(post);
+		synchronized(this) {
+			if(preStage == pre)
+				preStage = npuStage = postStage = null;
+		}
+	}
+	
+	private static void drain(ExecutorService stage) {
+		stage.shutdown();
+		try {
+			while(!stage.awaitTermination(1, TimeUnit.SECONDS));
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	private synchronized void startPipeline() {
+		if(preStage != null)
+			return;
+		preStage = Executors.newSingleThreadExecutor(r -> pipelineThread(r, "RKNN-pre"));
+		npuStage = Executors.newSingleThreadExecutor(r -> pipelineThread(r, "RKNN-npu"));
+		postStage = Executors.newSingleThreadExecutor(r -> pipelineThread(r, "RKNN-post"));
+	}
+	
+	private static Thread pipelineThread(Runnable r, String name) {
+		Thread t = new Thread(r, name);
+		t.setDaemon(true);
+		return t;
+	}
+	
+	private void complete(PendingFrame done, rknn_output[] outputs, ExecutorService npu, ExecutorService post) {
+		post.execute(() -> {
+			try {
+				if(done != null)
+					done.result.complete(postProcess(outputs, done.plan));
+			} catch(RuntimeException e) {
+				done.result.completeExceptionally(e);
+			} finally {
+				if(outputs[0].getIs_prealloc()) {
+					recycleOutputs(ctx, outputs);
+				} else {
+					// runtime owned buffers are released in turn with the runs on the context
+					try {
+						npu.execute(() -> recycleOutputs(ctx, outputs));
+					} catch(RejectedExecutionException e) {
+						// NPU stage drained by stopAsync, no run follows
+						synchronized(this) {
+							recycleOutputs(ctx, outputs);
+						}
+					}
+				}
+			}
+		});
+	}
+	
+	/**
+	 * A frame in flight through the inferAsync pipeline.
+	 */
+	private static class PendingFrame {
+		final CompletableFuture<detect_result_group> result = new CompletableFuture<detect_result_group>();
+		final PostProcessPlan plan;
+		rknn_input[] inputs;
+		PendingFrame(PostProcessPlan plan) {
+			this.plan = plan;
+		}
 	}
 	/**
 	 * java com.neocoretechs.rknn4j.runtime.Model <model_file> <image jpeg file> <inception | yolo>
@@ -501,6 +1348,7 @@ public class Model {
 			System.out.println("Detected Result Group:"+drg.toJson());
 			image.saveDetections(drg,"detections");
 		}
+		m.releaseOutputs(ctx, outputs);
 		m.destroy(ctx);
 	}
 }
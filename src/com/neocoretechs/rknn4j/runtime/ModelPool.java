@@ -0,0 +1,182 @@
+package com.neocoretechs.rknn4j.runtime;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import com.neocoretechs.rknn4j.RKNN;
+import com.neocoretechs.rknn4j.rknpu2;
+import com.neocoretechs.rknn4j.image.Instance;
+import com.neocoretechs.rknn4j.image.PostProcessPlan;
+import com.neocoretechs.rknn4j.image.detect_result_group;
+
+/**
+ * A pool of NPU contexts created from one loaded {@link Model}.<p/>
+ * Each context is duplicated with rknn_dup_context from the one created by {@link Model#initNPU}, so the model
+ * weights are loaded into the NPU only once. The context of the Model is not one of the pool, the synchronous
+ * inference of the Model may go on running on it while the pool runs its own. Each frame submitted is
+ * dispatched to whichever context is idle, and results are returned by {@link #take()} in the order the
+ * frames were submitted.<p/>
+ * In {@link CoreMode#PER_CORE} mode each context is pinned to a single NPU core, for throughput
+ * when several frames are in flight. In {@link CoreMode#SPANNING} mode each context runs across cores 0_1_2,
+ * which lowers the latency of a single frame.<p/>
+ * Duplicating and pinning contexts need the FFM backend, {@link com.neocoretechs.rknn4j.rknpu2ffm}, the JNI glue
+ * of librknn4j having neither call.
+ * @author Jonathan Groff Copyright (C) NeoCoreTechs 2025
+ *
+ */
+public class ModelPool {
+	private static boolean DEBUG = false;
+
+	public enum CoreMode { PER_CORE, SPANNING }
+
+	private final Model model;
+	private final PostProcessPlan plan;
+	private final long[] contexts;
+	private final ArrayBlockingQueue<Long> idle;
+	private final ExecutorService workers;
+	// reorder buffer, futures in submission order
+	private final ArrayDeque<Future<detect_result_group>> pending = new ArrayDeque<Future<detect_result_group>>();
+
+	/**
+	 * Create the pool from a Model that has been through initNPU, post processing by the plan chosen at initNPU.
+	 * @param model The initialized Model, whose context the contexts of the pool are duplicated from
+	 * @param nContexts The total number of contexts, typically RKNN.RKNN_NPU_CORE_NUM for PER_CORE
+	 * @param mode PER_CORE to pin context i to core i modulo 3, SPANNING to run each context on cores 0_1_2
+	 * @throws RuntimeException if a context cannot be duplicated or pinned
+	 * @throws IllegalStateException if no plan was chosen at initNPU, caused by the reason it was not
+	 */
+	public ModelPool(Model model, int nContexts, CoreMode mode) {
+		this(model, nContexts, mode, model.requirePlan());
+	}
+	/**
+	 * Create the pool from a Model that has been through initNPU.
+	 * @param model The initialized Model, whose context the contexts of the pool are duplicated from
+	 * @param nContexts The total number of contexts, typically RKNN.RKNN_NPU_CORE_NUM for PER_CORE
+	 * @param mode PER_CORE to pin context i to core i modulo 3, SPANNING to run each context on cores 0_1_2
+	 * @param MODEL 0 YOLOv5, 1 YOLOv11, 2 InceptionSSD
+	 * @throws RuntimeException if a context cannot be duplicated or pinned
+	 */
+	public ModelPool(Model model, int nContexts, CoreMode mode, int MODEL) {
+		this(model, nContexts, mode, model.planFor(MODEL));
+	}
+	/**
+	 * Create the pool from a Model that has been through initNPU.
+	 * @param model The initialized Model, whose context the contexts of the pool are duplicated from
+	 * @param nContexts The total number of contexts, typically RKNN.RKNN_NPU_CORE_NUM for PER_CORE
+	 * @param mode PER_CORE to pin context i to core i modulo 3, SPANNING to run each context on cores 0_1_2
+	 * @param plan The post processing plan, see Model.getPlan
+	 * @throws RuntimeException if a context cannot be duplicated or pinned, or the Model is bound to the JNI backend
+	 */
+	public ModelPool(Model model, int nContexts, CoreMode mode, PostProcessPlan plan) {
+		if(nContexts < 1)
+			throw new IllegalArgumentException("Pool requires at least one context");
+		if(plan == null)
+			throw new RuntimeException("No post processing plan, the output tensor signature is not one of a supported model");
+		if(model.getNpu() instanceof rknpu2)
+			throw new RuntimeException("ModelPool requires the FFM backend, -Drknn4j.backend=ffm, librknn4j has no glue for rknn_dup_context or rknn_set_core_mask");
+		this.model = model;
+		this.plan = plan;
+		this.contexts = new long[nContexts];
+		this.idle = new ArrayBlockingQueue<Long>(nContexts);
+		try {
+			for(int i = 0; i < nContexts; i++) {
+				contexts[i] = model.dupContext(model.getContext());
+				int coreMask = (mode == CoreMode.PER_CORE ? (RKNN.RKNN_NPU_CORE_0 << (i % RKNN.RKNN_NPU_CORE_NUM)) : RKNN.RKNN_NPU_CORE_0_1_2);
+				model.setCoreMask(contexts[i], coreMask);
+				if(DEBUG)
+					System.out.printf("Context %d=%d core mask=%d%n", i, contexts[i], coreMask);
+				idle.add(contexts[i]);
+			}
+		} catch(RuntimeException e) {
+			// destroy the contexts duplicated so far, 0 where none was
+			for(int i = 0; i < nContexts && contexts[i] != 0; i++) {
+				try {
+					model.destroy(contexts[i]);
+				} catch(RuntimeException d) {
+					e.addSuppressed(d);
+				}
+			}
+			throw e;
+		}
+		this.workers = Executors.newFixedThreadPool(nContexts);
+	}
+
+	/**
+	 * Submit a frame for inference on the next idle context.
+	 * @param image The image, sized to the model input
+	 */
+	public synchronized void submit(Instance image) {
+		pending.add(workers.submit(() -> {
+			long ctx = idle.take();
+			try {
+				return model.inference(ctx, image, plan);
+			} finally {
+				idle.add(ctx);
+			}
+		}));
+	}
+
+	/**
+	 * Wait for and return the result of the oldest frame submitted that has not yet been taken.
+	 * @return The detected objects, or null if no frames are outstanding
+	 * @throws InterruptedException if interrupted waiting for the result
+	 * @throws RuntimeException if inference of the frame failed
+	 */
+	public detect_result_group take() throws InterruptedException {
+		Future<detect_result_group> next;
+		synchronized(this) {
+			next = pending.poll();
+		}
+		if(next == null)
+			return null;
+		try {
+			return next.get();
+		} catch (ExecutionException e) {
+			if(e.getCause() instanceof RuntimeException)
+				throw (RuntimeException)e.getCause();
+			throw new RuntimeException(e.getCause());
+		}
+	}
+
+	/**
+	 * @return The number of frames submitted whose results have not yet been taken
+	 */
+	public synchronized int getPending() {
+		return pending.size();
+	}
+
+	/**
+	 * @return The number of contexts in the pool
+	 */
+	public int getSize() {
+		return contexts.length;
+	}
+
+	/**
+	 * Wait for outstanding frames, stop the workers and destroy the contexts of the pool.
+	 * The context owned by the Model is left intact. Each context is destroyed once, a later call only destroying
+	 * those a failed call did not reach.
+	 * @throws InterruptedException if interrupted waiting for the workers
+	 * @throws RuntimeException if a context cannot be destroyed
+	 */
+	public void shutdown() throws InterruptedException {
+		workers.shutdown();
+		while(!workers.awaitTermination(1, TimeUnit.SECONDS)) {
+			if(DEBUG)
+				System.out.println("Waiting for workers...");
+		}
+		synchronized(contexts) {
+			for(int i = 0; i < contexts.length; i++) {
+				long ctx = contexts[i];
+				contexts[i] = 0; // never destroyed twice, even if destroy fails
+				if(ctx != 0)
+					model.destroy(ctx);
+			}
+		}
+	}
+}
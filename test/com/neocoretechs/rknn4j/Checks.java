@@ -0,0 +1,31 @@
+package com.neocoretechs.rknn4j;
+
+/**
+ * The checks of the tests under test, each a main run in a JVM of its own by the test target of build.xml. A failed
+ * check is printed and counted, and {@link #finish(String)} exits with status 1 if any failed, failing the build.
+ * @author Jonathan Groff Copyright (C) NeoCoreTechs 2025
+ *
+ */
+public final class Checks {
+	private static int failures = 0;
+
+	private Checks() {}
+
+	public static void check(boolean ok, String what) {
+		if(!ok) {
+			++failures;
+			System.out.println("FAILED: "+what);
+		}
+	}
+	/**
+	 * Print the number of failed checks and exit with status 1 if there were any, else print passed.
+	 * @param passed What to print if every check passed
+	 */
+	public static void finish(String passed) {
+		if(failures > 0) {
+			System.out.println(failures+" checks failed");
+			System.exit(1);
+		}
+		System.out.println(passed);
+	}
+}
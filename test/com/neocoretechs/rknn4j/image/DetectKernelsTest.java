@@ -0,0 +1,110 @@
+package com.neocoretechs.rknn4j.image;
+
+import static com.neocoretechs.rknn4j.Checks.check;
+import static com.neocoretechs.rknn4j.Checks.finish;
+import static com.neocoretechs.rknn4j.image.NmsReference.box;
+import static com.neocoretechs.rknn4j.image.NmsReference.nmsSSD;
+import static com.neocoretechs.rknn4j.image.NmsReference.nmsYOLO;
+import static com.neocoretechs.rknn4j.image.NmsReference.permutation;
+import static com.neocoretechs.rknn4j.image.NmsReference.threshold;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Randomized test of the suppression kernels of {@link DetectKernels}, suppressYOLO and suppressSSD, against nmsYOLO
+ * and nmsSSD as they were before the kernels, in {@link NmsReference}.<p/>
+ * Each case is a whole NMS, the kernel called for every surviving position of each class in ascending class order,
+ * the class of a position being classIds[i] as the baseline takes it, and the order a random permutation of the
+ * candidates with a few positions already suppressed. Boxes lie on integer coordinates, repeated so their IoU is 1,
+ * just touching so it is 0, and in some cases empty, inverted, NaN or infinite so the union is at or below 0 or the
+ * IoU is NaN. The threshold is often the exact IoU of two of the boxes, so lanes equal to the threshold are common,
+ * where YOLO must not suppress and SSD must. Case sizes run from below one vector to many, with any remainder.<p/>
+ * Needs jdk.incubator.vector, without it the test is skipped.
+ * @author Jonathan Groff Copyright (C) NeoCoreTechs 2025
+ *
+ */
+public class DetectKernelsTest {
+	private static final int CASES = 3000;
+
+	public static void main(String[] args) {
+		if(!detect_result.VECTORIZE) {
+			System.out.println("DetectKernelsTest skipped without the Vector API");
+			return;
+		}
+		Random random = new Random(15);
+		for(int t = 0; t < CASES; t++) {
+			int n = random.nextInt(4) == 0 ? random.nextInt(400) : random.nextInt(40);
+			boolean odd = random.nextInt(3) == 0;
+			// x, y, w, h of each candidate
+			float[] locations = new float[n * 4];
+			for(int c = 0; c < n; c++)
+				box(random, locations, c, 64, odd);
+			int[] order = permutation(random, n);
+			int nClass = 1 + random.nextInt(random.nextBoolean() ? 2 : 20);
+			int[] classIds = new int[n];
+			for(int i = 0; i < n; i++)
+				classIds[i] = random.nextInt(nClass);
+			yolo(random, locations, order, classIds, "yolo case "+t+" n="+n);
+			ssd(random, locations, order, "ssd case "+t+" n="+n);
+		}
+		finish("DetectKernelsTest passed");
+	}
+
+	private static void yolo(Random random, float[] locations, int[] order, int[] classIds, String what) {
+		int n = order.length;
+		float threshold = threshold(random, locations, n, true);
+		int[] expected = order.clone();
+		// each class once, a repeated nmsYOLO call for a class suppressing nothing more
+		int[] classSet = Arrays.stream(classIds).distinct().sorted().toArray();
+		for(int c : classSet)
+			nmsYOLO(n, locations, classIds, expected, c, threshold);
+		// boxes of each position, as NmsBuckets gathers them
+		float[] xmin = new float[n], ymin = new float[n], xmax = new float[n], ymax = new float[n];
+		for(int p = 0; p < n; p++) {
+			int m = order[p];
+			if(m == -1)
+				continue;
+			xmin[p] = locations[m * 4 + 0];
+			ymin[p] = locations[m * 4 + 1];
+			xmax[p] = locations[m * 4 + 0] + locations[m * 4 + 2];
+			ymax[p] = locations[m * 4 + 1] + locations[m * 4 + 3];
+		}
+		int[] actual = order.clone();
+		for(int c : classSet)
+			for(int i = 0; i < n; i++)
+				if(actual[i] != -1 && classIds[i] == c)
+					DetectKernels.suppressYOLO(xmin, ymin, xmax, ymax, i, n, threshold, actual);
+		check(Arrays.equals(expected, actual), what+" threshold="+threshold+" first mismatch at "+Arrays.mismatch(expected, actual));
+	}
+
+	private static void ssd(Random random, float[] locations, int[] order, String what) {
+		int n = order.length;
+		float threshold = threshold(random, locations, n, false);
+		// ymin, xmin, ymax, xmax of each candidate, as decodeCenterSizeBoxes leaves them
+		float[] outputLocations = new float[n * 4];
+		for(int c = 0; c < n; c++) {
+			outputLocations[c * 4 + 0] = locations[c * 4 + 1];
+			outputLocations[c * 4 + 1] = locations[c * 4 + 0];
+			outputLocations[c * 4 + 2] = locations[c * 4 + 1] + locations[c * 4 + 3];
+			outputLocations[c * 4 + 3] = locations[c * 4 + 0] + locations[c * 4 + 2];
+		}
+		int[] expected = order.clone();
+		nmsSSD(n, outputLocations, new int[][]{expected}, threshold);
+		float[] xmin = new float[n], ymin = new float[n], xmax = new float[n], ymax = new float[n];
+		for(int p = 0; p < n; p++) {
+			int m = order[p];
+			if(m == -1)
+				continue;
+			ymin[p] = outputLocations[m * 4 + 0];
+			xmin[p] = outputLocations[m * 4 + 1];
+			ymax[p] = outputLocations[m * 4 + 2];
+			xmax[p] = outputLocations[m * 4 + 3];
+		}
+		int[] actual = order.clone();
+		for(int i = 0; i < n; i++)
+			if(actual[i] != -1)
+				DetectKernels.suppressSSD(xmin, ymin, xmax, ymax, i, n, threshold, actual);
+		check(Arrays.equals(expected, actual), what+" threshold="+threshold+" first mismatch at "+Arrays.mismatch(expected, actual));
+	}
+}
@@ -0,0 +1,134 @@
+package com.neocoretechs.rknn4j.image;
+
+import static com.neocoretechs.rknn4j.Checks.check;
+import static com.neocoretechs.rknn4j.Checks.finish;
+import static java.lang.foreign.ValueLayout.JAVA_BYTE;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.util.Arrays;
+import java.util.Random;
+
+import com.neocoretechs.rknn4j.rknn_tensor_attr;
+import com.neocoretechs.rknn4j.RKNN.rknn_tensor_format;
+import com.neocoretechs.rknn4j.RKNN.rknn_tensor_qnt_type;
+import com.neocoretechs.rknn4j.RKNN.rknn_tensor_type;
+
+/**
+ * Test of {@link InputPacker} on the host, against a scalar reference that places each pixel byte by the
+ * w_stride, h_stride and native C of the attributes and quantizes it as round(p / scale) + zp clamped to the type,
+ * every other byte being the quantized 0.<p/>
+ * Covers dense NHWC, NHWC with rows of w_stride cells, NHWC with C padded to 4, and NC1HWC2 with C2 of 16 and of 8
+ * over several C1 blocks, each quantized as a copy, an XOR and a table, the dense rows written whole and the padded
+ * layouts element by element, with images of random pixels into native memory. Run with and without jdk.incubator.vector to check both the vector and the scalar XOR, see the test
+ * target of build.xml.
+ * @author Jonathan Groff Copyright (C) NeoCoreTechs 2025
+ *
+ */
+public class InputPackerTest {
+	private static final rknn_tensor_format NHWC = rknn_tensor_format.RKNN_TENSOR_NHWC;
+	private static final rknn_tensor_format NC1HWC2 = rknn_tensor_format.RKNN_TENSOR_NC1HWC2;
+	private static final rknn_tensor_type INT8 = rknn_tensor_type.RKNN_TENSOR_INT8;
+	private static final rknn_tensor_type UINT8 = rknn_tensor_type.RKNN_TENSOR_UINT8;
+
+	public static void main(String[] args) {
+		// native type, zero point, scale, the quantization the packer must find, the padded layouts going element by element
+		Object[][] quantizations = {
+			{UINT8, 0, 1.0f, "copy"},
+			{INT8, -128, 1.0f, "xor"},
+			{INT8, -10, 0.9f, "table"},
+			{UINT8, 3, 1.7f, "table"},
+			{INT8, 0, 1.0f, "table"}, // clamps at 127
+		};
+		for(Object[] q : quantizations) {
+			rknn_tensor_type type = (rknn_tensor_type)q[0];
+			int zp = (Integer)q[1];
+			float scale = (Float)q[2];
+			String way = (String)q[3];
+			pack(NHWC, 37, 53, 3, 3, 53, 37, type, zp, scale, way);
+			pack(NHWC, 37, 53, 3, 3, 64, 37, type, zp, scale, way);
+			pack(NHWC, 1, 7, 3, 3, 7, 1, type, zp, scale, way);
+			pack(NHWC, 37, 53, 3, 4, 64, 40, type, zp, scale, way);
+			pack(NC1HWC2, 37, 53, 3, 16, 56, 37, type, zp, scale, way);
+			pack(NC1HWC2, 17, 23, 20, 8, 24, 18, type, zp, scale, way);
+		}
+		finish("InputPackerTest passed"+(detect_result.VECTORIZE ? "" : " without the Vector API"));
+	}
+	/**
+	 * Pack a random image of h * w * c into the native layout and compare every byte with the reference.
+	 * @param c2 native C of NHWC, or C2 of NC1HWC2
+	 * @param way copy, xor or table, as the packer reports it
+	 */
+	private static void pack(rknn_tensor_format fmt, int h, int w, int c, int c2, int wStride, int hStride,
+		rknn_tensor_type type, int zp, float scale, String way) {
+		int c1 = fmt == NHWC ? 1 : (c + c2 - 1) / c2;
+		int size = c1 * hStride * wStride * c2;
+		int[] dims = fmt == NHWC ? new int[]{1, h, w, c2} : new int[]{1, c1, h, w, c2};
+		rknn_tensor_attr inputAttr = attr(NHWC, new int[]{1, h, w, c}, UINT8, 0, 1.0f, 0, 0, h * w * c);
+		rknn_tensor_attr nativeAttr = attr(fmt, dims, type, zp, scale, wStride, hStride, size);
+		InputPacker packer = InputPacker.of(inputAttr, nativeAttr);
+		String what = packer+" "+type+" zp="+zp+" scale="+scale;
+		check(packer.toString().endsWith(" "+way), what+" expected "+way);
+		check(packer.size() == size, what+" size "+packer.size());
+		Random random = new Random(what.hashCode());
+		byte[] rgb = new byte[h * w * c];
+		random.nextBytes(rgb);
+		int min = type == INT8 ? -128 : 0;
+		int max = type == INT8 ? 127 : 255;
+		byte[] expected = new byte[size];
+		Arrays.fill(expected, quantize(0, zp, scale, min, max));
+		place(rgb, h, w, c, c2, wStride, hStride, expected, zp, scale, min, max);
+		try (Arena arena = Arena.ofConfined()) {
+			MemorySegment dst = arena.allocate(size);
+			dst.fill((byte)0x5a);
+			packer.clear(dst);
+			packer.pack(rgb, dst);
+			byte[] packed = dst.toArray(JAVA_BYTE);
+			int at = Arrays.mismatch(expected, packed);
+			check(at < 0, what+" byte "+at);
+			// a second image into the same memory, the padding left as clear set it
+			random.nextBytes(rgb);
+			packer.pack(rgb, dst);
+			place(rgb, h, w, c, c2, wStride, hStride, expected, zp, scale, min, max);
+			at = Arrays.mismatch(expected, dst.toArray(JAVA_BYTE));
+			check(at < 0, what+" repacked byte "+at);
+		}
+	}
+
+	/**
+	 * The scalar reference, each pixel byte quantized into its cell, channel k in block k / c2 at k % c2, one
+	 * block of NHWC.
+	 */
+	private static void place(byte[] rgb, int h, int w, int c, int c2, int wStride, int hStride, byte[] expected,
+		int zp, float scale, int min, int max) {
+		for(int i = 0; i < h; i++) {
+			for(int j = 0; j < w; j++) {
+				for(int k = 0; k < c; k++) {
+					int offset = (k / c2) * hStride * wStride * c2 + (i * wStride + j) * c2 + k % c2;
+					expected[offset] = quantize(rgb[(i * w + j) * c + k] & 0xFF, zp, scale, min, max);
+				}
+			}
+		}
+	}
+
+	private static byte quantize(int p, int zp, float scale, int min, int max) {
+		return (byte)Math.min(Math.max(Math.round(p / scale) + zp, min), max);
+	}
+
+	private static rknn_tensor_attr attr(rknn_tensor_format fmt, int[] dims, rknn_tensor_type type, int zp, float scale,
+		int wStride, int hStride, int size) {
+		rknn_tensor_attr attr = new rknn_tensor_attr();
+		attr.setFmt(fmt);
+		attr.setN_dims(dims.length);
+		attr.setDims(Arrays.copyOf(dims, 16));
+		attr.setType(type);
+		attr.setQnt_type(rknn_tensor_qnt_type.RKNN_TENSOR_QNT_AFFINE_ASYMMETRIC);
+		attr.setZp(zp);
+		attr.setScale(scale);
+		attr.setW_stride(wStride);
+		attr.setH_stride(hStride);
+		attr.setSize(size);
+		attr.setSize_with_stride(size);
+		return attr;
+	}
+}
@@ -0,0 +1,202 @@
+package com.neocoretechs.rknn4j.image;
+
+import static com.neocoretechs.rknn4j.Checks.check;
+import static com.neocoretechs.rknn4j.Checks.finish;
+
+import java.awt.Color;
+import java.awt.Point;
+import java.awt.Transparency;
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferInt;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Test of the pixel conversions of {@link Instance} on the host, toRGB888, readRGB and packRGB, against the loops
+ * they replaced, copied below as they were: a Color of getRGB a pixel at a time, readRGB through getDataElements,
+ * and a Color of r, g, b a pixel at a time set as the raster of a TYPE_INT_RGB image.<p/>
+ * Every BufferedImage type, and two TYPE_CUSTOM images, with random samples straight into the data buffer, in
+ * widths either side of a vector and its remainders, whole and as subimages, whose rasters start inside the data
+ * buffer and have strides wider than a row. readRGB must give the bytes of the baseline, or throw the exception it
+ * threw, for every type. Run with and without jdk.incubator.vector to check both the vector and the scalar loops,
+ * see the test target of build.xml.
+ * @author Jonathan Groff Copyright (C) NeoCoreTechs 2025
+ *
+ */
+public class InstanceTest {
+	private static final int CASES = 40;
+
+	public static void main(String[] args) {
+		Random random = new Random(25);
+		for(int t = 0; t < CASES; t++) {
+			int w = 1 + random.nextInt(t < CASES / 2 ? 40 : 200);
+			int h = 1 + random.nextInt(12);
+			for(int type = BufferedImage.TYPE_INT_RGB; type <= BufferedImage.TYPE_BYTE_INDEXED; type++)
+				image(random, new BufferedImage(w, h, type), "case "+t+" type "+type+" "+w+"x"+h);
+			image(random, custom(w, h, new int[]{0, 1, 2}), "case "+t+" custom RGB "+w+"x"+h);
+			image(random, custom(w, h, new int[]{0, 1, 2, 3}), "case "+t+" custom RGBA "+w+"x"+h);
+			pack(random, w * h, "case "+t+" "+w+"x"+h);
+		}
+		finish("InstanceTest passed"+(detect_result.VECTORIZE ? "" : " without the Vector API"));
+	}
+	/**
+	 * Fill the image with random samples, compare it whole and a random subimage of it.
+	 */
+	private static void image(Random random, BufferedImage image, String what) {
+		DataBuffer db = image.getRaster().getDataBuffer();
+		for(int bank = 0; bank < db.getNumBanks(); bank++)
+			for(int i = 0; i < db.getSize(); i++)
+				db.setElem(bank, i, random.nextInt());
+		compare(image, what);
+		int x = random.nextInt(image.getWidth());
+		int y = random.nextInt(image.getHeight());
+		int w = 1 + random.nextInt(image.getWidth() - x);
+		int h = 1 + random.nextInt(image.getHeight() - y);
+		compare(image.getSubimage(x, y, w, h), what+" subimage "+x+","+y+" "+w+"x"+h);
+	}
+
+	private static void compare(BufferedImage image, String what) {
+		byte[] expected = toRGB888(image);
+		byte[] actual = Instance.toRGB888(image);
+		check(Arrays.equals(expected, actual), what+" toRGB888 first mismatch at "+Arrays.mismatch(expected, actual));
+		Object baseline, current;
+		try {
+			baseline = readRGB(image);
+		} catch(RuntimeException e) {
+			baseline = e.getClass();
+		}
+		try {
+			current = Instance.readRGB(image);
+		} catch(RuntimeException e) {
+			current = e.getClass();
+		}
+		check(baseline instanceof byte[] && current instanceof byte[] ? Arrays.equals((byte[])baseline, (byte[])current) : baseline.equals(current),
+			what+" readRGB "+(baseline instanceof byte[] ? "bytes" : baseline)+" expected, got "+(current instanceof byte[] ? "bytes" : current));
+	}
+	/**
+	 * packRGB into the raster of a TYPE_INT_RGB image as the byte array constructor does, against the image the
+	 * baseline set, and at offsets into larger arrays.
+	 */
+	private static void pack(Random random, int n, String what) {
+		byte[] rgb = new byte[n * 3];
+		random.nextBytes(rgb);
+		BufferedImage expected = new BufferedImage(n, 1, BufferedImage.TYPE_INT_RGB);
+		setRGB(expected, rgb, n, 1);
+		BufferedImage actual = new BufferedImage(n, 1, BufferedImage.TYPE_INT_RGB);
+		Instance.packRGB(rgb, 0, ((DataBufferInt)actual.getRaster().getDataBuffer()).getData(), 0, n);
+		int[] e = expected.getRGB(0, 0, n, 1, null, 0, n);
+		int[] a = actual.getRGB(0, 0, n, 1, null, 0, n);
+		check(Arrays.equals(e, a), what+" packRGB first mismatch at "+Arrays.mismatch(e, a));
+		int src = random.nextInt(8);
+		int dst = random.nextInt(8);
+		byte[] shifted = new byte[src * 3 + rgb.length];
+		System.arraycopy(rgb, 0, shifted, src * 3, rgb.length);
+		int[] pixels = new int[dst + n + 4];
+		Arrays.fill(pixels, -1);
+		Instance.packRGB(shifted, src * 3, pixels, dst, n);
+		boolean same = true;
+		for(int i = 0; i < pixels.length; i++)
+			same &= pixels[i] == (i < dst || i >= dst + n ? -1 : e[i - dst] & 0xffffff);
+		check(same, what+" packRGB at "+src+" into "+dst);
+	}
+	/**
+	 * A TYPE_CUSTOM sRGB image of interleaved bytes in the band order given, with alpha if four.
+	 */
+	private static BufferedImage custom(int w, int h, int[] bands) {
+		boolean alpha = bands.length == 4;
+		ComponentColorModel cm = new ComponentColorModel(ColorSpace.getInstance(ColorSpace.CS_sRGB), alpha, false,
+			alpha ? Transparency.TRANSLUCENT : Transparency.OPAQUE, DataBuffer.TYPE_BYTE);
+		WritableRaster raster = Raster.createWritableRaster(
+			new PixelInterleavedSampleModel(DataBuffer.TYPE_BYTE, w, h, bands.length, w * bands.length, bands), null);
+		return new BufferedImage(cm, raster, false, null);
+	}
+	/**
+	 * The RGB888 bytes of the BufferedImage constructors before toRGB888.
+	 */
+	static byte[] toRGB888(BufferedImage image) {
+		ByteBuffer bb = ByteBuffer.allocate(image.getWidth()*image.getHeight()*3);
+		for (int row = 0; row < image.getHeight(); ++row) {
+			for (int col = 0; col < image.getWidth(); ++col) {
+				Color c = new Color(image.getRGB(col, row));
+				bb.put((byte)c.getRed());
+				bb.put((byte)c.getGreen());
+				bb.put((byte)c.getBlue());
+			}
+		}
+		return bb.array();
+	}
+	/**
+	 * The raster of the byte array constructor before packRGB.
+	 */
+	static void setRGB(BufferedImage image, byte[] imageByteArray, int fixWidth, int fixHeight) {
+	    final ByteBuffer bb = ByteBuffer.wrap(imageByteArray);
+	    final int[] ret = new int[imageByteArray.length / 3];
+	    int iret = 0;
+		for (int row = 0; row < fixHeight; ++row) {
+			for (int col = 0; col < fixWidth; ++col) {
+				int r= Byte.toUnsignedInt(bb.get());
+				int g= Byte.toUnsignedInt(bb.get());
+				int b= Byte.toUnsignedInt(bb.get());
+				Color c = new Color(r, g, b);
+				ret[iret++] = c.getRGB();
+			}
+		}
+	    image.setData(Raster.createRaster(image.getSampleModel(), new DataBufferInt(ret, ret.length), new Point() ) );
+	}
+	/**
+	 * readRGB before it read the rasters.
+	 */
+	static byte[] readRGB(BufferedImage sourceImage) {
+		ByteBuffer bb = ByteBuffer.allocate(sourceImage.getWidth()*sourceImage.getHeight()*3);
+		int type = sourceImage.getType();
+		if (type == BufferedImage.TYPE_CUSTOM || type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB) {
+			int[] pixels = (int[]) sourceImage.getData().getDataElements(0, 0, sourceImage.getWidth(), sourceImage.getHeight(), null);
+			for (int i = 0; i < pixels.length; i++) {
+				int p = pixels[i];
+				int r = (p & 0xff0000) >> 16;
+				int g = (p & 0xff00) >> 8;
+				int b = p & 0xff;
+				bb.put((byte)r);
+				bb.put((byte)g);
+				bb.put((byte)b);
+			}
+		} else if (type == BufferedImage.TYPE_BYTE_GRAY) {
+			byte[] pixels = (byte[]) sourceImage.getData().getDataElements(0, 0, sourceImage.getWidth(), sourceImage.getHeight(), null);
+			for (int i = 0; i < pixels.length; i++) {
+				int rgb = (pixels[i] & 0xff);
+				bb.put((byte)rgb);
+				bb.put((byte)rgb);
+				bb.put((byte)rgb);
+			}
+		} else if (type == BufferedImage.TYPE_USHORT_GRAY) {
+			short[] pixels = (short[]) sourceImage.getData().getDataElements(0, 0, sourceImage.getWidth(), sourceImage.getHeight(), null);
+			for (int i = 0; i < pixels.length; i++) {
+				int rgb = (pixels[i] & 0xffff) / 256;
+				bb.put((byte)rgb);
+				bb.put((byte)rgb);
+				bb.put((byte)rgb);
+			}
+		} else if (type == BufferedImage.TYPE_3BYTE_BGR) {
+            byte[] pixels = (byte[]) sourceImage.getData().getDataElements(0, 0, sourceImage.getWidth(), sourceImage.getHeight(), null);
+            int offset = 0;
+            for (int i = 0; i < pixels.length; i+=3) {
+                int b = pixels[offset++] & 0xff;
+                int g = pixels[offset++] & 0xff;
+                int r = pixels[offset++] & 0xff;
+    			bb.put((byte)r);
+				bb.put((byte)g);
+				bb.put((byte)b);
+            }
+        } else {
+			throw new IllegalArgumentException("Unsupported image type: " + type);
+		}
+		return bb.array();
+	}
+}
@@ -0,0 +1,144 @@
+package com.neocoretechs.rknn4j.image;
+
+import static com.neocoretechs.rknn4j.Checks.check;
+import static com.neocoretechs.rknn4j.Checks.finish;
+import static com.neocoretechs.rknn4j.image.NmsReference.box;
+import static com.neocoretechs.rknn4j.image.NmsReference.nmsSSD;
+import static com.neocoretechs.rknn4j.image.NmsReference.nmsYOLO;
+import static com.neocoretechs.rknn4j.image.NmsReference.permutation;
+import static com.neocoretechs.rknn4j.image.NmsReference.threshold;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Randomized test of {@link NmsBuckets} against the per class loop it replaced, nmsYOLO called for each class id in
+ * ascending order and nmsSSD, as they were in {@link NmsReference}.<p/>
+ * The order of each case is a random permutation of the candidates, so the class id the baseline tests at position
+ * i, classIds[i], is not that of the candidate order[i], and the bucket must follow the position as nmsYOLO does.
+ * Boxes lie on integer coordinates of a small canvas, with repeated boxes and boxes that just touch, and in some
+ * cases empty, inverted, NaN and infinite boxes. The threshold is often the exact IoU of two of the boxes, so
+ * overlaps equal to the threshold and ties between positions are common. Cases run from a few positions to past GRID_MIN_VECTOR so the
+ * scan, the vector lanes and the grid are all taken, and each is repeated with a random maxDetections, the result
+ * having to be the unlimited one truncated to that many survivors.
+ * @author Jonathan Groff Copyright (C) NeoCoreTechs 2025
+ *
+ */
+public class NmsBucketsTest {
+	private static final int CASES = 1500;
+
+	public static void main(String[] args) {
+		Random random = new Random(12);
+		for(int t = 0; t < CASES; t++) {
+			int n = random.nextInt(4) == 0 ? random.nextInt(1200) : random.nextInt(80);
+			yolo(random, n, t);
+			ssd(random, n, t);
+		}
+		finish("NmsBucketsTest passed"+(detect_result.VECTORIZE ? "" : " without the Vector API"));
+	}
+
+	private static void yolo(Random random, int n, int t) {
+		int canvas = 8 + random.nextInt(300);
+		int nClass = 1 + random.nextInt(random.nextBoolean() ? 3 : 80);
+		detect_candidates candidates = new detect_candidates(n);
+		float[] outputLocations = new float[n * 4];
+		boolean odd = random.nextInt(4) == 0;
+		for(int c = 0; c < n; c++) {
+			box(random, outputLocations, c, canvas, odd);
+			candidates.add(outputLocations[c * 4], outputLocations[c * 4 + 1], outputLocations[c * 4 + 2], outputLocations[c * 4 + 3],
+				1.0f, random.nextInt(nClass));
+		}
+		int[] order = permutation(random, n);
+		float threshold = threshold(random, outputLocations, n, true);
+		String what = "yolo case "+t+" n="+n+" classes="+nClass+" threshold="+threshold;
+		int[] expected = order.clone();
+		int[] classIds = Arrays.copyOf(candidates.classId, n);
+		int[] classSet = classIds.clone();
+		Arrays.sort(classSet);
+		if(n <= 64) {
+			// the baseline exactly, one call per element of the sorted class ids
+			for(int c : classSet)
+				nmsYOLO(n, outputLocations, classIds, expected, c, threshold);
+		} else {
+			// a repeated call for a class suppresses nothing more, each class once
+			for(int k = 0; k < n; k++)
+				if(k == 0 || classSet[k] != classSet[k - 1])
+					nmsYOLO(n, outputLocations, classIds, expected, classSet[k], threshold);
+		}
+		int[] actual = order.clone();
+		detect_result.nmsYOLO(n, candidates, actual, threshold);
+		check(Arrays.equals(expected, actual), what+" first mismatch at "+Arrays.mismatch(expected, actual));
+		check(Arrays.equals(classIds, Arrays.copyOf(candidates.classId, n)), what+" class ids changed");
+		int maxDetections = 1 + random.nextInt(Math.max(1, survivors(expected)) + 2);
+		actual = order.clone();
+		detect_result.nmsYOLO(n, candidates, actual, threshold, maxDetections);
+		int[] truncated = truncate(expected, maxDetections);
+		check(Arrays.equals(truncated, actual), what+" maxDetections="+maxDetections+" first mismatch at "+Arrays.mismatch(truncated, actual));
+	}
+
+	private static void ssd(Random random, int n, int t) {
+		int canvas = 8 + random.nextInt(300);
+		int priors = n + random.nextInt(8);
+		float[] locations = new float[priors * 4];
+		boolean odd = random.nextInt(4) == 0;
+		for(int p = 0; p < priors; p++)
+			box(random, locations, p, canvas, odd);
+		// ymin, xmin, ymax, xmax of each prior, as decodeCenterSizeBoxes leaves them
+		float[] outputLocations = new float[priors * 4];
+		for(int p = 0; p < priors; p++) {
+			outputLocations[p * 4 + 0] = locations[p * 4 + 1];
+			outputLocations[p * 4 + 1] = locations[p * 4 + 0];
+			outputLocations[p * 4 + 2] = locations[p * 4 + 1] + locations[p * 4 + 3];
+			outputLocations[p * 4 + 3] = locations[p * 4 + 0] + locations[p * 4 + 2];
+		}
+		int[][] output = {Arrays.copyOf(permutation(random, priors), n), new int[n]};
+		float threshold = threshold(random, locations, priors, false);
+		String what = "ssd case "+t+" n="+n+" threshold="+threshold;
+		SsdBoxes boxes = SsdBoxes.get();
+		boxes.ymin = new float[n];
+		boxes.xmin = new float[n];
+		boxes.ymax = new float[n];
+		boxes.xmax = new float[n];
+		for(int p = 0; p < n; p++) {
+			int m = output[0][p];
+			if(m == -1) {
+				// never read
+				boxes.ymin[p] = boxes.xmin[p] = boxes.ymax[p] = boxes.xmax[p] = Float.NaN;
+				continue;
+			}
+			boxes.ymin[p] = outputLocations[m * 4 + 0];
+			boxes.xmin[p] = outputLocations[m * 4 + 1];
+			boxes.ymax[p] = outputLocations[m * 4 + 2];
+			boxes.xmax[p] = outputLocations[m * 4 + 3];
+		}
+		int[] expected = output[0].clone();
+		nmsSSD(n, outputLocations, new int[][]{expected, output[1]}, threshold);
+		int[] actual = output[0].clone();
+		detect_result.nmsSSD(n, boxes, new int[][]{actual, output[1]}, threshold);
+		check(Arrays.equals(expected, actual), what+" first mismatch at "+Arrays.mismatch(expected, actual));
+		int maxDetections = 1 + random.nextInt(Math.max(1, survivors(expected)) + 2);
+		actual = output[0].clone();
+		detect_result.nmsSSD(n, boxes, new int[][]{actual, output[1]}, threshold, maxDetections);
+		int[] truncated = truncate(expected, maxDetections);
+		check(Arrays.equals(truncated, actual), what+" maxDetections="+maxDetections+" first mismatch at "+Arrays.mismatch(truncated, actual));
+	}
+
+	private static int survivors(int[] order) {
+		int kept = 0;
+		for(int o : order)
+			if(o != -1)
+				++kept;
+		return kept;
+	}
+	/**
+	 * @return order with the positions after the maxDetections-th survivor suppressed
+	 */
+	private static int[] truncate(int[] order, int maxDetections) {
+		int[] truncated = order.clone();
+		int kept = 0;
+		for(int i = 0; i < truncated.length; i++)
+			if(truncated[i] != -1 && ++kept > maxDetections)
+				truncated[i] = -1;
+		return truncated;
+	}
+}
@@ -0,0 +1,149 @@
+package com.neocoretechs.rknn4j.image;
+
+import java.util.Random;
+
+/**
+ * nmsYOLO and nmsSSD as they were before {@link NmsBuckets} and {@link DetectKernels}, the reference of
+ * NmsBucketsTest and DetectKernelsTest, and the random cases both draw: boxes, thresholds and candidate orders.
+ * @author Jonathan Groff Copyright (C) NeoCoreTechs 2025
+ *
+ */
+final class NmsReference {
+	private NmsReference() {}
+	/**
+	 * Box c of locations, x, y, w, h on integer coordinates of the canvas, often a repeat of, or touching, the
+	 * previous box.
+	 * @param odd now and then empty, inverted, NaN or infinite, which leaves the grid of NmsBuckets unused
+	 */
+	static void box(Random random, float[] locations, int c, int canvas, boolean odd) {
+		int at = c * 4;
+		int kind = random.nextInt(100);
+		if(c > 0 && kind < 15) {
+			System.arraycopy(locations, at - 4, locations, at, 4);
+			return;
+		}
+		locations[at + 0] = random.nextInt(canvas);
+		locations[at + 1] = random.nextInt(canvas);
+		locations[at + 2] = 1 + random.nextInt(canvas / 3 + 1);
+		locations[at + 3] = 1 + random.nextInt(canvas / 3 + 1);
+		if(c > 0 && kind < 25) {
+			// beside the previous box, one apart, so the +1 of calculateOverlapYOLO makes them just touch
+			locations[at + 0] = locations[at - 4] + locations[at - 2] + 1.0f;
+			locations[at + 1] = locations[at - 3];
+		} else if(odd && kind < 30) {
+			locations[at + 2] = 0.0f;
+		} else if(odd && kind < 35) {
+			locations[at + 2] = -locations[at + 2];
+			locations[at + 3] = random.nextBoolean() ? -1.0f : -locations[at + 3];
+		} else if(odd && kind < 37) {
+			locations[at + random.nextInt(4)] = Float.NaN;
+		} else if(odd && kind < 39) {
+			locations[at + random.nextInt(4)] = random.nextBoolean() ? Float.POSITIVE_INFINITY : Float.NEGATIVE_INFINITY;
+		} else if(kind > 95) {
+			locations[at + 0] += 0.5f;
+			locations[at + 2] *= 0.75f;
+		}
+	}
+	/**
+	 * The IoU of two of the first n boxes most of the time, so some overlap equals the threshold, otherwise a common
+	 * threshold, 0 or below, 1 or NaN.
+	 * @param locations x, y, w, h of each box
+	 */
+	static float threshold(Random random, float[] locations, int n, boolean yolo) {
+		if(n > 1 && random.nextInt(3) != 0) {
+			int a = random.nextInt(n);
+			int b = random.nextInt(n);
+			float xmin0 = locations[a * 4], ymin0 = locations[a * 4 + 1];
+			float xmax0 = xmin0 + locations[a * 4 + 2], ymax0 = ymin0 + locations[a * 4 + 3];
+			float xmin1 = locations[b * 4], ymin1 = locations[b * 4 + 1];
+			float xmax1 = xmin1 + locations[b * 4 + 2], ymax1 = ymin1 + locations[b * 4 + 3];
+			return yolo ? detect_result.calculateOverlapYOLO(xmin0, ymin0, xmax0, ymax0, xmin1, ymin1, xmax1, ymax1)
+				: detect_result.calculateOverlapSSD(xmin0, ymin0, xmax0, ymax0, xmin1, ymin1, xmax1, ymax1);
+		}
+		float[] common = {0.45f, 0.5f, 0.2f, 0.7f, 0.0f, 1.0f, -0.25f, Float.NaN};
+		return common[random.nextInt(common.length)];
+	}
+	/**
+	 * The candidates 0..n in random order, a few positions already suppressed.
+	 */
+	static int[] permutation(Random random, int n) {
+		int[] order = new int[n];
+		for(int i = 0; i < n; i++)
+			order[i] = i;
+		for(int i = n - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			int swap = order[i];
+			order[i] = order[j];
+			order[j] = swap;
+		}
+		for(int i = 0; i < n; i++)
+			if(random.nextInt(40) == 0)
+				order[i] = -1;
+		return order;
+	}
+	/**
+	 * nmsYOLO before NmsBuckets.
+	 */
+	static void nmsYOLO(int validCount, float[] outputLocations, int[] classIds, int[] order, int filterId, float threshold) {
+		for (int i = 0; i < validCount; i++) {
+			int n = order[i];
+			if (n == -1 || classIds[i] != filterId) {
+				continue;
+			}
+			float xmin0 = outputLocations[n * 4 + 0];
+			float ymin0 = outputLocations[n * 4 + 1];
+			float xmax0 = outputLocations[n * 4 + 0] + outputLocations[n * 4 + 2];
+			float ymax0 = outputLocations[n * 4 + 1] + outputLocations[n * 4 + 3];
+
+			for (int j = i + 1; j < validCount; j++) {
+				int m = order[j];
+				if (m == -1) {
+					continue;
+				}
+
+				float xmin1 = outputLocations[m * 4 + 0];
+				float ymin1 = outputLocations[m * 4 + 1];
+				float xmax1 = outputLocations[m * 4 + 0] + outputLocations[m * 4 + 2];
+				float ymax1 = outputLocations[m * 4 + 1] + outputLocations[m * 4 + 3];
+
+				float iou = detect_result.calculateOverlapYOLO(xmin0, ymin0, xmax0, ymax0, xmin1, ymin1, xmax1, ymax1);
+
+				if (iou > threshold) {
+					order[j] = -1;
+				}
+			}
+		}
+	}
+	/**
+	 * nmsSSD before NmsBuckets.
+	 */
+	static void nmsSSD(int validCount, float[] outputLocations, int[][] output, float threshold) {
+		for (int i = 0; i < validCount; i++) {
+			if (output[0][i] == -1) {
+				continue;
+			}
+			int n = output[0][i];
+			for (int j = i + 1; j < validCount; j++) {
+				int m = output[0][j];
+				if (m == -1) {
+					continue;
+				}
+				float xmin0 = outputLocations[n * 4 + 1];
+				float ymin0 = outputLocations[n * 4 + 0];
+				float xmax0 = outputLocations[n * 4 + 3];
+				float ymax0 = outputLocations[n * 4 + 2];
+
+				float xmin1 = outputLocations[m * 4 + 1];
+				float ymin1 = outputLocations[m * 4 + 0];
+				float xmax1 = outputLocations[m * 4 + 3];
+				float ymax1 = outputLocations[m * 4 + 2];
+
+				float iou = detect_result.calculateOverlapSSD(xmin0, ymin0, xmax0, ymax0, xmin1, ymin1, xmax1, ymax1);
+
+				if (iou >= threshold) {
+					output[0][j] = -1;
+				}
+			}
+		}
+	}
+}
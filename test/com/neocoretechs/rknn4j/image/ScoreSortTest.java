@@ -0,0 +1,171 @@
+package com.neocoretechs.rknn4j.image;
+
+import static com.neocoretechs.rknn4j.Checks.check;
+import static com.neocoretechs.rknn4j.Checks.finish;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Randomized test of {@link ScoreSort} against the sorts it replaced, quick_sort_indice_inverse of the YOLO paths
+ * and the selection sort of InceptionSSD, copied below as they were.<p/>
+ * Scores are distinct, drawn from a few levels as quantized scores are, all equal, already in order or reversed,
+ * with infinities now and then. The sorted scores must be those of the baseline. The old sorts leave equal scores in
+ * whatever order their swaps did, ScoreSort keeps them in their original order, so within each run of equal scores
+ * the carried indexes must be the baseline's as a set and ascending, and outside the runs exactly the baseline's.
+ * The second array of the InceptionSSD sort must follow the first. Then a long run of equal scores, which the
+ * recursion of the quicksort cannot take.
+ * @author Jonathan Groff Copyright (C) NeoCoreTechs 2025
+ *
+ */
+public class ScoreSortTest {
+	private static final int CASES = 5000;
+
+	public static void main(String[] args) {
+		Random random = new Random(13);
+		for(int t = 0; t < CASES; t++) {
+			int n = random.nextInt(3) == 0 ? random.nextInt(2000) : random.nextInt(40);
+			float[] scores = scores(random, n);
+			yolo(scores, "case "+t+" n="+n);
+			ssd(random, scores, "case "+t+" n="+n);
+		}
+		// past the depth the quicksort recursion reaches on equal scores
+		float[] equal = new float[1 << 20];
+		Arrays.fill(equal, 0.5f);
+		int[] indices = identity(equal.length);
+		detect_result.sort_indice_inverse(equal, equal.length, indices);
+		check(Arrays.equals(indices, identity(equal.length)), "equal scores moved");
+		finish("ScoreSortTest passed");
+	}
+
+	private static void yolo(float[] scores, String what) {
+		int n = scores.length;
+		float[] expected = scores.clone();
+		int[] expectedIndices = identity(n);
+		quick_sort_indice_inverse(expected, 0, n - 1, expectedIndices);
+		float[] actual = scores.clone();
+		int[] actualIndices = identity(n);
+		detect_result.sort_indice_inverse(actual, n, actualIndices);
+		compare(scores, expected, expectedIndices, actual, actualIndices, "yolo "+what);
+	}
+
+	private static void ssd(Random random, float[] scores, String what) {
+		int n = scores.length;
+		int[] classes = new int[n];
+		for(int i = 0; i < n; i++)
+			classes[i] = random.nextInt(91);
+		float[] expected = scores.clone();
+		int[][] expectedOutput = {identity(n), classes.clone()};
+		sort(expectedOutput, expected, n);
+		float[] actual = scores.clone();
+		int[][] actualOutput = {identity(n), classes.clone()};
+		detect_result.sort(actualOutput, actual, n);
+		compare(scores, expected, expectedOutput[0], actual, actualOutput[0], "ssd "+what);
+		for(int k = 0; k < n; k++)
+			check(actualOutput[1][k] == classes[actualOutput[0][k]], "ssd "+what+" output[1] at "+k);
+	}
+	/**
+	 * Scores the same, and the indexes of each run of equal scores the same set, ascending in the actual order.
+	 * @param scores the scores before sorting, indexes being positions in them
+	 */
+	private static void compare(float[] scores, float[] expected, int[] expectedIndices, float[] actual, int[] actualIndices, String what) {
+		int n = scores.length;
+		check(Arrays.equals(expected, actual), what+" scores, first mismatch at "+Arrays.mismatch(expected, actual));
+		for(int k = 0; k < n; k++)
+			check(actual[k] == scores[actualIndices[k]], what+" index at "+k+" not that of its score");
+		for(int start = 0; start < n; ) {
+			int end = start + 1;
+			while(end < n && expected[end] == expected[start])
+				++end;
+			int[] run = Arrays.copyOfRange(expectedIndices, start, end);
+			Arrays.sort(run);
+			check(Arrays.equals(run, Arrays.copyOfRange(actualIndices, start, end)), what+" run of "+(end - start)+" equal scores at "+start);
+			start = end;
+		}
+	}
+
+	private static float[] scores(Random random, int n) {
+		float[] scores = new float[n];
+		int levels = 1 + random.nextInt(16);
+		int kind = random.nextInt(6);
+		for(int i = 0; i < n; i++) {
+			switch(kind) {
+				case 0: scores[i] = random.nextFloat(); break;
+				case 1: scores[i] = 0.5f; break;
+				case 2: scores[i] = (float)i / n; break;
+				case 3: scores[i] = (float)(n - i) / n; break;
+				case 4: scores[i] = (random.nextInt(levels) - 4) * 0.25f; break;
+				default: scores[i] = random.nextInt(levels) / (float)levels;
+			}
+			if(random.nextInt(500) == 0)
+				scores[i] = random.nextBoolean() ? Float.POSITIVE_INFINITY : Float.NEGATIVE_INFINITY;
+		}
+		return scores;
+	}
+
+	private static int[] identity(int n) {
+		int[] indices = new int[n];
+		for(int i = 0; i < n; i++)
+			indices[i] = i;
+		return indices;
+	}
+	/**
+	 * quick_sort_indice_inverse before ScoreSort.
+	 */
+	static int quick_sort_indice_inverse(float[] input, int left, int right, int[] indices) {
+	  float key;
+	  int   key_index;
+	  int   low  = left;
+	  int   high = right;
+	  if (left < right) {
+	    key_index = indices[left];
+	    key       = input[left];
+	    while (low < high) {
+	      while (low < high && input[high] <= key) {
+	        high--;
+	      }
+	      input[low]   = input[high];
+	      indices[low] = indices[high];
+	      while (low < high && input[low] >= key) {
+	        low++;
+	      }
+	      input[high]   = input[low];
+	      indices[high] = indices[low];
+	    }
+	    input[low]   = key;
+	    indices[low] = key_index;
+	    quick_sort_indice_inverse(input, left, low - 1, indices);
+	    quick_sort_indice_inverse(input, low + 1, right, indices);
+	  }
+	  return low;
+	}
+	/**
+	 * The InceptionSSD sort before ScoreSort.
+	 */
+	static void sort(int[][] output, float[] props, int sz) {
+	  int i = 0;
+	  int j = 0;
+	  if (sz < 2) {
+	    return;
+	  }
+	  for (i = 0; i < sz - 1; i++) {
+	    int top = i;
+	    for (j = i + 1; j < sz; j++) {
+	      if (props[top] < props[j]) {
+	        top = j;
+	      }
+	    }
+	    if (i != top) {
+	      int   tmp1     = output[0][i];
+	      int   tmp2     = output[1][i];
+	      float prop     = props[i];
+	      output[0][i]   = output[0][top];
+	      output[1][i]   = output[1][top];
+	      props[i]       = props[top];
+	      output[0][top] = tmp1;
+	      output[1][top] = tmp2;
+	      props[top]     = prop;
+	    }
+	  }
+	}
+}
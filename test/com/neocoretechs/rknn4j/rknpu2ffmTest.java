@@ -0,0 +1,301 @@
+package com.neocoretechs.rknn4j;
+
+import static com.neocoretechs.rknn4j.Checks.check;
+import static com.neocoretechs.rknn4j.Checks.finish;
+import static java.lang.foreign.ValueLayout.ADDRESS;
+import static java.lang.foreign.ValueLayout.JAVA_BYTE;
+import static java.lang.foreign.ValueLayout.JAVA_INT;
+import static java.lang.foreign.ValueLayout.JAVA_LONG;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemoryLayout;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.StructLayout;
+import java.lang.foreign.SymbolLookup;
+import java.lang.invoke.MethodHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.neocoretechs.rknn4j.RKNN.rknn_query_cmd;
+import com.neocoretechs.rknn4j.RKNN.rknn_tensor_format;
+import com.neocoretechs.rknn4j.RKNN.rknn_tensor_qnt_type;
+import com.neocoretechs.rknn4j.RKNN.rknn_tensor_type;
+
+/**
+ * Test of {@link rknpu2ffm} against the stub runtime of test/native/rknn_stub.c, built for the host and loaded through
+ * system property rknn4j.librknnrt, see the test target of build.xml.<p/>
+ * The structure layouts of rknpu2ffm are compared field by field with the offsets the stub was compiled with from
+ * rknn_api.h, then each call is made and the values passed in and out are checked: the tensor attributes the stub
+ * fills a field at a time, inputs from arrays, direct buffers and native segments, outputs preallocated, runtime
+ * owned and want_float over repeated runs on the reused native memory of a context, and tensor memory bound with
+ * an attribute the stub hands back.
+ * @author Jonathan Groff Copyright (C) NeoCoreTechs 2025
+ *
+ */
+public class rknpu2ffmTest {
+	private static final int INPUT_SIZE = 48;
+	private static final int[] OUTPUT_SIZE = {16, 8};
+	private static final SymbolLookup STUB = SymbolLookup.libraryLookup(Path.of(rknpu2ffm.LIBRARY), Arena.global());
+	private static final MethodHandle layout = stub("rknn_stub_layout", FunctionDescriptor.of(JAVA_LONG, ADDRESS));
+	private static final MethodHandle stubInput = stub("rknn_stub_input", FunctionDescriptor.of(JAVA_INT, JAVA_LONG, ADDRESS));
+	private static final MethodHandle stubIOAttr = stub("rknn_stub_io_attr", FunctionDescriptor.of(JAVA_INT, JAVA_LONG, ADDRESS));
+	private static final MethodHandle stubCoreMask = stub("rknn_stub_core_mask", FunctionDescriptor.of(JAVA_INT, JAVA_LONG));
+
+	private static MethodHandle stub(String name, FunctionDescriptor fd) {
+		return Linker.nativeLinker().downcallHandle(STUB.find(name).orElseThrow(), fd);
+	}
+
+	public static void main(String[] args) throws Throwable {
+		layouts();
+		rknpu2ffm npu = new rknpu2ffm();
+		byte[] model = new byte[1024];
+		rknn_init_extend initExtend = new rknn_init_extend();
+		long ctx = npu.rknn_init2(model, model.length, 0, initExtend);
+		check(ctx > 0, "rknn_init context "+ctx);
+		check(initExtend.ctx == ctx && initExtend.real_model_offset == 16 && initExtend.real_model_size == model.length - 16, "rknn_init_extend");
+		query(npu, ctx);
+		inputs(npu, ctx);
+		outputs(npu, ctx);
+		long dup = npu.rknn_dup_context(ctx);
+		check(dup > 0 && dup != ctx, "rknn_dup_context "+dup);
+		check(npu.rknn_set_core_mask(dup, RKNN.RKNN_NPU_CORE_1) == RKNN.RKNN_SUCC && (int)stubCoreMask.invokeExact(dup) == RKNN.RKNN_NPU_CORE_1, "rknn_set_core_mask");
+		outputs(npu, dup);
+		tensorMem(npu, ctx);
+		check(npu.rknn_destroy(dup) == RKNN.RKNN_SUCC, "rknn_destroy dup");
+		check(npu.rknn_destroy(ctx) == RKNN.RKNN_SUCC, "rknn_destroy");
+		check(npu.rknn_destroy(ctx) == RKNN.RKNN_ERR_CTX_INVALID, "rknn_destroy twice");
+		finish("rknpu2ffmTest passed");
+	}
+	/**
+	 * Offsets of the named fields and the size of each layout against the stub as compiled.
+	 */
+	private static void layouts() throws Throwable {
+		Map<String, StructLayout> structs = new LinkedHashMap<String, StructLayout>();
+		structs.put("rknn_input_output_num", rknpu2ffm.RKNN_INPUT_OUTPUT_NUM);
+		structs.put("rknn_tensor_attr", rknpu2ffm.RKNN_TENSOR_ATTR);
+		structs.put("rknn_sdk_version", rknpu2ffm.RKNN_SDK_VERSION);
+		structs.put("rknn_input", rknpu2ffm.RKNN_INPUT);
+		structs.put("rknn_output", rknpu2ffm.RKNN_OUTPUT);
+		structs.put("rknn_init_extend", rknpu2ffm.RKNN_INIT_EXTEND);
+		structs.put("rknn_run_extend", rknpu2ffm.RKNN_RUN_EXTEND);
+		structs.put("rknn_output_extend", rknpu2ffm.RKNN_OUTPUT_EXTEND);
+		structs.put("rknn_tensor_mem", rknpu2ffm.RKNN_TENSOR_MEM);
+		try (Arena arena = Arena.ofConfined()) {
+			for(Map.Entry<String, StructLayout> e : structs.entrySet()) {
+				StructLayout struct = e.getValue();
+				long size = (long)layout.invokeExact(cString(arena, e.getKey()));
+				check(size == struct.byteSize(), "sizeof "+e.getKey()+" "+struct.byteSize()+" C "+size);
+				long offset = 0;
+				for(MemoryLayout member : struct.memberLayouts()) {
+					if(member.name().isPresent()) {
+						String field = e.getKey()+"."+member.name().get();
+						long c = (long)layout.invokeExact(cString(arena, field));
+						check(c == offset, "offsetof "+field+" "+offset+" C "+c);
+					}
+					offset += member.byteSize();
+				}
+			}
+		}
+	}
+
+	private static MemorySegment cString(Arena arena, String s) {
+		byte[] b = s.getBytes(StandardCharsets.US_ASCII);
+		MemorySegment seg = arena.allocate(b.length + 1);
+		MemorySegment.copy(b, 0, seg, JAVA_BYTE, 0, b.length);
+		return seg;
+	}
+	/**
+	 * Each field of the attributes as the stub fills it, see fill_attr.
+	 */
+	private static void query(rknpu2ffm npu, long ctx) {
+		rknn_input_output_num ioNum = new rknn_input_output_num();
+		check(npu.rknn_query_IO_num(ctx, ioNum) == RKNN.RKNN_SUCC && ioNum.getN_input() == 1 && ioNum.getN_output() == 2, "RKNN_QUERY_IN_OUT_NUM");
+		rknn_sdk_version sdk = new rknn_sdk_version();
+		check(npu.rknn_query_sdk(ctx, sdk) == RKNN.RKNN_SUCC && "stub api 1.6.0".equals(sdk.getApi_version()) && "stub drv 0.9.6".equals(sdk.getDrv_version()),
+				"RKNN_QUERY_SDK_VERSION "+sdk);
+		for(rknn_query_cmd cmd : new rknn_query_cmd[] {rknn_query_cmd.RKNN_QUERY_INPUT_ATTR, rknn_query_cmd.RKNN_QUERY_NATIVE_INPUT_ATTR,
+				rknn_query_cmd.RKNN_QUERY_NATIVE_NHWC_INPUT_ATTR, rknn_query_cmd.RKNN_QUERY_OUTPUT_ATTR, rknn_query_cmd.RKNN_QUERY_NATIVE_OUTPUT_ATTR,
+				rknn_query_cmd.RKNN_QUERY_NATIVE_NHWC_OUTPUT_ATTR}) {
+			boolean input = cmd.name().endsWith("INPUT_ATTR");
+			for(int index = 0; index < (input ? 1 : 2); index++) {
+				rknn_tensor_attr attr = new rknn_tensor_attr();
+				attr.setIndex(index);
+				int res;
+				switch(cmd) {
+					case RKNN_QUERY_INPUT_ATTR: res = npu.rknn_query_input_attr(ctx, attr); break;
+					case RKNN_QUERY_NATIVE_INPUT_ATTR: res = npu.rknn_query_native_input_attr(ctx, attr); break;
+					case RKNN_QUERY_NATIVE_NHWC_INPUT_ATTR: res = npu.rknn_query_native_nhwc_input_attr(ctx, attr); break;
+					case RKNN_QUERY_OUTPUT_ATTR: res = npu.rknn_query_output_attr(ctx, attr); break;
+					case RKNN_QUERY_NATIVE_OUTPUT_ATTR: res = npu.rknn_query_native_output_attr(ctx, attr); break;
+					default: res = npu.rknn_query_native_nhwc_output_attr(ctx, attr); break;
+				}
+				String what = cmd+" "+index;
+				check(res == RKNN.RKNN_SUCC, what+" result "+res);
+				checkAttr(attr, cmd.ordinal(), index, input, what);
+			}
+		}
+	}
+
+	private static void checkAttr(rknn_tensor_attr attr, int cmd, int index, boolean input, String what) {
+		check(attr.getIndex() == index && attr.getN_dims() == 4, what+" index, n_dims");
+		for(int i = 0; i < RKNN.RKNN_MAX_DIMS; i++)
+			check(attr.getDim(i) == 100 * cmd + 10 * index + i + 1, what+" dims["+i+"] "+attr.getDim(i));
+		check((input ? "input" : "output").concat(index+"_q"+cmd).equals(attr.getName()), what+" name "+attr.getName());
+		int size = input ? INPUT_SIZE : OUTPUT_SIZE[index];
+		check(attr.getN_elems() == size && attr.getSize() == size, what+" n_elems, size");
+		check(attr.getFmt() == (input ? rknn_tensor_format.RKNN_TENSOR_NHWC : rknn_tensor_format.RKNN_TENSOR_NCHW), what+" fmt "+attr.getFmt());
+		check(attr.getType() == (input ? rknn_tensor_type.RKNN_TENSOR_UINT8 : rknn_tensor_type.RKNN_TENSOR_INT8), what+" type "+attr.getType());
+		check(attr.getQnt_type() == rknn_tensor_qnt_type.RKNN_TENSOR_QNT_AFFINE_ASYMMETRIC, what+" qnt_type "+attr.getQnt_type());
+		check(attr.getFl() == -3 - index, what+" fl "+attr.getFl());
+		check(attr.getZp() == -128 + index + cmd, what+" zp "+attr.getZp());
+		check(attr.getScale() == 0.25f * (index + 1), what+" scale "+attr.getScale());
+		check(attr.getW_stride() == 4 + index && attr.getSize_with_stride() == size + 64, what+" w_stride, size_with_stride");
+		check(attr.getPass_through() == 1 && attr.getH_stride() == 7 + index, what+" pass_through, h_stride");
+	}
+	/**
+	 * Inputs from an array, a direct buffer and a native segment, each read back from the stub.
+	 */
+	private static void inputs(rknpu2ffm npu, long ctx) throws Throwable {
+		for(int run = 0; run < 3; run++) {
+			byte[] bytes = pattern(run);
+			rknn_input input = input(bytes, run == 1);
+			check(npu.rknn_inputs_set(ctx, 1, new rknn_input[] {input}) == RKNN.RKNN_SUCC, "rknn_inputs_set array");
+			checkInput(ctx, input, bytes, "array run "+run);
+		}
+		byte[] bytes = pattern(7);
+		ByteBuffer direct = ByteBuffer.allocateDirect(INPUT_SIZE);
+		direct.put(bytes).clear();
+		rknn_input input = input(null, false);
+		check(npu.rknn_inputs_set(ctx, input, direct) == RKNN.RKNN_SUCC, "rknn_inputs_set direct buffer");
+		checkInput(ctx, input, bytes, "direct buffer");
+		check(npu.rknn_inputs_set(ctx, input, ByteBuffer.allocate(INPUT_SIZE)) == RKNN.RKNN_ERR_PARAM_INVALID, "rknn_inputs_set heap buffer");
+		try (Arena arena = Arena.ofConfined()) {
+			bytes = pattern(9);
+			MemorySegment seg = arena.allocate(INPUT_SIZE);
+			MemorySegment.copy(bytes, 0, seg, JAVA_BYTE, 0, INPUT_SIZE);
+			check(npu.rknn_inputs_set(ctx, input, seg) == RKNN.RKNN_SUCC, "rknn_inputs_set segment");
+			checkInput(ctx, input, bytes, "segment");
+			check(npu.rknn_inputs_set(ctx, input, seg.address()) == RKNN.RKNN_SUCC, "rknn_inputs_set address");
+			checkInput(ctx, input, bytes, "address");
+			check(npu.rknn_inputs_set(ctx, input, seg.asSlice(0, INPUT_SIZE - 1)) == RKNN.RKNN_ERR_PARAM_INVALID, "rknn_inputs_set short segment");
+		}
+	}
+
+	private static rknn_input input(byte[] bytes, boolean passThrough) {
+		rknn_input input = new rknn_input();
+		input.setIndex(0);
+		input.setBuf(bytes);
+		input.setSize(INPUT_SIZE);
+		input.setPass_through(passThrough);
+		input.setType(rknn_tensor_type.RKNN_TENSOR_UINT8);
+		input.setFmt(rknn_tensor_format.RKNN_TENSOR_NHWC);
+		return input;
+	}
+
+	private static void checkInput(long ctx, rknn_input input, byte[] bytes, String what) throws Throwable {
+		try (Arena arena = Arena.ofConfined()) {
+			MemorySegment seg = arena.allocate(rknpu2ffm.RKNN_INPUT);
+			check((int)stubInput.invokeExact(ctx, seg) == RKNN.RKNN_SUCC, what+" stub input");
+			check(seg.get(JAVA_INT, rknpu2ffm.INPUT_INDEX) == input.getIndex(), what+" index");
+			check(seg.get(JAVA_INT, rknpu2ffm.INPUT_SIZE) == input.getSize(), what+" size");
+			check(seg.get(JAVA_BYTE, rknpu2ffm.INPUT_PASS_THROUGH) == (input.getPass_through() ? 1 : 0), what+" pass_through");
+			check(seg.get(JAVA_INT, rknpu2ffm.INPUT_TYPE) == input.getType().ordinal(), what+" type");
+			check(seg.get(JAVA_INT, rknpu2ffm.INPUT_FMT) == input.getFmt().ordinal(), what+" fmt");
+			byte[] taken = new byte[INPUT_SIZE];
+			MemorySegment.copy(seg.get(ADDRESS, rknpu2ffm.INPUT_BUF).reinterpret(INPUT_SIZE), JAVA_BYTE, 0, taken, 0, INPUT_SIZE);
+			check(Arrays.equals(taken, bytes), what+" bytes");
+		}
+	}
+	/**
+	 * Preallocated, runtime owned and want_float outputs over several runs, the outputs of each run those of its input.
+	 */
+	private static void outputs(rknpu2ffm npu, long ctx) {
+		rknn_output[] prealloc = outputSet(true, false);
+		for(int run = 0; run < 4; run++) {
+			byte[] bytes = pattern(20 + run);
+			check(npu.rknn_inputs_set(ctx, 1, new rknn_input[] {input(bytes, false)}) == RKNN.RKNN_SUCC, "inputs run "+run);
+			rknn_run_extend runExtend = new rknn_run_extend();
+			check(npu.rknn_run(ctx, runExtend) == RKNN.RKNN_SUCC, "rknn_run");
+			rknn_output_extend outputExtend = new rknn_output_extend();
+			boolean runtimeOwned = run % 2 == 1;
+			rknn_output[] outputs = runtimeOwned ? outputSet(false, run == 3) : prealloc;
+			check(npu.rknn_outputs_get(ctx, outputs.length, outputs, outputExtend) == RKNN.RKNN_SUCC, "rknn_outputs_get run "+run);
+			check(outputExtend.frame_id == runExtend.frame_id && runExtend.frame_id > 0, "frame_id "+runExtend.frame_id+" "+outputExtend.frame_id);
+			for(int i = 0; i < 2; i++) {
+				String what = "run "+run+" output "+i+(runtimeOwned ? " runtime owned" : " preallocated")+(outputs[i].getWant_float() ? " float" : "");
+				int from = i == 0 ? 0 : OUTPUT_SIZE[0];
+				for(int k = 0; k < OUTPUT_SIZE[i]; k++) {
+					byte expect = (byte)(i == 0 ? bytes[from + k] + 1 : bytes[from + k] ^ 0xFF);
+					byte[] buf = outputs[i].getBuf();
+					if(outputs[i].getWant_float())
+						check(ByteBuffer.wrap(buf).order(ByteOrder.nativeOrder()).getFloat(k * 4) == expect, what+" value "+k);
+					else
+						check(buf[k] == expect, what+" byte "+k);
+				}
+				check(outputs[i].getSize() == OUTPUT_SIZE[i] * (outputs[i].getWant_float() ? 4 : 1), what+" size "+outputs[i].getSize());
+			}
+			check(npu.rknn_outputs_release(ctx, outputs.length, outputs) == RKNN.RKNN_SUCC, "rknn_outputs_release run "+run);
+		}
+	}
+
+	private static rknn_output[] outputSet(boolean prealloc, boolean wantFloat) {
+		rknn_output[] outputs = new rknn_output[2];
+		for(int i = 0; i < 2; i++) {
+			outputs[i] = new rknn_output();
+			outputs[i].setIndex(i);
+			outputs[i].setIs_prealloc(prealloc);
+			outputs[i].setWant_float(wantFloat);
+			if(prealloc) {
+				outputs[i].setSize(OUTPUT_SIZE[i]);
+				outputs[i].setBuf(new byte[OUTPUT_SIZE[i]]);
+			}
+		}
+		return outputs;
+	}
+	/**
+	 * rknn_create_mem, the attribute written for rknn_set_io_mem read back from the stub, and rknn_destroy_mem.
+	 */
+	private static void tensorMem(rknpu2ffm npu, long ctx) throws Throwable {
+		rknn_tensor_mem mem = npu.rknn_create_mem(ctx, 4096);
+		check(mem != null && mem.getVirt_addr() != 0 && mem.getSize() == 4096 && mem.getFd() == 42 && mem.getOffset() == 0, "rknn_create_mem "+mem);
+		check(mem.getPhys_addr() == 0x10000000L + 4096 && mem.getFlags() == 1 && mem.getPriv_data() == mem.getMem(), "rknn_create_mem fields "+mem);
+		rknn_tensor_attr attr = new rknn_tensor_attr();
+		attr.setIndex(0);
+		check(npu.rknn_query_native_input_attr(ctx, attr) == RKNN.RKNN_SUCC, "native input attr");
+		attr.setName("bound");
+		attr.setZp(-5);
+		attr.setScale(0.125f);
+		check(npu.rknn_set_io_mem(ctx, mem, attr) == RKNN.RKNN_SUCC, "rknn_set_io_mem");
+		try (Arena arena = Arena.ofConfined()) {
+			MemorySegment seg = arena.allocate(rknpu2ffm.RKNN_TENSOR_ATTR);
+			check((int)stubIOAttr.invokeExact(ctx, seg) == RKNN.RKNN_SUCC, "stub io attr");
+			rknn_tensor_attr back = new rknn_tensor_attr();
+			rknpu2ffm.readTensorAttr(seg, back);
+			check(RKNN.dump_tensor_attr(attr).equals(RKNN.dump_tensor_attr(back)), "rknn_set_io_mem attr round trip "+RKNN.dump_tensor_attr(back));
+			for(int i = 0; i < RKNN.RKNN_MAX_DIMS; i++)
+				check(back.getDim(i) == attr.getDim(i), "round trip dims["+i+"]");
+		}
+		check(npu.rknn_destroy_mem(ctx, mem) == RKNN.RKNN_SUCC, "rknn_destroy_mem");
+		try (Arena arena = Arena.ofConfined()) {
+			MemorySegment buf = arena.allocate(8192);
+			rknn_tensor_mem fdMem = npu.rknn_create_mem_from_fd(ctx, 9, buf.address(), 4096, 256);
+			check(fdMem != null && fdMem.getFd() == 9 && fdMem.getVirt_addr() == buf.address() + 256 && fdMem.getOffset() == 256 && fdMem.getFlags() == 2,
+					"rknn_create_mem_from_fd "+fdMem);
+			check(npu.rknn_destroy_mem(ctx, fdMem) == RKNN.RKNN_SUCC, "rknn_destroy_mem from fd");
+		}
+	}
+
+	private static byte[] pattern(int seed) {
+		byte[] b = new byte[INPUT_SIZE];
+		for(int i = 0; i < b.length; i++)
+			b[i] = (byte)(seed * 31 + i * 7);
+		return b;
+	}
+}
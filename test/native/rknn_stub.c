@@ -0,0 +1,339 @@
+/*
+ * Stub of the RKNN runtime librknnrt.so for testing rknpu2ffm on a host without an NPU.
+ * Built against the rknn_api.h of runtime/RK3588/Linux/librknn_api/include, so the structures are those of the
+ * real runtime on a 64 bit target, and exports the symbols rknpu2ffm binds with the same signatures.
+ * A context runs a fixed model of one NHWC UINT8 input of 1x4x4x3 and two INT8 outputs of 16 and 8 bytes,
+ * output 0 the first 16 input bytes plus 1, output 1 the next 8 XOR 0xFF, so the bytes passed in and out can be
+ * checked. Tensor attributes are filled with a value per field, and rknn_stub_layout reports the offsets and sizes
+ * of the structures as compiled, for comparison with the layouts of rknpu2ffm.
+ * gcc -shared -fPIC -I runtime/RK3588/Linux/librknn_api/include -o librknnrt_stub.so test/native/rknn_stub.c
+ * @author Jonathan Groff Copyright (C) NeoCoreTechs 2025
+ */
+#include <stddef.h>
+#include <stdlib.h>
+#include <string.h>
+#include <stdio.h>
+
+#include "rknn_api.h"
+
+#define MAX_CONTEXTS 64
+#define INPUT_SIZE 48
+#define OUTPUT0_SIZE 16
+#define OUTPUT1_SIZE 8
+
+typedef struct {
+	int used;
+	uint32_t model_size;
+	int core_mask;
+	uint64_t frame_id;
+	rknn_input input; /* last input set, buf pointing to the copy below */
+	uint8_t input_buf[INPUT_SIZE];
+	uint8_t output_buf[OUTPUT0_SIZE + OUTPUT1_SIZE];
+	rknn_tensor_attr io_attr; /* last attribute bound by rknn_set_io_mem */
+	rknn_tensor_mem io_mem;
+} stub_context;
+
+static stub_context contexts[MAX_CONTEXTS];
+
+static stub_context* get(rknn_context ctx) {
+	if(ctx == 0 || ctx > MAX_CONTEXTS || !contexts[ctx - 1].used)
+		return NULL;
+	return &contexts[ctx - 1];
+}
+
+static rknn_context create(uint32_t model_size) {
+	for(int i = 0; i < MAX_CONTEXTS; i++) {
+		if(!contexts[i].used) {
+			memset(&contexts[i], 0, sizeof(stub_context));
+			contexts[i].used = 1;
+			contexts[i].model_size = model_size;
+			return (rknn_context)(i + 1);
+		}
+	}
+	return 0;
+}
+
+static uint32_t output_size(uint32_t index) {
+	return index == 0 ? OUTPUT0_SIZE : OUTPUT1_SIZE;
+}
+
+/* a distinct value in each field, from the command and the index */
+static void fill_attr(rknn_query_cmd cmd, uint32_t index, int input, rknn_tensor_attr* attr) {
+	memset(attr, 0, sizeof(rknn_tensor_attr));
+	attr->index = index;
+	attr->n_dims = 4;
+	for(int i = 0; i < RKNN_MAX_DIMS; i++)
+		attr->dims[i] = 100 * cmd + 10 * index + i + 1;
+	snprintf(attr->name, RKNN_MAX_NAME_LEN, "%s%u_q%d", input ? "input" : "output", index, (int)cmd);
+	attr->n_elems = input ? INPUT_SIZE : output_size(index);
+	attr->size = attr->n_elems;
+	attr->fmt = input ? RKNN_TENSOR_NHWC : RKNN_TENSOR_NCHW;
+	attr->type = input ? RKNN_TENSOR_UINT8 : RKNN_TENSOR_INT8;
+	attr->qnt_type = RKNN_TENSOR_QNT_AFFINE_ASYMMETRIC;
+	attr->fl = -3 - (int8_t)index;
+	attr->zp = -128 + (int32_t)index + cmd;
+	attr->scale = 0.25f * (index + 1);
+	attr->w_stride = 4 + index;
+	attr->size_with_stride = attr->size + 64;
+	attr->pass_through = 1;
+	attr->h_stride = 7 + index;
+}
+
+int rknn_init(rknn_context* context, void* model, uint32_t size, uint32_t flag, rknn_init_extend* extend) {
+	(void)flag;
+	if(context == NULL || model == NULL || size == 0)
+		return RKNN_ERR_PARAM_INVALID;
+	rknn_context ctx = create(size);
+	if(ctx == 0)
+		return RKNN_ERR_FAIL;
+	*context = ctx;
+	if(extend != NULL) {
+		extend->ctx = ctx;
+		extend->real_model_offset = 16;
+		extend->real_model_size = size - 16;
+	}
+	return RKNN_SUCC;
+}
+
+int rknn_dup_context(rknn_context* context_in, rknn_context* context_out) {
+	stub_context* c = get(*context_in);
+	if(c == NULL)
+		return RKNN_ERR_CTX_INVALID;
+	rknn_context ctx = create(c->model_size);
+	if(ctx == 0)
+		return RKNN_ERR_FAIL;
+	*context_out = ctx;
+	return RKNN_SUCC;
+}
+
+int rknn_destroy(rknn_context context) {
+	stub_context* c = get(context);
+	if(c == NULL)
+		return RKNN_ERR_CTX_INVALID;
+	c->used = 0;
+	return RKNN_SUCC;
+}
+
+int rknn_query(rknn_context context, rknn_query_cmd cmd, void* info, uint32_t size) {
+	if(get(context) == NULL)
+		return RKNN_ERR_CTX_INVALID;
+	switch(cmd) {
+		case RKNN_QUERY_IN_OUT_NUM: {
+			if(size != sizeof(rknn_input_output_num))
+				return RKNN_ERR_PARAM_INVALID;
+			rknn_input_output_num* num = (rknn_input_output_num*)info;
+			num->n_input = 1;
+			num->n_output = 2;
+			return RKNN_SUCC;
+		}
+		case RKNN_QUERY_SDK_VERSION: {
+			if(size != sizeof(rknn_sdk_version))
+				return RKNN_ERR_PARAM_INVALID;
+			rknn_sdk_version* version = (rknn_sdk_version*)info;
+			strcpy(version->api_version, "stub api 1.6.0");
+			strcpy(version->drv_version, "stub drv 0.9.6");
+			return RKNN_SUCC;
+		}
+		case RKNN_QUERY_INPUT_ATTR:
+		case RKNN_QUERY_NATIVE_INPUT_ATTR:
+		case RKNN_QUERY_NATIVE_NHWC_INPUT_ATTR:
+		case RKNN_QUERY_OUTPUT_ATTR:
+		case RKNN_QUERY_NATIVE_OUTPUT_ATTR:
+		case RKNN_QUERY_NATIVE_NHWC_OUTPUT_ATTR: {
+			if(size != sizeof(rknn_tensor_attr))
+				return RKNN_ERR_PARAM_INVALID;
+			rknn_tensor_attr* attr = (rknn_tensor_attr*)info;
+			int input = cmd == RKNN_QUERY_INPUT_ATTR || cmd == RKNN_QUERY_NATIVE_INPUT_ATTR || cmd == RKNN_QUERY_NATIVE_NHWC_INPUT_ATTR;
+			if(attr->index >= (input ? 1 : 2))
+				return RKNN_ERR_PARAM_INVALID;
+			fill_attr(cmd, attr->index, input, attr);
+			return RKNN_SUCC;
+		}
+		default:
+			return RKNN_ERR_PARAM_INVALID;
+	}
+}
+
+int rknn_inputs_set(rknn_context context, uint32_t n_inputs, rknn_input inputs[]) {
+	stub_context* c = get(context);
+	if(c == NULL)
+		return RKNN_ERR_CTX_INVALID;
+	if(n_inputs != 1 || inputs[0].index != 0 || inputs[0].buf == NULL || inputs[0].size != INPUT_SIZE)
+		return RKNN_ERR_PARAM_INVALID;
+	/* the runtime takes the bytes when the input is set, the caller may reuse the buffer */
+	memcpy(c->input_buf, inputs[0].buf, INPUT_SIZE);
+	c->input = inputs[0];
+	c->input.buf = c->input_buf;
+	return RKNN_SUCC;
+}
+
+int rknn_set_core_mask(rknn_context context, rknn_core_mask core_mask) {
+	stub_context* c = get(context);
+	if(c == NULL)
+		return RKNN_ERR_CTX_INVALID;
+	c->core_mask = core_mask;
+	return RKNN_SUCC;
+}
+
+int rknn_run(rknn_context context, rknn_run_extend* extend) {
+	stub_context* c = get(context);
+	if(c == NULL)
+		return RKNN_ERR_CTX_INVALID;
+	for(int i = 0; i < OUTPUT0_SIZE; i++)
+		c->output_buf[i] = (uint8_t)(c->input_buf[i] + 1);
+	for(int i = 0; i < OUTPUT1_SIZE; i++)
+		c->output_buf[OUTPUT0_SIZE + i] = (uint8_t)(c->input_buf[OUTPUT0_SIZE + i] ^ 0xFF);
+	++c->frame_id;
+	if(extend != NULL)
+		extend->frame_id = c->frame_id;
+	return RKNN_SUCC;
+}
+
+int rknn_outputs_get(rknn_context context, uint32_t n_outputs, rknn_output outputs[], rknn_output_extend* extend) {
+	stub_context* c = get(context);
+	if(c == NULL)
+		return RKNN_ERR_CTX_INVALID;
+	if(n_outputs > 2)
+		return RKNN_ERR_PARAM_INVALID;
+	for(uint32_t i = 0; i < n_outputs; i++) {
+		uint32_t index = outputs[i].index;
+		if(index > 1)
+			return RKNN_ERR_PARAM_INVALID;
+		uint8_t* src = c->output_buf + (index == 0 ? 0 : OUTPUT0_SIZE);
+		uint32_t n = output_size(index);
+		uint32_t size = outputs[i].want_float ? n * sizeof(float) : n;
+		if(outputs[i].is_prealloc) {
+			if(outputs[i].buf == NULL || outputs[i].size < size)
+				return RKNN_ERR_PARAM_INVALID;
+		} else {
+			outputs[i].buf = malloc(size);
+		}
+		if(outputs[i].want_float) {
+			for(uint32_t k = 0; k < n; k++)
+				((float*)outputs[i].buf)[k] = (float)(int8_t)src[k];
+		} else {
+			memcpy(outputs[i].buf, src, n);
+		}
+		outputs[i].size = size;
+	}
+	if(extend != NULL)
+		extend->frame_id = c->frame_id;
+	return RKNN_SUCC;
+}
+
+int rknn_outputs_release(rknn_context context, uint32_t n_ouputs, rknn_output outputs[]) {
+	if(get(context) == NULL)
+		return RKNN_ERR_CTX_INVALID;
+	for(uint32_t i = 0; i < n_ouputs; i++) {
+		if(!outputs[i].is_prealloc) {
+			free(outputs[i].buf);
+			outputs[i].buf = NULL;
+		}
+	}
+	return RKNN_SUCC;
+}
+
+rknn_tensor_mem* rknn_create_mem(rknn_context ctx, uint32_t size) {
+	if(get(ctx) == NULL || size == 0)
+		return NULL;
+	rknn_tensor_mem* mem = calloc(1, sizeof(rknn_tensor_mem));
+	mem->virt_addr = calloc(1, size);
+	mem->phys_addr = 0x10000000ULL + size;
+	mem->fd = 42;
+	mem->offset = 0;
+	mem->size = size;
+	mem->flags = RKNN_TENSOR_MEMORY_FLAGS_ALLOC_INSIDE;
+	mem->priv_data = mem;
+	return mem;
+}
+
+rknn_tensor_mem* rknn_create_mem_from_fd(rknn_context ctx, int32_t fd, void *virt_addr, uint32_t size, int32_t offset) {
+	if(get(ctx) == NULL || virt_addr == NULL)
+		return NULL;
+	rknn_tensor_mem* mem = calloc(1, sizeof(rknn_tensor_mem));
+	mem->virt_addr = (uint8_t*)virt_addr + offset;
+	mem->phys_addr = 0;
+	mem->fd = fd;
+	mem->offset = offset;
+	mem->size = size;
+	mem->flags = RKNN_TENSOR_MEMORY_FLAGS_FROM_FD;
+	mem->priv_data = mem;
+	return mem;
+}
+
+int rknn_destroy_mem(rknn_context ctx, rknn_tensor_mem *mem) {
+	if(get(ctx) == NULL || mem == NULL || mem->priv_data != mem)
+		return RKNN_ERR_PARAM_INVALID;
+	if(mem->flags == RKNN_TENSOR_MEMORY_FLAGS_ALLOC_INSIDE)
+		free(mem->virt_addr);
+	free(mem);
+	return RKNN_SUCC;
+}
+
+int rknn_set_io_mem(rknn_context ctx, rknn_tensor_mem *mem, rknn_tensor_attr *attr) {
+	stub_context* c = get(ctx);
+	if(c == NULL)
+		return RKNN_ERR_CTX_INVALID;
+	if(mem == NULL || mem->priv_data != mem || attr == NULL)
+		return RKNN_ERR_PARAM_INVALID;
+	c->io_attr = *attr;
+	c->io_mem = *mem;
+	return RKNN_SUCC;
+}
+
+/* Test hooks, not part of the runtime */
+
+/* the last input set on the context, buf pointing to the bytes the stub took */
+int rknn_stub_input(rknn_context ctx, rknn_input* input) {
+	stub_context* c = get(ctx);
+	if(c == NULL)
+		return RKNN_ERR_CTX_INVALID;
+	*input = c->input;
+	return RKNN_SUCC;
+}
+
+/* the last attribute bound by rknn_set_io_mem */
+int rknn_stub_io_attr(rknn_context ctx, rknn_tensor_attr* attr) {
+	stub_context* c = get(ctx);
+	if(c == NULL)
+		return RKNN_ERR_CTX_INVALID;
+	*attr = c->io_attr;
+	return RKNN_SUCC;
+}
+
+int rknn_stub_core_mask(rknn_context ctx) {
+	stub_context* c = get(ctx);
+	return c == NULL ? RKNN_ERR_CTX_INVALID : c->core_mask;
+}
+
+#define FIELD(s, f) { #s "." #f, offsetof(s, f) }
+#define SIZE(s) { #s, sizeof(s) }
+
+static const struct { const char* name; long value; } layout[] = {
+	SIZE(rknn_input_output_num), FIELD(rknn_input_output_num, n_input), FIELD(rknn_input_output_num, n_output),
+	SIZE(rknn_tensor_attr), FIELD(rknn_tensor_attr, index), FIELD(rknn_tensor_attr, n_dims), FIELD(rknn_tensor_attr, dims),
+	FIELD(rknn_tensor_attr, name), FIELD(rknn_tensor_attr, n_elems), FIELD(rknn_tensor_attr, size), FIELD(rknn_tensor_attr, fmt),
+	FIELD(rknn_tensor_attr, type), FIELD(rknn_tensor_attr, qnt_type), FIELD(rknn_tensor_attr, fl), FIELD(rknn_tensor_attr, zp),
+	FIELD(rknn_tensor_attr, scale), FIELD(rknn_tensor_attr, w_stride), FIELD(rknn_tensor_attr, size_with_stride),
+	FIELD(rknn_tensor_attr, pass_through), FIELD(rknn_tensor_attr, h_stride),
+	SIZE(rknn_sdk_version), FIELD(rknn_sdk_version, api_version), FIELD(rknn_sdk_version, drv_version),
+	SIZE(rknn_input), FIELD(rknn_input, index), FIELD(rknn_input, buf), FIELD(rknn_input, size), FIELD(rknn_input, pass_through),
+	FIELD(rknn_input, type), FIELD(rknn_input, fmt),
+	SIZE(rknn_output), FIELD(rknn_output, want_float), FIELD(rknn_output, is_prealloc), FIELD(rknn_output, index),
+	FIELD(rknn_output, buf), FIELD(rknn_output, size),
+	SIZE(rknn_init_extend), FIELD(rknn_init_extend, ctx), FIELD(rknn_init_extend, real_model_offset),
+	FIELD(rknn_init_extend, real_model_size), FIELD(rknn_init_extend, reserved),
+	SIZE(rknn_run_extend), FIELD(rknn_run_extend, frame_id), FIELD(rknn_run_extend, non_block), FIELD(rknn_run_extend, timeout_ms),
+	FIELD(rknn_run_extend, fence_fd),
+	SIZE(rknn_output_extend), FIELD(rknn_output_extend, frame_id),
+	SIZE(rknn_tensor_mem), FIELD(rknn_tensor_mem, virt_addr), FIELD(rknn_tensor_mem, phys_addr), FIELD(rknn_tensor_mem, fd),
+	FIELD(rknn_tensor_mem, offset), FIELD(rknn_tensor_mem, size), FIELD(rknn_tensor_mem, flags), FIELD(rknn_tensor_mem, priv_data),
+};
+
+/* offset of "struct.field" or size of "struct" as compiled, -1 if unknown */
+long rknn_stub_layout(const char* name) {
+	for(size_t i = 0; i < sizeof(layout) / sizeof(layout[0]); i++)
+		if(strcmp(layout[i].name, name) == 0)
+			return layout[i].value;
+	return -1;
+}